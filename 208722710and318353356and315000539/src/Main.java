@@ -2,6 +2,7 @@ import java.util.Arrays;
 import java.util.List;
 import ac.il.afeka.Submission.Submission;
 import ac.il.afeka.fsm.Alphabet;
+import ac.il.afeka.fsm.ConversionCache;
 import ac.il.afeka.fsm.DFSM;
 import ac.il.afeka.fsm.NDFSM;
 
@@ -9,6 +10,9 @@ import ac.il.afeka.fsm.NDFSM;
 
 public class Main implements Submission, Assignment3 {
 
+	// conversions of machines that were already converted (up to renaming of states) are answered from here
+	private static final ConversionCache cache = new ConversionCache(10000, 64L * 1024 * 1024);
+
 	@Override
 	public List<String> submittingStudentIds() {
 		return Arrays.asList("208722710", "318353356","315000539");
@@ -16,7 +20,7 @@ public class Main implements Submission, Assignment3 {
 
 	@Override
 	public String convert(String ndfsm) throws Exception {
-		return new NDFSM(ndfsm).toDFSM().encode();
+		return cache.convert(ndfsm);
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -1,11 +1,11 @@
 package ac.il.afeka.fsm;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 public class Alphabet implements Iterable<Character> {
 
@@ -16,9 +16,9 @@ public class Alphabet implements Iterable<Character> {
 	 */
 	public static final Character EPSILON = new Character('\0');
 	
-	private List<Character> symbols;
+	private final List<Character> symbols;
 	
-	private Map<Character, Character> succ;
+	private final Map<Character, Character> succ;
 	
 	/** 
 	 * Creates a new alphabet from the given list of symbols. 
@@ -38,7 +38,7 @@ public class Alphabet implements Iterable<Character> {
 	
 	public Alphabet(List<Character> symbols) {
 		
-		this.symbols = symbols;
+		this.symbols = Collections.unmodifiableList(new ArrayList<Character>(symbols));
 		
 		this.succ = new HashMap<Character, Character>();
 		
@@ -50,7 +50,9 @@ public class Alphabet implements Iterable<Character> {
 			current = p.next();
 		
 		while(p.hasNext()) {
-			succ.put(current, p.next());
+			Character next = p.next();
+			succ.put(current, next);
+			current = next;
 		}
 	}
 
@@ -75,16 +77,13 @@ public class Alphabet implements Iterable<Character> {
 	 */
 	public static Alphabet parse(String encoding) {
 		
-		Scanner scanner = new Scanner(encoding);
-		
 		List<Character> symbols = new ArrayList<Character>();
 		
-		while(scanner.hasNext()) {
-			symbols.add(scanner.next().charAt(0));
+		for(String symbol : encoding.trim().split("\\s+")) {
+			if (!symbol.isEmpty())
+				symbols.add(symbol.charAt(0));
 		}
 		
-		scanner.close();
-		
 		return new Alphabet(symbols);
 	}
 
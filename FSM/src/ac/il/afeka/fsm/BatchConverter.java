@@ -0,0 +1,358 @@
+package ac.il.afeka.fsm;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Converts a stream of NDFSM encodings, one per line, to DFSM encodings, on several threads.
+ *
+ * <p>The converter reads the input one line at a time and hands every line to a pool of worker threads.
+ * At most a fixed number of lines are read ahead of the last line written, so the converter never holds
+ * more than that number of machines in memory, however long the input is. Each worker parses its line,
+ * converts it to a DFSM, and optionally minimizes it and puts it in canonic form.</p>
+ *
+ * <p>The output has one line per input line. In order mode (the default) the lines come out in the order of
+ * the input. Otherwise every line is tagged with the number of its input line (from 1) and a tab, and the
+ * lines come out as soon as they are converted. A line that cannot be converted gives an output line
+ * <code>ERROR: </code> followed by the reason, or <code>TIMEOUT</code> if its conversion took longer than
+ * the timeout, and the batch goes on. The timeout covers the whole conversion of a line: parsing,
+ * determinization, minimization and canonic form. Determinization stops as soon as the time is up, and
+ * the other steps are not started once it is. An empty input line gives an empty output line. For
+ * example</p>
+ *
+ * <code>
+ * BatchConverter.Summary summary = new BatchConverter().minimize(true).timeout(10, TimeUnit.SECONDS).run(in, out);
+ * </code>
+ *
+ * <p>converts the machines of in to minimal DFSMs, on as many threads as there are processors.</p>
+ */
+public class BatchConverter {
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int window = 0;
+	private boolean minimize = false;
+	private boolean canonicalize = false;
+	private boolean ordered = true;
+	private DeterminizationLimits limits = DeterminizationLimits.NONE;
+
+	/** Sets the number of worker threads (the number of processors by default).
+	 *
+	 * @param threads the number of worker threads
+	 * @return this converter
+	 */
+	public BatchConverter threads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/** Sets the largest number of lines that are read but not written yet (64 per thread by default).
+	 *
+	 * @param lines the largest number of lines in progress
+	 * @return this converter
+	 */
+	public BatchConverter window(int lines) {
+		this.window = Math.max(1, lines);
+		return this;
+	}
+
+	/** @param minimize true to minimize every DFSM
+	 *  @return this converter */
+	public BatchConverter minimize(boolean minimize) {
+		this.minimize = minimize;
+		return this;
+	}
+
+	/** @param canonicalize true to put every DFSM in canonic form
+	 *  @return this converter */
+	public BatchConverter canonicalize(boolean canonicalize) {
+		this.canonicalize = canonicalize;
+		return this;
+	}
+
+	/** @param ordered true to write the results in input order, false to write them tagged with their line number as soon as they are ready
+	 *  @return this converter */
+	public BatchConverter ordered(boolean ordered) {
+		this.ordered = ordered;
+		return this;
+	}
+
+	/** Sets the limits of every conversion; a conversion that exceeds them is reported and skipped.
+	 *
+	 * @param limits the limits of one conversion
+	 * @return this converter
+	 */
+	public BatchConverter limits(DeterminizationLimits limits) {
+		this.limits = limits;
+		return this;
+	}
+
+	/** Sets the longest time a single conversion may take, from parsing its line to putting it in canonic form.
+	 *
+	 * @param timeout	the longest time of one conversion
+	 * @param unit		the unit of timeout
+	 * @return this converter
+	 */
+	public BatchConverter timeout(long timeout, TimeUnit unit) {
+		this.limits = limits.withTimeout(timeout, unit);
+		return this;
+	}
+
+	/** Converts every line of input and writes the results to output. The streams are not closed.
+	 *
+	 * @param input		the NDFSM encodings, one per line
+	 * @param output	receives the DFSM encodings, one per line
+	 * @return the counts of the batch
+	 * @throws IOException if reading input or writing output fails
+	 * @throws InterruptedException if the calling thread is interrupted; the batch is abandoned
+	 */
+	public Summary run(Reader input, Writer output) throws IOException, InterruptedException {
+
+		long start = System.nanoTime();
+		BufferedReader lines = input instanceof BufferedReader ? (BufferedReader)input : new BufferedReader(input);
+		int capacity = window > 0 ? window : 64 * threads;
+
+		Batch batch = new Batch(output instanceof BufferedWriter ? output : new BufferedWriter(output), new Semaphore(capacity));
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "batch-converter");
+			t.setDaemon(true);
+			return t;
+		});
+
+		long count = 0;
+		try {
+			String line;
+			while (batch.failure == null && batch.fatal == null && (line = lines.readLine()) != null) {
+				batch.inProgress.acquire();
+				final long n = count++;
+				final String encoding = line;
+				pool.execute(() -> {
+					try {
+						batch.write(n, batch.convert(encoding));
+					} catch (Error e) {
+						batch.abort(e);
+					}
+				});
+			}
+			batch.inProgress.acquire(capacity);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (batch.fatal != null)
+			throw batch.fatal;
+		if (batch.failure != null)
+			throw batch.failure;
+		batch.writer.flush();
+
+		return new Summary(count, batch.converted.sum(), batch.failed.sum(), batch.timedOut.sum(), System.nanoTime() - start);
+	}
+
+	/* The state of one run: the output, the window of lines in progress and the counts.
+	 *
+	 * A line holds a permit of inProgress from the time it is read until it is written, so in order
+	 * mode the results that wait for an earlier line are bounded by the window too. Once writing
+	 * fails, or a worker throws an Error that is not a single machine's failure (such as an
+	 * OutOfMemoryError), the results are dropped and their permits are returned, so the run ends
+	 * promptly and rethrows it. */
+
+	private final class Batch {
+
+		final Writer writer;
+		final Semaphore inProgress;
+		final Map<Long, String> waiting = new HashMap<Long, String>();
+		long next = 0;
+		volatile IOException failure = null;
+		volatile Error fatal = null;
+
+		final LongAdder converted = new LongAdder();
+		final LongAdder failed = new LongAdder();
+		final LongAdder timedOut = new LongAdder();
+
+		Batch(Writer writer, Semaphore inProgress) {
+			this.writer = writer;
+			this.inProgress = inProgress;
+		}
+
+		String convert(String encoding) {
+
+			if (encoding.trim().isEmpty())
+				return "";
+
+			// one deadline for the whole line: determinization gets what is left of it after parsing
+			long start = System.nanoTime();
+			try {
+				NDFSM machine = new NDFSM(encoding);
+				DFSM dfsm = new Determinization(machine, limits.withTimeout(remaining(start), TimeUnit.NANOSECONDS)).run();
+				if (minimize && remaining(start) >= 0)
+					dfsm = dfsm.minimize();
+				if (canonicalize && remaining(start) >= 0)
+					dfsm = (DFSM)dfsm.toCanonicForm();
+				if (remaining(start) < 0)
+					return timeOut();
+				converted.increment();
+				return dfsm.encode();
+			} catch (DeterminizationException e) {
+				if (e.reason() == DeterminizationException.Reason.TIMEOUT)
+					return timeOut();
+				failed.increment();
+				return error(e);
+			} catch (Exception | StackOverflowError e) {
+				// a machine too deep to parse or convert is that machine's failure; any other Error aborts the run
+				failed.increment();
+				return error(e);
+			}
+		}
+
+		synchronized void abort(Error e) {
+			if (fatal == null)
+				fatal = e;
+			inProgress.release(waiting.size() + 1);
+			waiting.clear();
+		}
+
+		// the time left of the timeout of a conversion that started at start, negative once it is up
+
+		private long remaining(long start) {
+			return limits.timeoutNanos() - (System.nanoTime() - start);
+		}
+
+		private String timeOut() {
+			timedOut.increment();
+			return "TIMEOUT";
+		}
+
+		private String error(Throwable e) {
+			String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+			return "ERROR: " + message.replace('\n', ' ').replace('\r', ' ');
+		}
+
+		synchronized void write(long n, String result) {
+
+			if (failure != null || fatal != null) {
+				inProgress.release();
+				return;
+			}
+
+			try {
+				if (!ordered) {
+					writeLine((n + 1) + "\t" + result);
+					inProgress.release();
+					return;
+				}
+				waiting.put(n, result);
+				String line;
+				while ((line = waiting.remove(next)) != null) {
+					writeLine(line);
+					next++;
+					inProgress.release();
+				}
+			} catch (IOException e) {
+				failure = e;
+				inProgress.release(waiting.size() + 1);
+				waiting.clear();
+			}
+		}
+
+		private void writeLine(String line) throws IOException {
+			writer.write(line);
+			writer.write('\n');
+		}
+	}
+
+	/** The counts of a batch. */
+	public static final class Summary {
+
+		private final long lines, converted, failed, timedOut, elapsedNanos;
+
+		Summary(long lines, long converted, long failed, long timedOut, long elapsedNanos) {
+			this.lines = lines;
+			this.converted = converted;
+			this.failed = failed;
+			this.timedOut = timedOut;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/** @return the number of input lines */
+		public long lines() { return lines; }
+
+		/** @return the number of machines that were converted */
+		public long converted() { return converted; }
+
+		/** @return the number of lines that could not be converted */
+		public long failed() { return failed; }
+
+		/** @return the number of conversions that exceeded the timeout */
+		public long timedOut() { return timedOut; }
+
+		/** @return the time the batch took, in nanoseconds */
+		public long elapsedNanos() { return elapsedNanos; }
+
+		@Override
+		public String toString() {
+			return lines + " lines: " + converted + " converted, " + failed + " failed, " + timedOut + " timed out in " +
+					TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms";
+		}
+	}
+
+	/** Converts a file of NDFSM encodings from the command line.
+	 *
+	 * <pre>
+	 * java ac.il.afeka.fsm.BatchConverter [-threads n] [-window n] [-minimize] [-canonic] [-unordered] [-timeout ms] [input [output]]
+	 * </pre>
+	 *
+	 * <p>The input and output default to the standard input and output. The summary is printed on the standard error.</p>
+	 *
+	 * @param args the command line arguments
+	 * @throws Exception if the input cannot be read or the output cannot be written
+	 */
+	public static void main(String[] args) throws Exception {
+
+		BatchConverter converter = new BatchConverter();
+		String inputFile = null, outputFile = null;
+
+		for(int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads": converter.threads(Integer.parseInt(args[++i])); break;
+			case "-window": converter.window(Integer.parseInt(args[++i])); break;
+			case "-minimize": converter.minimize(true); break;
+			case "-canonic": converter.canonicalize(true); break;
+			case "-unordered": converter.ordered(false); break;
+			case "-timeout": converter.timeout(Long.parseLong(args[++i]), TimeUnit.MILLISECONDS); break;
+			default:
+				if (inputFile == null)
+					inputFile = args[i];
+				else
+					outputFile = args[i];
+			}
+		}
+
+		InputStream in = inputFile == null ? System.in : new FileInputStream(inputFile);
+		OutputStream out = outputFile == null ? System.out : new FileOutputStream(outputFile);
+		try {
+			Summary summary = converter.run(new InputStreamReader(in, StandardCharsets.UTF_8), new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			System.err.println(summary);
+		} finally {
+			if (inputFile != null)
+				in.close();
+			if (outputFile != null)
+				out.close();
+			else
+				out.flush();
+		}
+	}
+}
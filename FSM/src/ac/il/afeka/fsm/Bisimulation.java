@@ -0,0 +1,308 @@
+package ac.il.afeka.fsm;
+import java.util.Arrays;
+
+/* The coarsest bisimulation of a machine, with the partition refinement algorithm of Paige and Tarjan, in
+ * time O(m log n) for n states and m transitions.
+ *
+ * Two states are forward bisimilar when they agree on acceptance, and every transition of one is matched by
+ * a transition of the other on the same symbol to a bisimilar state; epsilon is a symbol like the others.
+ * Bisimilar states accept the same strings, so they can be merged. Backward bisimulation is the same on the
+ * reversed transitions, with the initial state in place of the accepting states: backward bisimilar states
+ * are reached by the same strings.
+ *
+ * The blocks are kept in a Partition, where only the smaller part of a split block gets a new block number,
+ * so a state changes blocks O(log n) times. The blocks are grouped into compound blocks, the sets of states
+ * the partition is already stable with respect to. While some compound block C has more than one block, its
+ * smaller block B of two is taken out of it, and every block is split three ways: states with transitions on
+ * a symbol into B only, into both B and the rest of C, and into neither. Which of the last two a state is in
+ * is read from a count of its transitions on the symbol into C, which every transition points to and which
+ * is split as the compound blocks are. Each transition is looked at only when its target's block is the
+ * smaller half, hence the log n. */
+
+final class Bisimulation {
+
+	private final int n;
+
+	// the transitions (reversed for backward bisimulation), and for every state its incoming ones
+
+	private final int[] source;
+	private final int[] symbol;
+	private final int[] inStart;
+	private final int[] in;
+
+	// the partition, and the blocks made by its last split with the blocks they were split from
+
+	private final Partition partition;
+	private final int[] created;
+	private final int[] parents;
+
+	// the compound blocks, as linked lists of blocks, and a stack of those with more than one block
+
+	private final int[] compoundOf;
+	private final int[] nextBlock;
+	private final int[] previousBlock;
+	private final int[] compoundHead;
+	private final int[] compoundSize;
+	private int compounds = 0;
+	private final int[] nontrivial;
+	private int nontrivialCount = 0;
+
+	// counter[edgeCounter[e]] is the number of transitions from the source of e, on the symbol of e, into
+	// the compound block of the target of e
+
+	private final int[] edgeCounter;
+	private int[] counter = new int[16];
+	private int counters = 0;
+
+	// scratch space of the splitters: the transitions into a block grouped by symbol, and per state the
+	// number of them it has, and one of them
+
+	private final int[] gathered;
+	private final int[] grouped;
+	private final int[] symbolCount;
+	private final int[] symbols;
+	private final int[] symbolOffset;
+	private final int[] count;
+	private final int[] anEdge;
+	private final int[] sources;
+
+	private final OperationStats stats;
+
+	private Bisimulation(IndexedMachine m, boolean backward, OperationStats stats) {
+
+		this.n = m.stateCount();
+		this.stats = stats;
+		int edges = m.edgeCount();
+
+		this.source = new int[edges];
+		this.symbol = new int[edges];
+		int[] target = new int[edges];
+		for(int s = 0; s < n; s++)
+			for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++) {
+				source[e] = backward ? m.edgeTarget[e] : s;
+				target[e] = backward ? s : m.edgeTarget[e];
+				symbol[e] = m.edgeSymbol[e];
+			}
+
+		this.inStart = new int[n + 1];
+		for(int e = 0; e < edges; e++)
+			inStart[target[e] + 1]++;
+		for(int s = 0; s < n; s++)
+			inStart[s + 1] += inStart[s];
+		this.in = new int[edges];
+		int[] fill = Arrays.copyOf(inStart, n);
+		for(int e = 0; e < edges; e++)
+			in[fill[target[e]]++] = e;
+
+		this.partition = new Partition(n);
+		this.created = new int[n];
+		this.parents = new int[n];
+		this.compoundOf = new int[n];
+		this.nextBlock = new int[n];
+		this.previousBlock = new int[n];
+		this.compoundHead = new int[n];
+		this.compoundSize = new int[n];
+		// a compound block is pushed whenever it gets its second block, at most once per block and compound
+		this.nontrivial = new int[2 * n];
+
+		this.edgeCounter = new int[edges];
+		this.gathered = new int[edges];
+		this.grouped = new int[edges];
+		this.symbolCount = new int[m.symbolCount()];
+		this.symbols = new int[m.symbolCount()];
+		this.symbolOffset = new int[m.symbolCount()];
+		this.count = new int[n];
+		this.anEdge = new int[n];
+		this.sources = new int[n];
+
+		compounds = 1;
+		compoundHead[0] = 0;
+		compoundSize[0] = 1;
+		nextBlock[0] = previousBlock[0] = -1;
+
+		// the initial partition: by acceptance, or by being the initial state
+		for(int s = 0; s < n; s++)
+			if (backward ? s == m.initial : m.accepting[s])
+				partition.mark(s);
+		split();
+
+		// one counter per state and symbol, for the single compound block of all states
+		int[] counterOf = new int[m.symbolCount()];
+		Arrays.fill(counterOf, -1);
+		int[] outStart = new int[n + 1];
+		for(int e = 0; e < edges; e++)
+			outStart[source[e] + 1]++;
+		for(int s = 0; s < n; s++)
+			outStart[s + 1] += outStart[s];
+		int[] out = new int[edges];
+		fill = Arrays.copyOf(outStart, n);
+		for(int e = 0; e < edges; e++)
+			out[fill[source[e]]++] = e;
+		for(int s = 0; s < n; s++) {
+			for(int i = outStart[s]; i < outStart[s + 1]; i++) {
+				int e = out[i];
+				if (counterOf[symbol[e]] < 0)
+					counterOf[symbol[e]] = newCounter(0);
+				counter[counterOf[symbol[e]]]++;
+				edgeCounter[e] = counterOf[symbol[e]];
+			}
+			for(int i = outStart[s]; i < outStart[s + 1]; i++)
+				counterOf[symbol[out[i]]] = -1;
+		}
+
+		// stable with respect to the set of all states: split by having a transition on each symbol
+		for(int e = 0; e < edges; e++)
+			gathered[e] = e;
+		int groups = group(edges);
+		for(int g = 0, start = 0; g < groups; start += symbolCount[symbols[g]], g++) {
+			for(int i = start; i < start + symbolCount[symbols[g]]; i++)
+				partition.mark(source[grouped[i]]);
+			split();
+		}
+		clearGroups(groups);
+	}
+
+	/* Returns the block of every state under the coarsest forward (or backward) bisimulation, and in
+	 * blocks[0] the number of blocks. */
+
+	static int[] partition(IndexedMachine m, boolean backward, OperationStats stats, int[] blocks) {
+		Bisimulation refinement = new Bisimulation(m, backward, stats);
+		refinement.refine();
+		blocks[0] = refinement.partition.blocks;
+		return refinement.partition.blockOf;
+	}
+
+	private void refine() {
+		while (nontrivialCount > 0) {
+			int c = nontrivial[nontrivialCount - 1];
+			if (compoundSize[c] < 2) {
+				nontrivialCount--;
+				continue;
+			}
+			if (stats != null)
+				stats.refinementRounds++;
+
+			int b1 = compoundHead[c], b2 = nextBlock[b1];
+			int b = partition.size(b1) <= partition.size(b2) ? b1 : b2;
+
+			unlink(b);
+			int single = compounds++;
+			compoundHead[single] = -1;
+			compoundSize[single] = 0;
+			link(b, single);
+
+			splitBy(b);
+		}
+	}
+
+	private void splitBy(int b) {
+
+		int gatheredCount = 0;
+		for(int i = partition.first[b]; i < partition.end[b]; i++) {
+			int y = partition.elements[i];
+			for(int j = inStart[y]; j < inStart[y + 1]; j++)
+				gathered[gatheredCount++] = in[j];
+		}
+
+		int groups = group(gatheredCount);
+		for(int g = 0, start = 0; g < groups; start += symbolCount[symbols[g]], g++) {
+			int stop = start + symbolCount[symbols[g]];
+
+			// the sources of the transitions into b on this symbol, and how many each has
+			int sourceCount = 0;
+			for(int i = start; i < stop; i++) {
+				int x = source[grouped[i]];
+				if (count[x]++ == 0) {
+					sources[sourceCount++] = x;
+					anEdge[x] = grouped[i];
+				}
+			}
+
+			// split by having a transition into b
+			for(int k = 0; k < sourceCount; k++)
+				partition.mark(sources[k]);
+			split();
+
+			// split the sources by also having a transition into the rest of the compound block
+			for(int k = 0; k < sourceCount; k++)
+				if (counter[edgeCounter[anEdge[sources[k]]]] > count[sources[k]])
+					partition.mark(sources[k]);
+			split();
+
+			// the transitions into b get counters of their own
+			for(int k = 0; k < sourceCount; k++) {
+				int x = sources[k];
+				counter[edgeCounter[anEdge[x]]] -= count[x];
+				count[x] = newCounter(count[x]);
+			}
+			for(int i = start; i < stop; i++)
+				edgeCounter[grouped[i]] = count[source[grouped[i]]];
+			for(int k = 0; k < sourceCount; k++)
+				count[sources[k]] = 0;
+		}
+		clearGroups(groups);
+	}
+
+	// sorts gathered[0 .. size-1] by symbol into grouped, and returns the number of symbols; the symbols are
+	// symbols[0 .. groups-1], in the order of grouped, and the size of the group of symbol a is symbolCount[a]
+
+	private int group(int size) {
+		int groups = 0;
+		for(int i = 0; i < size; i++)
+			if (symbolCount[symbol[gathered[i]]]++ == 0)
+				symbols[groups++] = symbol[gathered[i]];
+		for(int g = 0, at = 0; g < groups; g++) {
+			symbolOffset[symbols[g]] = at;
+			at += symbolCount[symbols[g]];
+		}
+		for(int i = 0; i < size; i++)
+			grouped[symbolOffset[symbol[gathered[i]]]++] = gathered[i];
+		return groups;
+	}
+
+	private void clearGroups(int groups) {
+		for(int g = 0; g < groups; g++)
+			symbolCount[symbols[g]] = 0;
+	}
+
+	private int newCounter(int value) {
+		if (counters == counter.length)
+			counter = Arrays.copyOf(counter, counters * 2);
+		counter[counters] = value;
+		return counters++;
+	}
+
+	// splits the blocks with marked states; every new block is in the compound block of the block it was
+	// split from
+
+	private void split() {
+		int count = partition.split(created, parents);
+		for(int i = 0; i < count; i++) {
+			link(created[i], compoundOf[parents[i]]);
+			if (stats != null)
+				stats.blockSplits++;
+		}
+	}
+
+	private void link(int b, int c) {
+		compoundOf[b] = c;
+		previousBlock[b] = -1;
+		nextBlock[b] = compoundHead[c];
+		if (compoundHead[c] >= 0)
+			previousBlock[compoundHead[c]] = b;
+		compoundHead[c] = b;
+		if (++compoundSize[c] == 2)
+			nontrivial[nontrivialCount++] = c;
+	}
+
+	private void unlink(int b) {
+		int c = compoundOf[b];
+		if (previousBlock[b] >= 0)
+			nextBlock[previousBlock[b]] = nextBlock[b];
+		else
+			compoundHead[c] = nextBlock[b];
+		if (nextBlock[b] >= 0)
+			previousBlock[nextBlock[b]] = previousBlock[b];
+		compoundSize[c]--;
+	}
+}
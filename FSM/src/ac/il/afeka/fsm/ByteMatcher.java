@@ -0,0 +1,283 @@
+package ac.il.afeka.fsm;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Runs a compiled machine directly over bytes: byte buffers, and files mapped into memory.
+ *
+ * <p>The bytes are never copied or converted to a <code>String</code>. In <code>BYTES</code> mode every byte
+ * is one symbol, the character with the same value (U+0000 to U+00FF, as in ISO-8859-1). In <code>UTF_8</code>
+ * mode the bytes are decoded on the fly, and every character (or every code point, for a machine over code
+ * points) is one symbol; a malformed sequence reads as U+FFFD.</p>
+ *
+ * <p>A scan keeps its state between buffers, so input can be fed in pieces, and a UTF-8 sequence may be
+ * split between two pieces. A file is read through windows of up to 1GB mapped one after the other, so it
+ * can be larger than the 2GB that one mapping can hold. A scan also records the lengths of the shortest and
+ * the longest prefixes the machine accepts, which finds where the first occurrence of a pattern ends when
+ * the machine accepts the strings that end with it. For example</p>
+ *
+ * <code>
+ * ByteMatcher matcher = new ByteMatcher(new DFSM(encoding).compile(), ByteMatcher.Encoding.UTF_8);
+ * long end = matcher.scan(new File("big.log")).shortestAccepted();
+ * </code>
+ *
+ * <p>returns the length in bytes of the shortest prefix of the file that the machine accepts, or -1.</p>
+ */
+public final class ByteMatcher {
+
+	/** How bytes are read as symbols. */
+	public enum Encoding { BYTES, UTF_8 }
+
+	private static final int REPLACEMENT = 0xFFFD;
+
+	private final CompiledDFSM machine;
+	private final Encoding encoding;
+	private final SymbolClasses classes;
+	private final int width;
+
+	// the table of the machine, read in place: table[row + c] is the row reached from row on symbol class c,
+	// where the row of a state is its number multiplied by width; and a bit for every row of an accepting
+	// state (see CompiledDFSM.acceptingRows), so the acceptance of a row is one lookup
+
+	private final int[] table;
+	private final long[] accepting;
+
+	// the class of every byte in BYTES mode, and of every ASCII byte in UTF_8 mode
+
+	private final int[] byteClass = new int[256];
+
+	// the states from which no accepting state can be reached, where a scan can stop, by state number
+
+	private final boolean[] dead;
+
+	// the size of the windows a file is mapped in, and of the blocks after which a scan checks whether the
+	// machine is dead
+
+	private static final int WINDOW = 1 << 30;
+	private static final int BLOCK = 1 << 12;
+
+	/** Creates a matcher that reads bytes with encoding and runs machine on them.
+	 *
+	 * @param machine	a compiled machine
+	 * @param encoding	how bytes are read as symbols
+	 */
+	public ByteMatcher(CompiledDFSM machine, Encoding encoding) {
+		this.machine = machine;
+		this.encoding = encoding;
+		this.classes = machine.symbolClasses();
+		this.width = classes.classCount();
+		for(int b = 0; b < 256; b++)
+			byteClass[b] = classes.classOfCodePoint(b);
+
+		this.table = machine.table();
+		this.accepting = machine.acceptingRows();
+		this.dead = machine.deadStates();
+	}
+
+	private boolean isAccepting(int row) {
+		return (accepting[row >>> 6] & 1L << row) != 0;
+	}
+
+	/** @return a new scan, at the start of the input */
+	public Scan start() {
+		return new Scan();
+	}
+
+	/** Returns true if and only if the machine accepts the remaining bytes of buffer. The buffer's position
+	 * is moved past the bytes read (see <code>Scan.feed</code>).
+	 *
+	 * @param buffer the input
+	 * @return true if the machine accepts the input
+	 */
+	public boolean matches(ByteBuffer buffer) {
+		return start().feed(buffer).finish().accepts();
+	}
+
+	/** Returns true if and only if the machine accepts the contents of file.
+	 *
+	 * @param file the input
+	 * @return true if the machine accepts the input
+	 * @throws IOException if the file cannot be read
+	 */
+	public boolean matches(File file) throws IOException {
+		return scan(file).accepts();
+	}
+
+	/** Scans the contents of file, through mapped windows, and stops within a few kilobytes once the
+	 * machine reaches a state that can never accept.
+	 *
+	 * @param file the input
+	 * @return the finished scan
+	 * @throws IOException if the file cannot be read
+	 */
+	public Scan scan(File file) throws IOException {
+		Scan scan = start();
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			for(long offset = 0; offset < size && !scan.isDead(); offset += WINDOW)
+				scan.feed(channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset)));
+		}
+		return scan.finish();
+	}
+
+	/** The state of the machine over the bytes fed so far. A scan is not safe for use by several threads at
+	 * once, but any number of scans of the same matcher can run at the same time. */
+	public final class Scan {
+
+		// the row of the current state
+
+		private int row = machine.initialRow();
+		private long offset = 0;
+		private long shortest = -1;
+		private long longest = -1;
+
+		// the code point being decoded, and the number of continuation bytes it still needs
+
+		private int codePoint = 0;
+		private int pending = 0;
+		private int minimum = 0;
+
+		private Scan() {
+			record();
+		}
+
+		/** Feeds the remaining bytes of buffer to the machine, and moves the buffer's position past the bytes
+		 * read. These are all of them, unless the machine reaches a state that can never accept: the scan then
+		 * stops at the end of the 4K block it is in, since no later byte can change its outcome.
+		 *
+		 * @param buffer the next bytes of the input
+		 * @return this scan
+		 */
+		public Scan feed(ByteBuffer buffer) {
+			int i = buffer.position(), end = buffer.limit();
+			while (i < end && !isDead()) {
+				int next = end - i > BLOCK ? i + BLOCK : end;
+				if (encoding == Encoding.BYTES) {
+					feedBytes(buffer, i, next);
+				} else {
+					for(int j = i; j < next; j++)
+						decode(buffer.get(j) & 0xFF, offset + j - i + 1);
+				}
+				offset += next - i;
+				i = next;
+			}
+			buffer.position(i);
+			return this;
+		}
+
+		// feeds the bytes of buffer from start to end in BYTES mode
+
+		private void feedBytes(ByteBuffer buffer, int start, int end) {
+			// the index of the last byte after which the machine accepts, kept in locals for the inner loop
+			int row = this.row, last = -1;
+			for(int i = start; i < end; i++) {
+				row = table[row + byteClass[buffer.get(i) & 0xFF]];
+				if (isAccepting(row)) {
+					if (last < 0 && shortest < 0)
+						shortest = offset + i - start + 1;
+					last = i;
+				}
+			}
+			if (last >= 0)
+				longest = offset + last - start + 1;
+			this.row = row;
+		}
+
+		/** Ends the input: a UTF-8 sequence that was cut short reads as U+FFFD.
+		 *
+		 * @return this scan
+		 */
+		public Scan finish() {
+			if (pending > 0) {
+				pending = 0;
+				step(REPLACEMENT, offset);
+			}
+			return this;
+		}
+
+		private void decode(int b, long end) {
+			if (pending > 0) {
+				if ((b & 0xC0) == 0x80) {
+					codePoint = codePoint << 6 | b & 0x3F;
+					if (--pending == 0)
+						step(codePoint < minimum || (codePoint >= 0xD800 && codePoint <= 0xDFFF) || codePoint > Character.MAX_CODE_POINT ? REPLACEMENT : codePoint, end);
+					return;
+				}
+				// the sequence was cut short: it reads as U+FFFD, and this byte starts the next one
+				pending = 0;
+				step(REPLACEMENT, end - 1);
+			}
+			if (b < 0x80) {
+				row = table[row + byteClass[b]];
+				if (isAccepting(row))
+					accepted(end);
+			} else if (b >= 0xC2 && b <= 0xDF) {
+				codePoint = b & 0x1F;
+				pending = 1;
+				minimum = 0x80;
+			} else if (b >= 0xE0 && b <= 0xEF) {
+				codePoint = b & 0x0F;
+				pending = 2;
+				minimum = 0x800;
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				codePoint = b & 0x07;
+				pending = 3;
+				minimum = 0x10000;
+			} else {
+				step(REPLACEMENT, end);
+			}
+		}
+
+		// moves the machine on one code point, which ends at byte offset end
+
+		private void step(int c, long end) {
+			if (classes.codePoints() || c <= Character.MAX_VALUE) {
+				row = table[row + classes.classOfCodePoint(c)];
+			} else {
+				row = table[row + classes.classOf(Character.highSurrogate(c))];
+				row = table[row + classes.classOf(Character.lowSurrogate(c))];
+			}
+			if (isAccepting(row))
+				accepted(end);
+		}
+
+		private void record() {
+			if (isAccepting(row))
+				accepted(0);
+		}
+
+		private void accepted(long length) {
+			if (shortest < 0)
+				shortest = length;
+			longest = length;
+		}
+
+		/** @return true if the machine accepts the bytes fed so far (call <code>finish</code> first in UTF_8 mode) */
+		public boolean accepts() {
+			return pending == 0 && isAccepting(row);
+		}
+
+		/** @return true if the machine can no longer accept, whatever bytes follow */
+		public boolean isDead() {
+			return dead[row / width];
+		}
+
+		/** @return the number of bytes fed so far */
+		public long offset() {
+			return offset;
+		}
+
+		/** @return the length in bytes of the shortest prefix of the input that the machine accepts, or -1 if there is none so far */
+		public long shortestAccepted() {
+			return shortest;
+		}
+
+		/** @return the length in bytes of the longest prefix of the input that the machine accepts, or -1 if there is none so far */
+		public long longestAccepted() {
+			return longest;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package ac.il.afeka.fsm;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/* Numbers the reachable states of a machine in canonic order, over dense arrays.
+ *
+ * The states are numbered in breadth first order from the initial state (0). The edges of every
+ * state are visited in the order of IndexedMachine: epsilon first, then the symbols in the
+ * declared order of the alphabet, and for each symbol the targets in their natural order. Each
+ * state and edge is visited once, so the cost is linear in the size of the machine, O(states * symbols)
+ * for a DFSM.
+ *
+ * For a DFSM the numbering depends only on the language structure of the machine, so machines
+ * that differ only in the names of their states get the same canonic form. */
+
+final class Canonicalization {
+
+	final IndexedMachine m;
+
+	// order[i] is the state numbered i; number[s] is the number of state s, or -1 if s is unreachable
+
+	final int[] order;
+	final int[] number;
+	final int count;
+
+	// the edges in canonic numbering, grouped by source and sorted by (symbol, target)
+
+	final int[] edgeStart;
+	final int[] edgeSymbol;
+	final int[] edgeTarget;
+
+	Canonicalization(IndexedMachine m) {
+
+		this.m = m;
+
+		int n = m.stateCount();
+		order = new int[n];
+		number = new int[n];
+		Arrays.fill(number, -1);
+
+		int size = 0;
+		order[size] = m.initial;
+		number[m.initial] = size++;
+		for(int i = 0; i < size; i++) {
+			int s = order[i];
+			for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++) {
+				int t = m.edgeTarget[e];
+				if (number[t] < 0) {
+					order[size] = t;
+					number[t] = size++;
+				}
+			}
+		}
+		this.count = size;
+
+		edgeStart = new int[count + 1];
+		for(int i = 0; i < count; i++)
+			edgeStart[i + 1] = edgeStart[i] + m.edgeStart[order[i] + 1] - m.edgeStart[order[i]];
+
+		edgeSymbol = new int[edgeStart[count]];
+		edgeTarget = new int[edgeStart[count]];
+		for(int i = 0; i < count; i++) {
+			int e = edgeStart[i];
+			for(int f = m.edgeStart[order[i]]; f < m.edgeStart[order[i] + 1]; f++, e++) {
+				edgeSymbol[e] = m.edgeSymbol[f];
+				edgeTarget[e] = number[m.edgeTarget[f]];
+
+				// the renumbering can reorder the targets of one symbol; keep them sorted (insertion sort, runs are short)
+				for(int j = e; j > edgeStart[i] && edgeSymbol[j - 1] == edgeSymbol[j] && edgeTarget[j - 1] > edgeTarget[j]; j--) {
+					int swap = edgeTarget[j];
+					edgeTarget[j] = edgeTarget[j - 1];
+					edgeTarget[j - 1] = swap;
+				}
+			}
+		}
+	}
+
+	boolean accepting(int i) {
+		return m.accepting[order[i]];
+	}
+
+	NDFSM toMachine(NDFSM prototype) {
+
+		State[] states = new State[count];
+		Set<State> stateSet = new HashSet<State>();
+		for(int i = 0; i < count; i++) {
+			states[i] = new IdentifiedState(i);
+			stateSet.add(states[i]);
+		}
+
+		Set<Transition> transitions = new HashSet<Transition>();
+		for(int i = 0; i < count; i++)
+			for(int e = edgeStart[i]; e < edgeStart[i + 1]; e++)
+				transitions.add(new Transition(states[i], m.symbols[edgeSymbol[e]], states[edgeTarget[e]]));
+
+		Set<State> acceptingStates = new HashSet<State>();
+		for(int i = 0; i < count; i++)
+			if (accepting(i))
+				acceptingStates.add(states[i]);
+
+		NDFSM aNDFSM = prototype.create();
+		aNDFSM.initializeFrom(stateSet, m.alphabet, transitions, states[0], acceptingStates);
+		return aNDFSM;
+	}
+
+	/* The fingerprint absorbs the alphabet in its declared order, then the states with their acceptance
+	 * and their edges (symbols as positions in the alphabet, 0 for epsilon). */
+
+	Fingerprint fingerprint() {
+
+		Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+
+		hasher.add(m.symbolCount() - 1);
+		for(int c = 1; c < m.symbolCount(); c++)
+			hasher.add(m.symbols[c]);
+
+		hasher.add(count);
+		for(int i = 0; i < count; i++) {
+			hasher.add(accepting(i) ? 1 : 0);
+			hasher.add(edgeStart[i + 1] - edgeStart[i]);
+			for(int e = edgeStart[i]; e < edgeStart[i + 1]; e++) {
+				hasher.add(edgeSymbol[e]);
+				hasher.add(edgeTarget[e]);
+			}
+		}
+
+		return hasher.finish();
+	}
+}
@@ -0,0 +1,133 @@
+package ac.il.afeka.fsm;
+
+/** An interval of characters (or of Unicode code points), with both ends included.
+ *
+ * <p>The encoding of a range is either a single bound, for a range of one character, or two bounds
+ * separated by '-'. A bound is either a character, or <code>U+</code> followed by the hexadecimal
+ * value of a code point. For example <code>a-z</code>, <code>U+0-U+FFFF</code> and <code>U+2D</code>
+ * (the character '-') are all valid encodings.</p>
+ */
+public final class CharRange implements Comparable<CharRange> {
+
+	/** All the UTF-16 characters. */
+	public static final CharRange ANY_CHAR = new CharRange(Character.MIN_VALUE, Character.MAX_VALUE);
+
+	/** All the Unicode code points. */
+	public static final CharRange ANY_CODE_POINT = new CharRange(Character.MIN_CODE_POINT, Character.MAX_CODE_POINT);
+
+	private final int first;
+	private final int last;
+
+	/** Creates the range first..last.
+	 *
+	 * @param first	the first code point of the range
+	 * @param last	the last code point of the range
+	 * @throws IllegalArgumentException if first &gt; last or the range is not within the Unicode code points
+	 */
+	public CharRange(int first, int last) {
+		if (first > last || first < Character.MIN_CODE_POINT || last > Character.MAX_CODE_POINT)
+			throw new IllegalArgumentException("Invalid character range " + first + ".." + last);
+		this.first = first;
+		this.last = last;
+	}
+
+	/** Creates a range of one character.
+	 *
+	 * @param c a code point
+	 * @return the range c..c
+	 */
+	public static CharRange single(int c) {
+		return new CharRange(c, c);
+	}
+
+	/** Creates a range from its encoding.
+	 *
+	 * @param encoding the encoding of a range, as described above
+	 * @return the range
+	 * @throws Exception if the encoding is invalid
+	 */
+	public static CharRange parse(String encoding) throws Exception {
+		String trimmed = encoding.trim();
+		int[] position = { 0 };
+		int first = parseBound(trimmed, position);
+		int last = first;
+		if (position[0] < trimmed.length()) {
+			if (trimmed.charAt(position[0]) != '-')
+				throw new Exception("Invalid character range \"" + encoding + "\"");
+			position[0]++;
+			last = parseBound(trimmed, position);
+		}
+		if (position[0] != trimmed.length() || first > last)
+			throw new Exception("Invalid character range \"" + encoding + "\"");
+		return new CharRange(first, last);
+	}
+
+	private static int parseBound(String s, int[] position) throws Exception {
+		int i = position[0];
+		if (i >= s.length())
+			throw new Exception("Missing character in range \"" + s + "\"");
+		if (s.startsWith("U+", i) && i + 2 < s.length() && Character.digit(s.charAt(i + 2), 16) >= 0) {
+			int end = i + 2;
+			while (end < s.length() && Character.digit(s.charAt(end), 16) >= 0)
+				end++;
+			position[0] = end;
+			int value = Integer.parseInt(s.substring(i + 2, end), 16);
+			if (value > Character.MAX_CODE_POINT)
+				throw new Exception("Invalid code point in range \"" + s + "\"");
+			return value;
+		}
+		int c = s.codePointAt(i);
+		position[0] = i + Character.charCount(c);
+		return c;
+	}
+
+	/** @return the first code point of the range */
+	public int first() { return first; }
+
+	/** @return the last code point of the range */
+	public int last() { return last; }
+
+	/** @param c a code point
+	 *  @return true if and only if c is in this range */
+	public boolean contains(int c) {
+		return first <= c && c <= last;
+	}
+
+	/** Returns the encoding of this range, which <code>parse</code> accepts. Characters that are not
+	 * letters or digits are encoded in <code>U+</code> notation.
+	 *
+	 * @return the encoding of this range
+	 */
+	public String encode() {
+		return first == last ? encodeBound(first) : encodeBound(first) + "-" + encodeBound(last);
+	}
+
+	private static String encodeBound(int c) {
+		if (Character.isLetterOrDigit(c) && c != 'U')
+			return new String(Character.toChars(c));
+		return "U+" + Integer.toHexString(c).toUpperCase();
+	}
+
+	@Override
+	public int compareTo(CharRange other) {
+		return first != other.first ? Integer.compare(first, other.first) : Integer.compare(last, other.last);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof CharRange))
+			return false;
+		CharRange other = (CharRange)obj;
+		return first == other.first && last == other.last;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * first + last;
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+}
@@ -0,0 +1,385 @@
+package ac.il.afeka.fsm;
+import java.util.Arrays;
+import java.util.List;
+
+/** A DFSM compiled into a flat transition table over symbol classes.
+ *
+ * <p>The table has one row per state and one column per symbol class (see <code>SymbolClasses</code>),
+ * so matching a character costs one lookup of its class and one table lookup, with no hashing and no
+ * boxing. The table has an extra dead state: characters outside the alphabet lead to it, and it never
+ * leaves it. A machine over code points (see <code>RangeNDFSM</code>) reads its input one code point
+ * at a time, so a surrogate pair is a single symbol.</p>
+ *
+ * <p>For example, the statements</p>
+ *
+ * <code>
+ * CompiledDFSM compiled = new DFSM("0 1/a b/0,a,0;0,b,1;1,a,0;1,b,1/0/1").compile();
+ * compiled.matches("aab");
+ * </code>
+ *
+ * <p>compile a machine that accepts the strings that end with b and run it on "aab".</p>
+ *
+ * <p>A compiled machine is immutable: all its fields are final, it owns every array it refers to, and
+ * no public method exposes them (the matchers of this package read its table in place, but never write
+ * it). So once constructed it can be handed to other threads in any way, and any number of threads can
+ * match with it at the same time without locking.</p>
+ */
+public final class CompiledDFSM implements Matcher {
+
+	// the number of inputs that matchAll walks in lockstep
+
+	private static final int LANES = 8;
+
+	// tables smaller than this stay in the processor's caches, where there are no memory stalls to overlap
+
+	private static final int LOCKSTEP_MIN_TABLE = 1 << 15;
+
+	private final SymbolClasses classes;
+	private final int width;
+
+	// table[row + c] is the row of the state reached from the state of that row on symbol class c;
+	// rows are state numbers multiplied by width
+
+	private final int[] table;
+	private final boolean[] accepting;
+	private final int initial;
+
+	private CompiledDFSM(SymbolClasses classes, int[] table, boolean[] accepting, int initial) {
+		this.classes = classes;
+		this.width = classes.classCount();
+		this.table = table;
+		this.accepting = accepting;
+		this.initial = initial;
+	}
+
+	/** Compiles a DFSM.
+	 *
+	 * @param dfsm the machine to compile
+	 * @return a compiled machine that recognizes the language of dfsm
+	 */
+	public static CompiledDFSM compile(DFSM dfsm) {
+		IndexedMachine m = new IndexedMachine(dfsm);
+		return compile(m, SymbolClasses.of(m));
+	}
+
+	static CompiledDFSM compile(IndexedMachine m, SymbolClasses classes) {
+
+		int n = m.stateCount();
+		int width = classes.classCount();
+		int dead = n;
+
+		int[] table = new int[(n + 1) * width];
+		boolean[] accepting = Arrays.copyOf(m.accepting, n + 1);
+
+		for(int s = 0; s <= n; s++) {
+			table[s * width] = dead * width;
+			for(int c = 1; c < width; c++) {
+				int target = dead;
+				if (s < n) {
+					int symbol = m.symbolIndex.get(classes.representative(c));
+					int e = m.firstEdge(s, symbol);
+					if (e < m.edgeStart[s + 1] && m.edgeSymbol[e] == symbol)
+						target = m.edgeTarget[e];
+				}
+				table[s * width + c] = target * width;
+			}
+		}
+
+		return new CompiledDFSM(classes, table, accepting, m.initial * width);
+	}
+
+	// compiles a table of n states where next[s * width + c] is the state reached from s on class c, or -1
+
+	static CompiledDFSM compile(SymbolClasses classes, int n, int[] next, boolean[] accepting, int initial) {
+
+		int width = classes.classCount();
+		int dead = n;
+
+		int[] table = new int[(n + 1) * width];
+		for(int i = 0; i < n * width; i++)
+			table[i] = (i % width == 0 || next[i] < 0 ? dead : next[i]) * width;
+		Arrays.fill(table, n * width, table.length, dead * width);
+
+		return new CompiledDFSM(classes, table, Arrays.copyOf(accepting, n + 1), initial * width);
+	}
+
+	@Override
+	public boolean matches(CharSequence input) {
+		int row = initial;
+		if (classes.codePoints()) {
+			for(int i = 0; i < input.length(); ) {
+				int c = Character.codePointAt(input, i);
+				row = table[row + classes.classOfCodePoint(c)];
+				i += Character.charCount(c);
+			}
+		} else {
+			for(int i = 0; i < input.length(); i++)
+				row = table[row + classes.classOf(input.charAt(i))];
+		}
+		return accepting[row / width];
+	}
+
+	/** Matches many inputs at once; the result is the same as calling <code>matches</code> on each of them.
+	 *
+	 * <p>The inputs are sorted by length and walked in groups of eight, in lockstep: each step reads one
+	 * character of every input of the group and looks up all eight next states. The lookups of different
+	 * inputs do not depend on each other, so the processor overlaps their memory accesses instead of waiting
+	 * for each before the next, which is most of the cost of matching a short input. Up to the length of the
+	 * shortest input of a group no input needs to be checked for its end; after it, the inputs that ended
+	 * drop out of the group. Inputs over code points, and inputs of a table small enough to stay in the
+	 * processor's caches, are matched one at a time.</p>
+	 *
+	 * @param inputs	the strings to match
+	 * @return the result of <code>matches</code> for every input, in the order of inputs
+	 */
+	public boolean[] matchAll(List<? extends CharSequence> inputs) {
+
+		int n = inputs.size();
+		boolean[] results = new boolean[n];
+
+		if (classes.codePoints() || table.length < LOCKSTEP_MIN_TABLE) {
+			for(int i = 0; i < n; i++)
+				results[i] = matches(inputs.get(i));
+			return results;
+		}
+
+		// the inputs in the order of their lengths, as (length << 32 | index)
+		long[] order = new long[n];
+		for(int i = 0; i < n; i++)
+			order[i] = (long)inputs.get(i).length() << 32 | i;
+		Arrays.sort(order);
+
+		CharSequence[] lane = new CharSequence[LANES];
+		int[] row = new int[LANES];
+
+		for(int first = 0; first < n; first += LANES) {
+			int lanes = Math.min(LANES, n - first);
+			for(int k = 0; k < lanes; k++) {
+				lane[k] = inputs.get((int)order[first + k]);
+				row[k] = initial;
+			}
+
+			// the lengths are sorted, so the first input of the group is the shortest and the last the longest
+			int shortest = (int)(order[first] >>> 32);
+			int longest = (int)(order[first + lanes - 1] >>> 32);
+
+			int i = 0;
+			if (lanes == LANES) {
+				// the eight rows are kept in locals, so the steps of the group are independent loads
+				CharSequence s0 = lane[0], s1 = lane[1], s2 = lane[2], s3 = lane[3], s4 = lane[4], s5 = lane[5], s6 = lane[6], s7 = lane[7];
+				int r0 = initial, r1 = initial, r2 = initial, r3 = initial, r4 = initial, r5 = initial, r6 = initial, r7 = initial;
+				for(; i < shortest; i++) {
+					r0 = table[r0 + classes.classOf(s0.charAt(i))];
+					r1 = table[r1 + classes.classOf(s1.charAt(i))];
+					r2 = table[r2 + classes.classOf(s2.charAt(i))];
+					r3 = table[r3 + classes.classOf(s3.charAt(i))];
+					r4 = table[r4 + classes.classOf(s4.charAt(i))];
+					r5 = table[r5 + classes.classOf(s5.charAt(i))];
+					r6 = table[r6 + classes.classOf(s6.charAt(i))];
+					r7 = table[r7 + classes.classOf(s7.charAt(i))];
+				}
+				row[0] = r0; row[1] = r1; row[2] = r2; row[3] = r3; row[4] = r4; row[5] = r5; row[6] = r6; row[7] = r7;
+			}
+			for(; i < shortest; i++)
+				for(int k = 0; k < lanes; k++)
+					row[k] = table[row[k] + classes.classOf(lane[k].charAt(i))];
+
+			int live = 0;
+			for(; i < longest; i++) {
+				while ((int)(order[first + live] >>> 32) <= i)
+					live++;
+				for(int k = live; k < lanes; k++)
+					row[k] = table[row[k] + classes.classOf(lane[k].charAt(i))];
+			}
+
+			for(int k = 0; k < lanes; k++)
+				results[(int)order[first + k]] = accepting[row[k] / width];
+		}
+		return results;
+	}
+
+	/** @return the number of states of the table, including the dead state */
+	public int stateCount() {
+		return accepting.length;
+	}
+
+	/** @return the symbol classes that index the columns of the table */
+	public SymbolClasses symbolClasses() {
+		return classes;
+	}
+
+	/** Returns a minimal version of this machine.
+	 *
+	 * <p>The refinement works on the columns of the table, so its cost depends on the number of symbol classes
+	 * rather than on the size of the alphabet. Unreachable states are kept; compile a machine without
+	 * unreachable states to get the minimal machine.</p>
+	 *
+	 * @return a compiled machine with the fewest states that recognizes the same language as this one
+	 */
+	public CompiledDFSM minimize() {
+
+		int[] block = equivalenceClasses(null);
+
+		int blocks = 0;
+		for(int b : block)
+			blocks = Math.max(blocks, b + 1);
+
+		int[] table = new int[blocks * width];
+		boolean[] accepting = new boolean[blocks];
+		boolean[] done = new boolean[blocks];
+
+		for(int s = 0; s < block.length; s++) {
+			int b = block[s];
+			if (done[b])
+				continue;
+			done[b] = true;
+			accepting[b] = this.accepting[s];
+			for(int c = 0; c < width; c++)
+				table[b * width + c] = block[this.table[s * width + c] / width] * width;
+		}
+
+		return new CompiledDFSM(classes, table, accepting, block[initial / width] * width);
+	}
+
+	/* Returns the equivalence class (numbered from 0) of every state, by Hopcroft's partition refinement, in
+	 * time O(m log n) for n states and m = n * width transitions.
+	 *
+	 * The states start out split by acceptance. A splitter is a block and a symbol class: it splits every
+	 * block into the states that move into it on that class and the others (see Partition). The smaller
+	 * part of a split block gets a new number, and becomes a splitter on every class: if the block was
+	 * still waiting to be a splitter it now stands for the larger part, and if it was not, splitting by the
+	 * larger part as well would split nothing more. So a state is in a new
+	 * splitter O(log n) times, and each time its predecessors are looked at once. */
+
+	int[] equivalenceClasses(OperationStats stats) {
+
+		int n = accepting.length;
+		int size = n * width;
+
+		// the predecessors of state t on class c are predecessors[predecessorStart[t * width + c] .. 
+		// predecessorStart[t * width + c + 1] - 1]; table[i] + c is that index for the transition i on c
+		int[] predecessorStart = new int[size + 1];
+		for(int i = 0; i < size; i++)
+			predecessorStart[table[i] + i % width + 1]++;
+		for(int i = 0; i < size; i++)
+			predecessorStart[i + 1] += predecessorStart[i];
+		int[] predecessors = new int[size];
+		int[] fill = Arrays.copyOf(predecessorStart, size);
+		for(int i = 0; i < size; i++)
+			predecessors[fill[table[i] + i % width]++] = i / width;
+		fill = null;
+
+		Partition partition = new Partition(n);
+		int[] created = new int[n];
+		int[] parents = new int[n];
+		int[] splitters = new int[Math.max(16, width)];
+		int waiting = 0;
+		int[] members = new int[n];
+
+		for(int s = 0; s < n; s++)
+			if (accepting[s])
+				partition.mark(s);
+
+		int count = partition.split(created, parents);
+		while (true) {
+
+			// the new blocks become splitters on every class
+			for(int i = 0; i < count; i++) {
+				int b = created[i];
+				if (stats != null)
+					stats.blockSplits++;
+				for(int c = 0; c < width; c++) {
+					if (waiting == splitters.length)
+						splitters = Arrays.copyOf(splitters, waiting * 2);
+					splitters[waiting++] = b * width + c;
+				}
+			}
+			if (waiting == 0)
+				break;
+
+			int splitter = splitters[--waiting];
+			int a = splitter / width, c = splitter % width;
+			if (stats != null)
+				stats.refinementRounds++;
+
+			// the states of a are copied first, since marking moves states inside their blocks
+			int taken = partition.size(a);
+			System.arraycopy(partition.elements, partition.first[a], members, 0, taken);
+			for(int i = 0; i < taken; i++)
+				for(int p = predecessorStart[members[i] * width + c]; p < predecessorStart[members[i] * width + c + 1]; p++)
+					partition.mark(predecessors[p]);
+			count = partition.split(created, parents);
+		}
+
+		return partition.blockOf;
+	}
+
+	int initialState() {
+		return initial / width;
+	}
+
+	// the table itself, for the matchers of this package that walk it in place; they must not modify it
+
+	int[] table() {
+		return table;
+	}
+
+	int initialRow() {
+		return initial;
+	}
+
+	// a bit for every entry of the table, set at the rows of the accepting states: the state of a row
+	// accepts if and only if (acceptingRows()[row >>> 6] & 1L << row) != 0
+
+	long[] acceptingRows() {
+		long[] rows = new long[(table.length + 63) >>> 6];
+		for(int s = 0; s < accepting.length; s++)
+			if (accepting[s])
+				rows[s * width >>> 6] |= 1L << s * width;
+		return rows;
+	}
+
+	// the states that cannot reach an accepting state, by state number: a breadth first search back from
+	// the accepting states, over the transitions reversed into arrays of predecessors
+
+	boolean[] deadStates() {
+
+		int states = accepting.length;
+		int[] predecessorStart = new int[states + 1];
+		for(int target : table)
+			predecessorStart[target / width + 1]++;
+		for(int s = 0; s < states; s++)
+			predecessorStart[s + 1] += predecessorStart[s];
+		int[] predecessors = new int[table.length];
+		int[] fill = Arrays.copyOf(predecessorStart, states);
+		for(int i = 0; i < table.length; i++)
+			predecessors[fill[table[i] / width]++] = i / width;
+
+		boolean[] dead = new boolean[states];
+		Arrays.fill(dead, true);
+		int[] queue = new int[states];
+		int size = 0;
+		for(int s = 0; s < states; s++)
+			if (accepting[s]) {
+				dead[s] = false;
+				queue[size++] = s;
+			}
+		for(int head = 0; head < size; head++)
+			for(int p = predecessorStart[queue[head]]; p < predecessorStart[queue[head] + 1]; p++)
+				if (dead[predecessors[p]]) {
+					dead[predecessors[p]] = false;
+					queue[size++] = predecessors[p];
+				}
+		return dead;
+	}
+
+	// the state reached from state s on symbol class c
+
+	int next(int s, int c) {
+		return table[s * width + c] / width;
+	}
+
+	boolean isAccepting(int s) {
+		return accepting[s];
+	}
+}
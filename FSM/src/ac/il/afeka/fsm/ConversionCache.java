@@ -0,0 +1,364 @@
+package ac.il.afeka.fsm;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A cache of NDFSM to DFSM conversions, keyed by the fingerprint of the canonic form of the NDFSM.
+ *
+ * <p>Two NDFSMs with the same canonic form (see <code>NDFSM.fingerprint</code>) have conversions with the
+ * same encoding, so the cache converts them once. Machines that differ only in the names of their states
+ * have the same canonic form if they are deterministic, but not always otherwise: the canonic numbering
+ * visits the targets of a symbol in the order of their names, so renaming two targets of the same
+ * transition, as in <code>0 1 2/a/0,a,1;0,a,2;1,a,1/0/1</code> with 1 and 2 swapped, can give a
+ * different form. Such machines are converted and cached separately, with the same result. For
+ * example</p>
+ *
+ * <code>
+ * ConversionCache cache = new ConversionCache(10000, 64 * 1024 * 1024);
+ * String dfsm = cache.convert("0 1/a b/0,a,0;0,a,1;0,b,0/0/1");
+ * </code>
+ *
+ * <p>is the same as <code>new NDFSM(encoding).toDFSM().encode()</code>, except that the second time it
+ * is called with an equivalent encoding it only parses and fingerprints the encoding.</p>
+ *
+ * <p>The cache holds at most a given number of entries and a given weight (the total length of the cached
+ * encodings). It is split into 16 stripes with a lock each, so threads that look up different machines
+ * rarely wait for each other. The limits are split evenly among the stripes, so a conversion whose encoding
+ * is longer than a sixteenth of the weight is never held in memory, even by an empty cache: it is returned,
+ * and counted as a rejection. Each stripe evicts its least recently used entry, but only admits a new entry
+ * in its place if the new machine was asked for more often than the evicted one (by an approximate count of
+ * recent requests), so a burst of one-off machines does not flush the machines that are asked for all the
+ * time.
+ * Threads that ask for a machine that is being converted wait for that conversion instead of repeating it.
+ * If the cache has a directory, every conversion is also stored there, and a cache created later with the
+ * same directory finds it.</p>
+ */
+public class ConversionCache {
+
+	private static final int STRIPES = 16;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	private final File directory;
+
+	private final ConcurrentHashMap<Fingerprint, CompletableFuture<String>> inFlight = new ConcurrentHashMap<Fingerprint, CompletableFuture<String>>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder sharedConversions = new LongAdder();
+	private final LongAdder diskHits = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+
+	/** Creates a cache in memory.
+	 *
+	 * @param maxEntries	the largest number of conversions the cache holds
+	 * @param maxWeight		the largest total length of the encodings of the conversions the cache holds;
+	 * 						an encoding longer than <code>maxWeight / 16</code> is not held
+	 */
+	public ConversionCache(int maxEntries, long maxWeight) {
+		this(maxEntries, maxWeight, null);
+	}
+
+	/** Creates a cache in memory that also stores its conversions in directory.
+	 *
+	 * @param maxEntries	the largest number of conversions the cache holds in memory
+	 * @param maxWeight		the largest total length of the encodings of the conversions the cache holds in memory;
+	 * 						an encoding longer than <code>maxWeight / 16</code> is not held in memory
+	 * @param directory		the directory that keeps the conversions across restarts, or null for none; it is
+	 * 						created if it does not exist
+	 */
+	public ConversionCache(int maxEntries, long maxWeight, File directory) {
+		for(int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe(Math.max(1, maxEntries / STRIPES), Math.max(1, maxWeight / STRIPES));
+		this.directory = directory;
+		if (directory != null)
+			directory.mkdirs();
+	}
+
+	/** Converts the NDFSM encoded in ndfsm to a DFSM.
+	 *
+	 * @param ndfsm the encoding of a NDFSM
+	 * @return the encoding of <code>new NDFSM(ndfsm).toDFSM()</code>
+	 * @throws Exception if ndfsm is not a valid encoding of a NDFSM
+	 */
+	public String convert(String ndfsm) throws Exception {
+		return convert(new NDFSM(ndfsm));
+	}
+
+	/** Converts machine to a DFSM and returns its encoding.
+	 *
+	 * @param machine a NDFSM
+	 * @return the encoding of <code>machine.toDFSM()</code>
+	 * @throws Exception if the conversion fails
+	 */
+	public String convert(NDFSM machine) throws Exception {
+
+		Fingerprint key = machine.fingerprint();
+		Stripe stripe = stripes[(int)(key.high() >>> 60)];
+
+		String cached = stripe.get(key);
+		if (cached != null) {
+			hits.increment();
+			return cached;
+		}
+
+		CompletableFuture<String> conversion = new CompletableFuture<String>();
+		CompletableFuture<String> running = inFlight.putIfAbsent(key, conversion);
+		if (running != null) {
+			sharedConversions.increment();
+			return await(running);
+		}
+
+		try {
+			misses.increment();
+			String result = load(key);
+			if (result == null) {
+				result = machine.toDFSM().encode();
+				store(key, result);
+			} else {
+				diskHits.increment();
+			}
+			stripe.put(key, result);
+			conversion.complete(result);
+			return result;
+		} catch (Exception e) {
+			conversion.completeExceptionally(e);
+			throw e;
+		} catch (Error e) {
+			conversion.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, conversion);
+		}
+	}
+
+	/** Converts machine to a DFSM.
+	 *
+	 * @param machine a NDFSM
+	 * @return a DFSM that is equal to <code>machine.toDFSM()</code>
+	 * @throws Exception if the conversion fails
+	 */
+	public DFSM toDFSM(NDFSM machine) throws Exception {
+		return new DFSM(convert(machine));
+	}
+
+	private static String await(CompletableFuture<String> conversion) throws Exception {
+		try {
+			return conversion.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			throw (Error)e.getCause();
+		}
+	}
+
+	// the directory holds one file per conversion, named after the fingerprint; a file is written to a
+	// temporary name first and then moved, so a crash never leaves a partial file under the real name
+
+	private String load(Fingerprint key) {
+		if (directory == null)
+			return null;
+		Path file = new File(directory, key + ".dfsm").toPath();
+		try {
+			return Files.exists(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8) : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void store(Fingerprint key, String encoding) {
+		if (directory == null)
+			return;
+		try {
+			Path temporary = Files.createTempFile(directory.toPath(), key.toString(), ".tmp");
+			Files.write(temporary, encoding.getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, new File(directory, key + ".dfsm").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the directory is only a second level of the cache; the conversion is still cached in memory
+		}
+	}
+
+	/** Removes all the conversions from memory. The conversions in the directory are kept. */
+	public void clear() {
+		for(Stripe stripe : stripes)
+			stripe.clear();
+	}
+
+	/** @return the statistics of this cache since it was created */
+	public Statistics statistics() {
+		long size = 0, weight = 0;
+		for(Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.entries.size();
+				weight += stripe.weight;
+			}
+		}
+		return new Statistics(hits.sum(), misses.sum(), sharedConversions.sum(), diskHits.sum(), evictions.sum(), rejections.sum(), size, weight);
+	}
+
+	/** A snapshot of the counters of a <code>ConversionCache</code>. */
+	public static final class Statistics {
+
+		private final long hits, misses, sharedConversions, diskHits, evictions, rejections, size, weight;
+
+		Statistics(long hits, long misses, long sharedConversions, long diskHits, long evictions, long rejections, long size, long weight) {
+			this.hits = hits;
+			this.misses = misses;
+			this.sharedConversions = sharedConversions;
+			this.diskHits = diskHits;
+			this.evictions = evictions;
+			this.rejections = rejections;
+			this.size = size;
+			this.weight = weight;
+		}
+
+		/** @return the number of conversions found in memory */
+		public long hits() { return hits; }
+
+		/** @return the number of conversions not found in memory (including the ones found in the directory) */
+		public long misses() { return misses; }
+
+		/** @return the number of requests that waited for a conversion that another thread was running */
+		public long sharedConversions() { return sharedConversions; }
+
+		/** @return the number of conversions not found in memory but found in the directory */
+		public long diskHits() { return diskHits; }
+
+		/** @return the number of conversions removed from memory to make room for others */
+		public long evictions() { return evictions; }
+
+		/** @return the number of conversions that were not admitted, because the ones they would replace are used more often */
+		public long rejections() { return rejections; }
+
+		/** @return the number of conversions in memory */
+		public long size() { return size; }
+
+		/** @return the total length of the encodings of the conversions in memory */
+		public long weight() { return weight; }
+
+		/** @return the fraction of requests that were answered from memory */
+		public double hitRate() {
+			long requests = hits + misses + sharedConversions;
+			return requests == 0 ? 0 : (double)hits / requests;
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + hits + " misses=" + misses + " shared=" + sharedConversions + " diskHits=" + diskHits +
+					" evictions=" + evictions + " rejections=" + rejections + " size=" + size + " weight=" + weight;
+		}
+	}
+
+	// a part of the cache with its own lock, entries in access order and frequency counts
+
+	private final class Stripe {
+
+		final LinkedHashMap<Fingerprint, String> entries = new LinkedHashMap<Fingerprint, String>(16, 0.75f, true);
+		final FrequencySketch frequencies;
+		final int maxEntries;
+		final long maxWeight;
+		long weight = 0;
+
+		Stripe(int maxEntries, long maxWeight) {
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+			this.frequencies = new FrequencySketch(maxEntries);
+		}
+
+		synchronized String get(Fingerprint key) {
+			frequencies.increment(key);
+			return entries.get(key);
+		}
+
+		synchronized void put(Fingerprint key, String value) {
+
+			if (entries.containsKey(key))
+				return;
+			if (value.length() > maxWeight) {
+				rejections.increment();
+				return;
+			}
+
+			Iterator<Map.Entry<Fingerprint, String>> eldest = entries.entrySet().iterator();
+			boolean admitted = false;
+			while (entries.size() >= maxEntries || weight + value.length() > maxWeight) {
+				Map.Entry<Fingerprint, String> victim = eldest.next();
+				if (!admitted && frequencies.frequency(key) <= frequencies.frequency(victim.getKey())) {
+					rejections.increment();
+					return;
+				}
+				admitted = true;
+				weight -= victim.getValue().length();
+				eldest.remove();
+				evictions.increment();
+			}
+
+			entries.put(key, value);
+			weight += value.length();
+		}
+
+		synchronized void clear() {
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+	/* Approximate counts of recent requests per key (a count-min sketch): four rows of small counters,
+	 * each indexed by a different part of the fingerprint, and the count of a key is its smallest counter.
+	 * When the sketch has counted ten times as many requests as the stripe has entries, all the counters
+	 * are halved, so old popularity fades. */
+
+	private static final class FrequencySketch {
+
+		private static final int MAX_COUNT = 15;
+
+		private final int[][] rows = new int[4][];
+		private final int mask;
+		private final int sampleSize;
+		private int additions = 0;
+
+		FrequencySketch(int maxEntries) {
+			int width = Integer.highestOneBit(Math.max(16, Math.min(maxEntries, 1 << 20)) * 2 - 1);
+			for(int i = 0; i < rows.length; i++)
+				rows[i] = new int[width];
+			this.mask = width - 1;
+			this.sampleSize = 10 * width;
+		}
+
+		private int index(Fingerprint key, int row) {
+			long bits = row < 2 ? key.high() : key.low();
+			return (int)(bits >>> (row % 2 == 0 ? 0 : 32)) & mask;
+		}
+
+		void increment(Fingerprint key) {
+			for(int i = 0; i < rows.length; i++) {
+				int j = index(key, i);
+				if (rows[i][j] < MAX_COUNT)
+					rows[i][j]++;
+			}
+			if (++additions >= sampleSize) {
+				for(int[] row : rows)
+					for(int j = 0; j < row.length; j++)
+						row[j] >>>= 1;
+				additions /= 2;
+			}
+		}
+
+		int frequency(Fingerprint key) {
+			int frequency = MAX_COUNT;
+			for(int i = 0; i < rows.length; i++)
+				frequency = Math.min(frequency, rows[i][index(key, i)]);
+			return frequency;
+		}
+	}
+}
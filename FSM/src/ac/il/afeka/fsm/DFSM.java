@@ -1,11 +1,29 @@
 package ac.il.afeka.fsm;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
-public class DFSM extends NDFSM {
+/** A deterministic finite state machine.
+ * 
+ * <p>A DFSM is total by default: every state has a transition on every symbol of the alphabet, so a
+ * machine that rejects some strings early carries an explicit trap state, with a transition to it on every
+ * symbol that leads nowhere. A partial DFSM may leave transitions out: a missing transition leads to an
+ * implicit sink state that rejects everything, and is never stored, encoded or printed. For example</p>
+ * 
+ * <code>
+ * new DFSM("0 1 2/a b c/0,a,1;1,b,2/0/2", true)
+ * </code>
+ * 
+ * <p>accepts just "ab", where a total DFSM needs a fourth state and nine transitions into it. A machine
+ * with a large alphabet whose states have few transitions each, such as a keyword matcher, takes a small
+ * fraction of the memory of its total version. <code>toPartial</code> and <code>toTotal</code> convert
+ * between the two, and the operations of a partial DFSM return partial DFSMs, except
+ * <code>complement</code>, which needs the sink to accept.</p>
+ */
+public class DFSM extends NDFSM implements Matcher {
+	
+	private boolean partial = false;
 	
 	/**
 	 * Builds a DFSM from a string representation (encoding) 
@@ -14,9 +32,20 @@ public class DFSM extends NDFSM {
 	 * @throws Exception if the encoding is incorrect or if it does not represent a deterministic machine
 	 */
 	public DFSM(String encoding) throws Exception {
+		this(encoding, false);
+	}
+	
+	/**
+	 * Builds a DFSM, total or partial, from a string representation (encoding) 
+	 *  
+	 * @param encoding	the string representation of a DFSM
+	 * @param partial	true if the encoding may leave out transitions, which then lead to the implicit sink
+	 * @throws Exception if the encoding is incorrect or if it does not represent a deterministic machine
+	 */
+	public DFSM(String encoding, boolean partial) throws Exception {
 		super(encoding);
-		transitionFunction().veryifyTotal(states, alphabet);
-		transitionFunction().verifyNoEpsilonTransitions();
+		this.partial = partial;
+		verify();
 	}
 	
 	/**
@@ -32,15 +61,96 @@ public class DFSM extends NDFSM {
 	public DFSM(Set<State> states, Alphabet alphabet, Set<Transition> transitions, State initialState,
 			Set<State> acceptingStates) throws Exception {
 		
-		super(states, alphabet, transitions, initialState, acceptingStates);
+		this(states, alphabet, transitions, initialState, acceptingStates, false);
+	}
+	
+	/**
+	 * Build a DFSM, total or partial, from its components
+	 * 
+	 * @param states			the set of states for this machine
+	 * @param alphabet			this machine's alphabet
+	 * @param transitions		the transition mapping of this machine
+	 * @param initialState		the initial state (must be a member of states)
+	 * @param acceptingStates	the set of accepting states (must be a subset of states)
+	 * @param partial			true if transitions may be left out, which then lead to the implicit sink
+	 * @throws Exception if the components do not represent a deterministic machine
+	 */
+	public DFSM(Set<State> states, Alphabet alphabet, Set<Transition> transitions, State initialState,
+			Set<State> acceptingStates, boolean partial) throws Exception {
 		
-		transitionFunction().veryifyTotal(states, alphabet);
+		super(states, alphabet, transitions, initialState, acceptingStates);
+		this.partial = partial;
+		verify();
+	}
+
+	private void verify() throws Exception {
+		if (!partial)
+			transitionFunction().veryifyTotal(states, alphabet);
 		transitionFunction().verifyNoEpsilonTransitions();
 	}
 
 	protected DFSM() { super(); }
 	
-	protected NDFSM create() { return new DFSM(); }
+	protected NDFSM create() { 
+		DFSM aDFSM = new DFSM();
+		aDFSM.partial = partial;
+		return aDFSM;
+	}
+	
+	/** @return true if this machine may leave out transitions, which then lead to the implicit sink */
+	public boolean isPartial() {
+		return partial;
+	}
+
+	/** Returns a partial version of this machine: the states from which no accepting state can be reached
+	 * are removed with the transitions into them, and the implicit sink stands for all of them. The initial
+	 * state is always kept. The cost is linear in the size of the machine.
+	 * 
+	 * @return a partial DFSM that recognizes the same language as this machine
+	 */
+	public DFSM toPartial() {
+
+		IndexedMachine m = new IndexedMachine(this);
+
+		boolean[] keep = m.coReachable();
+		keep[m.initial] = true;
+
+		DFSM aDFSM = new DFSM();
+		aDFSM.partial = true;
+		return (DFSM)m.restrict(keep, aDFSM);
+	}
+
+	/** Returns a total version of this machine: if a transition is missing, a new state that rejects
+	 * everything is added, and every missing transition leads to it.
+	 * 
+	 * @return a total DFSM that recognizes the same language as this machine
+	 */
+	public DFSM toTotal() {
+
+		Set<Transition> totalTransitions = transitions.transitions();
+		Set<State> totalStates = new HashSet<State>(states);
+
+		// the sink is numbered after the largest numbered state; a state of another class never equals it
+		int largest = -1;
+		for(State state : states)
+			if (state instanceof IdentifiedState)
+				largest = Math.max(largest, ((IdentifiedState)state).id());
+		State sink = new IdentifiedState(largest + 1);
+
+		for(State state : states)
+			for(Character symbol : alphabet)
+				if (!transitionFunction().maps(state, symbol))
+					totalTransitions.add(new Transition(state, symbol, sink));
+		if (totalTransitions.size() > transitions.transitions().size()) {
+			totalStates.add(sink);
+			for(Character symbol : alphabet)
+				totalTransitions.add(new Transition(sink, symbol, sink));
+		}
+
+		DFSM aDFSM = new DFSM();
+		aDFSM.initializeFrom(totalStates, alphabet, totalTransitions, initialState, acceptingStates);
+		return aDFSM;
+	}
 	
 	protected TransitionMapping createMapping(Set<Transition> transitions) {
 		return new TransitionFunction(transitions);
@@ -49,23 +159,36 @@ public class DFSM extends NDFSM {
 	protected TransitionFunction transitionFunction() { return (TransitionFunction)transitions; }
 
 	/** Returns a minimal version of this state machine
+	 * 
+	 * <p>The minimal version of a partial machine is partial, and has no state from which no accepting
+	 * state can be reached: they are all equivalent to the implicit sink.</p>
 	 * 
 	 * @return a DFSM that recognizes the same language as this machine, but has a minimal number of states.
 	 */
 
 	public DFSM minimize() {
-		return ((DFSM)removeUnreachableStates()).minimizeWithNoUnreachableStates();
+		OperationStats stats = Metrics.start(OperationStats.Operation.MINIMIZE);
+
+		DFSM aDFSM = ((DFSM)removeUnreachableStates()).minimizeWithNoUnreachableStates(stats);
+
+		if (stats != null) {
+			stats.produced(aDFSM.states.size(), aDFSM.transitions.transitions().size());
+			stats.finish();
+		}
+		return aDFSM;
 	}
 	
 
-	private DFSM minimizeWithNoUnreachableStates() {
+	private DFSM minimizeWithNoUnreachableStates(OperationStats stats) {
 	
-		Map<State, State> equivalent = equivalentStates();
+		Map<State, State> equivalent = equivalentStates(stats);
 		
 		Set<Transition> minimalTransitions = new HashSet<Transition>();
 		
 		for(Transition t : transitions.transitions()) {
 			
+			// a partial machine leaves out the transitions into the sink
+			if (equivalent.containsKey(t.fromState()) && equivalent.containsKey(t.toState()))
 				minimalTransitions.add(new Transition(equivalent.get(t.fromState()), t.symbol(), equivalent.get(t.toState())));
 		}
 		
@@ -74,110 +197,53 @@ public class DFSM extends NDFSM {
 			minimalAccepting.add(equivalent.get(s));
 		}
 
-		DFSM aDFSM = new DFSM();
+		DFSM aDFSM = (DFSM)create();
 		
-		aDFSM.states = new HashSet<State>(equivalent.values());
-		aDFSM.alphabet = alphabet;
-		aDFSM.transitions = new TransitionFunction(minimalTransitions);
-		aDFSM.initialState = equivalent.get(initialState);
-		aDFSM.acceptingStates = minimalAccepting;
+		aDFSM.initializeFrom(new HashSet<State>(equivalent.values()), alphabet, minimalTransitions, equivalent.get(initialState), minimalAccepting);
 		
 		return aDFSM;
 	}
 	
-	// returns a map that maps each state to a representative of their equivalence class.
-	
-	private Map<State, State> equivalentStates() {
-
-		 Map<State, State> prevEcc = new HashMap<State, State>();
-
-		 Map<State, State> ecc = new HashMap<State, State>();
-		 
-		 /* We will represent each equivalence classes with a representative member 
-and use a dictionary to map each state to this representative.
-
-First we create two equivalence classes, put all the accepting states in the first
-and all the non accepting states in the second. */
-
-		 if (!acceptingStates.isEmpty()) {
-			 State rep = acceptingStates.iterator().next();
-			 for(State state : acceptingStates)
-					 ecc.put(state, rep);
-		 }
-		 
-		 Set<State> nonAcceptingStates = new HashSet<State>(states);
-		 nonAcceptingStates.removeAll(acceptingStates);
-		 
-		 if (!nonAcceptingStates.isEmpty()) {
-			 State rep = nonAcceptingStates.iterator().next();
-			 for(State state : nonAcceptingStates)
-				 ecc.put(state, rep);
-		 }
-		 
-/*		The invariant for the following loop is:
-
-		1. for any s -> r association in ecc, s is equivalent to r in prevEcc,
-		2. for any input symbol c, the destination of the transition from s on c is equivalent (in prevEcc) to the destiation of the transition from r to c,
-		3. for any two values r1, r2 in ecc, they are not equivalent to each other in prevEcc,
-		4. all the equivalence classes in prevEcc have a representative in ecc.
-
-*/
-
-		 while(!prevEcc.equals(ecc)) {
-		
-			 prevEcc = ecc;
-			 
-			 ecc = new HashMap<State, State>();
-			 
-/*		To establish the invariant we will set ecc with the associations of the form
-
-		r -> r where r is a representative from prevEcc. 
-
-		This will initially satisfy the invariant because our action establishes 
-		condition (4) and conditions (1) and (2) and (3) are correct by induction 
-		from the validity of prevEcc."
-*/
-			 for(State state : prevEcc.values()) {
-				 ecc.put(state,  state);
-			 }
-			 
-			 for(State state : states) {
-				 
-/*		For each state s, we look in ecc for a rep r that is equivalent to s in prevEcc 
-		(that is, s's rep in prevEcc is r and for every input they transition to the same 
-		equivalence class in prevEcc) and add s to ecc with the same equivalence rep. 
-		If no state is equivalent to s, we add s to ecc as its own rep. */
-			 
-				 Iterator<State> p = ecc.keySet().iterator();
-				 State rep = null;
-				 boolean equivalent = false;
-				 while(p.hasNext() && !equivalent) {
-					 rep = p.next();
-					 equivalent = equivalentIn(prevEcc, state, rep);
-				 }
-				 if (equivalent) 
-					 ecc.put(state, rep);
-				 else
-					 ecc.put(state,  state);
-			 }
-		 }
-		 
-		 return ecc;
-	}
+	// returns a map that maps each state to a representative of their equivalence class. In a partial
+	// machine the states equivalent to the sink are left out, except the initial state, which is its own
+	// representative.
 	
-	private boolean equivalentIn(Map<State, State> equivRel, State s, State t) {
-		if (equivRel.get(s) != equivRel.get(t) )
-			return false;
-		
-		boolean equiv = true;
-		Iterator<Character> p = alphabet.iterator();
-		Character symbol = null;
-		while (p.hasNext() && equiv) {
-			symbol = p.next();
-			equiv = equivRel.get(transitionFunction().applyTo(s, symbol)) == equivRel.get(transitionFunction().applyTo(t,  symbol));
+	private Map<State, State> equivalentStates(OperationStats stats) {
+
+		/* The equivalence classes are computed on the compiled table, whose columns are 
+		the symbol classes of the alphabet rather than its symbols (see SymbolClasses). 
+		The representative of a class is its smallest state. */
+
+		IndexedMachine m = new IndexedMachine(this);
+		CompiledDFSM compiled = CompiledDFSM.compile(m, SymbolClasses.of(m));
+		int[] block = compiled.equivalenceClasses(stats);
+
+		State[] representative = new State[compiled.stateCount()];
+		Map<State, State> ecc = new HashMap<State, State>();
+
+		for(int s = 0; s < m.stateCount(); s++) {
+			if (partial && block[s] == block[m.stateCount()]) {
+				if (s == m.initial)
+					ecc.put(m.states[s], m.states[s]);
+				continue;
+			}
+			if (representative[block[s]] == null)
+				representative[block[s]] = m.states[s];
+			ecc.put(m.states[s], representative[block[s]]);
 		}
-		
-		return equiv;
+
+		return ecc;
+	}
+
+	/** Compiles this machine into a flat transition table over the symbol classes of its alphabet.
+	 * 
+	 * <p>The compiled machine is a snapshot: it does not change when this machine does, and it can be
+	 * shared by any number of threads without locking.</p>
+	 * 
+	 * @return a compiled machine that recognizes the same language as this machine
+	 */
+	public CompiledDFSM compile() {
+		return CompiledDFSM.compile(this);
 	}
 	
 	/** Returns true if and only if input belongs to this machine's language. 
@@ -186,16 +252,44 @@ and all the non accepting states in the second. */
 	 * @return a boolean that indicates if the input is a member of this machine's language or not
 	 */
 	public boolean compute(String input) {
+		OperationStats stats = Metrics.start(OperationStats.Operation.COMPUTE);
+
 		State state = initialState;
 		
-		for(int i = 0; i < input.length();i ++) 
+		// a missing transition of a partial machine leads to the sink, which rejects
+		for(int i = 0; i < input.length() && state != null; i++) 
 			state = transitionFunction().applyTo(state, input.charAt(i));
 		
+		if (stats != null) {
+			stats.charactersRead += input.length();
+			stats.finish();
+		}
+
 		return acceptingStates.contains(state);
 	}
 	
+	@Override
+	public boolean matches(CharSequence input) {
+		State state = initialState;
+
+		for(int i = 0; i < input.length() && state != null; i++)
+			state = transitionFunction().applyTo(state, input.charAt(i));
+
+		return state != null && acceptingStates.contains(state);
+	}
+
+	/** Returns a DFSM that accepts exactly the strings over this machine's alphabet that this machine rejects.
+	 * The sink of a partial machine accepts in the complement, so the complement of a partial machine is the
+	 * complement of its total version (see <code>toTotal</code>), and is total.
+	 * 
+	 * @return the complement of this machine
+	 * @throws Exception if the complement is not a valid DFSM
+	 */
 	public DFSM complement() throws Exception {
 		
+		if (partial)
+			return toTotal().complement();
+		
 		Set<State> nonAcceptingStates = new HashSet<State>(states);
 		
 		nonAcceptingStates.removeAll(acceptingStates);
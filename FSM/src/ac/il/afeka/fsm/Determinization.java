@@ -0,0 +1,313 @@
+package ac.il.afeka.fsm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/** A conversion of a NDFSM to an equivalent DFSM (the subset construction), with limits.
+ *
+ * <p>The number of states of the DFSM can be exponential in the number of states of the NDFSM. A
+ * determinization checks its limits (see <code>DeterminizationLimits</code>) after every new state, and
+ * stops with a <code>DeterminizationException</code> as soon as one of them is exceeded, long before the
+ * JVM runs out of memory. It can also be cancelled from another thread, run asynchronously, and report its
+ * progress. For example</p>
+ *
+ * <code>
+ * Determinization conversion = new Determinization(anNDFSM, DeterminizationLimits.NONE.withMaxStates(10000));
+ * Matcher matcher = conversion.runOrFallBack();
+ * </code>
+ *
+ * <p>returns the DFSM if it has at most 10000 states, and a matcher that simulates anNDFSM directly otherwise.</p>
+ */
+public class Determinization {
+
+	// a rough size of one DFSM state: the group object and its array, plus a transition object and map entry per symbol
+
+	private static final long BYTES_PER_STATE = 96;
+	private static final long BYTES_PER_MEMBER = 4;
+	private static final long BYTES_PER_TRANSITION = 72;
+
+	private final NDFSM machine;
+	private final DeterminizationLimits limits;
+
+	private volatile boolean cancelled = false;
+
+	private Consumer<DeterminizationProgress> progressListener = null;
+	private int progressInterval = 1024;
+
+	/** Creates a conversion of machine that is bound by limits.
+	 *
+	 * @param machine	the machine to convert
+	 * @param limits	the resources the conversion may use
+	 */
+	public Determinization(NDFSM machine, DeterminizationLimits limits) {
+		this.machine = machine;
+		this.limits = limits;
+	}
+
+	/** Reports the progress of the conversion to listener, every interval new states and once at the end.
+	 *
+	 * @param listener	receives the progress, on the thread that runs the conversion
+	 * @param interval	the number of new states between two reports
+	 * @return this conversion
+	 */
+	public Determinization onProgress(Consumer<DeterminizationProgress> listener, int interval) {
+		this.progressListener = listener;
+		this.progressInterval = Math.max(1, interval);
+		return this;
+	}
+
+	/** Asks the conversion to stop. A running conversion throws a <code>DeterminizationException</code>
+	 * with reason <code>CANCELLED</code> shortly after; a conversion that was not started yet will throw it
+	 * as soon as it starts.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/** @return true if and only if <code>cancel()</code> was called */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/** Runs the conversion on executor.
+	 *
+	 * <p>Cancelling the returned future cancels the conversion. If a limit is exceeded the future completes
+	 * exceptionally with a <code>DeterminizationException</code>.</p>
+	 *
+	 * @param executor the executor that runs the conversion
+	 * @return a future of the resulting DFSM
+	 */
+	public CompletableFuture<DFSM> runAsync(Executor executor) {
+
+		final CompletableFuture<DFSM> future = new CompletableFuture<DFSM>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				Determinization.this.cancel();
+				return super.cancel(mayInterruptIfRunning);
+			}
+		};
+
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					future.complete(Determinization.this.run());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+
+		return future;
+	}
+
+	/** Runs the conversion, and falls back to simulating the NDFSM if the DFSM would exceed the limits.
+	 *
+	 * @return the resulting DFSM, or an <code>NDFSMMatcher</code> for the machine if a limit was exceeded
+	 * @throws DeterminizationException if the conversion was cancelled
+	 * @throws Exception if the resulting DFSM is invalid
+	 */
+	public Matcher runOrFallBack() throws Exception {
+		try {
+			return run();
+		} catch (DeterminizationException e) {
+			if (e.reason() == DeterminizationException.Reason.CANCELLED)
+				throw e;
+			return new NDFSMMatcher(machine);
+		}
+	}
+
+	/** Runs the conversion on the calling thread.
+	 *
+	 * @return a DFSM that recognizes the same language as the machine
+	 * @throws DeterminizationException if a limit was exceeded or the conversion was cancelled
+	 * @throws Exception if the resulting DFSM is invalid
+	 */
+	public DFSM run() throws Exception {
+
+		OperationStats stats = Metrics.start(OperationStats.Operation.TO_DFSM);
+		long start = System.nanoTime();
+
+		//number the states, so a group of states is a small array of numbers
+		IndexedMachine m = new IndexedMachine(machine);
+		int[][] closures = new int[m.stateCount()][];
+		boolean[] inClosure = new boolean[m.stateCount()];
+
+		//S
+		int[] initialGroup = closure(m, m.initial, closures, inClosure, stats);
+		StatesInGroups initialStates = new StatesInGroups(0, m.states, StateSet.of(initialGroup, initialGroup.length));
+
+		//delta + k + A
+		Set<Transition> delta = new HashSet<Transition>();
+		Map<StatesInGroups, StatesInGroups> k = new HashMap<StatesInGroups, StatesInGroups>(); // every group maps to itself, to find the group we already have
+		Set<State> newAcceptingStates = new HashSet<State>();
+
+		List<StatesInGroups> helper = new ArrayList<StatesInGroups>(); // all the groups, in the order we found them
+		helper.add(initialStates);
+		k.put(initialStates, initialStates);
+		if (containsAcceptingState(m, initialGroup, initialGroup.length))
+			newAcceptingStates.add(initialStates);
+
+		long bytes = estimate(initialGroup.length, m.symbolCount() - 1);
+		check(helper.size(), 0, delta.size(), bytes, start);
+
+		// symbols that no state distinguishes lead from a group to the same group, so each class is computed once
+		SymbolClasses classes = SymbolClasses.of(m);
+
+		int[] group = new int[m.stateCount()];
+		boolean[] inGroup = new boolean[m.stateCount()];
+
+		for (int next = 0; next < helper.size(); next++) {
+			// a group may lead to groups that were all found already, so this is checked for every group too
+			checkStopped(helper.size(), next, delta.size(), bytes, start);
+
+			StatesInGroups fromState = helper.get(next);
+			if (stats != null)
+				stats.subsetsExplored++;
+			int[] fromGroup = fromState.members().toArray();
+
+			//create the toState group for every class of symbols, in the order of the alphabet
+			for (int symbolClass = 1; symbolClass < classes.classCount(); symbolClass++) {
+				int c = m.symbolIndex.get(classes.representative(symbolClass));
+				int size = 0;
+				for (int state : fromGroup) {
+					for (int e = m.firstEdge(state, c); e < m.edgeStart[state + 1] && m.edgeSymbol[e] == c; e++) {
+						for (int s : closure(m, m.edgeTarget[e], closures, inClosure, stats)) {
+							if (!inGroup[s]) {
+								inGroup[s] = true;
+								group[size++] = s;
+							}
+						}
+					}
+				}
+				for (int i = 0; i < size; i++)
+					inGroup[group[i]] = false;
+				Arrays.sort(group, 0, size);
+
+				StatesInGroups toState = new StatesInGroups(helper.size(), m.states, StateSet.of(group, size));
+				StatesInGroups known = k.get(toState);
+				if (known == null) {
+					k.put(toState, toState);
+					helper.add(toState);
+					if (containsAcceptingState(m, group, size))
+						newAcceptingStates.add(toState);
+					bytes += estimate(size, m.symbolCount() - 1);
+					check(helper.size(), next, delta.size(), bytes, start);
+				} else {
+					toState = known;
+				}
+
+				for (Character symbol : classes.symbols(symbolClass))
+					delta.add(new Transition(fromState, symbol, toState));
+			}
+		}
+
+		if (progressListener != null)
+			progressListener.accept(progress(helper.size(), helper.size(), delta.size(), bytes, start));
+
+		DFSM aDFSM = new DFSM(new HashSet<State>(helper), machine.alphabet, delta, initialStates, newAcceptingStates);
+
+		if (stats != null) {
+			stats.produced(helper.size(), delta.size());
+			stats.finish();
+		}
+
+		return aDFSM;
+	}
+
+	private static long estimate(int members, int symbols) {
+		return BYTES_PER_STATE + BYTES_PER_MEMBER * members + BYTES_PER_TRANSITION * symbols;
+	}
+
+	// throws if the conversion was cancelled or interrupted, or ran out of time
+
+	private void checkStopped(int states, int explored, long transitions, long bytes, long start) throws DeterminizationException {
+
+		DeterminizationException.Reason reason = null;
+
+		if (cancelled || Thread.currentThread().isInterrupted())
+			reason = DeterminizationException.Reason.CANCELLED;
+		else if (System.nanoTime() - start > limits.timeoutNanos())
+			reason = DeterminizationException.Reason.TIMEOUT;
+
+		if (reason != null)
+			throw new DeterminizationException(reason, progress(states, explored, transitions, bytes, start));
+	}
+
+	// throws if a limit is exceeded, and reports the progress every progressInterval states
+
+	private void check(int states, int explored, long transitions, long bytes, long start) throws DeterminizationException {
+
+		checkStopped(states, explored, transitions, bytes, start);
+
+		DeterminizationException.Reason reason = null;
+
+		if (states > limits.maxStates())
+			reason = DeterminizationException.Reason.STATE_LIMIT;
+		else if (bytes > limits.maxMemoryBytes())
+			reason = DeterminizationException.Reason.MEMORY_LIMIT;
+
+		if (reason != null)
+			throw new DeterminizationException(reason, progress(states, explored, transitions, bytes, start));
+
+		if (progressListener != null && states % progressInterval == 0)
+			progressListener.accept(progress(states, explored, transitions, bytes, start));
+	}
+
+	private static DeterminizationProgress progress(int states, int explored, long transitions, long bytes, long start) {
+		return new DeterminizationProgress(states, explored, transitions, bytes, System.nanoTime() - start);
+	}
+
+	// returns the epsilon closure of state (sorted state numbers), computing it only the first time it is needed;
+	// seen has a flag per state, all false, and is left so
+
+	static int[] closure(IndexedMachine m, int state, int[][] closures, boolean[] seen, OperationStats stats) {
+		if (closures[state] != null) {
+			if (stats != null)
+				stats.closureCacheHits++;
+			return closures[state];
+		}
+		if (stats != null)
+			stats.closureComputations++;
+
+		if (m.edgeStart[state] == m.edgeStart[state + 1] || m.edgeSymbol[m.edgeStart[state]] != 0) {
+			closures[state] = new int[] { state };
+			return closures[state];
+		}
+
+		int[] closure = new int[] { state };
+		int size = 1;
+		seen[state] = true;
+		for (int i = 0; i < size; i++) {
+			int from = closure[i];
+			for (int e = m.edgeStart[from]; e < m.edgeStart[from + 1] && m.edgeSymbol[e] == 0; e++) {
+				if (!seen[m.edgeTarget[e]]) {
+					seen[m.edgeTarget[e]] = true;
+					if (size == closure.length)
+						closure = Arrays.copyOf(closure, size * 2);
+					closure[size++] = m.edgeTarget[e];
+				}
+			}
+		}
+		for (int i = 0; i < size; i++)
+			seen[closure[i]] = false;
+		closure = Arrays.copyOf(closure, size);
+		Arrays.sort(closure);
+		closures[state] = closure;
+		return closure;
+	}
+
+	static boolean containsAcceptingState(IndexedMachine m, int[] group, int size) {
+		for (int i = 0; i < size; i++) {
+			if (m.accepting[group[i]])
+				return true;
+		}
+		return false;
+	}
+}
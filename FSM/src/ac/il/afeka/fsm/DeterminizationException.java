@@ -0,0 +1,34 @@
+package ac.il.afeka.fsm;
+
+/** Thrown when a conversion of a NDFSM to a DFSM exceeds its limits or is cancelled. */
+public class DeterminizationException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Why the conversion stopped. */
+	public enum Reason {
+		/** The DFSM would have more states than allowed. */
+		STATE_LIMIT,
+		/** The estimated size of the DFSM exceeds the memory limit. */
+		MEMORY_LIMIT,
+		/** The conversion took longer than allowed. */
+		TIMEOUT,
+		/** The conversion was cancelled, or its thread was interrupted. */
+		CANCELLED
+	}
+
+	private final Reason reason;
+	private final DeterminizationProgress progress;
+
+	DeterminizationException(Reason reason, DeterminizationProgress progress) {
+		super("Conversion to DFSM stopped (" + reason + ") after " + progress);
+		this.reason = reason;
+		this.progress = progress;
+	}
+
+	/** @return why the conversion stopped */
+	public Reason reason() { return reason; }
+
+	/** @return how far the conversion got before it stopped */
+	public DeterminizationProgress progress() { return progress; }
+}
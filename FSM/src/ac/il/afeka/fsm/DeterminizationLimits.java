@@ -0,0 +1,56 @@
+package ac.il.afeka.fsm;
+import java.util.concurrent.TimeUnit;
+
+/** The resources that a conversion of a NDFSM to a DFSM may use.
+ *
+ * <p>Limits are immutable; each <code>with</code> method returns a new object. For example</p>
+ *
+ * <code>
+ * DeterminizationLimits limits = DeterminizationLimits.NONE.withMaxStates(100000).withTimeout(2, TimeUnit.SECONDS);
+ * </code>
+ *
+ * <p>allows at most 100000 states in the resulting DFSM and at most two seconds of work.</p>
+ */
+public final class DeterminizationLimits {
+
+	/** No limits at all. */
+	public static final DeterminizationLimits NONE = new DeterminizationLimits(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+	private final int maxStates;
+	private final long maxMemoryBytes;
+	private final long timeoutNanos;
+
+	private DeterminizationLimits(int maxStates, long maxMemoryBytes, long timeoutNanos) {
+		this.maxStates = maxStates;
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.timeoutNanos = timeoutNanos;
+	}
+
+	/** @param maxStates the largest number of states the resulting DFSM may have
+	 *  @return these limits with the given state limit */
+	public DeterminizationLimits withMaxStates(int maxStates) {
+		return new DeterminizationLimits(maxStates, maxMemoryBytes, timeoutNanos);
+	}
+
+	/** @param maxMemoryBytes the largest estimated size, in bytes, of the resulting DFSM
+	 *  @return these limits with the given memory limit */
+	public DeterminizationLimits withMaxMemory(long maxMemoryBytes) {
+		return new DeterminizationLimits(maxStates, maxMemoryBytes, timeoutNanos);
+	}
+
+	/** @param timeout	the longest time the conversion may take, counted from its start
+	 *  @param unit		the unit of timeout
+	 *  @return these limits with the given time limit */
+	public DeterminizationLimits withTimeout(long timeout, TimeUnit unit) {
+		return new DeterminizationLimits(maxStates, maxMemoryBytes, unit.toNanos(timeout));
+	}
+
+	/** @return the largest number of states the resulting DFSM may have */
+	public int maxStates() { return maxStates; }
+
+	/** @return the largest estimated size, in bytes, of the resulting DFSM */
+	public long maxMemoryBytes() { return maxMemoryBytes; }
+
+	/** @return the longest time the conversion may take, in nanoseconds */
+	public long timeoutNanos() { return timeoutNanos; }
+}
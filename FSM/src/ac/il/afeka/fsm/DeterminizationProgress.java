@@ -0,0 +1,40 @@
+package ac.il.afeka.fsm;
+
+/** A snapshot of the progress of a conversion of a NDFSM to a DFSM. */
+public final class DeterminizationProgress {
+
+	private final int statesCreated;
+	private final int statesExplored;
+	private final long transitionsCreated;
+	private final long estimatedBytes;
+	private final long elapsedNanos;
+
+	DeterminizationProgress(int statesCreated, int statesExplored, long transitionsCreated, long estimatedBytes, long elapsedNanos) {
+		this.statesCreated = statesCreated;
+		this.statesExplored = statesExplored;
+		this.transitionsCreated = transitionsCreated;
+		this.estimatedBytes = estimatedBytes;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/** @return the number of DFSM states found so far */
+	public int statesCreated() { return statesCreated; }
+
+	/** @return the number of DFSM states whose transitions were computed so far */
+	public int statesExplored() { return statesExplored; }
+
+	/** @return the number of DFSM transitions computed so far */
+	public long transitionsCreated() { return transitionsCreated; }
+
+	/** @return an estimate of the memory taken by the DFSM so far, in bytes */
+	public long estimatedBytes() { return estimatedBytes; }
+
+	/** @return the time since the conversion started, in nanoseconds */
+	public long elapsedNanos() { return elapsedNanos; }
+
+	@Override
+	public String toString() {
+		return "states=" + statesCreated + " explored=" + statesExplored + " transitions=" + transitionsCreated
+				+ " bytes~" + estimatedBytes + " elapsed=" + elapsedNanos + "ns";
+	}
+}
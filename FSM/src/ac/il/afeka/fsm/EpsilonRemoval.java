@@ -0,0 +1,289 @@
+package ac.il.afeka.fsm;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/* Computes an epsilon free machine that is equivalent to a given machine.
+ *
+ * The epsilon edges are first collapsed into their strongly connected components (all the
+ * states of a component have the same closure, so they become one state). Components are
+ * numbered by Tarjan's algorithm in reverse topological order, which lets us compute the
+ * closure of every component exactly once from the closures of its epsilon successors.
+ * The resulting machine is then trimmed: components that cannot be reached from the initial
+ * component, or that cannot reach an accepting component, are dropped. */
+
+final class EpsilonRemoval {
+
+	private final IndexedMachine m;
+
+	private int[] component;
+	private int componentCount;
+
+	EpsilonRemoval(IndexedMachine m) {
+		this.m = m;
+	}
+
+	NDFSM run() {
+
+		boolean[] reached = reachableFromInitial();
+
+		findEpsilonComponents(reached);
+
+		// representative of each component: the initial state for its own component, otherwise the smallest member
+
+		int[] representative = new int[componentCount];
+		Arrays.fill(representative, -1);
+		for(int s = 0; s < m.stateCount(); s++) {
+			if (component[s] >= 0 && representative[component[s]] < 0)
+				representative[component[s]] = s;
+		}
+		int initialComponent = component[m.initial];
+		representative[initialComponent] = m.initial;
+
+		boolean[] accepting = new boolean[componentCount];
+		long[][] edges = closureEdges(accepting);
+
+		boolean[] live = liveComponents(initialComponent, accepting, edges);
+
+		Set<State> states = new HashSet<State>();
+		Set<Transition> transitions = new HashSet<Transition>();
+		Set<State> acceptingStates = new HashSet<State>();
+
+		states.add(m.states[m.initial]);
+
+		if (live[initialComponent]) {
+			for(int c = 0; c < componentCount; c++) {
+				if (!live[c])
+					continue;
+				State from = m.states[representative[c]];
+				states.add(from);
+				if (accepting[c])
+					acceptingStates.add(from);
+				for(long key : edges[c]) {
+					int target = (int)key;
+					if (live[target])
+						transitions.add(new Transition(from, m.symbols[(int)(key >>> 32)], m.states[representative[target]]));
+				}
+			}
+		}
+
+		NDFSM result = new NDFSM();
+		result.initializeFrom(states, m.alphabet, transitions, m.states[m.initial], acceptingStates);
+		return result;
+	}
+
+	// states reachable from the initial state on any edge, including epsilon edges
+
+	private boolean[] reachableFromInitial() {
+		boolean[] reached = new boolean[m.stateCount()];
+		int[] queue = new int[m.stateCount()];
+		int head = 0, tail = 0;
+		queue[tail++] = m.initial;
+		reached[m.initial] = true;
+		while (head < tail) {
+			int s = queue[head++];
+			for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++) {
+				int t = m.edgeTarget[e];
+				if (!reached[t]) {
+					reached[t] = true;
+					queue[tail++] = t;
+				}
+			}
+		}
+		return reached;
+	}
+
+	// iterative Tarjan over the epsilon edges of the reached states
+
+	private void findEpsilonComponents(boolean[] reached) {
+
+		int n = m.stateCount();
+
+		component = new int[n];
+		Arrays.fill(component, -1);
+
+		int[] order = new int[n];
+		Arrays.fill(order, -1);
+		int[] low = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int sp = 0;
+
+		int[] callState = new int[n];
+		int[] callEdge = new int[n];
+		int csp = 0;
+
+		int counter = 0;
+		componentCount = 0;
+
+		for(int root = 0; root < n; root++) {
+			if (!reached[root] || order[root] >= 0)
+				continue;
+
+			order[root] = low[root] = counter++;
+			stack[sp++] = root;
+			onStack[root] = true;
+			callState[csp] = root;
+			callEdge[csp] = m.edgeStart[root];
+			csp++;
+
+			while (csp > 0) {
+				int v = callState[csp - 1];
+				int e = callEdge[csp - 1];
+
+				if (e < m.edgeStart[v + 1] && m.edgeSymbol[e] == 0) {
+					callEdge[csp - 1]++;
+					int w = m.edgeTarget[e];
+					if (order[w] < 0) {
+						order[w] = low[w] = counter++;
+						stack[sp++] = w;
+						onStack[w] = true;
+						callState[csp] = w;
+						callEdge[csp] = m.edgeStart[w];
+						csp++;
+					} else if (onStack[w] && order[w] < low[v]) {
+						low[v] = order[w];
+					}
+				} else {
+					csp--;
+					if (low[v] == order[v]) {
+						int w;
+						do {
+							w = stack[--sp];
+							onStack[w] = false;
+							component[w] = componentCount;
+						} while (w != v);
+						componentCount++;
+					}
+					if (csp > 0) {
+						int u = callState[csp - 1];
+						if (low[v] < low[u])
+							low[u] = low[v];
+					}
+				}
+			}
+		}
+	}
+
+	/* Returns, for every component, its non epsilon edges after closure, encoded as
+	 * (symbol << 32 | target component), sorted and without duplicates. Fills in which
+	 * components are accepting after closure. Epsilon successors of a component always have
+	 * smaller numbers, so visiting the components in increasing order sees them first. */
+
+	private long[][] closureEdges(boolean[] accepting) {
+
+		int n = m.stateCount();
+
+		int[] memberStart = new int[componentCount + 1];
+		for(int s = 0; s < n; s++)
+			if (component[s] >= 0)
+				memberStart[component[s] + 1]++;
+		for(int c = 0; c < componentCount; c++)
+			memberStart[c + 1] += memberStart[c];
+		int[] members = new int[memberStart[componentCount]];
+		int[] fill = Arrays.copyOf(memberStart, componentCount);
+		for(int s = 0; s < n; s++)
+			if (component[s] >= 0)
+				members[fill[component[s]]++] = s;
+
+		long[][] edges = new long[componentCount][];
+		int[] seen = new int[componentCount];
+		Arrays.fill(seen, -1);
+		long[] buffer = new long[16];
+
+		for(int c = 0; c < componentCount; c++) {
+			int size = 0;
+			seen[c] = c;
+			for(int i = memberStart[c]; i < memberStart[c + 1]; i++) {
+				int s = members[i];
+				if (m.accepting[s])
+					accepting[c] = true;
+				for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++) {
+					int target = component[m.edgeTarget[e]];
+					if (m.edgeSymbol[e] == 0) {
+						if (seen[target] == c)
+							continue;
+						seen[target] = c;
+						accepting[c] |= accepting[target];
+						long[] inherited = edges[target];
+						if (size + inherited.length > buffer.length)
+							buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + inherited.length));
+						System.arraycopy(inherited, 0, buffer, size, inherited.length);
+						size += inherited.length;
+					} else {
+						if (size == buffer.length)
+							buffer = Arrays.copyOf(buffer, buffer.length * 2);
+						buffer[size++] = ((long)m.edgeSymbol[e] << 32) | target;
+					}
+				}
+			}
+			Arrays.sort(buffer, 0, size);
+			int distinct = 0;
+			for(int i = 0; i < size; i++) {
+				if (distinct == 0 || buffer[i] != buffer[distinct - 1])
+					buffer[distinct++] = buffer[i];
+			}
+			edges[c] = Arrays.copyOf(buffer, distinct);
+		}
+		return edges;
+	}
+
+	// components that are reachable from the initial component and can reach an accepting component
+
+	private boolean[] liveComponents(int initialComponent, boolean[] accepting, long[][] edges) {
+
+		boolean[] reachable = new boolean[componentCount];
+		int[] queue = new int[componentCount];
+		int head = 0, tail = 0;
+		queue[tail++] = initialComponent;
+		reachable[initialComponent] = true;
+		int edgeCount = 0;
+		while (head < tail) {
+			int c = queue[head++];
+			edgeCount += edges[c].length;
+			for(long key : edges[c]) {
+				int t = (int)key;
+				if (!reachable[t]) {
+					reachable[t] = true;
+					queue[tail++] = t;
+				}
+			}
+		}
+
+		// reverse the reachable part of the graph and search backwards from the accepting components
+
+		int[] reverseStart = new int[componentCount + 1];
+		int[] reverseSource = new int[edgeCount];
+		for(int c = 0; c < componentCount; c++)
+			if (reachable[c])
+				for(long key : edges[c])
+					reverseStart[(int)key + 1]++;
+		for(int c = 0; c < componentCount; c++)
+			reverseStart[c + 1] += reverseStart[c];
+		int[] fill = Arrays.copyOf(reverseStart, componentCount);
+		for(int c = 0; c < componentCount; c++)
+			if (reachable[c])
+				for(long key : edges[c])
+					reverseSource[fill[(int)key]++] = c;
+
+		boolean[] live = new boolean[componentCount];
+		head = tail = 0;
+		for(int c = 0; c < componentCount; c++) {
+			if (reachable[c] && accepting[c]) {
+				live[c] = true;
+				queue[tail++] = c;
+			}
+		}
+		while (head < tail) {
+			int c = queue[head++];
+			for(int i = reverseStart[c]; i < reverseStart[c + 1]; i++) {
+				int p = reverseSource[i];
+				if (!live[p]) {
+					live[p] = true;
+					queue[tail++] = p;
+				}
+			}
+		}
+		return live;
+	}
+}
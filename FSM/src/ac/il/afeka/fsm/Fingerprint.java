@@ -0,0 +1,113 @@
+package ac.il.afeka.fsm;
+
+/** A 128 bit fingerprint of the canonic form of a state machine.
+ *
+ * <p>Machines that have the same canonic form (see <code>NDFSM.toCanonicForm</code>) have the same
+ * fingerprint, and machines that have different canonic forms have different fingerprints with
+ * overwhelming probability, so fingerprints can stand for machines when machines are compared, diffed
+ * or deduplicated in bulk. The fingerprint depends only on the canonic form (including the order of
+ * the alphabet), so it is stable across runs and JVMs. It is not a cryptographic hash.</p>
+ *
+ * <p>For example, the statements</p>
+ *
+ * <code>
+ * Fingerprint f = new DFSM("5/a b/5,b,5;5,a,5/5/").fingerprint();
+ * f.equals(new DFSM("0/a b/0,a,0;0,b,0/0/").fingerprint());
+ * </code>
+ *
+ * <p>compute the fingerprints of two machines that differ only in the names of their states, which are equal.</p>
+ */
+public final class Fingerprint {
+
+	private final long high;
+	private final long low;
+
+	/** Creates a fingerprint from its two halves.
+	 *
+	 * @param high	the high 64 bits
+	 * @param low	the low 64 bits
+	 */
+	public Fingerprint(long high, long low) {
+		this.high = high;
+		this.low = low;
+	}
+
+	/** Creates a fingerprint from its encoding.
+	 *
+	 * @param encoding 32 hexadecimal digits, as returned by <code>toString</code>
+	 * @return the fingerprint
+	 * @throws Exception if the encoding is invalid
+	 */
+	public static Fingerprint parse(String encoding) throws Exception {
+		if (encoding.length() != 32)
+			throw new Exception("A fingerprint has 32 hexadecimal digits, but \"" + encoding + "\" has " + encoding.length());
+		try {
+			return new Fingerprint(Long.parseUnsignedLong(encoding.substring(0, 16), 16), Long.parseUnsignedLong(encoding.substring(16), 16));
+		} catch (NumberFormatException e) {
+			throw new Exception("Invalid fingerprint \"" + encoding + "\"");
+		}
+	}
+
+	/** @return the high 64 bits of this fingerprint */
+	public long high() { return high; }
+
+	/** @return the low 64 bits of this fingerprint */
+	public long low() { return low; }
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Fingerprint))
+			return false;
+		Fingerprint other = (Fingerprint)obj;
+		return high == other.high && low == other.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int)low;
+	}
+
+	/** @return the fingerprint as 32 hexadecimal digits */
+	@Override
+	public String toString() {
+		return String.format("%016x%016x", high, low);
+	}
+
+	/* Computes a fingerprint of a sequence of ints: two 64 bit lanes that absorb every value with
+	 * different multipliers, mixed together at the end (after the finalization of MurmurHash3). */
+
+	static final class Hasher {
+
+		private long h1 = 0x6a09e667f3bcc908L;
+		private long h2 = 0xbb67ae8584caa73bL;
+		private long length = 0;
+
+		Hasher add(int value) {
+			h1 = Long.rotateLeft((h1 ^ value) * 0x9e3779b97f4a7c15L, 31);
+			h2 = (h2 + value) * 0xc2b2ae3d27d4eb4fL;
+			h2 ^= h2 >>> 29;
+			length++;
+			return this;
+		}
+
+		Fingerprint finish() {
+			long a = h1 ^ length, b = h2 ^ length;
+			a += b;
+			b += a;
+			a = mix(a);
+			b = mix(b);
+			a += b;
+			b += a;
+			return new Fingerprint(a, b);
+		}
+
+		private static long mix(long k) {
+			k ^= k >>> 33;
+			k *= 0xff51afd7ed558ccdL;
+			k ^= k >>> 33;
+			k *= 0xc4ceb9fe1a85ec53L;
+			k ^= k >>> 33;
+			return k;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package ac.il.afeka.fsm;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A metrics listener that records long operations as JDK Flight Recorder events.
+ *
+ * <p>Every operation that takes at least the given threshold is committed as an
+ * <code>ac.il.afeka.fsm.Operation</code> event with the operation's counters as fields. The event
+ * begins when the operation starts and ends when it completes, so it shows up in a recording with
+ * its real duration, next to the GC and allocation events of the same period. The events are
+ * defined at run time through <code>jdk.jfr.EventFactory</code>, so the class can be loaded on
+ * JVMs without Flight Recorder; there it silently does nothing (see <code>isAvailable()</code>).</p>
+ *
+ * <p>Other listeners can be chained behind it, for example</p>
+ *
+ * <code>
+ * Metrics.setListener(new FlightRecorderListener(10000000L, myListener));
+ * </code>
+ *
+ * <p>records operations that take 10ms or more, and passes all operations to myListener.</p>
+ */
+public class FlightRecorderListener implements MetricsListener {
+
+	private static final String[] FIELDS = { "operation", "wallTime", "bytesAllocated", "subsetsExplored",
+			"closureComputations", "closureCacheHits", "refinementRounds", "blockSplits",
+			"statesProduced", "transitionsProduced", "charactersRead", "statesRead", "transitionsRead" };
+
+	private final long thresholdNanos;
+	private final MetricsListener next;
+
+	private final Object factory;
+	private final Method newEvent;
+	private final Method begin;
+	private final Method set;
+	private final Method commit;
+
+	/** Creates a listener that records operations that take at least thresholdNanos.
+	 *
+	 * @param thresholdNanos	the minimal duration of a recorded operation, in nanoseconds
+	 */
+	public FlightRecorderListener(long thresholdNanos) {
+		this(thresholdNanos, null);
+	}
+
+	/** Creates a listener that records operations that take at least thresholdNanos and passes every operation on to next.
+	 *
+	 * @param thresholdNanos	the minimal duration of a recorded operation, in nanoseconds
+	 * @param next				a listener that receives all the operations, or null
+	 */
+	public FlightRecorderListener(long thresholdNanos, MetricsListener next) {
+		this.thresholdNanos = thresholdNanos;
+		this.next = next;
+
+		Object factory = null;
+		Method newEvent = null, begin = null, set = null, commit = null;
+		try {
+			Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+			Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+			Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+			Class<?> event = Class.forName("jdk.jfr.Event");
+
+			Constructor<?> annotate = annotationElement.getConstructor(Class.class, Object.class);
+			Constructor<?> describe = valueDescriptor.getConstructor(Class.class, String.class);
+
+			List<Object> annotations = new ArrayList<Object>();
+			annotations.add(annotate.newInstance(Class.forName("jdk.jfr.Name"), "ac.il.afeka.fsm.Operation"));
+			annotations.add(annotate.newInstance(Class.forName("jdk.jfr.Label"), "State Machine Operation"));
+			annotations.add(annotate.newInstance(Class.forName("jdk.jfr.Category"), new String[] { "FSM" }));
+
+			List<Object> fields = new ArrayList<Object>();
+			fields.add(describe.newInstance(String.class, FIELDS[0]));
+			for(String name : Arrays.asList(FIELDS).subList(1, FIELDS.length))
+				fields.add(describe.newInstance(long.class, name));
+
+			factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+			newEvent = eventFactory.getMethod("newEvent");
+			begin = event.getMethod("begin");
+			set = event.getMethod("set", int.class, Object.class);
+			commit = event.getMethod("commit");
+		} catch (Exception | LinkageError e) {
+			factory = null;
+		}
+
+		this.factory = factory;
+		this.newEvent = newEvent;
+		this.begin = begin;
+		this.set = set;
+		this.commit = commit;
+	}
+
+	/** Returns true if and only if this JVM supports Flight Recorder events.
+	 *
+	 * @return true if operations will be recorded
+	 */
+	public boolean isAvailable() {
+		return factory != null;
+	}
+
+	@Override
+	public void operationStarted(OperationStats stats) {
+
+		if (factory != null) {
+			try {
+				Object event = newEvent.invoke(factory);
+				begin.invoke(event);
+				stats.recording = event;
+			} catch (Exception e) {
+				// recording is best effort, it never fails the operation
+			}
+		}
+
+		if (next != null)
+			next.operationStarted(stats);
+	}
+
+	@Override
+	public void operationCompleted(OperationStats stats) {
+
+		// an operation shorter than the threshold drops its event without committing it
+		Object event = stats.recording;
+		stats.recording = null;
+		if (event != null && stats.wallTimeNanos() >= thresholdNanos) {
+			Object[] values = { stats.operation().name(), stats.wallTimeNanos(), stats.bytesAllocated(),
+					stats.subsetsExplored(), stats.closureComputations(), stats.closureCacheHits(),
+					stats.refinementRounds(), stats.blockSplits(), stats.statesProduced(),
+					stats.transitionsProduced(), stats.charactersRead(), stats.statesRead(), stats.transitionsRead() };
+			try {
+				for(int i = 0; i < values.length; i++)
+					set.invoke(event, i, values[i]);
+				commit.invoke(event);
+			} catch (Exception e) {
+				// recording is best effort, it never fails the operation
+			}
+		}
+
+		if (next != null)
+			next.operationCompleted(stats);
+	}
+}
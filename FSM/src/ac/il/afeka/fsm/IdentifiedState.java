@@ -1,31 +1,31 @@
 package ac.il.afeka.fsm;
 import java.io.PrintStream;
 import java.util.HashSet;
-import java.util.Scanner;
 import java.util.Set;
 
 public class IdentifiedState extends State {
 
-	private Integer id;
+	private final Integer id;
 
 	public IdentifiedState(Integer i) {
 		this.id = i;
 	}
 
 	static public Set<Integer> parseStateIdList(String encoding) {
-		Scanner scanner = new Scanner(encoding);
-		
 		Set<Integer> ids = new HashSet<Integer>();
 		
-		while(scanner.hasNext()) {
-			ids.add(scanner.nextInt());
+		for(String id : encoding.trim().split("\\s+")) {
+			if (!id.isEmpty())
+				ids.add(Integer.parseInt(id));
 		}
 		
-		scanner.close();
-		
 		return ids;
 	}
 
+	int id() {
+		return id;
+	}
+
 	public void prettyPrint(PrintStream out) {
 		out.print(id);
 	}
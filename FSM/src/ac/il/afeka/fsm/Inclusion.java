@@ -0,0 +1,214 @@
+package ac.il.afeka.fsm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/* Decides whether the language of a machine A is included in the language of a machine B, both without
+ * epsilon transitions, with the antichain algorithm.
+ *
+ * A string of A that B rejects leads to a pair (p, S): p a state of A, S the set of states of B after the
+ * string, with p accepting and no state of S accepting. The pairs reachable from the initial pair are
+ * explored breadth first, so B is determinized on the fly, and only along the strings that A has. A pair
+ * (p, S) is not explored when a pair (p, S') with S' a subset of S is already known: every string that leads
+ * from (p, S) to a rejection leads from (p, S') to one too, since fewer states of B accept fewer strings.
+ * And a known pair (p, S) with S a superset of the new S' is dropped. So the known pairs of every state p
+ * keep only the minimal subsets, an antichain, and far fewer subsets are explored than in the DFSM of B.
+ *
+ * With simulation, the subsumption is relaxed with the simulation preorders of A and B (see Simulation):
+ * (q, T) is not explored when a known pair (p, S) has p simulating q and every state of S simulated by some
+ * state of T, and the states of a subset that another of its states simulates are left out of it. */
+
+final class Inclusion {
+
+	private final IndexedMachine a;
+	private final IndexedMachine b;
+
+	// for every state, the states that simulate it, in A and in B (null without simulation)
+
+	private final long[][] upA;
+	private final long[][] upB;
+
+	// the symbol of B of every symbol of A (0 if B does not have it)
+
+	private final int[] symbolOfB;
+
+	private final int words;
+
+	// the explored pairs, the pair and symbol each was reached from, and whether it left the antichain
+
+	private final List<long[]> sets = new ArrayList<long[]>();
+	private int[] state = new int[16];
+	private int[] parent = new int[16];
+	private int[] symbol = new int[16];
+	private boolean[] dropped = new boolean[16];
+
+	// the numbers of the pairs in the antichain of every state of A
+
+	private final List<List<Integer>> antichain = new ArrayList<List<Integer>>();
+
+	Inclusion(IndexedMachine a, IndexedMachine b, boolean simulation) {
+		this.a = a;
+		this.b = b;
+		this.upA = simulation ? Simulation.of(a) : null;
+		this.upB = simulation ? Simulation.of(b) : null;
+
+		this.symbolOfB = new int[a.symbolCount()];
+		for(int c = 1; c < a.symbolCount(); c++) {
+			Integer d = b.symbolIndex.get(a.symbols[c]);
+			symbolOfB[c] = d == null ? 0 : d;
+		}
+		this.words = (b.stateCount() + 63) >>> 6;
+		for(int p = 0; p < a.stateCount(); p++)
+			antichain.add(new ArrayList<Integer>());
+	}
+
+	// returns a string that A accepts and B rejects, or null if there is none
+
+	String counterexample() {
+
+		long[] initial = new long[words];
+		initial[b.initial >>> 6] |= 1L << b.initial;
+		int first = add(a.initial, initial, -1, 0);
+		if (rejects(first))
+			return "";
+
+		for(int next = 0; next < sets.size(); next++) {
+			if (dropped[next])
+				continue;
+			int p = state[next];
+			long[] from = sets.get(next);
+			for(int e = a.edgeStart[p]; e < a.edgeStart[p + 1]; e++) {
+				int q = a.edgeTarget[e];
+				long[] to = post(from, symbolOfB[a.edgeSymbol[e]]);
+				if (upB != null)
+					reduce(to);
+				if (subsumed(q, to))
+					continue;
+				int pair = add(q, to, next, a.edgeSymbol[e]);
+				if (rejects(pair))
+					return path(pair);
+			}
+		}
+		return null;
+	}
+
+	private boolean rejects(int pair) {
+		if (!a.accepting[state[pair]])
+			return false;
+		long[] set = sets.get(pair);
+		for(int s = nextState(set, 0); s >= 0; s = nextState(set, s + 1))
+			if (b.accepting[s])
+				return false;
+		return true;
+	}
+
+	// the states of B reached from the states of set on symbol (none for symbol 0)
+
+	private long[] post(long[] set, int symbol) {
+		long[] to = new long[words];
+		if (symbol == 0)
+			return to;
+		for(int s = nextState(set, 0); s >= 0; s = nextState(set, s + 1))
+			for(int e = b.firstEdge(s, symbol); e < b.edgeStart[s + 1] && b.edgeSymbol[e] == symbol; e++)
+				to[b.edgeTarget[e] >>> 6] |= 1L << b.edgeTarget[e];
+		return to;
+	}
+
+	// leaves out of set the states that another state of set simulates (of two states that simulate each
+	// other, the larger is kept)
+
+	private void reduce(long[] set) {
+		for(int s = nextState(set, 0); s >= 0; s = nextState(set, s + 1))
+			for(int t = nextState(upB[s], 0); t >= 0; t = nextState(upB[s], t + 1))
+				if (t != s && Simulation.contains(set, t) && (t > s || !Simulation.contains(upB[t], s))) {
+					set[s >>> 6] &= ~(1L << s);
+					break;
+				}
+	}
+
+	// true if a known pair makes (q, set) unnecessary: one whose state simulates q and whose set is covered
+	// by set
+
+	private boolean subsumed(int q, long[] set) {
+		if (upA == null)
+			return subsumedAt(q, set);
+		for(int p = nextState(upA[q], 0); p >= 0; p = nextState(upA[q], p + 1))
+			if (subsumedAt(p, set))
+				return true;
+		return false;
+	}
+
+	private boolean subsumedAt(int p, long[] set) {
+		for(int pair : antichain.get(p))
+			if (covers(set, sets.get(pair)))
+				return true;
+		return false;
+	}
+
+	// true if set accepts every string that smaller accepts: smaller is a subset of set, or with simulation
+	// every state of smaller is simulated by a state of set
+
+	private boolean covers(long[] set, long[] smaller) {
+		if (upB == null) {
+			for(int w = 0; w < words; w++)
+				if ((smaller[w] & ~set[w]) != 0)
+					return false;
+			return true;
+		}
+		for(int s = nextState(smaller, 0); s >= 0; s = nextState(smaller, s + 1)) {
+			boolean covered = false;
+			for(int w = 0; w < words && !covered; w++)
+				covered = (upB[s][w] & set[w]) != 0;
+			if (!covered)
+				return false;
+		}
+		return true;
+	}
+
+	// adds the pair (p, set) to the antichain of p, and drops the pairs of that antichain that it covers
+
+	private int add(int p, long[] set, int from, int on) {
+		int pair = sets.size();
+		if (pair == state.length) {
+			state = Arrays.copyOf(state, pair * 2);
+			parent = Arrays.copyOf(parent, pair * 2);
+			symbol = Arrays.copyOf(symbol, pair * 2);
+			dropped = Arrays.copyOf(dropped, pair * 2);
+		}
+		sets.add(set);
+		state[pair] = p;
+		parent[pair] = from;
+		symbol[pair] = on;
+
+		for(Iterator<Integer> known = antichain.get(p).iterator(); known.hasNext(); ) {
+			int other = known.next();
+			if (covers(sets.get(other), set)) {
+				dropped[other] = true;
+				known.remove();
+			}
+		}
+		antichain.get(p).add(pair);
+		return pair;
+	}
+
+	private static int nextState(long[] set, int from) {
+		int w = from >>> 6;
+		if (w >= set.length)
+			return -1;
+		long word = set[w] & -1L << from;
+		while (word == 0) {
+			if (++w == set.length)
+				return -1;
+			word = set[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	private String path(int pair) {
+		StringBuilder word = new StringBuilder();
+		for(int t = pair; parent[t] >= 0; t = parent[t])
+			word.append(a.symbols[symbol[t]]);
+		return word.reverse().toString();
+	}
+}
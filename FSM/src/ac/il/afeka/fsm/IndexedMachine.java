@@ -0,0 +1,260 @@
+package ac.il.afeka.fsm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* A dense, read only view of a state machine.
+ *
+ * States are numbered 0..n-1 in their natural order and symbols are numbered 1..k in the
+ * order of the alphabet, with 0 standing for epsilon. The transitions are kept in one
+ * array per field, grouped by source state and sorted by (symbol, target) inside each
+ * group, so the edges of state s are edgeSymbol[edgeStart[s] .. edgeStart[s+1]-1] and
+ * the epsilon edges always come first.
+ *
+ * A machine over character ranges (see RangeNDFSM) is indexed the same way, with its symbol
+ * classes as the symbols; such a machine has no alphabet, symbols or symbolIndex. */
+
+final class IndexedMachine {
+
+	final State[] states;
+	final Map<State, Integer> stateIndex;
+
+	final Alphabet alphabet;
+	final Character[] symbols;
+	final Map<Character, Integer> symbolIndex;
+
+	final int symbolCount;
+
+	final int initial;
+	final boolean[] accepting;
+
+	final int[] edgeStart;
+	final int[] edgeSymbol;
+	final int[] edgeTarget;
+
+	IndexedMachine(NDFSM machine) {
+
+		List<State> sortedStates = new ArrayList<State>(machine.states);
+		Collections.sort(sortedStates);
+
+		this.states = sortedStates.toArray(new State[sortedStates.size()]);
+		this.stateIndex = new HashMap<State, Integer>();
+		for(int i = 0; i < states.length; i++)
+			stateIndex.put(states[i], i);
+
+		this.alphabet = machine.alphabet;
+
+		List<Character> symbolList = new ArrayList<Character>();
+		symbolList.add(Alphabet.EPSILON);
+		for(Character c : machine.alphabet)
+			symbolList.add(c);
+
+		this.symbols = symbolList.toArray(new Character[symbolList.size()]);
+		this.symbolIndex = new HashMap<Character, Integer>();
+		for(int i = 0; i < symbols.length; i++)
+			symbolIndex.put(symbols[i], i);
+		this.symbolCount = symbols.length;
+
+		this.initial = stateIndex.get(machine.initialState);
+
+		this.accepting = new boolean[states.length];
+		for(State s : machine.acceptingStates) {
+			Integer i = stateIndex.get(s);
+			if (i != null)
+				accepting[i] = true;
+		}
+
+		// counting sort of the transitions by source state, then sort each row by (symbol, target)
+
+		List<Transition> all = new ArrayList<Transition>(machine.transitions.transitions());
+
+		this.edgeStart = new int[states.length + 1];
+		for(Transition t : all)
+			edgeStart[stateIndex.get(t.fromState()) + 1]++;
+		for(int i = 0; i < states.length; i++)
+			edgeStart[i + 1] += edgeStart[i];
+
+		long[] keys = new long[all.size()];
+		int[] fill = Arrays.copyOf(edgeStart, states.length);
+		for(Transition t : all) {
+			int from = stateIndex.get(t.fromState());
+			keys[fill[from]++] = ((long)symbolIndex.get(t.symbol()) << 32) | stateIndex.get(t.toState());
+		}
+
+		this.edgeSymbol = new int[keys.length];
+		this.edgeTarget = new int[keys.length];
+		for(int s = 0; s < states.length; s++) {
+			Arrays.sort(keys, edgeStart[s], edgeStart[s + 1]);
+			for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				edgeSymbol[e] = (int)(keys[e] >>> 32);
+				edgeTarget[e] = (int)keys[e];
+			}
+		}
+	}
+
+	IndexedMachine(State[] states, int symbolCount, int initial, boolean[] accepting, int[] edgeStart, int[] edgeSymbol, int[] edgeTarget) {
+		this.states = states;
+		this.stateIndex = new HashMap<State, Integer>();
+		for(int i = 0; i < states.length; i++)
+			stateIndex.put(states[i], i);
+		this.alphabet = null;
+		this.symbols = null;
+		this.symbolIndex = null;
+		this.symbolCount = symbolCount;
+		this.initial = initial;
+		this.accepting = accepting;
+		this.edgeStart = edgeStart;
+		this.edgeSymbol = edgeSymbol;
+		this.edgeTarget = edgeTarget;
+	}
+
+	// builds the edge arrays from one key per edge, (symbol << 32) | target, grouped by source state as
+	// in edgeStart; duplicate edges are dropped
+
+	static IndexedMachine fromKeys(State[] states, int symbolCount, int initial, boolean[] accepting, int[] edgeStart, long[] keys) {
+		int[] start = new int[states.length + 1];
+		int[] symbol = new int[keys.length];
+		int[] target = new int[keys.length];
+		int n = 0;
+		for(int s = 0; s < states.length; s++) {
+			start[s] = n;
+			Arrays.sort(keys, edgeStart[s], edgeStart[s + 1]);
+			for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				if (e > edgeStart[s] && keys[e] == keys[e - 1])
+					continue;
+				symbol[n] = (int)(keys[e] >>> 32);
+				target[n] = (int)keys[e];
+				n++;
+			}
+		}
+		start[states.length] = n;
+		return new IndexedMachine(states, symbolCount, initial, accepting, start, Arrays.copyOf(symbol, n), Arrays.copyOf(target, n));
+	}
+
+	// the states that can be reached from the initial state, by one pass of a worklist over the edges
+
+	boolean[] reachable() {
+		boolean[] reached = new boolean[states.length];
+		int[] worklist = new int[states.length];
+		int size = 0;
+		reached[initial] = true;
+		worklist[size++] = initial;
+		while (size > 0) {
+			int s = worklist[--size];
+			for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				int t = edgeTarget[e];
+				if (!reached[t]) {
+					reached[t] = true;
+					worklist[size++] = t;
+				}
+			}
+		}
+		return reached;
+	}
+
+	// the states from which an accepting state can be reached, by the same worklist over the reversed edges
+
+	boolean[] coReachable() {
+		int n = states.length;
+		int[] reverseStart = new int[n + 1];
+		for(int e = 0; e < edgeTarget.length; e++)
+			reverseStart[edgeTarget[e] + 1]++;
+		for(int s = 0; s < n; s++)
+			reverseStart[s + 1] += reverseStart[s];
+		int[] source = new int[edgeTarget.length];
+		int[] fill = Arrays.copyOf(reverseStart, n);
+		for(int s = 0; s < n; s++)
+			for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+				source[fill[edgeTarget[e]]++] = s;
+
+		boolean[] reached = new boolean[n];
+		int[] worklist = new int[n];
+		int size = 0;
+		for(int s = 0; s < n; s++) {
+			if (accepting[s]) {
+				reached[s] = true;
+				worklist[size++] = s;
+			}
+		}
+		while (size > 0) {
+			int t = worklist[--size];
+			for(int e = reverseStart[t]; e < reverseStart[t + 1]; e++) {
+				int s = source[e];
+				if (!reached[s]) {
+					reached[s] = true;
+					worklist[size++] = s;
+				}
+			}
+		}
+		return reached;
+	}
+
+	// initializes machine to the part of this machine on the states marked in keep, which must include the initial state
+
+	NDFSM restrict(boolean[] keep, NDFSM machine) {
+		Set<State> keptStates = new HashSet<State>();
+		Set<State> keptAccepting = new HashSet<State>();
+		Set<Transition> keptTransitions = new HashSet<Transition>();
+		for(int s = 0; s < states.length; s++) {
+			if (!keep[s])
+				continue;
+			keptStates.add(states[s]);
+			if (accepting[s])
+				keptAccepting.add(states[s]);
+			for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+				if (keep[edgeTarget[e]])
+					keptTransitions.add(new Transition(states[s], symbols[edgeSymbol[e]], states[edgeTarget[e]]));
+		}
+		machine.initializeFrom(keptStates, alphabet, keptTransitions, states[initial], keptAccepting);
+		return machine;
+	}
+
+	// the machine whose states are the blocks of a partition of this machine's states, each named by its
+	// first state: a block accepts if one of its states does, and has the transitions of all its states
+	// (those e with keep[e], if keep is not null)
+
+	NDFSM quotient(int[] block, int blocks, boolean[] keep, NDFSM machine) {
+		State[] name = new State[blocks];
+		for(int s = 0; s < states.length; s++)
+			if (name[block[s]] == null)
+				name[block[s]] = states[s];
+
+		Set<State> keptStates = new HashSet<State>(Arrays.asList(name));
+		Set<State> keptAccepting = new HashSet<State>();
+		Set<Transition> keptTransitions = new HashSet<Transition>();
+		for(int s = 0; s < states.length; s++) {
+			if (accepting[s])
+				keptAccepting.add(name[block[s]]);
+			for(int e = edgeStart[s]; e < edgeStart[s + 1]; e++)
+				if (keep == null || keep[e])
+					keptTransitions.add(new Transition(name[block[s]], symbols[edgeSymbol[e]], name[block[edgeTarget[e]]]));
+		}
+		machine.initializeFrom(keptStates, alphabet, keptTransitions, name[block[initial]], keptAccepting);
+		return machine;
+	}
+
+	int stateCount() { return states.length; }
+
+	int symbolCount() { return symbolCount; }
+
+	int edgeCount() { return edgeTarget.length; }
+
+	// returns the first edge of state s that is labeled with symbol, or the end of s's row if there is none
+
+	int firstEdge(int s, int symbol) {
+		int lo = edgeStart[s], hi = edgeStart[s + 1];
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (edgeSymbol[mid] < symbol)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
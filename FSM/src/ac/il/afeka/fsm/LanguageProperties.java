@@ -0,0 +1,328 @@
+package ac.il.afeka.fsm;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* Decides properties of the language of a machine on its indexed form, without building other machines.
+ *
+ * Emptiness is one reachability pass. Finiteness looks for a cycle that reads a symbol among the trimmed
+ * states (reachable and co-reachable), with one pass of Tarjan's strongly connected components algorithm:
+ * a language is infinite exactly when such a cycle exists, since a string can then be pumped around it.
+ * Both are linear in the size of the machine.
+ *
+ * Universality needs determinization in general, so it explores the subsets of states breadth first,
+ * one symbol at a time in alphabet order, and stops at the first subset with no accepting state (see
+ * shortest). The path to that subset is the shortest string the machine rejects (the first in shortlex
+ * order). For a DFSM every subset is a single state, so this is again a reachability pass. */
+
+final class LanguageProperties {
+
+	private LanguageProperties() { }
+
+	static boolean isEmpty(IndexedMachine m) {
+		boolean[] reachable = m.reachable();
+		for(int s = 0; s < reachable.length; s++)
+			if (reachable[s] && m.accepting[s])
+				return false;
+		return true;
+	}
+
+	// the states on a path from the initial state to an accepting state
+
+	static boolean[] trimmed(IndexedMachine m) {
+		boolean[] keep = m.reachable();
+		boolean[] coReachable = m.coReachable();
+		for(int s = 0; s < keep.length; s++)
+			keep[s] = keep[s] && coReachable[s];
+		return keep;
+	}
+
+	static boolean isFinite(IndexedMachine m) {
+
+		boolean[] keep = trimmed(m);
+		int[] component = components(m, keep);
+
+		for(int s = 0; s < keep.length; s++) {
+			if (!keep[s])
+				continue;
+			for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++)
+				if (m.edgeSymbol[e] != 0 && keep[m.edgeTarget[e]] && component[m.edgeTarget[e]] == component[s])
+					return false;
+		}
+		return true;
+	}
+
+	/* Numbers the strongly connected components of the graph of the states in keep (Tarjan's algorithm,
+	 * with an explicit stack of (state, next edge) frames instead of recursion, so long chains do not
+	 * overflow the call stack). */
+
+	private static int[] components(IndexedMachine m, boolean[] keep) {
+
+		int n = m.stateCount();
+		int[] index = new int[n];
+		int[] low = new int[n];
+		int[] component = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] frameState = new int[n];
+		int[] frameEdge = new int[n];
+		int next = 1, size = 0, components = 0;
+
+		for(int root = 0; root < n; root++) {
+			if (!keep[root] || index[root] != 0)
+				continue;
+
+			int frames = 0;
+			frameState[frames] = root;
+			frameEdge[frames++] = m.edgeStart[root];
+			index[root] = low[root] = next++;
+			stack[size++] = root;
+			onStack[root] = true;
+
+			while (frames > 0) {
+				int s = frameState[frames - 1];
+				int e = frameEdge[frames - 1];
+				if (e < m.edgeStart[s + 1]) {
+					frameEdge[frames - 1]++;
+					int t = m.edgeTarget[e];
+					if (!keep[t])
+						continue;
+					if (index[t] == 0) {
+						index[t] = low[t] = next++;
+						stack[size++] = t;
+						onStack[t] = true;
+						frameState[frames] = t;
+						frameEdge[frames++] = m.edgeStart[t];
+					} else if (onStack[t]) {
+						low[s] = Math.min(low[s], index[t]);
+					}
+					continue;
+				}
+
+				frames--;
+				if (frames > 0) {
+					int parent = frameState[frames - 1];
+					low[parent] = Math.min(low[parent], low[s]);
+				}
+				if (low[s] == index[s]) {
+					int t;
+					do {
+						t = stack[--size];
+						onStack[t] = false;
+						component[t] = components;
+					} while (t != s);
+					components++;
+				}
+			}
+		}
+		return component;
+	}
+
+	// the number of strings accepted by a DFSM whose language is finite: the number of paths from the
+	// initial state to an accepting state, counted from the last states of the (acyclic) trimmed graph back
+
+	static BigInteger count(IndexedMachine m) {
+
+		boolean[] keep = trimmed(m);
+		if (!keep[m.initial])
+			return BigInteger.ZERO;
+
+		int n = m.stateCount();
+		BigInteger[] paths = new BigInteger[n];
+		int[] frameState = new int[n];
+		int[] frameEdge = new int[n];
+		int frames = 0;
+		frameState[frames] = m.initial;
+		frameEdge[frames++] = m.edgeStart[m.initial];
+
+		while (frames > 0) {
+			int s = frameState[frames - 1];
+			int e = frameEdge[frames - 1];
+			if (e < m.edgeStart[s + 1]) {
+				frameEdge[frames - 1]++;
+				int t = m.edgeTarget[e];
+				if (keep[t] && paths[t] == null) {
+					frameState[frames] = t;
+					frameEdge[frames++] = m.edgeStart[t];
+				}
+				continue;
+			}
+			frames--;
+			BigInteger total = m.accepting[s] ? BigInteger.ONE : BigInteger.ZERO;
+			for(int f = m.edgeStart[s]; f < m.edgeStart[s + 1]; f++)
+				if (keep[m.edgeTarget[f]])
+					total = total.add(paths[m.edgeTarget[f]]);
+			paths[s] = total;
+		}
+		return paths[m.initial];
+	}
+
+	enum Goal { ACCEPTED, REJECTED, DISTINGUISHED, INTERSECTED }
+
+	/* Returns the shortest string (the first in shortlex order) that reaches the goal: accepted by the
+	 * machine, rejected by it, accepted by exactly one of two machines, or accepted by all the machines.
+	 * Returns null if there is none.
+	 *
+	 * The search runs over tuples of subsets, one subset per machine, so it is the subset construction of
+	 * one machine, or of the product of two, done on the fly. The symbols are those of the first machine's
+	 * alphabet in its order, followed by the symbols that only the second machine has; a symbol outside a
+	 * machine's alphabet leads it to the empty subset. Each tuple records the tuple it was first reached from
+	 * and the symbol it was reached on, in int arrays, and the string is read back from those.
+	 *
+	 * For an intersection a tuple with an empty subset can never reach the goal, so the symbols are only
+	 * those that all the machines have, and such tuples are not explored. */
+
+	static String shortest(Goal goal, IndexedMachine... machines) {
+
+		int k = machines.length;
+
+		List<Character> symbols = new ArrayList<Character>();
+		Set<Character> seen = new HashSet<Character>();
+		for(IndexedMachine m : machines)
+			for(int c = 1; c < m.symbolCount(); c++)
+				if (seen.add(m.symbols[c]))
+					symbols.add(m.symbols[c]);
+		if (goal == Goal.INTERSECTED)
+			for(IndexedMachine m : machines)
+				symbols.retainAll(m.symbolIndex.keySet());
+
+		// for every machine, the symbol number and the symbol class of every symbol (0 for none)
+
+		int[][] symbolOf = new int[k][symbols.size()];
+		int[][] classOf = new int[k][symbols.size()];
+		int[][][] successors = new int[k][][];
+		StateSet[][] successorSets = new StateSet[k][];
+		int[][][] closures = new int[k][][];
+		boolean[][] inClosures = new boolean[k][];
+		int[][] groups = new int[k][];
+		boolean[][] inGroups = new boolean[k][];
+		for(int i = 0; i < k; i++) {
+			IndexedMachine m = machines[i];
+			SymbolClasses classes = SymbolClasses.of(m);
+			for(int u = 0; u < symbols.size(); u++) {
+				Integer c = m.symbolIndex.get(symbols.get(u));
+				symbolOf[i][u] = c == null ? 0 : c;
+				classOf[i][u] = c == null ? 0 : classes.classOf(symbols.get(u));
+			}
+			successors[i] = new int[classes.classCount()][];
+			successorSets[i] = new StateSet[classes.classCount()];
+			closures[i] = new int[m.stateCount()][];
+			inClosures[i] = new boolean[m.stateCount()];
+			groups[i] = new int[m.stateCount()];
+			inGroups[i] = new boolean[m.stateCount()];
+		}
+
+		List<int[][]> tuples = new ArrayList<int[][]>();
+		Map<List<StateSet>, Integer> known = new HashMap<List<StateSet>, Integer>();
+		int[] parent = new int[16];
+		int[] symbol = new int[16];
+
+		int[][] initial = new int[k][];
+		StateSet[] initialSets = new StateSet[k];
+		for(int i = 0; i < k; i++) {
+			initial[i] = Determinization.closure(machines[i], machines[i].initial, closures[i], inClosures[i], null);
+			initialSets[i] = StateSet.of(initial[i], initial[i].length);
+		}
+		parent[0] = -1;
+		if (reaches(goal, machines, initial))
+			return "";
+		tuples.add(initial);
+		known.put(Arrays.asList(initialSets), 0);
+
+		for(int next = 0; next < tuples.size(); next++) {
+			int[][] from = tuples.get(next);
+			for(int i = 0; i < k; i++) {
+				Arrays.fill(successors[i], null);
+				Arrays.fill(successorSets[i], null);
+			}
+
+			for(int u = 0; u < symbols.size(); u++) {
+				int[][] to = new int[k][];
+				StateSet[] toSets = new StateSet[k];
+				for(int i = 0; i < k; i++) {
+					int symbolClass = classOf[i][u];
+					if (successors[i][symbolClass] == null) {
+						successors[i][symbolClass] = symbolClass == 0 ? new int[0] : step(machines[i], from[i], symbolOf[i][u], closures[i], inClosures[i], groups[i], inGroups[i]);
+						successorSets[i][symbolClass] = StateSet.of(successors[i][symbolClass], successors[i][symbolClass].length);
+					}
+					to[i] = successors[i][symbolClass];
+					toSets[i] = successorSets[i][symbolClass];
+				}
+
+				if (goal == Goal.INTERSECTED && hasEmptySubset(to))
+					continue;
+				List<StateSet> key = Arrays.asList(toSets);
+				if (known.containsKey(key))
+					continue;
+
+				int number = tuples.size();
+				if (number == parent.length) {
+					parent = Arrays.copyOf(parent, number * 2);
+					symbol = Arrays.copyOf(symbol, number * 2);
+				}
+				parent[number] = next;
+				symbol[number] = u;
+				if (reaches(goal, machines, to))
+					return path(symbols, parent, symbol, number);
+				tuples.add(to);
+				known.put(key, number);
+			}
+		}
+		return null;
+	}
+
+	// the sorted states reached from the states of from on symbol, with their epsilon closures
+
+	private static int[] step(IndexedMachine m, int[] from, int symbol, int[][] closures, boolean[] inClosure, int[] group, boolean[] inGroup) {
+		int size = 0;
+		for(int state : from) {
+			for(int e = m.firstEdge(state, symbol); e < m.edgeStart[state + 1] && m.edgeSymbol[e] == symbol; e++) {
+				for(int s : Determinization.closure(m, m.edgeTarget[e], closures, inClosure, null)) {
+					if (!inGroup[s]) {
+						inGroup[s] = true;
+						group[size++] = s;
+					}
+				}
+			}
+		}
+		for(int i = 0; i < size; i++)
+			inGroup[group[i]] = false;
+		int[] to = Arrays.copyOf(group, size);
+		Arrays.sort(to);
+		return to;
+	}
+
+	private static boolean hasEmptySubset(int[][] subsets) {
+		for(int[] subset : subsets)
+			if (subset.length == 0)
+				return true;
+		return false;
+	}
+
+	private static boolean reaches(Goal goal, IndexedMachine[] machines, int[][] subsets) {
+		if (goal == Goal.INTERSECTED) {
+			for(int i = 0; i < machines.length; i++)
+				if (!Determinization.containsAcceptingState(machines[i], subsets[i], subsets[i].length))
+					return false;
+			return true;
+		}
+		boolean first = Determinization.containsAcceptingState(machines[0], subsets[0], subsets[0].length);
+		switch (goal) {
+		case ACCEPTED: return first;
+		case REJECTED: return !first;
+		default: return first != Determinization.containsAcceptingState(machines[1], subsets[1], subsets[1].length);
+		}
+	}
+
+	private static String path(List<Character> symbols, int[] parent, int[] symbol, int tuple) {
+		StringBuilder word = new StringBuilder();
+		for(int t = tuple; parent[t] >= 0; t = parent[t])
+			word.append(symbols.get(symbol[t]));
+		return word.reverse().toString();
+	}
+}
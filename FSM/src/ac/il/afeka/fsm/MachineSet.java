@@ -0,0 +1,437 @@
+package ac.il.afeka.fsm;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Runs many machines over the same input in one pass, and reports which of them accept it.
+ *
+ * <p>The machines are run together as one combined machine, whose states are tuples of a state of every
+ * machine, and whose symbols are the classes of characters that no machine tells apart. The combined
+ * machine is never built in full: its states and transitions are made the first time an input reaches
+ * them, and kept in a cache, so once the inputs have warmed it up every character costs two lookups, as
+ * in a single compiled machine, however many machines the set has. Every state of the cache records the
+ * machines that accept in it, so the result of an input is read off the state it ends in. For example</p>
+ *
+ * <code>
+ * MachineSet set = new MachineSet();
+ * int errors = set.add(new DFSM(endsWithError));
+ * int warnings = set.add(new DFSM(endsWithWarning));
+ * BitSet accepting = set.accepting(line);
+ * </code>
+ *
+ * <p>returns a set with errors in it if the first machine accepts line, and warnings if the second one
+ * does, after reading line once.</p>
+ *
+ * <p>The cache holds at most <code>cacheLimit</code> states; when it is full it is emptied, and the
+ * states are made again as they are reached. Machines that are independent of each other can reach so
+ * many combinations of states that the cache keeps filling up, and making a state costs a step of every
+ * machine. So when fewer than <code>MIN_CHARACTERS_PER_STATE</code> characters were read per state made
+ * before the cache filled up, the inputs that follow, for as many characters as the cache could hold
+ * states, are matched by stepping every machine's table on every character instead, which costs in
+ * proportion to the number of machines, except that a machine is no longer stepped once it is in a state
+ * it never leaves. Then the cache is tried again, and every time in a row that it does not pay, the
+ * machines are stepped over twice as many characters before the next try.</p>
+ *
+ * <p>Machines are added and removed one at a time: every machine is compiled once, when it is added, and
+ * a change empties the cache, which is filled again as inputs are matched. A machine set is not safe for
+ * use by several threads at once. Machines over code points (see <code>RangeNDFSM</code>) cannot be added,
+ * since the set reads its input one character at a time.</p>
+ */
+public final class MachineSet {
+
+	private static final int DEFAULT_CACHE_LIMIT = 1 << 14;
+
+	// the cache is worth keeping if it is filled no faster than one state per this many characters read
+
+	private static final int MIN_CHARACTERS_PER_STATE = 16;
+
+	// the most times the characters matched by stepping are doubled
+
+	private static final int MAX_FAILURES = 20;
+
+	private static final int BUFFER_SIZE = 1 << 13;
+
+	// the number of characters every machine is run over in turn while stepping
+
+	private static final int BLOCK_SIZE = 1 << 12;
+
+	// the machines by id (null once removed), and the ids and machines of the set in the order of ids
+
+	private final List<CompiledDFSM> machines = new ArrayList<CompiledDFSM>();
+	private int[] ids = new int[0];
+	private CompiledDFSM[] members = new CompiledDFSM[0];
+
+	// for every machine, by id and by position in members: its table, read in place (see CompiledDFSM.table),
+	// where next[row + c] is the row of the state reached on class c from the state of that row (rows are
+	// state numbers multiplied by the number of classes), and the states that it never leaves
+
+	private final List<int[]> tables = new ArrayList<int[]>();
+	private final List<boolean[]> absorbingStates = new ArrayList<boolean[]>();
+	private int[][] table = new int[0][];
+	private boolean[][] absorbing = new boolean[0][];
+
+	private int cacheLimit = DEFAULT_CACHE_LIMIT;
+
+	// the combined classes: charClass[c] is the class of character c, or -1 if it was not read since the
+	// last change; the class of a character is the tuple of its classes in every member
+
+	private final int[] charClass = new int[Character.MAX_VALUE + 1];
+	private final Map<Tuple, Integer> classIndex = new HashMap<Tuple, Integer>();
+	private final List<int[]> classes = new ArrayList<int[]>();
+
+	// the cached states of the combined machine; next[s][k] is one more than the state reached from state s
+	// on class k, or 0 if that transition was not made yet, and accepts[s] is the set of the positions in
+	// members of the machines that accept in state s
+
+	private final Map<Tuple, Integer> stateIndex = new HashMap<Tuple, Integer>();
+	private final List<int[]> tuples = new ArrayList<int[]>();
+	private int[][] next = new int[16][];
+	private long[][] accepts = new long[16][];
+
+	// the characters read through the cache since it was last emptied, and the number of characters that
+	// are still to be matched by stepping the machines after the cache was found not to pay
+
+	private long read = 0;
+	private long stepBudget = 0;
+	private int failures = 0;
+
+	/** Creates an empty set. */
+	public MachineSet() {
+		update();
+	}
+
+	/** Sets the largest number of states of the combined machine that are cached.
+	 *
+	 * @param states	the number of states, at least 1
+	 * @return this set
+	 */
+	public MachineSet cacheLimit(int states) {
+		this.cacheLimit = Math.max(1, states);
+		return this;
+	}
+
+	/** Adds a machine to the set.
+	 *
+	 * @param machine	the machine to add
+	 * @return the id of the machine in the set, which <code>accepting</code> reports and <code>remove</code> takes
+	 */
+	public int add(DFSM machine) {
+		return add(machine.compile());
+	}
+
+	/** Adds a compiled machine to the set.
+	 *
+	 * @param machine	the machine to add
+	 * @return the id of the machine in the set, which <code>accepting</code> reports and <code>remove</code> takes
+	 * @throws IllegalArgumentException if the machine reads code points
+	 */
+	public int add(CompiledDFSM machine) {
+		if (machine.symbolClasses().codePoints())
+			throw new IllegalArgumentException("A machine set reads characters, not code points");
+		int width = machine.symbolClasses().classCount();
+		int[] table = machine.table();
+		boolean[] absorbing = new boolean[machine.stateCount()];
+		for(int s = 0; s < absorbing.length; s++) {
+			absorbing[s] = true;
+			for(int c = 0; c < width; c++)
+				absorbing[s] &= table[s * width + c] == s * width;
+		}
+		machines.add(machine);
+		tables.add(table);
+		absorbingStates.add(absorbing);
+		update();
+		return machines.size() - 1;
+	}
+
+	/** Removes a machine from the set.
+	 *
+	 * @param id	the id <code>add</code> returned for the machine
+	 * @return true if the machine was in the set
+	 */
+	public boolean remove(int id) {
+		if (id < 0 || id >= machines.size() || machines.get(id) == null)
+			return false;
+		machines.set(id, null);
+		tables.set(id, null);
+		absorbingStates.set(id, null);
+		update();
+		return true;
+	}
+
+	/** @return the number of machines in the set */
+	public int size() {
+		return members.length;
+	}
+
+	/** @return the number of states of the combined machine in the cache */
+	public int cachedStates() {
+		return tuples.size();
+	}
+
+	/** Returns the ids of the machines of the set that accept input.
+	 *
+	 * @param input	the input
+	 * @return the ids of the machines that accept input
+	 */
+	public BitSet accepting(CharSequence input) {
+		Scan scan = new Scan();
+		scan.feed(input);
+		return scan.accepting();
+	}
+
+	/** Returns the ids of the machines of the set that accept the characters read from input, which is read to
+	 * its end but not closed.
+	 *
+	 * @param input	the input
+	 * @return the ids of the machines that accept the input
+	 * @throws IOException if the input cannot be read
+	 */
+	public BitSet accepting(Reader input) throws IOException {
+		Scan scan = new Scan();
+		char[] buffer = new char[BUFFER_SIZE];
+		for(int length = input.read(buffer); length >= 0; length = input.read(buffer))
+			scan.feed(CharBuffer.wrap(buffer, 0, length));
+		return scan.accepting();
+	}
+
+	// the set changed: the combined classes and the cache start over
+
+	private void update() {
+		int count = 0;
+		for(CompiledDFSM machine : machines)
+			if (machine != null)
+				count++;
+		ids = new int[count];
+		members = new CompiledDFSM[count];
+		table = new int[count][];
+		absorbing = new boolean[count][];
+		count = 0;
+		for(int id = 0; id < machines.size(); id++)
+			if (machines.get(id) != null) {
+				ids[count] = id;
+				table[count] = tables.get(id);
+				absorbing[count] = absorbingStates.get(id);
+				members[count++] = machines.get(id);
+			}
+
+		Arrays.fill(charClass, -1);
+		classIndex.clear();
+		classes.clear();
+		read = stepBudget = 0;
+		failures = 0;
+		reset();
+	}
+
+	// empties the cache, and makes the initial state of the combined machine its state 0
+
+	private void reset() {
+		stateIndex.clear();
+		tuples.clear();
+		next = new int[16][];
+		accepts = new long[16][];
+		int[] initial = new int[members.length];
+		for(int i = 0; i < members.length; i++)
+			initial[i] = members[i].initialState();
+		state(initial);
+	}
+
+	private int classOf(char c) {
+		int k = charClass[c];
+		if (k >= 0)
+			return k;
+		int[] vector = new int[members.length];
+		for(int i = 0; i < members.length; i++)
+			vector[i] = members[i].symbolClasses().classOf(c);
+		Tuple key = new Tuple(vector);
+		Integer known = classIndex.get(key);
+		if (known == null) {
+			known = classes.size();
+			classIndex.put(key, known);
+			classes.add(vector);
+		}
+		return charClass[c] = known;
+	}
+
+	// the number of the cached state with tuple, which is added if it is not there yet
+
+	private int state(int[] tuple) {
+		Tuple key = new Tuple(tuple);
+		Integer known = stateIndex.get(key);
+		if (known != null)
+			return known;
+
+		int s = tuples.size();
+		if (s == next.length) {
+			next = Arrays.copyOf(next, s * 2);
+			accepts = Arrays.copyOf(accepts, s * 2);
+		}
+		stateIndex.put(key, s);
+		tuples.add(tuple);
+		next[s] = new int[classes.size()];
+		accepts[s] = new long[(members.length + 63) >>> 6];
+		for(int i = 0; i < members.length; i++)
+			if (members[i].isAccepting(tuple[i]))
+				accepts[s][i >>> 6] |= 1L << i;
+		return s;
+	}
+
+	// makes the transition of state s on class k; if the cache is full it is emptied first, and s is gone
+
+	private int step(int s, int k) {
+		int[] from = tuples.get(s);
+		int[] vector = classes.get(k);
+		int[] to = new int[members.length];
+		for(int i = 0; i < members.length; i++)
+			to[i] = members[i].next(from[i], vector[i]);
+		if (tuples.size() >= cacheLimit) {
+			// too few characters were read per state made: the cache costs more than it saves for a while,
+			// which doubles every time it is found not to pay in a row
+			if (read < MIN_CHARACTERS_PER_STATE * tuples.size()) {
+				stepBudget = (long)MIN_CHARACTERS_PER_STATE * cacheLimit << failures;
+				failures = Math.min(failures + 1, MAX_FAILURES);
+			} else {
+				failures = 0;
+			}
+			read = 0;
+			reset();
+			return state(to);
+		}
+		int t = state(to);
+		if (k >= next[s].length)
+			next[s] = Arrays.copyOf(next[s], classes.size());
+		next[s][k] = t + 1;
+		return t;
+	}
+
+	// a pass over one input, through the cache, or by stepping the machines while the cache does not pay
+
+	private final class Scan {
+
+		private int state = 0;
+
+		// the state of every member while stepping (null when using the cache), and the positions of the
+		// members that are not in a state they never leave, the first active of them
+
+		private int[] tuple = null;
+		private int[] live = null;
+		private int active = 0;
+
+		Scan() {
+			if (stepBudget > 0)
+				startStepping();
+		}
+
+		private void startStepping() {
+			tuple = tuples.get(state).clone();
+			live = new int[members.length];
+			active = 0;
+			for(int m = 0; m < members.length; m++)
+				if (!absorbing[m][tuple[m]])
+					live[active++] = m;
+		}
+
+		void feed(CharSequence input) {
+			int i = 0, end = input.length();
+			if (tuple != null && stepBudget <= 0) {
+				state = state(tuple);
+				tuple = null;
+			}
+			while (i < end && tuple == null) {
+				int s = state, start = i;
+				int[][] next = MachineSet.this.next;
+				for(; i < end; i++) {
+					int k = classOf(input.charAt(i));
+					int[] row = next[s];
+					int t = k < row.length ? row[k] : 0;
+					if (t == 0)
+						break;
+					s = t - 1;
+				}
+				read += i - start;
+				if (i == end) {
+					state = s;
+					break;
+				}
+				// a transition that is not in the cache
+				state = step(s, classOf(input.charAt(i++)));
+				read++;
+				if (stepBudget > 0)
+					startStepping();
+			}
+			if (tuple == null)
+				return;
+			stepBudget -= end - i;
+			// a block of the input at a time, over which every active machine is run in turn
+			char[] block = new char[Math.min(BLOCK_SIZE, end - i)];
+			for(; i < end && active > 0; i += block.length) {
+				int length = Math.min(block.length, end - i);
+				for(int j = 0; j < length; j++)
+					block[j] = input.charAt(i + j);
+				for(int j = 0; j < active; ) {
+					int m = live[j];
+					tuple[m] = run(m, tuple[m], block, length);
+					if (absorbing[m][tuple[m]])
+						live[j] = live[--active];
+					else
+						j++;
+				}
+			}
+		}
+
+		// the state member m reaches from state s on block[0 .. length-1]
+
+		private int run(int m, int s, char[] block, int length) {
+			int[] next = table[m];
+			SymbolClasses classes = members[m].symbolClasses();
+			int width = classes.classCount();
+			int row = s * width;
+			for(int i = 0; i < length; i++)
+				row = next[row + classes.classOf(block[i])];
+			return row / width;
+		}
+
+		BitSet accepting() {
+			BitSet result = new BitSet();
+			if (tuple != null) {
+				for(int i = 0; i < members.length; i++)
+					if (members[i].isAccepting(tuple[i]))
+						result.set(ids[i]);
+				return result;
+			}
+			long[] accepting = accepts[state];
+			for(int w = 0; w < accepting.length; w++)
+				for(long word = accepting[w]; word != 0; word &= word - 1)
+					result.set(ids[(w << 6) + Long.numberOfTrailingZeros(word)]);
+			return result;
+		}
+	}
+
+	// an array of ints as a key of a hash map
+
+	private static final class Tuple {
+
+		private final int[] values;
+		private final int hash;
+
+		Tuple(int[] values) {
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Tuple && Arrays.equals(values, ((Tuple)obj).values);
+		}
+	}
+}
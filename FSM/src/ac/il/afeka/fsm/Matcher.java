@@ -0,0 +1,16 @@
+package ac.il.afeka.fsm;
+
+/** Decides membership of strings in the language of a state machine.
+ *
+ * <p>Implementations are free to represent the machine in whatever way makes matching fast, but
+ * they all recognize exactly the language of the machine they were made from.</p>
+ */
+public interface Matcher {
+
+	/** Returns true if and only if input belongs to the language of the machine.
+	 *
+	 * @param input a string; characters that are not in the machine's alphabet are rejected
+	 * @return true if and only if the machine accepts input
+	 */
+	boolean matches(CharSequence input);
+}
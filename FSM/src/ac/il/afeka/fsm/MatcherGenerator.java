@@ -0,0 +1,548 @@
+package ac.il.afeka.fsm;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A generator of JVM classes that match the language of one DFSM.
+ *
+ * <p>A <code>CompiledDFSM</code> loads a table entry for every character. A generated matcher has the
+ * machine in its code instead: every state is a block of code that reads a character, finds its
+ * transition with a binary search of constant comparisons, and jumps to the block of the next state.
+ * Whether a state is accepting is a constant in its block, and every state that can no longer reach an
+ * accepting state returns false at once, without reading the rest of the input.</p>
+ *
+ * <p>Each generated class is defined by a class loader of its own, so it is unloaded when its matcher is
+ * no longer used. The generator keeps the number of live generated classes bounded; machines with more
+ * states than the limit, or whose code would not fit in a method, and all machines once the limit of live
+ * classes is reached, get their <code>CompiledDFSM</code> table as a matcher instead. For example</p>
+ *
+ * <code>
+ * Matcher matcher = new MatcherGenerator().generate(aDFSM);
+ * matcher.matches("aab");
+ * </code>
+ */
+public final class MatcherGenerator {
+
+	/** The default largest number of states of a machine that the generator generates a class for. */
+	public static final int DEFAULT_MAX_STATES = 1024;
+
+	/** The default largest number of generated classes that may be live at once. */
+	public static final int DEFAULT_MAX_LIVE_CLASSES = 512;
+
+	private static final AtomicInteger names = new AtomicInteger();
+
+	// the generated classes that are live: a weak reference to the matcher of each
+
+	private static final AtomicInteger live = new AtomicInteger();
+	private static final ReferenceQueue<Matcher> collected = new ReferenceQueue<Matcher>();
+	private static final Set<Reference<Matcher>> tracked = Collections.newSetFromMap(new ConcurrentHashMap<Reference<Matcher>, Boolean>());
+
+	private final int maxStates;
+	private final int maxLiveClasses;
+
+	/** Creates a generator with the default limits. */
+	public MatcherGenerator() {
+		this(DEFAULT_MAX_STATES, DEFAULT_MAX_LIVE_CLASSES);
+	}
+
+	/** Creates a generator.
+	 *
+	 * @param maxStates			the largest number of states of a machine to generate a class for
+	 * @param maxLiveClasses	the largest number of generated classes that may be live at once
+	 */
+	public MatcherGenerator(int maxStates, int maxLiveClasses) {
+		this.maxStates = maxStates;
+		this.maxLiveClasses = maxLiveClasses;
+	}
+
+	/** Generates a matcher for dfsm.
+	 *
+	 * @param dfsm a DFSM
+	 * @return a generated matcher, or the compiled table of dfsm if it is too large or too many classes are live
+	 */
+	public Matcher generate(DFSM dfsm) {
+		return generate(dfsm.compile());
+	}
+
+	/** Generates a matcher for a compiled machine.
+	 *
+	 * @param machine a compiled DFSM
+	 * @return a generated matcher, or machine itself if it is too large or too many classes are live
+	 */
+	public Matcher generate(CompiledDFSM machine) {
+
+		if (machine.stateCount() > maxStates || !reserve())
+			return machine;
+
+		// the reservation is returned unless the new class is tracked, whatever stops the generation
+		boolean generated = false;
+		try {
+			String name = "ac.il.afeka.fsm.GeneratedMatcher" + names.incrementAndGet();
+			byte[] bytes = new Generator(machine).generate(name.replace('.', '/'));
+			Class<?> matcherClass = new Loader(Matcher.class.getClassLoader()).define(name, bytes);
+			Matcher matcher = (Matcher)matcherClass.getDeclaredConstructor().newInstance();
+			tracked.add(new WeakReference<Matcher>(matcher, collected));
+			generated = true;
+			return matcher;
+		} catch (Exception | LinkageError e) {
+			// the code does not fit in a method, or the JVM would not define, verify or instantiate the class
+			return machine;
+		} finally {
+			if (!generated)
+				live.decrementAndGet();
+		}
+	}
+
+	/** Chooses the faster of a generated matcher and the compiled table of machine, by timing both on sample.
+	 *
+	 * @param machine	a compiled DFSM
+	 * @param sample	inputs that are typical of the inputs the matcher will get
+	 * @return the matcher that matched the sample faster
+	 */
+	public Matcher fastest(CompiledDFSM machine, Collection<? extends CharSequence> sample) {
+
+		Matcher generated = generate(machine);
+		if (generated == machine)
+			return machine;
+
+		// run both a few times first, so that both are compiled by the JIT before they are timed
+		for(int round = 0; round < 3; round++) {
+			time(machine, sample);
+			time(generated, sample);
+		}
+		return time(generated, sample) < time(machine, sample) ? generated : machine;
+	}
+
+	private static long time(Matcher matcher, Collection<? extends CharSequence> sample) {
+		long start = System.nanoTime();
+		for(CharSequence input : sample)
+			matcher.matches(input);
+		return System.nanoTime() - start;
+	}
+
+	/** @param matcher a matcher
+	 *  @return true if and only if matcher was generated by a <code>MatcherGenerator</code> */
+	public static boolean isGenerated(Matcher matcher) {
+		return matcher.getClass().getClassLoader() instanceof Loader;
+	}
+
+	/** @return the number of generated classes whose matchers were not garbage collected yet */
+	public static int liveClasses() {
+		expunge();
+		return live.get();
+	}
+
+	private boolean reserve() {
+		expunge();
+		while (true) {
+			int current = live.get();
+			if (current >= maxLiveClasses)
+				return false;
+			if (live.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+
+	private static void expunge() {
+		Reference<? extends Matcher> reference;
+		while ((reference = collected.poll()) != null) {
+			if (tracked.remove(reference))
+				live.decrementAndGet();
+		}
+	}
+
+	private static final class Loader extends ClassLoader {
+
+		Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/* Writes the class file of a matcher.
+	 *
+	 * The class file has version 49, which the JVM verifies without stack map frames, so the generator
+	 * needs no frame computation. The locals of matches are: 1 input, 2 the position, 3 the length of the
+	 * input and 4 the current character (or code point). */
+
+	private static final class Generator {
+
+		private static final int CODE_LIMIT = Short.MAX_VALUE;
+
+		private final CompiledDFSM machine;
+		private final boolean codePoints;
+
+		private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		private final Map<String, Integer> constants = new HashMap<String, Integer>();
+		private int constantCount = 1;
+
+		private byte[] code = new byte[256];
+		private int length = 0;
+		private final List<Label> labels = new ArrayList<Label>();
+
+		Generator(CompiledDFSM machine) {
+			this.machine = machine;
+			this.codePoints = machine.symbolClasses().codePoints();
+		}
+
+		byte[] generate(String name) throws IOException {
+
+			int thisClass = classConstant(name);
+			int superClass = classConstant("java/lang/Object");
+			int matcher = classConstant("ac/il/afeka/fsm/Matcher");
+
+			ByteArrayOutputStream methods = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(methods);
+
+			// public <init>() { super(); }
+			emit(0x2A);
+			emit(0xB7);
+			emit2(methodConstant(10, "java/lang/Object", "<init>", "()V"));
+			emit(0xB1);
+			writeMethod(out, 0x0001, "<init>", "()V", 1, 1);
+
+			length = 0;
+			writeMatches();
+			writeMethod(out, 0x0001, "matches", "(Ljava/lang/CharSequence;)Z", 3, 5);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream file = new DataOutputStream(bytes);
+			file.writeInt(0xCAFEBABE);
+			file.writeShort(0);
+			file.writeShort(49);
+			file.writeShort(constantCount);
+			pool.writeTo(file);
+			file.writeShort(0x0031);	// public final super
+			file.writeShort(thisClass);
+			file.writeShort(superClass);
+			file.writeShort(1);
+			file.writeShort(matcher);
+			file.writeShort(0);
+			file.writeShort(2);
+			methods.writeTo(file);
+			file.writeShort(0);
+			file.flush();
+			return bytes.toByteArray();
+		}
+
+		private void writeMethod(DataOutputStream out, int access, String name, String descriptor, int maxStack, int maxLocals) throws IOException {
+			out.writeShort(access);
+			out.writeShort(utf8Constant(name));
+			out.writeShort(utf8Constant(descriptor));
+			out.writeShort(1);
+			out.writeShort(utf8Constant("Code"));
+			out.writeInt(12 + length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(length);
+			out.write(code, 0, length);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+
+		private void writeMatches() {
+
+			int n = machine.stateCount();
+			int width = machine.symbolClasses().classCount();
+			int[][] intervals = machine.symbolClasses().intervals();
+			int max = codePoints ? Character.MAX_CODE_POINT : Character.MAX_VALUE;
+
+			// the states that cannot reach an accepting state, such as the trap state of a total DFSM that
+			// was not minimized, all jump to one block that returns false without reading on
+
+			boolean[] sink = machine.deadStates();
+
+			Label dead = new Label();
+			Label[] labels = new Label[n];
+			for(int s = 0; s < n; s++)
+				labels[s] = sink[s] ? dead : new Label();
+
+			// the states reachable from the initial state, in breadth first order
+
+			List<Integer> order = new ArrayList<Integer>();
+			boolean[] seen = new boolean[n];
+			int initial = machine.initialState();
+			seen[initial] = true;
+			order.add(initial);
+			for(int i = 0; i < order.size(); i++) {
+				int s = order.get(i);
+				if (sink[s])
+					continue;
+				for(int c = 0; c < width; c++) {
+					int t = machine.next(s, c);
+					if (!seen[t]) {
+						seen[t] = true;
+						order.add(t);
+					}
+				}
+			}
+
+			// i = 0; n = input.length();
+			emit(0x03);
+			emit(0x3D);
+			emit(0x2B);
+			emitInterface("length", "()I", 1);
+			emit(0x3E);
+			jump(0xA7, labels[initial]);
+
+			int[] lo = new int[intervals[0].length], hi = new int[lo.length];
+			Label[] targets = new Label[lo.length];
+
+			for(int s : order) {
+				if (sink[s])
+					continue;
+				bind(labels[s]);
+
+				// if (i >= n) return accepting;
+				Label read = new Label();
+				emit(0x1C);
+				emit(0x1D);
+				jump(0xA1, read);
+				emit(machine.isAccepting(s) ? 0x04 : 0x03);
+				emit(0xAC);
+				bind(read);
+
+				if (codePoints) {
+					// c = Character.codePointAt(input, i); i += Character.charCount(c);
+					emit(0x2B);
+					emit(0x1C);
+					emit(0xB8);
+					emit2(methodConstant(10, "java/lang/Character", "codePointAt", "(Ljava/lang/CharSequence;I)I"));
+					emit(0x36);
+					emit(4);
+					emit(0x1C);
+					emit(0x15);
+					emit(4);
+					emit(0xB8);
+					emit2(methodConstant(10, "java/lang/Character", "charCount", "(I)I"));
+					emit(0x60);
+					emit(0x3D);
+				} else {
+					// c = input.charAt(i++);
+					emit(0x2B);
+					emit(0x1C);
+					emitInterface("charAt", "(I)C", 2);
+					emit(0x36);
+					emit(4);
+					emit(0x84);
+					emit(2);
+					emit(1);
+				}
+
+				// the intervals that lead out of the dead state, with neighbours of the same target merged
+				int rows = 0;
+				for(int i = 0; i < intervals[0].length; i++) {
+					int t = machine.next(s, intervals[1][i]);
+					if (labels[t] == dead)
+						continue;
+					int first = intervals[0][i];
+					int last = i + 1 < intervals[0].length ? intervals[0][i + 1] - 1 : max;
+					if (rows > 0 && targets[rows - 1] == labels[t] && hi[rows - 1] == first - 1) {
+						hi[rows - 1] = last;
+					} else {
+						lo[rows] = first;
+						hi[rows] = last;
+						targets[rows++] = labels[t];
+					}
+				}
+				search(lo, hi, targets, 0, rows - 1, 0, max, dead);
+
+				if (length > CODE_LIMIT)
+					throw new IllegalStateException("The machine is too large for a method");
+			}
+
+			bind(dead);
+			emit(0x03);
+			emit(0xAC);
+
+			if (length > CODE_LIMIT)
+				throw new IllegalStateException("The machine is too large for a method");
+
+			for(Label label : this.labels)
+				label.resolve();
+		}
+
+		// jumps to the target of the interval that holds c, knowing that min <= c <= max, or to dead
+
+		private void search(int[] lo, int[] hi, Label[] targets, int l, int r, int min, int max, Label dead) {
+
+			if (l > r) {
+				jump(0xA7, dead);
+				return;
+			}
+
+			int mid = (l + r) >>> 1;
+			Label left = l < mid ? new Label() : dead;
+
+			// if (c < lo) goto left; if (c <= hi) goto target;
+			if (lo[mid] > min) {
+				emit(0x15);
+				emit(4);
+				emitInt(lo[mid]);
+				jump(0xA1, left);
+			}
+			if (hi[mid] < max) {
+				emit(0x15);
+				emit(4);
+				emitInt(hi[mid]);
+				jump(0xA4, targets[mid]);
+				search(lo, hi, targets, mid + 1, r, hi[mid] + 1, max, dead);
+			} else {
+				jump(0xA7, targets[mid]);
+			}
+
+			if (l < mid) {
+				bind(left);
+				search(lo, hi, targets, l, mid - 1, min, lo[mid] - 1, dead);
+			}
+		}
+
+		private void emitInt(int value) {
+			if (value <= 5) {
+				emit(0x03 + value);
+			} else if (value <= Byte.MAX_VALUE) {
+				emit(0x10);
+				emit(value);
+			} else if (value <= Short.MAX_VALUE) {
+				emit(0x11);
+				emit2(value);
+			} else {
+				emit(0x13);
+				emit2(integerConstant(value));
+			}
+		}
+
+		private void emitInterface(String name, String descriptor, int argumentSlots) {
+			emit(0xB9);
+			emit2(methodConstant(11, "java/lang/CharSequence", name, descriptor));
+			emit(argumentSlots);
+			emit(0);
+		}
+
+		private void jump(int opcode, Label target) {
+			target.references.add(length);
+			emit(opcode);
+			emit2(0);
+		}
+
+		private void bind(Label label) {
+			label.position = length;
+		}
+
+		private void emit(int b) {
+			if (length == code.length)
+				code = Arrays.copyOf(code, length * 2);
+			code[length++] = (byte)b;
+		}
+
+		private void emit2(int value) {
+			emit(value >> 8);
+			emit(value);
+		}
+
+		// a jump target; the offsets of the jumps to it are filled in once all the code is written
+
+		private final class Label {
+			int position = -1;
+			final List<Integer> references = new ArrayList<Integer>();
+
+			Label() {
+				labels.add(this);
+			}
+
+			void resolve() {
+				for(int at : references) {
+					int offset = position - at;
+					code[at + 1] = (byte)(offset >> 8);
+					code[at + 2] = (byte)offset;
+				}
+				references.clear();
+			}
+		}
+
+		// the constant pool
+
+		private int utf8Constant(String value) {
+			Integer index = constants.get("U" + value);
+			if (index == null) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				pool.write(1);
+				pool.write(bytes.length >> 8);
+				pool.write(bytes.length);
+				pool.write(bytes, 0, bytes.length);
+				index = add("U" + value);
+			}
+			return index;
+		}
+
+		private int classConstant(String name) {
+			Integer index = constants.get("C" + name);
+			if (index == null) {
+				int utf8 = utf8Constant(name);
+				pool.write(7);
+				pool.write(utf8 >> 8);
+				pool.write(utf8);
+				index = add("C" + name);
+			}
+			return index;
+		}
+
+		private int methodConstant(int tag, String owner, String name, String descriptor) {
+			String key = "M" + owner + "." + name + descriptor;
+			Integer index = constants.get(key);
+			if (index == null) {
+				int ownerIndex = classConstant(owner);
+				int nameIndex = utf8Constant(name);
+				int descriptorIndex = utf8Constant(descriptor);
+				pool.write(12);
+				pool.write(nameIndex >> 8);
+				pool.write(nameIndex);
+				pool.write(descriptorIndex >> 8);
+				pool.write(descriptorIndex);
+				int nameAndType = add("N" + key);
+				pool.write(tag);
+				pool.write(ownerIndex >> 8);
+				pool.write(ownerIndex);
+				pool.write(nameAndType >> 8);
+				pool.write(nameAndType);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int integerConstant(int value) {
+			Integer index = constants.get("I" + value);
+			if (index == null) {
+				pool.write(3);
+				pool.write(value >> 24);
+				pool.write(value >> 16);
+				pool.write(value >> 8);
+				pool.write(value);
+				index = add("I" + value);
+			}
+			return index;
+		}
+
+		private int add(String key) {
+			constants.put(key, constantCount);
+			return constantCount++;
+		}
+	}
+}
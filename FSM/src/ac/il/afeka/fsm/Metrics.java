@@ -0,0 +1,47 @@
+package ac.il.afeka.fsm;
+
+/** The hook through which state machine operations report their statistics.
+ *
+ * <p>For example, the statement</p>
+ *
+ * <code>
+ * Metrics.setListener(stats -&gt; System.out.println(stats));
+ * </code>
+ *
+ * <p>prints a line with the counters and the timing of every conversion, minimization,
+ * canonicalization and computation that follows. Setting the listener to null turns the
+ * instrumentation off; operations then skip all the bookkeeping.</p>
+ */
+public final class Metrics {
+
+	private static volatile MetricsListener listener = null;
+
+	private Metrics() { }
+
+	/** Installs the listener that will receive the statistics of all subsequent operations.
+	 *
+	 * @param listener the listener, or null to stop collecting statistics
+	 */
+	public static void setListener(MetricsListener listener) {
+		Metrics.listener = listener;
+	}
+
+	/** Returns the installed listener.
+	 *
+	 * @return the installed listener, or null if there is none
+	 */
+	public static MetricsListener listener() {
+		return listener;
+	}
+
+	// returns the statistics object for a new operation, or null if nobody is listening
+
+	static OperationStats start(OperationStats.Operation operation) {
+		MetricsListener current = listener;
+		if (current == null)
+			return null;
+		OperationStats stats = new OperationStats(operation, current);
+		current.operationStarted(stats);
+		return stats;
+	}
+}
@@ -0,0 +1,25 @@
+package ac.il.afeka.fsm;
+
+/** Receives the statistics of the operations performed on state machines.
+ *
+ * <p>A listener is installed with <code>Metrics.setListener</code>. When no listener is installed
+ * the operations do not collect any statistics at all.</p>
+ *
+ * <p>Listeners are called on the thread that performed the operation, right before it starts and
+ * right after it completes, so they should be fast and thread safe.</p>
+ */
+public interface MetricsListener {
+
+	/** Called before an operation starts; all the counters of stats are still zero. Does nothing by default.
+	 *
+	 * @param stats the statistics of the operation, which <code>operationCompleted</code> receives later
+	 */
+	default void operationStarted(OperationStats stats) {
+	}
+
+	/** Called after an operation completes.
+	 *
+	 * @param stats the statistics of the operation
+	 */
+	void operationCompleted(OperationStats stats);
+}
@@ -0,0 +1,413 @@
+package ac.il.afeka.fsm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Builds a minimal DFSM that accepts a finite set of words, one word at a time.
+ *
+ * <p>The builder implements the incremental construction of Daciuk, Mihov, Watson and Watson.
+ * It keeps a register of the states that are already known to be unique (no other state accepts
+ * the same set of suffixes), and merges every new state with its equivalent in the register as soon
+ * as the state can no longer change. The automaton is therefore minimal (except for the part that is
+ * still being built) after every word, and memory stays proportional to the minimal automaton
+ * rather than to the trie of the words.</p>
+ *
+ * <p>For example, the statements</p>
+ *
+ * <code>
+ * MinimalDFSMBuilder builder = new MinimalDFSMBuilder(Alphabet.parse("a b"));
+ * builder.add("ab");
+ * builder.add("b");
+ * DFSM aDFSM = builder.build();
+ * </code>
+ *
+ * <p>create a DFSM that accepts exactly the strings "ab" and "b".</p>
+ *
+ * <p>By default the words must be added in the lexicographical order of the alphabet, as in a dictionary:
+ * a word comes after its proper prefixes, and otherwise the first symbol where two words differ decides,
+ * whatever their lengths, so "aa" comes before "b"; this is the fastest mode. A builder created with
+ * <code>sortedInput</code> set to false accepts the words in any order, at the cost of cloning the
+ * shared states on the path of every new word.</p>
+ */
+public class MinimalDFSMBuilder {
+
+	private static final int[] NO_LABELS = new int[0];
+	private static final Node[] NO_TARGETS = new Node[0];
+
+	private static final class Node {
+
+		boolean accepting;
+		int[] labels = NO_LABELS;
+		Node[] targets = NO_TARGETS;
+		int size;
+		int inDegree;
+
+		Node target(int label) {
+			int i = Arrays.binarySearch(labels, 0, size, label);
+			return i >= 0 ? targets[i] : null;
+		}
+
+		// adds or replaces the transition on label and returns the node it replaced (if any)
+
+		Node setTarget(int label, Node target) {
+			int i = Arrays.binarySearch(labels, 0, size, label);
+			if (i >= 0) {
+				Node old = targets[i];
+				targets[i] = target;
+				return old;
+			}
+			i = -i - 1;
+			if (size == labels.length) {
+				int capacity = Math.max(2, size * 2);
+				labels = Arrays.copyOf(labels, capacity);
+				targets = Arrays.copyOf(targets, capacity);
+			}
+			System.arraycopy(labels, i, labels, i + 1, size - i);
+			System.arraycopy(targets, i, targets, i + 1, size - i);
+			labels[i] = label;
+			targets[i] = target;
+			size++;
+			return null;
+		}
+
+		Node copy() {
+			Node clone = new Node();
+			clone.accepting = accepting;
+			clone.labels = Arrays.copyOf(labels, size);
+			clone.targets = Arrays.copyOf(targets, size);
+			clone.size = size;
+			return clone;
+		}
+
+		// two nodes are equivalent if they agree on acceptance and go to the very same nodes on the same labels
+
+		@Override
+		public int hashCode() {
+			int result = accepting ? 1 : 0;
+			for(int i = 0; i < size; i++) {
+				result = 31 * result + labels[i];
+				result = 31 * result + System.identityHashCode(targets[i]);
+			}
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			Node other = (Node)obj;
+			if (accepting != other.accepting || size != other.size)
+				return false;
+			for(int i = 0; i < size; i++) {
+				if (labels[i] != other.labels[i] || targets[i] != other.targets[i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private final Alphabet alphabet;
+	private final Map<Character, Integer> symbolIndex;
+	private final boolean sortedInput;
+
+	private final Node root = new Node();
+	private final Map<Node, Node> register = new HashMap<Node, Node>();
+
+	// the path of the last word added in sorted mode; the nodes after the root are not registered yet
+
+	private Node[] path = new Node[] { root };
+	private int[] lastWord = NO_LABELS;
+	private boolean hasWords = false;
+	private boolean built = false;
+
+	/** Creates a builder for words that will be added in the lexicographical order of alphabet.
+	 *
+	 * @param alphabet the alphabet of the words and of the resulting machine
+	 */
+	public MinimalDFSMBuilder(Alphabet alphabet) {
+		this(alphabet, true);
+	}
+
+	/** Creates a builder for words over alphabet.
+	 *
+	 * @param alphabet		the alphabet of the words and of the resulting machine
+	 * @param sortedInput	true if the words will be added in the lexicographical order of alphabet,
+	 * 						false if they may be added in any order
+	 */
+	public MinimalDFSMBuilder(Alphabet alphabet, boolean sortedInput) {
+		this.alphabet = alphabet;
+		this.sortedInput = sortedInput;
+		this.symbolIndex = new HashMap<Character, Integer>();
+		int i = 0;
+		for(Character c : alphabet)
+			symbolIndex.put(c, i++);
+	}
+
+	/** Adds a word to the language of the machine under construction. Adding a word twice has no effect.
+	 *
+	 * @param word a string whose characters are members of the builder's alphabet
+	 * @throws Exception if the word contains a symbol that is not in the alphabet, if the builder
+	 * expects sorted input and word is smaller than the previous word, or if the sorted machine was already built
+	 */
+	public void add(String word) throws Exception {
+
+		int[] labels = new int[word.length()];
+		for(int i = 0; i < labels.length; i++) {
+			Integer label = symbolIndex.get(word.charAt(i));
+			if (label == null)
+				throw new Exception("Word \"" + word + "\" contains symbol " + word.charAt(i) + " that is not a part of the alphabet");
+			labels[i] = label;
+		}
+
+		if (sortedInput)
+			addSorted(labels, word);
+		else
+			addUnsorted(labels);
+	}
+
+	/** Adds all the given words, in iteration order.
+	 *
+	 * @param words strings whose characters are members of the builder's alphabet
+	 * @throws Exception under the same conditions as <code>add</code>
+	 */
+	public void addAll(Iterable<String> words) throws Exception {
+		for(String word : words)
+			add(word);
+	}
+
+	/** Returns a minimal DFSM that accepts exactly the words added so far.
+	 *
+	 * <p>The machine has a trap state for the transitions that leave the set of prefixes of the words
+	 * (unless it is not needed). In sorted mode this completes the construction and no more words can be
+	 * added; in unsorted mode the builder can keep on accepting words after this call.</p>
+	 *
+	 * @return a minimal DFSM whose language is the set of words added to this builder
+	 * @throws Exception if the resulting machine is not a valid DFSM
+	 */
+	public DFSM build() throws Exception {
+
+		if (sortedInput && !built) {
+			registerPathBelow(0);
+			built = true;
+		}
+
+		return toDFSM();
+	}
+
+	/** Builds a minimal DFSM for a list of words sorted in the lexicographical order of alphabet.
+	 *
+	 * @param alphabet	the alphabet of the words
+	 * @param words		the words, sorted in the lexicographical order of alphabet
+	 * @return a minimal DFSM that accepts exactly the given words
+	 * @throws Exception if the words are not sorted or contain symbols not in alphabet
+	 */
+	public static DFSM fromSortedWords(Alphabet alphabet, Iterable<String> words) throws Exception {
+		MinimalDFSMBuilder builder = new MinimalDFSMBuilder(alphabet, true);
+		builder.addAll(words);
+		return builder.build();
+	}
+
+	/** Builds a minimal DFSM for a list of words in any order.
+	 *
+	 * @param alphabet	the alphabet of the words
+	 * @param words		the words
+	 * @return a minimal DFSM that accepts exactly the given words
+	 * @throws Exception if the words contain symbols not in alphabet
+	 */
+	public static DFSM fromWords(Alphabet alphabet, Iterable<String> words) throws Exception {
+		MinimalDFSMBuilder builder = new MinimalDFSMBuilder(alphabet, false);
+		builder.addAll(words);
+		return builder.build();
+	}
+
+	private void addSorted(int[] word, String original) throws Exception {
+
+		if (built)
+			throw new Exception("Cannot add \"" + original + "\": the machine was already built");
+
+		int common = 0;
+		while (common < word.length && common < lastWord.length && word[common] == lastWord[common])
+			common++;
+
+		if (hasWords) {
+			if (common == word.length && common == lastWord.length)
+				return; // the same word again
+
+			if (common == word.length || (common < lastWord.length && word[common] < lastWord[common]))
+				throw new Exception("Words must be added in lexicographical order, but \"" + original + "\" comes before the previous word");
+		}
+
+		// the part of the previous word's path after the common prefix will not change anymore
+
+		registerPathBelow(common);
+
+		if (path.length < word.length + 1)
+			path = Arrays.copyOf(path, Math.max(word.length + 1, path.length * 2));
+
+		for(int i = common; i < word.length; i++) {
+			Node next = new Node();
+			path[i].setTarget(word[i], next);
+			path[i + 1] = next;
+		}
+		path[word.length].accepting = true;
+
+		lastWord = word;
+		hasWords = true;
+	}
+
+	// replaces the nodes of the last word's path below depth with their registered equivalents, deepest first
+
+	private void registerPathBelow(int depth) {
+		for(int i = lastWord.length; i > depth; i--) {
+			Node child = path[i];
+			Node equivalent = register.get(child);
+			if (equivalent == null)
+				register.put(child, child);
+			else
+				path[i - 1].setTarget(lastWord[i - 1], equivalent);
+			path[i] = null;
+		}
+	}
+
+	private void addUnsorted(int[] word) {
+
+		// follow the longest prefix of word that is already in the machine
+
+		Node[] nodes = new Node[word.length + 1];
+		nodes[0] = root;
+		int common = 0;
+		while (common < word.length) {
+			Node next = nodes[common].target(word[common]);
+			if (next == null)
+				break;
+			nodes[++common] = next;
+		}
+
+		if (common == word.length && nodes[common].accepting)
+			return;
+
+		// every node on the prefix path is about to change; shared (confluence) nodes and
+		// everything after them are cloned, the others are taken out of the register
+
+		int firstConfluence = common + 1;
+		for(int i = 1; i <= common; i++) {
+			if (nodes[i].inDegree > 1) {
+				firstConfluence = i;
+				break;
+			}
+		}
+
+		for(int i = 1; i <= common; i++) {
+			if (i < firstConfluence) {
+				if (register.get(nodes[i]) == nodes[i])
+					register.remove(nodes[i]);
+			} else {
+				Node clone = nodes[i].copy();
+				for(int j = 0; j < clone.size; j++)
+					clone.targets[j].inDegree++;
+				replaceTarget(nodes[i - 1], word[i - 1], clone);
+				nodes[i] = clone;
+			}
+		}
+
+		for(int i = common; i < word.length; i++) {
+			Node next = new Node();
+			replaceTarget(nodes[i], word[i], next);
+			nodes[i + 1] = next;
+		}
+		nodes[word.length].accepting = true;
+
+		for(int i = word.length; i > 0; i--) {
+			Node child = nodes[i];
+			Node equivalent = register.get(child);
+			if (equivalent == null) {
+				register.put(child, child);
+			} else {
+				replaceTarget(nodes[i - 1], word[i - 1], equivalent);
+			}
+		}
+	}
+
+	private void replaceTarget(Node node, int label, Node target) {
+		target.inDegree++;
+		Node old = node.setTarget(label, target);
+		if (old != null && --old.inDegree == 0)
+			delete(old);
+	}
+
+	// releases a node that is no longer referenced, together with anything that only it referenced
+
+	private void delete(Node node) {
+		List<Node> todo = new ArrayList<Node>();
+		todo.add(node);
+		while (!todo.isEmpty()) {
+			Node dead = todo.remove(todo.size() - 1);
+			if (register.get(dead) == dead)
+				register.remove(dead);
+			for(int i = 0; i < dead.size; i++) {
+				if (--dead.targets[i].inDegree == 0)
+					todo.add(dead.targets[i]);
+			}
+		}
+	}
+
+	private DFSM toDFSM() throws Exception {
+
+		List<Character> symbols = new ArrayList<Character>();
+		for(Character c : alphabet)
+			symbols.add(c);
+
+		// number the nodes in breadth first order from the root
+
+		Map<Node, State> ids = new HashMap<Node, State>();
+		List<Node> order = new ArrayList<Node>();
+		order.add(root);
+		ids.put(root, new IdentifiedState(0));
+		for(int head = 0; head < order.size(); head++) {
+			Node node = order.get(head);
+			for(int i = 0; i < node.size; i++) {
+				Node target = node.targets[i];
+				if (!ids.containsKey(target)) {
+					ids.put(target, new IdentifiedState(order.size()));
+					order.add(target);
+				}
+			}
+		}
+
+		Set<State> states = new HashSet<State>(ids.values());
+		Set<State> acceptingStates = new HashSet<State>();
+		Set<Transition> transitions = new HashSet<Transition>();
+
+		boolean needsTrap = false;
+		for(Node node : order) {
+			if (node.size < symbols.size())
+				needsTrap = true;
+		}
+
+		// an empty, non accepting root is its own trap state
+
+		State trap = null;
+		if (needsTrap)
+			trap = root.size == 0 && !root.accepting ? ids.get(root) : new IdentifiedState(order.size());
+		if (trap != null)
+			states.add(trap);
+
+		for(Node node : order) {
+			State from = ids.get(node);
+			if (node.accepting)
+				acceptingStates.add(from);
+			for(int label = 0; label < symbols.size(); label++) {
+				Node target = node.target(label);
+				transitions.add(new Transition(from, symbols.get(label), target == null ? trap : ids.get(target)));
+			}
+		}
+		if (trap != null && trap != ids.get(root)) {
+			for(Character symbol : symbols)
+				transitions.add(new Transition(trap, symbol, trap));
+		}
+
+		return new DFSM(states, alphabet, transitions, ids.get(root), acceptingStates);
+	}
+}
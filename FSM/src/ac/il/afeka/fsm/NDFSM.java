@@ -1,13 +1,13 @@
 package ac.il.afeka.fsm;
 import java.io.PrintStream;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.Stack;
 
 public class NDFSM {
 
@@ -46,13 +46,15 @@ public class NDFSM {
 		this.transitions.verify(this.states,alphabet);
 	}
 
+	// the sets are copied, so a caller that later changes the sets it passed does not change this machine
+
 	protected void initializeFrom(Set<State> states, Alphabet alphabet, Set<Transition> transitions, State initialState, Set<State> acceptingStates) {
 
-		this.states = states;
+		this.states = Collections.unmodifiableSet(new HashSet<State>(states));
 		this.alphabet = alphabet;
 		this.transitions = createMapping(transitions);
 		this.initialState = initialState;
-		this.acceptingStates = acceptingStates;
+		this.acceptingStates = Collections.unmodifiableSet(new HashSet<State>(acceptingStates));
 	}
 
 	protected NDFSM() { }
@@ -103,35 +105,34 @@ public class NDFSM {
 	*/
 	public void parse(String string) throws Exception {
 		
-		Scanner scanner = new Scanner(string);
+		String[] parts = string.split("\\s*/", -1);
 		
-		scanner.useDelimiter("\\s*/");	
+		if (parts.length < 4 || parts.length > 5)
+			throw new Exception("Invalid encoding \"" + string + "\": expected states/alphabet/transitions/initial state/accepting states");
 		
 		Map<Integer, State> states = new HashMap<Integer, State>();
 		
-		for(Integer stateId : IdentifiedState.parseStateIdList(scanner.next())) {
+		for(Integer stateId : IdentifiedState.parseStateIdList(parts[0])) {
 			states.put(stateId, new IdentifiedState(stateId));
 		}
 
-		Alphabet alphabet = Alphabet.parse(scanner.next());
+		Alphabet alphabet = Alphabet.parse(parts[1]);
 		
 		Set<Transition> transitions = new HashSet<Transition>();
 		
-		for (TransitionTuple t: TransitionTuple.parseTupleList(scanner.next())) {
+		for (TransitionTuple t: TransitionTuple.parseTupleList(parts[2])) {
 			transitions.add(new Transition(states.get(t.fromStateId()), t.symbol(), states.get(t.toStateId())));
 		}
 		
-		State initialState = states.get(scanner.nextInt());
+		State initialState = states.get(Integer.parseInt(parts[3].trim()));
 		
 		Set<State> acceptingStates = new HashSet<State>();
 
-		if (scanner.hasNext())
-			for(Integer stateId : IdentifiedState.parseStateIdList(scanner.next())) {
+		if (parts.length > 4)
+			for(Integer stateId : IdentifiedState.parseStateIdList(parts[4])) {
 				acceptingStates.add(states.get(stateId));
 			}
 		
-		scanner.close();
-		
 		initializeFrom(new HashSet<State>(states.values()), alphabet, transitions, initialState, acceptingStates);
 		this.transitions.verify(this.states, alphabet);
 	}
@@ -141,71 +142,159 @@ public class NDFSM {
 	}
 		
 	/** Returns a version of this state machine with all the unreachable states removed.
+	 * 
+	 * <p>The reachable states are found in one pass over the transitions, so the cost is linear in the
+	 * size of the machine.</p>
 	 * 
 	 * @return NDFSM that recognizes the same language as this machine, but has no unreachable states.
 	 */
 	public NDFSM removeUnreachableStates() {
 
-		Set<State> reachableStates = reachableStates();
+		IndexedMachine m = new IndexedMachine(this);
 
-		Set<Transition> transitionsToReachableStates = new HashSet<Transition>();
-		
-		for(Transition t : transitions.transitions()) {
-			if (reachableStates.contains(t.fromState()) && reachableStates.contains(t.toState()))
-				transitionsToReachableStates.add(t);
-		}
-		
-		Set<State> reachableAcceptingStates = new HashSet<State>();
-		for(State s : acceptingStates) {
-			if (reachableStates.contains(s))
-				reachableAcceptingStates.add(s);
-		}
-		
-		NDFSM aNDFSM = (NDFSM)create();
-		
-		aNDFSM.initializeFrom(reachableStates, alphabet, transitionsToReachableStates, initialState, reachableAcceptingStates);
-		
-		return aNDFSM;
+		return m.restrict(m.reachable(), create());
+	}
+
+	/** Returns a trimmed version of this state machine: the states that are unreachable, and the states 
+	 * from which no accepting state can be reached, are removed with their transitions. The initial 
+	 * state is always kept.
+	 * 
+	 * <p>Both sets of states are found in one pass each, over the transitions and over the reversed 
+	 * transitions, so the cost is linear in the size of the machine. A trimmed DFSM is not total in general, 
+	 * so the result is always a NDFSM.</p>
+	 * 
+	 * @return NDFSM that recognizes the same language as this machine, and whose every state is on a path
+	 * from the initial state to an accepting state (unless the language is empty).
+	 */
+	public NDFSM trim() {
+
+		IndexedMachine m = new IndexedMachine(this);
+
+		boolean[] keep = m.reachable();
+		boolean[] coReachable = m.coReachable();
+		for(int s = 0; s < keep.length; s++)
+			keep[s] = keep[s] && coReachable[s];
+		keep[m.initial] = true;
+
+		return m.restrict(keep, new NDFSM());
 	}
 
 	protected NDFSM create() {
 		return new NDFSM();
 	}
 
-	// returns a set of all states that are reachable from the initial state
-	
-	private Set<State> reachableStates() {
-		
-		List<Character> symbols = new ArrayList<Character>();
-		
-		symbols.add(Alphabet.EPSILON);
-		
-		for(Character c : alphabet) {
-			symbols.add(c);
-		}
-		
-		Alphabet alphabetWithEpsilon = new Alphabet(symbols);
-		
-		Set<State> reachable = new HashSet<State>();
+	/** Returns a smaller machine that recognizes the same language, to determinize, simulate or compare 
+	 * instead of this one.
+	 * 
+	 * <p>The machine is trimmed (see <code>trim</code>), and then quotiented by forward and by backward 
+	 * bisimulation in turn, until neither merges any more states. Each quotient takes time O(m log n) for n 
+	 * states and m transitions. The subset construction, the antichain searches and the simulation of a 
+	 * NDFSM all cost more on more states, so for example</p>
+	 * 
+	 * <code>
+	 * aNDFSM.reduce().toDFSM()
+	 * </code>
+	 * 
+	 * <p>explores no more subsets, and often far fewer, than <code>aNDFSM.toDFSM()</code>. The numbers of 
+	 * states and transitions before and after are reported to the metrics listener (see <code>Metrics</code>) 
+	 * as a <code>REDUCE</code> operation.</p>
+	 * 
+	 * @return NDFSM that recognizes the same language as this machine, with at most as many states
+	 */
+	public NDFSM reduce() {
+		return reduce(true, true, false);
+	}
+
+	/** Returns this machine with its forward bisimilar states merged: the states that agree on acceptance 
+	 * and whose transitions on every symbol, epsilon included, lead to the same blocks of merged states. 
+	 * Merged states accept the same strings. The coarsest such partition is found by partition refinement, 
+	 * in time O(m log n). For a DFSM this is minimization.
+	 * 
+	 * @return NDFSM that recognizes the same language as this machine
+	 */
+	public NDFSM reduceByBisimulation() {
+		return reduce(true, false, false);
+	}
+
+	/** Returns this machine with its backward bisimilar states merged: the same as 
+	 * <code>reduceByBisimulation</code> on the reversed transitions, with the initial state in place of the 
+	 * accepting states. Merged states are reached by the same strings.
+	 * 
+	 * @return NDFSM that recognizes the same language as this machine
+	 */
+	public NDFSM reduceByBackwardBisimulation() {
+		return reduce(false, true, false);
+	}
+
+	/** Returns this machine with the states that simulate each other merged, and with every transition 
+	 * removed whose target is strictly simulated by the target of another transition of the same state on the 
+	 * same symbol. Simulation merges at least the states that bisimulation does, often more, but the 
+	 * simulation preorder takes time about quadratic in the number of states.
+	 * 
+	 * @return NDFSM that recognizes the same language as this machine
+	 */
+	public NDFSM reduceBySimulation() {
+		return reduce(false, false, true);
+	}
 
-		Set<State> newlyReachable = new HashSet<State>();
+	private NDFSM reduce(boolean forward, boolean backward, boolean simulation) {
+		OperationStats stats = Metrics.start(OperationStats.Operation.REDUCE);
 
-		newlyReachable.add(initialState);
+		NDFSM reduced = forward && backward ? trim() : this;
+		IndexedMachine m = new IndexedMachine(reduced);
+		if (stats != null) {
+			stats.statesRead = states.size();
+			stats.transitionsRead = transitions.transitions().size();
+		}
 
-		while(!newlyReachable.isEmpty()) {
-			reachable.addAll(newlyReachable);
-			newlyReachable = new HashSet<State>();
-			for(State state : reachable) {
-				for(Character symbol : alphabetWithEpsilon) {
-					for(State s : transitions.at(state, symbol)) {
-						if (!reachable.contains(s))
-							newlyReachable.add(s);
-					}
+		if (simulation)
+			reduced = Simulation.reduce(m, new NDFSM());
+
+		int[] blocks = new int[1];
+		for(boolean merged = forward || backward; merged; ) {
+			merged = false;
+			for(boolean reverse : new boolean[] { false, true }) {
+				if (reverse ? !backward : !forward)
+					continue;
+				int[] block = Bisimulation.partition(m, reverse, stats, blocks);
+				if (blocks[0] < m.stateCount()) {
+					reduced = m.quotient(block, blocks[0], null, new NDFSM());
+					m = new IndexedMachine(reduced);
+					merged = forward && backward;
 				}
 			}
 		}
-		
-		return reachable;
+
+		if (stats != null) {
+			stats.produced(reduced.states.size(), reduced.transitions.transitions().size());
+			stats.finish();
+		}
+		return reduced;
+	}
+
+	/** Returns an equivalent version of this state machine that has no epsilon transitions.
+	 *
+	 * <p>The epsilon closures are computed once: states that are on an epsilon cycle are merged
+	 * into one state, and every remaining state gets the transitions and the acceptance of its
+	 * closure. States that are unreachable, or from which no accepting state can be reached,
+	 * are removed in the same pass. The result is a convenient starting point for <code>toDFSM()</code>
+	 * or for simulating the machine directly.</p>
+	 *
+	 * <p>The states of the result are states of this machine (each merged group of states is
+	 * represented by one of its members), and its initial state is this machine's initial state.</p>
+	 *
+	 * @return NDFSM that recognizes the same language as this machine, but has no epsilon transitions.
+	 */
+	public NDFSM removeEpsilons() {
+		OperationStats stats = Metrics.start(OperationStats.Operation.REMOVE_EPSILONS);
+
+		NDFSM aNDFSM = new EpsilonRemoval(new IndexedMachine(this)).run();
+
+		if (stats != null) {
+			stats.produced(aNDFSM.states.size(), aNDFSM.transitions.transitions().size());
+			stats.finish();
+		}
+		return aNDFSM;
 	}
 
 	/** Encodes this state machine as a string
@@ -253,56 +342,213 @@ public class NDFSM {
 
 <p>The canonic encoding of two minimal state machines that recognize the same language is identical.</p>
 
+<p>The states are numbered 0, 1, ... in breadth first order from the initial state, following the
+epsilon transitions first and then the symbols in the order of the alphabet. Unreachable states are
+dropped.</p>
+
 @return a canonic version of this machine. 
 */
 
 	public NDFSM toCanonicForm() {
 	
-		Set<Character> alphabetAndEpsilon = new HashSet<Character>();
-		
-		for(Character symbol : alphabet) {
-			alphabetAndEpsilon.add(symbol);
-		}
-		alphabetAndEpsilon.add(Alphabet.EPSILON);
-		
-		Set<Transition> canonicTransitions = new HashSet<Transition>();
-		Stack<State> todo = new Stack<State>();
-		Map<State, State> canonicStates = new HashMap<State, State>();
-		Integer free = 0;
-		
-		todo.push(initialState);
-		canonicStates.put(initialState, new IdentifiedState(free));
-		free++;
-		
-		while (!todo.isEmpty()) {
-			State top = todo.pop();
-			for(Character symbol : alphabetAndEpsilon) {
-				for(State nextState : transitions.at(top, symbol)) {
-					if (!canonicStates.containsKey(nextState)) {
-						canonicStates.put(nextState, new IdentifiedState(free));
-						todo.push(nextState);
-						free++;
-					}
-					canonicTransitions.add(new Transition(canonicStates.get(top), symbol, canonicStates.get(nextState)));
-				}
-			}			
-		}
+		OperationStats stats = Metrics.start(OperationStats.Operation.TO_CANONIC_FORM);
+
+		Canonicalization canonic = new Canonicalization(new IndexedMachine(this));
 
-		Set<State> canonicAcceptingStates = new HashSet<State>();
-		for(State s : acceptingStates) {
-			if (canonicStates.containsKey(s)) // unreachable accepting states will not appear in the canonic form of the state machine
-				canonicAcceptingStates.add(canonicStates.get(s));
+		NDFSM aNDFSM = canonic.toMachine(this);
+
+		if (stats != null) {
+			stats.produced(canonic.count, canonic.edgeTarget.length);
+			stats.finish();
 		}
-		
-		NDFSM aNDFSM = create();
-		
-		aNDFSM.initializeFrom(new HashSet<State>(canonicStates.values()), alphabet, canonicTransitions, canonicStates.get(initialState), canonicAcceptingStates);
 
 		return aNDFSM;
 	}
+
+	/** Returns a fingerprint of the canonic form of this machine (see <code>toCanonicForm</code>).
+	 * 
+	 * <p>The fingerprint is computed from the canonic numbering directly, without building the canonic
+	 * machine, so comparing the fingerprints of machines is much cheaper than comparing their canonic
+	 * encodings.</p>
+	 * 
+	 * @return the fingerprint of the canonic form of this machine
+	 */
+	public Fingerprint fingerprint() {
+		return new Canonicalization(new IndexedMachine(this)).fingerprint();
+	}
+	
+	/** Returns true if and only if this machine accepts no string at all. The cost is linear in the size
+	 * of the machine.
+	 * 
+	 * @return true if the language of this machine is empty
+	 */
+	public boolean isEmpty() {
+		return LanguageProperties.isEmpty(new IndexedMachine(this));
+	}
+	
+	/** Returns true if and only if this machine accepts finitely many strings. 
+	 * 
+	 * <p>The language is infinite exactly when some cycle that reads at least one symbol lies on a path 
+	 * from the initial state to an accepting state, which is found in time linear in the size of the 
+	 * machine.</p>
+	 * 
+	 * @return true if the language of this machine is finite
+	 */
+	public boolean isFinite() {
+		return LanguageProperties.isFinite(new IndexedMachine(this));
+	}
+	
+	/** Returns true if and only if this machine accepts every string over its alphabet.
+	 * 
+	 * <p>The subsets of states of the equivalent DFSM are explored on the fly with the antichain algorithm 
+	 * (see <code>inclusionCounterexample</code>): a subset is not explored when a subset of it already was, 
+	 * since it accepts at least as much. The search stops at the first subset that has no accepting state, 
+	 * and <code>shortestRejected</code> returns the shortest such string.</p>
+	 * 
+	 * @return true if the language of this machine is the set of all strings over its alphabet
+	 */
+	public boolean isUniversal() {
+		NDFSM all = new NDFSM();
+		State state = new IdentifiedState(0);
+		Set<Transition> loops = new HashSet<Transition>();
+		for(Character symbol : alphabet)
+			loops.add(new Transition(state, symbol, state));
+		all.initializeFrom(Collections.singleton(state), alphabet, loops, state, Collections.singleton(state));
+		return all.isSubsetOf(this);
+	}
+	
+	/** Returns true if and only if every string this machine accepts is accepted by other.
+	 * 
+	 * @param other	a state machine
+	 * @return true if the language of this machine is a subset of the language of other
+	 * @see #inclusionCounterexample(NDFSM, boolean)
+	 */
+	public boolean isSubsetOf(NDFSM other) {
+		return inclusionCounterexample(other, false) == null;
+	}
+	
+	/** Returns a string that this machine accepts and other rejects.
+	 * 
+	 * <p>Other is never complemented or converted to a DFSM. The epsilon transitions of both machines are 
+	 * removed, and the pairs of a state of this machine and a subset of states of other that the strings of 
+	 * this machine lead to are explored breadth first, with the antichain algorithm: a pair is not explored 
+	 * when a pair with the same state and a subset of its subset already was, since every string that 
+	 * the larger subset rejects the smaller one rejects too. So only the minimal subsets of every state are 
+	 * kept, which are usually far fewer than the states of the DFSM of other. The search stops at the first 
+	 * pair whose state accepts and whose subset does not.</p>
+	 * 
+	 * <p>With simulation, the simulation preorders of both machines are computed first, in time about 
+	 * quadratic in their numbers of states, and a pair is also left out when a known pair's state accepts 
+	 * everything its state does and its subset accepts no more than its subset; and a subset keeps only 
+	 * the states that no other of its states simulates. This prunes more pairs, at that cost up front.</p>
+	 * 
+	 * @param other			a state machine
+	 * @param simulation	true to prune the pairs with the simulation preorders too
+	 * @return a string in the language of this machine and not in the language of other, or null if there 
+	 * is none
+	 */
+	public String inclusionCounterexample(NDFSM other, boolean simulation) {
+		return new Inclusion(new IndexedMachine(removeEpsilons()), new IndexedMachine(other.removeEpsilons()), simulation).counterexample();
+	}
+	
+	/** Returns the shortest string this machine accepts. Of the shortest strings, it returns the first in 
+	 * the lexicographical order of the alphabet (see <code>Alphabet.next</code>).
+	 * 
+	 * <p>The subsets of states of the equivalent DFSM are explored breadth first, on the fly, so the cost
+	 * is linear in the number of subsets explored; for a DFSM, in the number of its states.</p>
+	 * 
+	 * @return the first accepted string in the order of <code>Alphabet.next</code>, or null if the language is empty
+	 */
+	public String shortestAccepted() {
+		return LanguageProperties.shortest(LanguageProperties.Goal.ACCEPTED, new IndexedMachine(this));
+	}
+	
+	/** Returns the shortest string over the alphabet that this machine rejects. Of the shortest strings, it 
+	 * returns the first in the lexicographical order of the alphabet.
+	 * 
+	 * @return the first rejected string in the order of <code>Alphabet.next</code>, or null if this machine accepts every string
+	 */
+	public String shortestRejected() {
+		return LanguageProperties.shortest(LanguageProperties.Goal.REJECTED, new IndexedMachine(this));
+	}
+	
+	/** Returns the shortest string that exactly one of this machine and other accepts, the first of them 
+	 * in shortlex order. 
+	 * 
+	 * <p>The strings are over the union of the two alphabets, ordered by this machine's alphabet, followed by 
+	 * the symbols that only other has. A machine rejects the strings that have a symbol outside its alphabet. 
+	 * The pairs of subsets of states of the two machines are explored breadth first, on the fly, and the search 
+	 * stops at the first pair on which the machines disagree.</p>
+	 * 
+	 * @param other	a state machine
+	 * @return the shortest string in the symmetric difference of the two languages, or null if the machines
+	 * are equivalent
+	 */
+	public String shortestDistinguishingString(NDFSM other) {
+		return LanguageProperties.shortest(LanguageProperties.Goal.DISTINGUISHED, new IndexedMachine(this), new IndexedMachine(other));
+	}
+	
+	/** Returns true if and only if no string is accepted by all the given machines.
+	 * 
+	 * <p>The intersection is never built: see <code>shortestInIntersection</code>, which this method calls.</p>
+	 * 
+	 * @param machines	state machines
+	 * @return true if the intersection of the languages of machines is empty
+	 */
+	public static boolean intersectionIsEmpty(Collection<? extends NDFSM> machines) {
+		return shortestInIntersection(machines) == null;
+	}
+	
+	/** Returns the shortest string that all the given machines accept, the first of them in shortlex order 
+	 * of the first machine's alphabet.
+	 * 
+	 * <p>Every machine is trimmed first (see <code>trim</code>), and if one of them accepts nothing the 
+	 * answer is null at once. The tuples of subsets of states of the machines, one subset per machine, are 
+	 * then explored breadth first, on the fly, over the symbols that all the machines have; a tuple in which 
+	 * some machine has no state left is dropped, and the search stops at the first tuple in which every 
+	 * machine accepts. So neither the DFSMs of the machines nor their product are built, and the cost is 
+	 * linear in the number of tuples explored.</p>
+	 * 
+	 * @param machines	state machines
+	 * @return a shortest string in the intersection of the languages of machines, or null if it is empty. 
+	 * The intersection of no machines is every string, and the result is then the empty string.
+	 */
+	public static String shortestInIntersection(Collection<? extends NDFSM> machines) {
+
+		IndexedMachine[] trimmed = new IndexedMachine[machines.size()];
+		int i = 0;
+		for(NDFSM machine : machines) {
+			IndexedMachine m = new IndexedMachine(machine);
+			boolean[] keep = LanguageProperties.trimmed(m);
+			if (!keep[m.initial])
+				return null;
+			trimmed[i++] = new IndexedMachine(m.restrict(keep, new NDFSM()));
+		}
+		if (trimmed.length == 0)
+			return "";
+		return LanguageProperties.shortest(LanguageProperties.Goal.INTERSECTED, trimmed);
+	}
+	
+	/** Returns the number of strings this machine accepts.
+	 * 
+	 * <p>For example, the machine</p>
+	 * <code>
+	 * new NDFSM("0 1 2/a b/0,a,1;0,b,1;1,a,2;1,,2/0/1 2")
+	 * </code>
+	 * <p>accepts the four strings a, b, aa and ba.</p>
+	 * 
+	 * @return the number of strings in the language of this machine, or null if it is infinite
+	 * @throws Exception if the conversion to a DFSM fails
+	 */
+	public BigInteger languageSize() throws Exception {
+		if (!isFinite())
+			return null;
+		DFSM aDFSM = this instanceof DFSM ? (DFSM)this : toDFSM();
+		return LanguageProperties.count(new IndexedMachine(aDFSM));
+	}
 	
 	public boolean compute(String input) throws Exception {
-		return toDFSM().compute(input);
+		return new NDFSMMatcher(this).matches(input);
 	}
 	
 	
@@ -343,34 +589,18 @@ public class NDFSM {
 //	
 	
 	public StatesInGroups eps(State state) {	
-		//get all states with eps transition
-		StatesInGroups statesWithEps = new StatesInGroups(null);
-		statesWithEps.getStatesGroup().addAll(this.transitions.at(state, Alphabet.EPSILON)); 
-		
-		
-		//if from this state no eps transtions return this state only
-		if(statesWithEps.getStatesGroup().isEmpty()) {  
-			Set<State> states=new HashSet<>();
-			states.add(state);
-			statesWithEps.setStatesGroup(states);
-			return statesWithEps;
-		}
-		
-		//go over all states and check eps for them
+		//go over all states that can be reached with eps transitions, each state is checked once
+		Set<State> statesWithEps = new HashSet<>();
 		ArrayList<State> helper = new ArrayList<>();// helps to check all states
+		statesWithEps.add(state);
 		helper.add(state);
-		State cur=null;
-		while(!helper.isEmpty()) {
-			cur= helper.get(0);
-			helper.addAll(this.transitions.at(cur, Alphabet.EPSILON));
-			for (int i = 0; i < helper.size(); i++) {
-				if(!statesWithEps.getStatesGroup().contains(helper.get(i))) {
-					statesWithEps.getStatesGroup().add(helper.get(i));
-				}
+		for (int i = 0; i < helper.size(); i++) {
+			for (State s : this.transitions.at(helper.get(i), Alphabet.EPSILON)) {
+				if (statesWithEps.add(s))
+					helper.add(s);
 			}
-			helper.remove(0);
 		}
-		return statesWithEps;
+		return new StatesInGroups(statesWithEps);
 	}
 	
 	
@@ -395,65 +625,18 @@ public class NDFSM {
 	
 	
 	public DFSM toDFSM() throws Exception {
-		//Alphabet:
-		Alphabet newAlphabet = this.alphabet;
-		
-		//S 
-		StatesInGroups initialStates = this.eps(this.initialState);
-		
-		//delta + k
-		Set<Transition> delta= new HashSet<>();
-		Set<State> k = new HashSet<>(); 
-		
-		//loop on helper array and find out new states(groups of states) and add transitions to delta
-		ArrayList<StatesInGroups> helper= new ArrayList<>();
-		helper.add(initialStates);
-		k.add(initialStates); //add first state to k
-		
-		while (!helper.isEmpty()) {
-			StatesInGroups fromState = helper.get(0); // from state
-			StatesInGroups toStateWithEps = new StatesInGroups(null);// to state
-			
-			//create the toState group
-			for (Character c : this.alphabet) {
-				for (State state : fromState.getStatesGroup()) { // go over each state in the current group																			
-					// crate the group of toState from state+ c
-					Set<State> statesGotFromCurrentStateByTransition = this.transitions.at(state, c); // for each new state need to check where it leads																				
-					for (State s : statesGotFromCurrentStateByTransition)
-						toStateWithEps.addNewStates(eps(s)); // add new states the current state leads to with eps function										
-				}
-				//check if add to helper
-				boolean dontAddToHelper=false;
-				for (StatesInGroups s : helper) { 
-					if(s.equals(toStateWithEps))
-						dontAddToHelper=true;
-				}
-				//check if add to k
-				boolean dontAddToK=false;
-				for (State s : k) { 		
-					if(s.equals(toStateWithEps))
-						dontAddToK=true;
-				}
-				//add to helper if the toState group is not already there
-				if(!dontAddToK && !dontAddToHelper)
-					helper.add(toStateWithEps);
-				
-				//add to k the new State if not already there
-				if(!dontAddToK) 
-					k.add(toStateWithEps);
-				
-				//add to delta the new transition
-				delta.add(new Transition(fromState, c, toStateWithEps));
-				toStateWithEps = new StatesInGroups(null);
-			}
-			helper.remove(0);
-		}
-			
-		//A:
-		Set<State> newAcceptingStates= this.acceptingStates(k);
-		
-		
-		//here
-		return new DFSM(k, newAlphabet, delta, initialStates, newAcceptingStates);
+		return toDFSM(DeterminizationLimits.NONE);
+	}
+
+	/** Returns a DFSM that recognizes the same language as this machine, or fails if it would use more than the given resources.
+	 *
+	 * @param limits the resources the conversion may use
+	 * @return an equivalent DFSM
+	 * @throws DeterminizationException if the conversion exceeds one of the limits
+	 * @throws Exception if the resulting DFSM is invalid
+	 * @see Determinization
+	 */
+	public DFSM toDFSM(DeterminizationLimits limits) throws Exception {
+		return new Determinization(this, limits).run();
 	}
 }
@@ -0,0 +1,100 @@
+package ac.il.afeka.fsm;
+
+/** A matcher that simulates a NDFSM directly, without converting it to a DFSM.
+ *
+ * <p>The matcher keeps the set of states the machine can be in, and updates it (including the epsilon
+ * closure) on every input character. This takes time proportional to the size of the machine per
+ * character, but never more memory than the size of the machine, however large the equivalent DFSM
+ * would be. A matcher can be used by any number of threads at once.</p>
+ */
+public class NDFSMMatcher implements Matcher {
+
+	private final IndexedMachine m;
+
+	// the classes that are the symbols of a machine over character ranges, or null for an alphabet
+
+	private final SymbolClasses classes;
+
+	/** Creates a matcher for machine. Later changes to machine do not affect the matcher.
+	 *
+	 * @param machine the machine to simulate
+	 */
+	public NDFSMMatcher(NDFSM machine) {
+		this(new IndexedMachine(machine), null);
+	}
+
+	NDFSMMatcher(IndexedMachine m, SymbolClasses classes) {
+		this.m = m;
+		this.classes = classes;
+	}
+
+	@Override
+	public boolean matches(CharSequence input) {
+
+		int n = m.stateCount();
+		int[] current = new int[n];
+		int[] next = new int[n];
+		int[] mark = new int[n];
+		int stamp = 1;
+
+		current[0] = m.initial;
+		mark[m.initial] = stamp;
+		int size = closeUnderEpsilon(current, 1, mark, stamp);
+
+		for (int i = 0; i < input.length() && size > 0; ) {
+			int symbol;
+			if (classes == null) {
+				Integer index = m.symbolIndex.get(input.charAt(i++));
+				symbol = index == null ? 0 : index;
+			} else if (classes.codePoints()) {
+				int c = Character.codePointAt(input, i);
+				symbol = classes.classOfCodePoint(c);
+				i += Character.charCount(c);
+			} else {
+				symbol = classes.classOf(input.charAt(i++));
+			}
+			if (symbol == 0)
+				return false;
+
+			stamp++;
+			int nextSize = 0;
+			for (int j = 0; j < size; j++) {
+				int s = current[j];
+				for (int e = m.firstEdge(s, symbol); e < m.edgeStart[s + 1] && m.edgeSymbol[e] == symbol; e++) {
+					int t = m.edgeTarget[e];
+					if (mark[t] != stamp) {
+						mark[t] = stamp;
+						next[nextSize++] = t;
+					}
+				}
+			}
+			size = closeUnderEpsilon(next, nextSize, mark, stamp);
+
+			int[] swap = current;
+			current = next;
+			next = swap;
+		}
+
+		for (int j = 0; j < size; j++) {
+			if (m.accepting[current[j]])
+				return true;
+		}
+		return false;
+	}
+
+	// adds to states[0..size-1] (all marked with stamp) every state reachable on epsilon edges, and returns the new size
+
+	private int closeUnderEpsilon(int[] states, int size, int[] mark, int stamp) {
+		for (int j = 0; j < size; j++) {
+			int s = states[j];
+			for (int e = m.edgeStart[s]; e < m.edgeStart[s + 1] && m.edgeSymbol[e] == 0; e++) {
+				int t = m.edgeTarget[e];
+				if (mark[t] != stamp) {
+					mark[t] = stamp;
+					states[size++] = t;
+				}
+			}
+		}
+		return size;
+	}
+}
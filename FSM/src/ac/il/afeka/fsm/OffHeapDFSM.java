@@ -0,0 +1,275 @@
+package ac.il.afeka.fsm;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/** A compiled DFSM whose transition table is stored outside the Java heap.
+ *
+ * <p>The table is kept in direct buffers, or in buffers mapped from a file, of up to 1GB each, so a machine
+ * of any size is a handful of small objects to the garbage collector, and a machine mapped from a file is
+ * kept in pages of the operating system rather than copied into the heap. Matching is the same as with
+ * <code>CompiledDFSM</code>, with the same results. For example</p>
+ *
+ * <code>
+ * OffHeapDFSM.of(new DFSM(encoding).compile()).save(file);
+ * try (OffHeapDFSM machine = OffHeapDFSM.map(file)) {
+ *     machine.matches("aab");
+ * }
+ * </code>
+ *
+ * <p>saves a machine to a file, and later maps it back and runs it. The machine only matches whole strings:
+ * <code>ByteMatcher</code>, <code>ParallelMatcher</code> and the other matchers read the table of a
+ * <code>CompiledDFSM</code>. Any number of threads can match with the same machine at the same time.
+ * After <code>close</code> the machine cannot be used any more, and its memory is released when the
+ * buffers are collected: Java 8 has no way to release a direct or mapped buffer at once, and a buffer
+ * that is released while another thread still reads it would crash the process.</p>
+ */
+public final class OffHeapDFSM implements Matcher, AutoCloseable {
+
+	private static final int MAGIC = 0x4D534644;
+	private static final int VERSION = 1;
+	private static final int HEADER_INTS = 7;
+
+	// the table is split into segments of 2^SEGMENT_BITS entries, so each segment fits in one buffer
+
+	private static final int SEGMENT_BITS = 28;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+	private final SymbolClasses classes;
+	private final int width;
+	private final int states;
+	private final int initial;
+
+	// null once the machine is closed
+
+	private volatile Storage storage;
+
+	// one bit per state, and the table, whose entries are rows as in CompiledDFSM (state numbers multiplied by width)
+
+	private static final class Storage {
+
+		final IntBuffer accepting;
+		final IntBuffer[] table;
+
+		Storage(IntBuffer accepting, IntBuffer[] table) {
+			this.accepting = accepting;
+			this.table = table;
+		}
+	}
+
+	private OffHeapDFSM(SymbolClasses classes, int states, int initial, IntBuffer accepting, IntBuffer[] table) {
+		this.classes = classes;
+		this.width = classes.classCount();
+		this.states = states;
+		this.initial = initial;
+		this.storage = new Storage(accepting, table);
+	}
+
+	/** Copies a compiled machine out of the heap.
+	 *
+	 * @param compiled a compiled machine
+	 * @return a machine with the same table as compiled, stored in direct buffers
+	 */
+	public static OffHeapDFSM of(CompiledDFSM compiled) {
+
+		int states = compiled.stateCount();
+		int width = compiled.symbolClasses().classCount();
+
+		IntBuffer accepting = allocate((states + 31) / 32);
+		for(int s = 0; s < states; s++)
+			if (compiled.isAccepting(s))
+				accepting.put(s >>> 5, accepting.get(s >>> 5) | 1 << (s & 31));
+
+		IntBuffer[] table = new IntBuffer[segments((long)states * width)];
+		for(int i = 0; i < table.length; i++)
+			table[i] = allocate(segmentSize((long)states * width, i));
+		for(int s = 0; s < states; s++)
+			for(int c = 0; c < width; c++) {
+				int i = s * width + c;
+				table[i >>> SEGMENT_BITS].put(i & SEGMENT_MASK, compiled.next(s, c) * width);
+			}
+
+		return new OffHeapDFSM(compiled.symbolClasses(), states, compiled.initialState(), accepting, table);
+	}
+
+	private static IntBuffer allocate(int ints) {
+		return ByteBuffer.allocateDirect(ints * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	private static int segments(long entries) {
+		return (int)((entries + SEGMENT_MASK) >>> SEGMENT_BITS);
+	}
+
+	private static int segmentSize(long entries, int segment) {
+		return (int)Math.min(entries - ((long)segment << SEGMENT_BITS), 1L << SEGMENT_BITS);
+	}
+
+	/* The file is a sequence of little endian ints: the header (magic, version, flags, width, states,
+	 * initial state, number of intervals), the first code point and the class of every interval of the
+	 * symbol classes, the accepting states as a bit set, and the table, row after row. */
+
+	/** Writes this machine to a file, which <code>map</code> can read.
+	 *
+	 * @param file the file to write; it is replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+
+		Storage storage = open();
+		int[][] intervals = classes.intervals();
+		int words = (states + 31) / 32;
+
+		ByteBuffer header = ByteBuffer.allocate((HEADER_INTS + 2 * intervals[0].length + words) * 4).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(classes.codePoints() ? 1 : 0).putInt(width).putInt(states).putInt(initial).putInt(intervals[0].length);
+		for(int start : intervals[0])
+			header.putInt(start);
+		for(int symbolClass : intervals[1])
+			header.putInt(symbolClass);
+		for(int i = 0; i < words; i++)
+			header.putInt(storage.accepting.get(i));
+		header.flip();
+
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			write(channel, header);
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			for(IntBuffer segment : storage.table) {
+				for(int i = 0; i < segment.limit(); i++) {
+					if (!buffer.hasRemaining()) {
+						buffer.flip();
+						write(channel, buffer);
+						buffer.clear();
+					}
+					buffer.putInt(segment.get(i));
+				}
+			}
+			buffer.flip();
+			write(channel, buffer);
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/** Maps a machine that <code>save</code> wrote. The file is only read. It is checked once through, so a
+	 * damaged file cannot lead matching out of the table, and then its pages stay loaded as long as the
+	 * operating system has room for them.
+	 *
+	 * @param file a file written by <code>save</code>
+	 * @return the machine in the file
+	 * @throws IOException if the file cannot be read or is not a machine
+	 */
+	public static OffHeapDFSM map(File file) throws IOException {
+
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < HEADER_INTS * 4)
+				throw new IOException(file + " is not a compiled DFSM");
+
+			IntBuffer fields = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_INTS * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			if (fields.get(0) != MAGIC || fields.get(1) != VERSION)
+				throw new IOException(file + " is not a compiled DFSM of version " + VERSION);
+			boolean codePoints = fields.get(2) != 0;
+			int width = fields.get(3);
+			int states = fields.get(4);
+			int initial = fields.get(5);
+			int intervals = fields.get(6);
+			int words = (states + 31) / 32;
+
+			if (width <= 0 || states <= 0 || intervals <= 0)
+				throw new IOException(file + " is not a compiled DFSM: its header is invalid");
+
+			// every entry of the table is indexed by an int, as in CompiledDFSM
+			long headerBytes = (HEADER_INTS + 2L * intervals + words) * 4;
+			long entries = (long)states * width;
+			if (entries > Integer.MAX_VALUE)
+				throw new IOException(file + " is not a compiled DFSM: its table has more than " + Integer.MAX_VALUE + " entries");
+			if (size != headerBytes + entries * 4)
+				throw new IOException(file + " is not a compiled DFSM: its size does not match its header");
+			if (initial < 0 || initial >= states)
+				throw new IOException(file + " is not a compiled DFSM: its initial state " + initial + " is not a state");
+
+			IntBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerBytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			int[] intervalStart = new int[intervals];
+			int[] intervalClass = new int[intervals];
+			for(int i = 0; i < intervals; i++) {
+				intervalStart[i] = header.get(HEADER_INTS + i);
+				intervalClass[i] = header.get(HEADER_INTS + intervals + i);
+				if (i == 0 ? intervalStart[i] != 0 : intervalStart[i] <= intervalStart[i - 1] || intervalStart[i] > Character.MAX_CODE_POINT)
+					throw new IOException(file + " is not a compiled DFSM: its symbol intervals are out of order");
+				if (intervalClass[i] < 0 || intervalClass[i] >= width)
+					throw new IOException(file + " is not a compiled DFSM: its symbol class " + intervalClass[i] + " is not a column of the table");
+			}
+			header.position(HEADER_INTS + 2 * intervals);
+			IntBuffer accepting = header.slice();
+
+			// the mappings stay valid after the channel is closed
+			IntBuffer[] table = new IntBuffer[segments(entries)];
+			for(int i = 0; i < table.length; i++) {
+				long offset = headerBytes + ((long)i << SEGMENT_BITS) * 4;
+				table[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, segmentSize(entries, i) * 4L).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+				for(int j = 0; j < table[i].limit(); j++) {
+					int row = table[i].get(j);
+					if (row < 0 || row >= entries || row % width != 0)
+						throw new IOException(file + " is not a compiled DFSM: its table leads to " + row + ", which is not the row of a state");
+				}
+			}
+
+			SymbolClasses classes = SymbolClasses.fromIntervals(intervalStart, intervalClass, width, codePoints);
+			return new OffHeapDFSM(classes, states, initial, accepting, table);
+		}
+	}
+
+	private Storage open() {
+		Storage storage = this.storage;
+		if (storage == null)
+			throw new IllegalStateException("The machine is closed");
+		return storage;
+	}
+
+	@Override
+	public boolean matches(CharSequence input) {
+		Storage storage = open();
+		IntBuffer[] table = storage.table;
+		int row = initial * width;
+		if (classes.codePoints()) {
+			for(int i = 0; i < input.length(); ) {
+				int c = Character.codePointAt(input, i);
+				int entry = row + classes.classOfCodePoint(c);
+				row = table[entry >>> SEGMENT_BITS].get(entry & SEGMENT_MASK);
+				i += Character.charCount(c);
+			}
+		} else {
+			for(int i = 0; i < input.length(); i++) {
+				int entry = row + classes.classOf(input.charAt(i));
+				row = table[entry >>> SEGMENT_BITS].get(entry & SEGMENT_MASK);
+			}
+		}
+		int s = row / width;
+		return (storage.accepting.get(s >>> 5) >>> (s & 31) & 1) != 0;
+	}
+
+	/** @return the number of states of the table, including the dead state */
+	public int stateCount() {
+		return states;
+	}
+
+	/** @return the symbol classes that index the columns of the table */
+	public SymbolClasses symbolClasses() {
+		return classes;
+	}
+
+	/** Closes this machine; matching with it afterwards throws an <code>IllegalStateException</code>. */
+	@Override
+	public void close() {
+		storage = null;
+	}
+}
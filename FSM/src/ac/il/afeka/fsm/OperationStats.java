@@ -0,0 +1,139 @@
+package ac.il.afeka.fsm;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/** The statistics of one operation on a state machine.
+ *
+ * <p>Counters that do not apply to an operation are zero; for example, <code>refinementRounds</code>
+ * is only counted by minimization and <code>charactersRead</code> only by computation.</p>
+ */
+public class OperationStats {
+
+	/** The instrumented operations. */
+	public enum Operation {
+		/** <code>NDFSM.toDFSM()</code> */
+		TO_DFSM,
+		/** <code>DFSM.minimize()</code> */
+		MINIMIZE,
+		/** <code>NDFSM.toCanonicForm()</code> */
+		TO_CANONIC_FORM,
+		/** <code>NDFSM.removeEpsilons()</code> */
+		REMOVE_EPSILONS,
+		/** <code>DFSM.compute(String)</code> */
+		COMPUTE,
+		/** <code>NDFSM.reduce()</code> and the other reductions of NDFSMs */
+		REDUCE
+	}
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private final Operation operation;
+	private final MetricsListener listener;
+	private final long startTime;
+	private final long startAllocatedBytes;
+
+	long subsetsExplored;
+	long closureComputations;
+	long closureCacheHits;
+	long refinementRounds;
+	long blockSplits;
+	long statesProduced;
+	long transitionsProduced;
+	long charactersRead;
+	long statesRead;
+	long transitionsRead;
+
+	private long bytesAllocated = -1;
+	private long wallTime;
+
+	// the Flight Recorder event that FlightRecorderListener began when the operation started, or null
+
+	Object recording;
+
+	OperationStats(Operation operation, MetricsListener listener) {
+		this.operation = operation;
+		this.listener = listener;
+		this.startAllocatedBytes = allocatedBytes();
+		this.startTime = System.nanoTime();
+	}
+
+	void produced(int states, int transitions) {
+		statesProduced += states;
+		transitionsProduced += transitions;
+	}
+
+	void finish() {
+		wallTime = System.nanoTime() - startTime;
+		if (startAllocatedBytes >= 0)
+			bytesAllocated = allocatedBytes() - startAllocatedBytes;
+		listener.operationCompleted(this);
+	}
+
+	private static long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean)threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled())
+				return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/** @return the operation these statistics describe */
+	public Operation operation() { return operation; }
+
+	/** @return the number of subsets (states of the resulting DFSM) whose transitions were computed */
+	public long subsetsExplored() { return subsetsExplored; }
+
+	/** @return the number of epsilon closures that were computed */
+	public long closureComputations() { return closureComputations; }
+
+	/** @return the number of epsilon closures that were found in the cache instead of being computed */
+	public long closureCacheHits() { return closureCacheHits; }
+
+	/** @return the number of partition refinement rounds */
+	public long refinementRounds() { return refinementRounds; }
+
+	/** @return the number of equivalence classes that were split off during refinement */
+	public long blockSplits() { return blockSplits; }
+
+	/** @return the number of states of the resulting machine */
+	public long statesProduced() { return statesProduced; }
+
+	/** @return the number of transitions of the resulting machine */
+	public long transitionsProduced() { return transitionsProduced; }
+
+	/** @return the number of input characters read */
+	public long charactersRead() { return charactersRead; }
+
+	/** @return the number of states of the machine the operation started from (counted by reductions) */
+	public long statesRead() { return statesRead; }
+
+	/** @return the number of transitions of the machine the operation started from (counted by reductions) */
+	public long transitionsRead() { return transitionsRead; }
+
+	/** @return the number of states produced per state read, the reduction ratio of a reduction (1 if no states were read) */
+	public double stateRatio() { return statesRead == 0 ? 1 : (double)statesProduced / statesRead; }
+
+	/** @return the number of bytes allocated by the operation's thread, or -1 if the JVM cannot measure it */
+	public long bytesAllocated() { return bytesAllocated; }
+
+	/** @return the wall clock duration of the operation in nanoseconds */
+	public long wallTimeNanos() { return wallTime; }
+
+	@Override
+	public String toString() {
+		return operation +
+				" time=" + wallTime + "ns" +
+				" allocated=" + bytesAllocated +
+				" subsets=" + subsetsExplored +
+				" closures=" + closureComputations +
+				" closureHits=" + closureCacheHits +
+				" rounds=" + refinementRounds +
+				" splits=" + blockSplits +
+				" states=" + statesProduced +
+				" transitions=" + transitionsProduced +
+				" chars=" + charactersRead +
+				" statesRead=" + statesRead +
+				" transitionsRead=" + transitionsRead;
+	}
+}
@@ -0,0 +1,528 @@
+package ac.il.afeka.fsm;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Matches one long input on several threads.
+ *
+ * <p>Matching is sequential: the state after a symbol depends on the state before it. But the effect of a
+ * piece of the input does not: it is a function from the state the piece starts in to the state it ends in.
+ * So the input is split into one chunk per thread, and every chunk but the first computes that function on
+ * its own thread, by running the machine from all its states at once. The functions are then composed in
+ * order, which is one lookup per chunk. A file is read through windows of up to 1GB mapped one after the
+ * other, as in <code>ByteMatcher</code>, and every window is split into chunks. For example</p>
+ *
+ * <code>
+ * long occurrences = new ParallelMatcher(new DFSM(endsWithPattern).compile()).threads(32).countAccepted(text);
+ * </code>
+ *
+ * <p>counts the occurrences of a pattern in text, on 32 threads.</p>
+ *
+ * <p>Running from all states is cheap because runs converge: once two of them reach the same state they go
+ * on together, and are followed as one. For most machines all runs have merged after a few dozen symbols,
+ * and the rest of the chunk costs the same as matching from one state. A chunk gives up when following
+ * its runs has cost as much as matching it from one state would, and is matched afterwards from the state
+ * it really starts in; so a large machine whose runs do not converge is matched mostly sequentially, at
+ * about the cost of <code>CompiledDFSM.matches</code>, and never at many times that cost. Inputs shorter
+ * than <code>MIN_CHUNK</code> symbols per thread, and machines over code points, are matched
+ * sequentially.</p>
+ */
+public final class ParallelMatcher {
+
+	// the largest number of symbols between two merges of the runs of a chunk
+
+	private static final int MERGE_INTERVAL = 64;
+
+	private static final int MIN_CHUNK = 1 << 16;
+
+	// the size of the windows a file is mapped in
+
+	private static final int WINDOW = 1 << 30;
+
+	private final CompiledDFSM machine;
+	private final SymbolClasses classes;
+	private final int width;
+	private final int states;
+	private final int initial;
+
+	// the table of the machine, read in place: table[row + c] is the row reached from row on symbol class c,
+	// where the row of a state is its number multiplied by width; and a bit for every row of an accepting
+	// state (see CompiledDFSM.acceptingRows). Runs are in rows, and initial is the initial row.
+
+	private final int[] table;
+	private final long[] accepting;
+
+	// the rows a chunk can start in: the states reachable from the initial state on the symbols of the
+	// alphabet, which leaves out the dead state of symbols outside it; and the position of every state
+	// among them, by state number, or -1
+
+	private final int[] starts;
+	private final int[] startIndex;
+
+	// the class of every byte, read as the character with the same value
+
+	private final int[] byteClass = new int[256];
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/** Creates a matcher of a compiled machine.
+	 *
+	 * @param machine a compiled machine
+	 */
+	public ParallelMatcher(CompiledDFSM machine) {
+		this.machine = machine;
+		this.classes = machine.symbolClasses();
+		this.width = classes.classCount();
+		this.states = machine.stateCount();
+		this.initial = machine.initialRow();
+		this.table = machine.table();
+		this.accepting = machine.acceptingRows();
+		for(int b = 0; b < 256; b++)
+			byteClass[b] = classes.classOfCodePoint(b);
+
+		this.startIndex = new int[states];
+		Arrays.fill(startIndex, -1);
+		int[] queue = new int[states];
+		int size = 0;
+		startIndex[initial / width] = size;
+		queue[size++] = initial;
+		for(int head = 0; head < size; head++)
+			for(int c = 1; c < width; c++) {
+				int t = table[queue[head] + c];
+				if (startIndex[t / width] < 0) {
+					startIndex[t / width] = size;
+					queue[size++] = t;
+				}
+			}
+		this.starts = Arrays.copyOf(queue, size);
+	}
+
+	private boolean isAccepting(int row) {
+		return (accepting[row >>> 6] & 1L << row) != 0;
+	}
+
+	/** Sets the number of threads, and of chunks (the number of processors by default).
+	 *
+	 * @param threads the number of threads
+	 * @return this matcher
+	 */
+	public ParallelMatcher threads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/** Returns true if and only if the machine accepts input; the same as <code>CompiledDFSM.matches</code>.
+	 *
+	 * @param input the input
+	 * @return true if the machine accepts input
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public boolean matches(CharSequence input) throws InterruptedException {
+		if (classes.codePoints())
+			return machine.matches(input);
+		return isAccepting(run(new Chars(input), initial, false).end);
+	}
+
+	/** Returns true if and only if the machine accepts the remaining bytes of buffer, where every byte is
+	 * the character with the same value (as in ISO-8859-1). The buffer's position is not changed.
+	 *
+	 * @param buffer the input
+	 * @return true if the machine accepts the input
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public boolean matches(ByteBuffer buffer) throws InterruptedException {
+		return isAccepting(run(new Bytes(buffer), initial, false).end);
+	}
+
+	/** Returns true if and only if the machine accepts the contents of file, where every byte is the character
+	 * with the same value.
+	 *
+	 * @param file the input
+	 * @return true if the machine accepts the input
+	 * @throws IOException if the file cannot be read
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public boolean matches(File file) throws IOException, InterruptedException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			return matches(in.getChannel());
+		}
+	}
+
+	/** Returns true if and only if the machine accepts the whole contents of channel, where every byte is the
+	 * character with the same value. The channel's position is not changed.
+	 *
+	 * @param channel the input
+	 * @return true if the machine accepts the input
+	 * @throws IOException if the channel cannot be read
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public boolean matches(FileChannel channel) throws IOException, InterruptedException {
+		return isAccepting(run(channel, false).end);
+	}
+
+	/** Counts the prefixes of input that the machine accepts, from the empty one to input itself. With a
+	 * machine that accepts the strings that end with a pattern, this is the number of occurrences of the
+	 * pattern in input.
+	 *
+	 * @param input the input
+	 * @return the number of accepted prefixes
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public long countAccepted(CharSequence input) throws InterruptedException {
+		long count = isAccepting(initial) ? 1 : 0;
+		if (!classes.codePoints())
+			return count + run(new Chars(input), initial, true).count;
+
+		int row = initial;
+		for(int i = 0; i < input.length(); ) {
+			int c = Character.codePointAt(input, i);
+			row = table[row + classes.classOfCodePoint(c)];
+			if (isAccepting(row))
+				count++;
+			i += Character.charCount(c);
+		}
+		return count;
+	}
+
+	/** Counts the prefixes of the remaining bytes of buffer that the machine accepts, where every byte is the
+	 * character with the same value. The buffer's position is not changed.
+	 *
+	 * @param buffer the input
+	 * @return the number of accepted prefixes
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public long countAccepted(ByteBuffer buffer) throws InterruptedException {
+		return (isAccepting(initial) ? 1 : 0) + run(new Bytes(buffer), initial, true).count;
+	}
+
+	/** Counts the prefixes of the contents of file that the machine accepts, where every byte is the
+	 * character with the same value.
+	 *
+	 * @param file the input
+	 * @return the number of accepted prefixes
+	 * @throws IOException if the file cannot be read
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public long countAccepted(File file) throws IOException, InterruptedException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			return countAccepted(in.getChannel());
+		}
+	}
+
+	/** Counts the prefixes of the whole contents of channel that the machine accepts, where every byte is the
+	 * character with the same value. The channel's position is not changed.
+	 *
+	 * @param channel the input
+	 * @return the number of accepted prefixes
+	 * @throws IOException if the channel cannot be read
+	 * @throws InterruptedException if the thread is interrupted while it waits for the chunks
+	 */
+	public long countAccepted(FileChannel channel) throws IOException, InterruptedException {
+		return (isAccepting(initial) ? 1 : 0) + run(channel, true).count;
+	}
+
+	// runs the machine over the mapped windows of channel, each from the row the one before it ended in
+
+	private Result run(FileChannel channel, boolean counting) throws IOException, InterruptedException {
+		int row = initial;
+		long count = 0;
+		long size = channel.size();
+		for(long offset = 0; offset < size; offset += WINDOW) {
+			Result window = run(new Bytes(channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, size - offset))), row, counting);
+			row = window.end;
+			count += window.count;
+		}
+		return new Result(row, count);
+	}
+
+	// the input, as a sequence of symbol classes
+
+	private static abstract class Input {
+
+		abstract int length();
+
+		abstract int classAt(int i);
+	}
+
+	private final class Chars extends Input {
+
+		private final CharSequence input;
+
+		Chars(CharSequence input) {
+			this.input = input;
+		}
+
+		@Override
+		int length() {
+			return input.length();
+		}
+
+		@Override
+		int classAt(int i) {
+			return classes.classOf(input.charAt(i));
+		}
+	}
+
+	private final class Bytes extends Input {
+
+		private final ByteBuffer buffer;
+		private final int start;
+
+		Bytes(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.start = buffer.position();
+		}
+
+		@Override
+		int length() {
+			return buffer.limit() - start;
+		}
+
+		@Override
+		int classAt(int i) {
+			return byteClass[buffer.get(start + i) & 0xFF];
+		}
+	}
+
+	// the row a run ended in, and the number of nonempty prefixes of its input that were accepted
+
+	private static final class Result {
+
+		final int end;
+		final long count;
+
+		Result(int end, long count) {
+			this.end = end;
+			this.count = count;
+		}
+	}
+
+	// runs the machine over input from row start
+
+	private Result run(Input input, int start, boolean counting) throws InterruptedException {
+
+		int length = input.length();
+		int chunks = Math.min(threads, length / MIN_CHUNK);
+		if (chunks <= 1) {
+			Run run = new Run(start, counting);
+			run.walk(input, 0, length);
+			return new Result(run.end(start), run.count(start));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(chunks - 1, r -> {
+			Thread t = new Thread(r, "parallel-matcher");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			List<Future<Run>> runs = new ArrayList<Future<Run>>();
+			for(int k = 1; k < chunks; k++) {
+				int from = chunkStart(length, chunks, k), to = chunkStart(length, chunks, k + 1);
+				runs.add(pool.submit((Callable<Run>)() -> {
+					Run run = new Run(counting);
+					return run.walk(input, from, to) ? run : null;
+				}));
+			}
+
+			// the first chunk, on this thread, from the start row only
+			Run first = new Run(start, counting);
+			first.walk(input, 0, chunkStart(length, chunks, 1));
+			int state = first.end(start);
+			long count = first.count(start);
+
+			for(int k = 1; k < chunks; k++) {
+				Run run = runs.get(k - 1).get();
+				if (run == null || !run.startsIn(state)) {
+					// the chunk gave up, or starts in a state it did not run from: match it from that state
+					run = new Run(state, counting);
+					run.walk(input, chunkStart(length, chunks, k), chunkStart(length, chunks, k + 1));
+				}
+				count += run.count(state);
+				state = run.end(state);
+			}
+			return new Result(state, count);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static int chunkStart(int length, int chunks, int k) {
+		return (int)((long)length * k / chunks);
+	}
+
+	// the loop of CompiledDFSM.matches, in a method of its own so that it is compiled on its own
+
+	private int follow(Input input, int row, int from, int to) {
+		for(int i = from; i < to; i++)
+			row = table[row + input.classAt(i)];
+		return row;
+	}
+
+	private final class Follower {
+
+		long accepted = 0;
+
+		int count(Input input, int row, int from, int to) {
+			long accepted = 0;
+			for(int i = from; i < to; i++) {
+				row = table[row + input.classAt(i)];
+				if (isAccepting(row))
+					accepted++;
+			}
+			this.accepted = accepted;
+			return row;
+		}
+	}
+
+	/* The runs of the machine over a chunk, from one row or from all the rows in starts. Every run has a
+	 * slot, numbered by the position of its start state. The live runs are stepped together, and every so
+	 * often merged: a run that is in the same state as another live run stops, and its slot records the
+	 * slot of the other run and the difference between their counts of accepted prefixes, since from there
+	 * on they count the same. So every slot leads, through the slots it merged into, to a live slot whose
+	 * row is the end row of its run. Merges come after 1, 2, 4 and so on up to MERGE_INTERVAL symbols,
+	 * so the runs of a large machine that converges quickly are merged quickly. */
+
+	private final class Run {
+
+		private final boolean all;
+		private final boolean counting;
+
+		private final int[] parent;
+		private final long[] difference;
+		private final int[] state;
+		private final long[] count;
+
+		// from all states
+		Run(boolean counting) {
+			this(starts, true, counting);
+		}
+
+		// from one state
+		Run(int start, boolean counting) {
+			this(new int[] { start }, false, counting);
+		}
+
+		private Run(int[] start, boolean all, boolean counting) {
+			int n = start.length;
+			this.all = all;
+			this.counting = counting;
+			this.parent = new int[n];
+			this.difference = counting ? new long[n] : null;
+			this.state = start.clone();
+			this.count = new long[n];
+			for(int k = 0; k < n; k++)
+				parent[k] = k;
+		}
+
+		/* Walks the chunk [from, to). Returns false, and gives up, if the runs from all states have cost more
+		 * steps than the chunk has symbols, as matching the chunk from one state would. */
+
+		boolean walk(Input input, int from, int to) {
+
+			// the state, count and slot of every live run
+			int live = state.length;
+			int[] runState = state.clone();
+			long[] runCount = new long[live];
+			int[] runSlot = new int[live];
+			for(int k = 0; k < live; k++)
+				runSlot[k] = k;
+
+			// the live run that is in a state, by state number, where stamp[state] is the current merge
+			int[] owner = live > 1 ? new int[states] : null;
+			int[] stamp = live > 1 ? new int[states] : null;
+			int merge = 0;
+
+			long steps = 0;
+			int i = from;
+			for(int interval = 1; i < to && live > 1; interval = Math.min(2 * interval, MERGE_INTERVAL)) {
+				if (all && steps > to - from)
+					return false;
+				int end = (int)Math.min(to, (long)i + interval);
+				steps += (long)live * (end - i);
+				for(; i < end; i++) {
+					int c = input.classAt(i);
+					for(int k = 0; k < live; k++) {
+						int t = table[runState[k] + c];
+						runState[k] = t;
+						if (counting && isAccepting(t))
+							runCount[k]++;
+					}
+				}
+
+				merge++;
+				int kept = 0;
+				for(int k = 0; k < live; k++) {
+					int t = runState[k] / width;
+					if (stamp[t] == merge) {
+						int other = owner[t];
+						parent[runSlot[k]] = runSlot[other];
+						if (counting)
+							difference[runSlot[k]] = runCount[k] - runCount[other];
+					} else {
+						stamp[t] = merge;
+						owner[t] = kept;
+						runState[kept] = runState[k];
+						runCount[kept] = runCount[k];
+						runSlot[kept] = runSlot[k];
+						kept++;
+					}
+				}
+				live = kept;
+			}
+
+			if (live == 1) {
+				if (counting) {
+					Follower follower = new Follower();
+					runState[0] = follower.count(input, runState[0], i, to);
+					runCount[0] += follower.accepted;
+				} else {
+					runState[0] = follow(input, runState[0], i, to);
+				}
+			}
+			for(int k = 0; k < live; k++) {
+				state[runSlot[k]] = runState[k];
+				count[runSlot[k]] = runCount[k];
+			}
+			return true;
+		}
+
+		boolean startsIn(int row) {
+			return !all || startIndex[row / width] >= 0;
+		}
+
+		private int slotOf(int row) {
+			return all ? startIndex[row / width] : 0;
+		}
+
+		int end(int row) {
+			int slot = slotOf(row);
+			while (parent[slot] != slot)
+				slot = parent[slot];
+			return state[slot];
+		}
+
+		long count(int row) {
+			if (!counting)
+				return 0;
+			int slot = slotOf(row);
+			long total = 0;
+			while (parent[slot] != slot) {
+				total += difference[slot];
+				slot = parent[slot];
+			}
+			return total + count[slot];
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package ac.il.afeka.fsm;
+
+/* A partition of the numbers 0..n-1 into blocks, refined by splitting blocks, for the partition refinement
+ * algorithms (see Bisimulation and CompiledDFSM.equivalenceClasses).
+ *
+ * The members are kept in one array, grouped by block: the members of block b are elements[first[b] ..
+ * end[b]-1]. Marking a member moves it to the front of its block, and splitting a block with marked
+ * members separates them from the others. Only the smaller of the two parts gets a new block number, so
+ * the members whose block number changes can be visited in time proportional to the smaller part, and a
+ * member changes blocks O(log n) times. Marking and splitting cost O(1) per member marked. */
+
+final class Partition {
+
+	final int[] elements;
+	final int[] location;
+	final int[] blockOf;
+	final int[] first;
+	final int[] end;
+
+	// the marked members of block b are elements[first[b] .. mid[b]-1]
+
+	private final int[] mid;
+	private final int[] touched;
+	private int touchedCount = 0;
+
+	int blocks = 1;
+
+	// one block of all the members
+
+	Partition(int n) {
+		this.elements = new int[n];
+		this.location = new int[n];
+		this.blockOf = new int[n];
+		this.first = new int[n];
+		this.end = new int[n];
+		this.mid = new int[n];
+		this.touched = new int[n];
+		for(int x = 0; x < n; x++)
+			elements[x] = location[x] = x;
+		end[0] = n;
+	}
+
+	int size(int b) {
+		return end[b] - first[b];
+	}
+
+	void mark(int x) {
+		int b = blockOf[x];
+		int at = location[x];
+		if (at < mid[b])
+			return;
+		int other = elements[mid[b]];
+		elements[at] = other;
+		location[other] = at;
+		elements[mid[b]] = x;
+		location[x] = mid[b];
+		if (mid[b] == first[b])
+			touched[touchedCount++] = b;
+		mid[b]++;
+	}
+
+	// splits every block with marked members off its unmarked members, and unmarks them all; the new blocks
+	// are written to created and the blocks they were split from to parents, and their number is returned
+
+	int split(int[] created, int[] parents) {
+		int count = 0;
+		for(int t = 0; t < touchedCount; t++) {
+			int b = touched[t];
+			if (mid[b] == end[b]) {
+				mid[b] = first[b];
+				continue;
+			}
+			int nb = blocks++;
+			if (mid[b] - first[b] <= end[b] - mid[b]) {
+				first[nb] = first[b];
+				end[nb] = mid[b];
+				first[b] = mid[b];
+			} else {
+				first[nb] = mid[b];
+				end[nb] = end[b];
+				end[b] = mid[b];
+			}
+			mid[b] = first[b];
+			mid[nb] = first[nb];
+			for(int i = first[nb]; i < end[nb]; i++)
+				blockOf[elements[i]] = nb;
+			created[count] = nb;
+			parents[count++] = b;
+		}
+		touchedCount = 0;
+		return count;
+	}
+}
@@ -0,0 +1,426 @@
+package ac.il.afeka.fsm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/** A NDFSM whose transitions read ranges of characters instead of single symbols.
+ *
+ * <p>The alphabet of a range machine is either all the 65536 UTF-16 characters, or all the Unicode code
+ * points (in which case the input is read one code point at a time). A transition such as "any letter
+ * but x" is two ranges rather than thousands of <code>Transition</code>s.</p>
+ *
+ * <p>The ranges are split into disjoint intervals once, when the machine is created, and the intervals
+ * that no state distinguishes are merged into symbol classes (see <code>SymbolClasses</code>). The
+ * conversion to a DFSM, the minimization and the simulation all work on the classes, so their cost does
+ * not depend on the width of the ranges. For example, the statements</p>
+ *
+ * <code>
+ * RangeNDFSM identifiers = new RangeNDFSM("0 1/chars/0,a-z,1;0,A-Z,1;0,_,1;1,a-z,1;1,A-Z,1;1,0-9,1;1,_,1/0/1");
+ * CompiledDFSM compiled = identifiers.minimize();
+ * compiled.matches("x_1");
+ * </code>
+ *
+ * <p>build a machine that accepts identifiers, and run its minimal DFSM on "x_1".</p>
+ */
+public class RangeNDFSM implements Matcher {
+
+	private final Set<State> states;
+	private final boolean codePoints;
+	private final Set<RangeTransition> transitions;
+	private final State initialState;
+	private final Set<State> acceptingStates;
+
+	// the machine over its symbol classes: class c is symbol c, and 0 is epsilon; set once by index()
+
+	private IndexedMachine machine;
+	private SymbolClasses classes;
+	private NDFSMMatcher matcher;
+
+	/** Builds a range machine from its encoding.
+	 *
+	 * <p>The encoding is that of a NDFSM (see <code>NDFSM.parse</code>), with the alphabet replaced by
+	 * <code>chars</code> or <code>codepoints</code>, and the symbol of each transition replaced by a range
+	 * (see <code>CharRange</code>), or nothing for an epsilon transition. For example</p>
+	 *
+	 * <pre>
+	 * 0 1/chars/0,a-z,0;0,U+A,1;1,,0/0/1
+	 * </pre>
+	 *
+	 * @param encoding the string representation of a range machine
+	 * @throws Exception if the encoding is incorrect or if the transitions contain invalid states or ranges
+	 */
+	public RangeNDFSM(String encoding) throws Exception {
+
+		String[] parts = encoding.split("\\s*/\\s*", -1);
+		if (parts.length < 4 || parts.length > 5)
+			throw new Exception("A range machine has 5 parts separated by '/', but found " + parts.length);
+
+		Map<Integer, State> states = new HashMap<Integer, State>();
+		for(Integer stateId : IdentifiedState.parseStateIdList(parts[0]))
+			states.put(stateId, new IdentifiedState(stateId));
+
+		boolean codePoints;
+		if (parts[1].trim().equals("chars"))
+			codePoints = false;
+		else if (parts[1].trim().equals("codepoints"))
+			codePoints = true;
+		else
+			throw new Exception("Unknown alphabet \"" + parts[1].trim() + "\", expected chars or codepoints");
+
+		Set<RangeTransition> transitions = new HashSet<RangeTransition>();
+		for(String t : parts[2].split(";")) {
+			if (t.trim().isEmpty())
+				continue;
+			String[] fields = t.split(",", -1);
+			if (fields.length != 3)
+				throw new Exception("Invalid transition \"" + t + "\"");
+			CharRange range = fields[1].trim().isEmpty() ? null : CharRange.parse(fields[1]);
+			transitions.add(new RangeTransition(state(states, fields[0]), range, state(states, fields[2])));
+		}
+
+		State initialState = state(states, parts[3]);
+
+		Set<State> acceptingStates = new HashSet<State>();
+		if (parts.length == 5)
+			for(Integer stateId : IdentifiedState.parseStateIdList(parts[4]))
+				acceptingStates.add(state(states, stateId.toString()));
+
+		this.states = Collections.unmodifiableSet(new HashSet<State>(states.values()));
+		this.codePoints = codePoints;
+		this.transitions = Collections.unmodifiableSet(transitions);
+		this.initialState = initialState;
+		this.acceptingStates = Collections.unmodifiableSet(acceptingStates);
+
+		verify();
+		index();
+	}
+
+	private static State state(Map<Integer, State> states, String id) throws Exception {
+		State state;
+		try {
+			state = states.get(Integer.parseInt(id.trim()));
+		} catch (NumberFormatException e) {
+			throw new Exception("Invalid state id \"" + id.trim() + "\"");
+		}
+		if (state == null)
+			throw new Exception("State " + id.trim() + " is not a part of the state machine.");
+		return state;
+	}
+
+	/** Builds a range machine from its components.
+	 *
+	 * @param states			the set of states for this machine
+	 * @param codePoints		true if the machine reads code points, false if it reads UTF-16 characters
+	 * @param transitions		the transitions of this machine
+	 * @param initialState		the initial state (must be a member of states)
+	 * @param acceptingStates	the set of accepting states (must be a subset of states)
+	 * @throws Exception if the components do not represent a valid machine
+	 */
+	public RangeNDFSM(Set<State> states, boolean codePoints, Set<RangeTransition> transitions, State initialState, Set<State> acceptingStates) throws Exception {
+
+		this.states = Collections.unmodifiableSet(new HashSet<State>(states));
+		this.codePoints = codePoints;
+		this.transitions = Collections.unmodifiableSet(new HashSet<RangeTransition>(transitions));
+		this.initialState = initialState;
+		this.acceptingStates = Collections.unmodifiableSet(new HashSet<State>(acceptingStates));
+
+		verify();
+		index();
+	}
+
+	/** Converts a NDFSM to a range machine over characters. Consecutive symbols that lead from a state to
+	 * the same state become a single range.
+	 *
+	 * @param machine a NDFSM
+	 * @return a range machine that recognizes the language of machine
+	 * @throws Exception if machine is invalid
+	 */
+	public static RangeNDFSM of(NDFSM machine) throws Exception {
+
+		IndexedMachine m = new IndexedMachine(machine);
+		Set<RangeTransition> transitions = new HashSet<RangeTransition>();
+
+		for(int s = 0; s < m.stateCount(); s++) {
+			Map<Integer, List<Integer>> symbolsByTarget = new HashMap<Integer, List<Integer>>();
+			for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++) {
+				if (m.edgeSymbol[e] == 0) {
+					transitions.add(new RangeTransition(m.states[s], null, m.states[m.edgeTarget[e]]));
+					continue;
+				}
+				List<Integer> symbols = symbolsByTarget.get(m.edgeTarget[e]);
+				if (symbols == null) {
+					symbols = new ArrayList<Integer>();
+					symbolsByTarget.put(m.edgeTarget[e], symbols);
+				}
+				symbols.add((int)m.symbols[m.edgeSymbol[e]]);
+			}
+			for(Map.Entry<Integer, List<Integer>> entry : symbolsByTarget.entrySet()) {
+				List<Integer> symbols = entry.getValue();
+				Collections.sort(symbols);
+				int first = 0;
+				for(int i = 1; i <= symbols.size(); i++) {
+					if (i == symbols.size() || symbols.get(i) != symbols.get(i - 1) + 1) {
+						transitions.add(new RangeTransition(m.states[s], new CharRange(symbols.get(first), symbols.get(i - 1)), m.states[entry.getKey()]));
+						first = i;
+					}
+				}
+			}
+		}
+
+		return new RangeNDFSM(machine.states, false, transitions, machine.initialState, machine.acceptingStates);
+	}
+
+	private void verify() throws Exception {
+
+		if (!states.contains(initialState))
+			throw new Exception("The initial state " + initialState + " is not a part of the state machine.");
+
+		for(State s : acceptingStates)
+			if (!states.contains(s))
+				throw new Exception("The accepting state " + s + " is not a part of the state machine.");
+
+		for(RangeTransition t : transitions) {
+			if (!states.contains(t.fromState()))
+				throw new Exception("Transition contains a state (id " + t.fromState() + ") that is not a part of the state machine.");
+			if (!states.contains(t.toState()))
+				throw new Exception("Transition contains a state (id " + t.toState() + ") that is not a part of the state machine.");
+			if (!codePoints && t.range() != null && t.range().last() > Character.MAX_VALUE)
+				throw new Exception("Transition range " + t.range() + " is not a range of characters; the machine does not read code points");
+		}
+	}
+
+	/* Splits the ranges into intervals at every range boundary, computes the classes of the intervals,
+	 * and indexes the machine with the classes as its symbols. */
+
+	private void index() {
+
+		List<State> sortedStates = new ArrayList<State>(states);
+		Collections.sort(sortedStates);
+		State[] stateArray = sortedStates.toArray(new State[sortedStates.size()]);
+		Map<State, Integer> stateIndex = new HashMap<State, Integer>();
+		for(int i = 0; i < stateArray.length; i++)
+			stateIndex.put(stateArray[i], i);
+
+		boolean[] accepting = new boolean[stateArray.length];
+		for(State s : acceptingStates)
+			accepting[stateIndex.get(s)] = true;
+
+		int max = codePoints ? Character.MAX_CODE_POINT : Character.MAX_VALUE;
+
+		TreeSet<Integer> boundaries = new TreeSet<Integer>();
+		boundaries.add(0);
+		for(RangeTransition t : transitions) {
+			if (t.range() == null)
+				continue;
+			boundaries.add(t.range().first());
+			if (t.range().last() < max)
+				boundaries.add(t.range().last() + 1);
+		}
+		int[] intervalStart = new int[boundaries.size()];
+		int k = 0;
+		for(int b : boundaries)
+			intervalStart[k++] = b;
+
+		// one edge per interval that a range covers; interval i is symbol i + 1
+
+		int[] from = new int[transitions.size()];
+		int[] firstInterval = new int[transitions.size()];
+		int[] endInterval = new int[transitions.size()];
+		int[] to = new int[transitions.size()];
+		int[] edgeStart = new int[stateArray.length + 1];
+		int i = 0;
+		for(RangeTransition t : transitions) {
+			from[i] = stateIndex.get(t.fromState());
+			to[i] = stateIndex.get(t.toState());
+			if (t.range() != null) {
+				firstInterval[i] = Arrays.binarySearch(intervalStart, t.range().first());
+				endInterval[i] = t.range().last() < max ? Arrays.binarySearch(intervalStart, t.range().last() + 1) : intervalStart.length;
+			} else {
+				firstInterval[i] = -1;
+				endInterval[i] = 0;
+			}
+			edgeStart[from[i] + 1] += endInterval[i] - firstInterval[i];
+			i++;
+		}
+		for(int s = 0; s < stateArray.length; s++)
+			edgeStart[s + 1] += edgeStart[s];
+
+		long[] keys = new long[edgeStart[stateArray.length]];
+		int[] fill = Arrays.copyOf(edgeStart, stateArray.length);
+		for(i = 0; i < from.length; i++)
+			for(int interval = firstInterval[i]; interval < endInterval[i]; interval++)
+				keys[fill[from[i]]++] = ((long)(interval + 1) << 32) | to[i];
+
+		IndexedMachine intervals = IndexedMachine.fromKeys(stateArray, intervalStart.length + 1, stateIndex.get(initialState), accepting, edgeStart, keys);
+		SymbolClasses classes = SymbolClasses.ofIntervals(intervals, intervalStart.clone(), codePoints);
+
+		// the same edges, labeled with the class of the interval
+
+		for(int e = 0; e < intervals.edgeCount(); e++) {
+			int symbol = intervals.edgeSymbol[e];
+			int c = symbol == 0 ? 0 : classes.classOfCodePoint(intervalStart[symbol - 1]);
+			keys[e] = ((long)c << 32) | intervals.edgeTarget[e];
+		}
+
+		this.classes = classes;
+		this.machine = IndexedMachine.fromKeys(stateArray, classes.classCount(), intervals.initial, accepting, intervals.edgeStart, Arrays.copyOf(keys, intervals.edgeCount()));
+		this.matcher = new NDFSMMatcher(machine, classes);
+	}
+
+	/** @return true if and only if this machine reads code points rather than UTF-16 characters */
+	public boolean codePoints() {
+		return codePoints;
+	}
+
+	/** @return the classes of characters that the states of this machine distinguish */
+	public SymbolClasses symbolClasses() {
+		return classes;
+	}
+
+	/** @return the states of this machine */
+	public Set<State> states() {
+		return states;
+	}
+
+	/** @return the transitions of this machine */
+	public Set<RangeTransition> transitions() {
+		return transitions;
+	}
+
+	/** Converts this machine to an equivalent deterministic machine, by the subset construction over its
+	 * symbol classes. The DFSM has a state for every reachable set of states of this machine, and a dead
+	 * state for the characters that lead nowhere.
+	 *
+	 * @return a compiled DFSM that recognizes the same language as this machine
+	 */
+	public CompiledDFSM toDFSM() {
+
+		OperationStats stats = Metrics.start(OperationStats.Operation.TO_DFSM);
+
+		IndexedMachine m = machine;
+		int width = classes.classCount();
+		int[][] closures = new int[m.stateCount()][];
+		boolean[] inClosure = new boolean[m.stateCount()];
+
+		Map<StateSet, Integer> ids = new HashMap<StateSet, Integer>();
+		List<int[]> groups = new ArrayList<int[]>();
+		int[] next = new int[16 * width];
+		boolean[] accepting = new boolean[16];
+
+		int[] initialGroup = Determinization.closure(m, m.initial, closures, inClosure, stats);
+		ids.put(StateSet.of(initialGroup, initialGroup.length), 0);
+		groups.add(initialGroup);
+		accepting[0] = Determinization.containsAcceptingState(m, initialGroup, initialGroup.length);
+
+		int[] group = new int[m.stateCount()];
+		boolean[] inGroup = new boolean[m.stateCount()];
+		int transitions = 0;
+
+		for(int g = 0; g < groups.size(); g++) {
+			if (stats != null)
+				stats.subsetsExplored++;
+			int[] fromGroup = groups.get(g);
+
+			for(int c = 1; c < width; c++) {
+				int size = 0;
+				for(int state : fromGroup) {
+					for(int e = m.firstEdge(state, c); e < m.edgeStart[state + 1] && m.edgeSymbol[e] == c; e++) {
+						for(int s : Determinization.closure(m, m.edgeTarget[e], closures, inClosure, stats)) {
+							if (!inGroup[s]) {
+								inGroup[s] = true;
+								group[size++] = s;
+							}
+						}
+					}
+				}
+
+				if (size == 0) {
+					next[g * width + c] = -1;
+					continue;
+				}
+
+				for(int i = 0; i < size; i++)
+					inGroup[group[i]] = false;
+				Arrays.sort(group, 0, size);
+
+				StateSet set = StateSet.of(group, size);
+				Integer id = ids.get(set);
+				if (id == null) {
+					id = groups.size();
+					ids.put(set, id);
+					groups.add(Arrays.copyOf(group, size));
+					if (groups.size() > accepting.length) {
+						accepting = Arrays.copyOf(accepting, accepting.length * 2);
+						next = Arrays.copyOf(next, accepting.length * width);
+					}
+					accepting[id] = Determinization.containsAcceptingState(m, group, size);
+				}
+				next[g * width + c] = id;
+				transitions++;
+			}
+		}
+
+		CompiledDFSM dfsm = CompiledDFSM.compile(classes, groups.size(), next, accepting, 0);
+
+		if (stats != null) {
+			stats.produced(groups.size(), transitions);
+			stats.finish();
+		}
+
+		return dfsm;
+	}
+
+	/** Returns a minimal DFSM that recognizes the language of this machine.
+	 *
+	 * @return a compiled DFSM with the fewest states (including the dead state) that recognizes the same language
+	 */
+	public CompiledDFSM minimize() {
+		return toDFSM().minimize();
+	}
+
+	/** Runs the machine on input by simulating it (see <code>NDFSMMatcher</code>), without converting it.
+	 *
+	 * @param input a string
+	 * @return true if and only if the machine accepts input
+	 */
+	public boolean compute(String input) {
+		return matches(input);
+	}
+
+	@Override
+	public boolean matches(CharSequence input) {
+		OperationStats stats = Metrics.start(OperationStats.Operation.COMPUTE);
+		boolean result = matcher.matches(input);
+		if (stats != null) {
+			stats.charactersRead += input.length();
+			stats.finish();
+		}
+		return result;
+	}
+
+	/** Encodes this machine as a string, in the format that the constructor parses.
+	 *
+	 * @return the string encoding of this machine
+	 */
+	public String encode() {
+		List<RangeTransition> sorted = new ArrayList<RangeTransition>(transitions);
+		Collections.sort(sorted);
+		StringBuilder encoding = new StringBuilder();
+		for(RangeTransition t : sorted) {
+			if (encoding.length() > 0)
+				encoding.append(";");
+			encoding.append(t.encode());
+		}
+		return State.encodeStateSet(states) + "/" +
+				(codePoints ? "codepoints" : "chars") + "/" +
+				encoding + "/" +
+				initialState.encode() + "/" +
+				State.encodeStateSet(acceptingStates);
+	}
+}
@@ -0,0 +1,83 @@
+package ac.il.afeka.fsm;
+import java.io.PrintStream;
+
+/** A transition of a <code>RangeNDFSM</code>: a move from one state to another on any character of a range.
+ * A transition without a range is an epsilon transition.
+ */
+public class RangeTransition implements Comparable<RangeTransition> {
+
+	/** Creates a transition.
+	 *
+	 * @param fromState	the state the transition leaves
+	 * @param range		the characters the transition reads, or null for an epsilon transition
+	 * @param toState	the state the transition enters
+	 */
+	public RangeTransition(State fromState, CharRange range, State toState) {
+		this.fromState = fromState;
+		this.range = range;
+		this.toState = toState;
+	}
+
+	public State fromState() { return fromState; }
+
+	public CharRange range() { return range; }
+
+	public State toState() { return toState; }
+
+	public boolean isEpsilon() { return range == null; }
+
+	private final State fromState;
+	private final CharRange range;
+	private final State toState;
+
+	public void prettyPrint(PrintStream out) {
+		out.print("(");
+		fromState.prettyPrint(out);
+		out.print(", ");
+		if (range == null)
+			out.print("\u03B5");
+		else
+			out.print("[" + range.encode() + "]");
+		out.print(", ");
+		toState.prettyPrint(out);
+		out.print(")");
+	}
+
+	public String encode() {
+		return fromState.encode() + "," + (range == null ? "" : range.encode()) + "," + toState.encode();
+	}
+
+	@Override
+	public int compareTo(RangeTransition other) {
+
+		int result = fromState.compareTo(other.fromState);
+		if (result != 0)
+			return result;
+
+		if (range != other.range) {
+			if (range == null)
+				return -1;
+			if (other.range == null)
+				return 1;
+			result = range.compareTo(other.range);
+			if (result != 0)
+				return result;
+		}
+
+		return toState.compareTo(other.toState);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof RangeTransition))
+			return false;
+		RangeTransition other = (RangeTransition)obj;
+		return fromState.equals(other.fromState) && toState.equals(other.toState)
+				&& (range == null ? other.range == null : range.equals(other.range));
+	}
+
+	@Override
+	public int hashCode() {
+		return (fromState.hashCode() * 31 + (range == null ? 0 : range.hashCode())) * 31 + toState.hashCode();
+	}
+}
@@ -0,0 +1,91 @@
+package ac.il.afeka.fsm;
+
+/* The simulation preorder of a machine: state t simulates state s when t accepts if s does, and every
+ * transition of s on a symbol can be matched by a transition of t on the same symbol to a state that
+ * simulates the target of s's transition; epsilon is a symbol like the others. A state accepts every string
+ * that the states it simulates accept, so a set of states can stand for any set of states that it simulates.
+ *
+ * States that simulate each other accept the same strings and can be merged; and a transition to a state
+ * that is strictly simulated by the target of another transition of the same state on the same symbol adds
+ * no string, and can be removed (see reduce).
+ *
+ * The relation starts from the states that agree on acceptance and is refined until no pair fails the
+ * condition, with the rows kept as bit sets. A pass costs about n^2 times the square of the number of edges
+ * per state, and there are at most n^2 passes, but in practice a few passes suffice. */
+
+final class Simulation {
+
+	private Simulation() { }
+
+	// up[s] is the set of states that simulate s, as a bit set (s itself included)
+
+	static long[][] of(IndexedMachine m) {
+
+		int n = m.stateCount();
+		int words = (n + 63) >>> 6;
+		long[][] up = new long[n][words];
+		for(int s = 0; s < n; s++)
+			for(int t = 0; t < n; t++)
+				if (!m.accepting[s] || m.accepting[t])
+					up[s][t >>> 6] |= 1L << t;
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for(int s = 0; s < n; s++)
+				for(int t = 0; t < n; t++)
+					if (t != s && contains(up[s], t) && !matches(m, up, s, t)) {
+						up[s][t >>> 6] &= ~(1L << t);
+						changed = true;
+					}
+		}
+		return up;
+	}
+
+	// true if every edge of s has an edge of t on the same symbol to a state that simulates its target
+
+	private static boolean matches(IndexedMachine m, long[][] up, int s, int t) {
+		for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++) {
+			boolean matched = false;
+			for(int f = m.firstEdge(t, m.edgeSymbol[e]); f < m.edgeStart[t + 1] && m.edgeSymbol[f] == m.edgeSymbol[e] && !matched; f++)
+				matched = contains(up[m.edgeTarget[e]], m.edgeTarget[f]);
+			if (!matched)
+				return false;
+		}
+		return true;
+	}
+
+	// the machine with the states that simulate each other merged, and the transitions that are simulated by
+	// another transition of their state removed
+
+	static NDFSM reduce(IndexedMachine m, NDFSM machine) {
+
+		long[][] up = of(m);
+		int n = m.stateCount();
+
+		// the block of a state is the first state that simulates it and that it simulates
+		int[] block = new int[n];
+		int blocks = 0;
+		for(int s = 0; s < n; s++) {
+			int t = 0;
+			while (!(contains(up[s], t) && contains(up[t], s)))
+				t++;
+			block[s] = t == s ? blocks++ : block[t];
+		}
+
+		boolean[] keep = new boolean[m.edgeCount()];
+		for(int s = 0; s < n; s++)
+			for(int e = m.edgeStart[s]; e < m.edgeStart[s + 1]; e++) {
+				int r = m.edgeTarget[e];
+				keep[e] = true;
+				for(int f = m.firstEdge(s, m.edgeSymbol[e]); f < m.edgeStart[s + 1] && m.edgeSymbol[f] == m.edgeSymbol[e] && keep[e]; f++)
+					if (contains(up[r], m.edgeTarget[f]) && !contains(up[m.edgeTarget[f]], r))
+						keep[e] = false;
+			}
+		return m.quotient(block, blocks, keep, machine);
+	}
+
+	static boolean contains(long[] set, int s) {
+		return (set[s >>> 6] >>> s & 1) != 0;
+	}
+}
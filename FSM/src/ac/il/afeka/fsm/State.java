@@ -34,7 +34,7 @@ public abstract class State implements Comparable<State> {
 	}
 	
 	public static String encodeStateSet(Set<State> states) {
-		String encoding = "";
+		StringBuilder encoding = new StringBuilder();
 		
 		List<State> statesList = new ArrayList<State>(states);
 		Collections.sort(statesList);
@@ -42,14 +42,14 @@ public abstract class State implements Comparable<State> {
 		Iterator<State> p = statesList.iterator();
 
 		if (p.hasNext()) {
-			encoding = encoding + p.next().encode();
+			encoding.append(p.next().encode());
 		}
 		
 		while(p.hasNext()) {
-			encoding = encoding + " " + p.next().encode();
+			encoding.append(" ").append(p.next().encode());
 		}
 		
-		return encoding;
+		return encoding.toString();
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package ac.il.afeka.fsm;
+import java.util.Arrays;
+
+/* An immutable set of state numbers (see IndexedMachine), stored in the most compact of three forms:
+ *
+ * - all members are smaller than 64: one long used as a bit set, with no array at all,
+ * - few members spread over a large range: a sorted int array (4 bytes per member),
+ * - many members: a long array used as a bit set (1 bit per state up to the largest member).
+ *
+ * The form depends only on the members, so two equal sets always have the same form and
+ * equality is a plain array comparison. The hash code is computed once, when the set is made. */
+
+final class StateSet {
+
+	static final StateSet EMPTY = new StateSet(0L, null, null, 0);
+
+	private final long inline;
+	private final int[] sorted;
+	private final long[] bits;
+	private final int size;
+	private final int hash;
+
+	private StateSet(long inline, int[] sorted, long[] bits, int size) {
+		this.inline = inline;
+		this.sorted = sorted;
+		this.bits = bits;
+		this.size = size;
+
+		int h = size;
+		if (sorted != null)
+			h = 31 * h + Arrays.hashCode(sorted);
+		else if (bits != null)
+			h = 31 * h + Arrays.hashCode(bits);
+		else
+			h = 31 * h + (int)(inline ^ (inline >>> 32));
+		this.hash = h;
+	}
+
+	// members[0..count-1] must be sorted and distinct
+
+	static StateSet of(int[] members, int count) {
+
+		if (count == 0)
+			return EMPTY;
+
+		int largest = members[count - 1];
+
+		if (largest < 64) {
+			long inline = 0L;
+			for(int i = 0; i < count; i++)
+				inline |= 1L << members[i];
+			return new StateSet(inline, null, null, count);
+		}
+
+		int words = (largest >>> 6) + 1;
+		if ((long)count > 2L * words) {
+			long[] bits = new long[words];
+			for(int i = 0; i < count; i++)
+				bits[members[i] >>> 6] |= 1L << members[i];
+			return new StateSet(0L, null, bits, count);
+		}
+
+		return new StateSet(0L, Arrays.copyOf(members, count), null, count);
+	}
+
+	static StateSet of(int... members) {
+		int[] copy = members.clone();
+		Arrays.sort(copy);
+		int distinct = 0;
+		for(int i = 0; i < copy.length; i++)
+			if (distinct == 0 || copy[distinct - 1] != copy[i])
+				copy[distinct++] = copy[i];
+		return of(copy, distinct);
+	}
+
+	int size() { return size; }
+
+	boolean isEmpty() { return size == 0; }
+
+	boolean contains(int member) {
+		if (member < 0)
+			return false;
+		if (sorted != null)
+			return Arrays.binarySearch(sorted, member) >= 0;
+		if (bits != null)
+			return (member >>> 6) < bits.length && (bits[member >>> 6] & (1L << member)) != 0;
+		return member < 64 && (inline & (1L << member)) != 0;
+	}
+
+	// returns the members in increasing order
+
+	int[] toArray() {
+		if (sorted != null)
+			return sorted.clone();
+		int[] members = new int[size];
+		int n = 0;
+		if (bits != null) {
+			for(int w = 0; w < bits.length; w++)
+				for(long word = bits[w]; word != 0; word &= word - 1)
+					members[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+		} else {
+			for(long word = inline; word != 0; word &= word - 1)
+				members[n++] = Long.numberOfTrailingZeros(word);
+		}
+		return members;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof StateSet))
+			return false;
+		StateSet other = (StateSet)obj;
+		return hash == other.hash && size == other.size && inline == other.inline
+				&& Arrays.equals(sorted, other.sorted) && Arrays.equals(bits, other.bits);
+	}
+}
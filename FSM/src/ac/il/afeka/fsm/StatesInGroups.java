@@ -2,67 +2,124 @@ package ac.il.afeka.fsm;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+/* A state of a DFSM that stands for a group of states of a NDFSM.
+ *
+ * The group is kept as a compact StateSet of state numbers; universe maps the numbers back to
+ * the states of the NDFSM. Groups made by the same conversion share one universe, which makes
+ * comparing them a comparison of two small arrays. The hash code is computed once. */
+
 public class StatesInGroups extends IdentifiedState {
-	private Set<State> statesGroup;
-	
+	private State[] universe;
+	private StateSet members;
+	private int hash;
+
 	public StatesInGroups(Set<State> statesGroup) {
 		super(0);
-		if(statesGroup==null) 
-			this.statesGroup= new HashSet<State>();
-		else {
-			this.statesGroup=new HashSet<State>();
-			for (State state : statesGroup) {
-				this.statesGroup.add(state);
-			}
-		}
+		setStatesGroup(statesGroup == null ? new HashSet<State>() : statesGroup);
+	}
+
+	StatesInGroups(Integer id, State[] universe, StateSet members) {
+		super(id);
+		set(universe, members);
+	}
+
+	private void set(State[] universe, StateSet members) {
+		this.universe = universe;
+		this.members = members;
+		int hash = 0;
+		for(int i : members.toArray())
+			hash += mix(universe[i].hashCode());
+		this.hash = hash;
+	}
+
+	// spreads the bits of a member's hash code, so that the sum does not collide for groups of consecutive ids
+
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
 	}
 
+	State[] universe() { return universe; }
+
+	StateSet members() { return members; }
+
+	/** Returns the states of the group.
+	 *
+	 * @return a new set that holds the states of the group
+	 */
 	public Set<State> getStatesGroup() {
-		return statesGroup;
+		Set<State> group = new HashSet<State>();
+		for(int i : members.toArray())
+			group.add(universe[i]);
+		return group;
 	}
-	
-	
+
+
 	public boolean isEmptyGroup() {
-		return this.statesGroup.isEmpty();
+		return members.isEmpty();
 	}
 
 	public void setStatesGroup(Set<State> statesGroup) {
-		this.statesGroup = statesGroup;
+		List<State> sorted = new ArrayList<State>(statesGroup);
+		Collections.sort(sorted);
+		int[] all = new int[sorted.size()];
+		for(int i = 0; i < all.length; i++)
+			all[i] = i;
+		set(sorted.toArray(new State[sorted.size()]), StateSet.of(all, all.length));
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
 	}
 
 	@Override
 	public boolean equals(Object obj) {
-		StatesInGroups lala= (StatesInGroups)obj;
-		if(this.getStatesGroup().size()!=lala.getStatesGroup().size())
-			return false;
-		
-		ArrayList<State> arr1= new ArrayList<>();
-		arr1.addAll(this.getStatesGroup());
-		
-		ArrayList<State> arr2= new ArrayList<>();
-		arr2.addAll(lala.getStatesGroup());
-		
-		int counter=0;
-		for (State state : arr1) {
-			for (State state2 : arr2) {
-				if(state.compareTo(state2)==0)
-					counter++;
-			}
-		}
-		if(counter==arr1.size())
+		if (this == obj)
 			return true;
-		
-		return false;
+		if (!(obj instanceof StatesInGroups))
+			return false;
+		StatesInGroups other = (StatesInGroups)obj;
+		if (hash != other.hash || members.size() != other.members.size())
+			return false;
+		if (universe == other.universe)
+			return members.equals(other.members);
+		return getStatesGroup().equals(other.getStatesGroup());
 	}
-	
+
 	public void prettyPrint(PrintStream out) {
 		out.print(this.getStatesGroup().toString());
 	}
-	
+
 	public void addNewStates(StatesInGroups moreStates) {
-		this.statesGroup.addAll(moreStates.statesGroup);
+		if (universe == moreStates.universe) {
+			int[] mine = members.toArray(), theirs = moreStates.members.toArray();
+			int[] union = new int[mine.length + theirs.length];
+			int i = 0, j = 0, n = 0;
+			while (i < mine.length || j < theirs.length) {
+				if (j == theirs.length || (i < mine.length && mine[i] < theirs[j]))
+					union[n++] = mine[i++];
+				else if (i == mine.length || theirs[j] < mine[i])
+					union[n++] = theirs[j++];
+				else {
+					union[n++] = mine[i++];
+					j++;
+				}
+			}
+			set(universe, StateSet.of(union, n));
+		} else {
+			Set<State> union = getStatesGroup();
+			union.addAll(moreStates.getStatesGroup());
+			setStatesGroup(union);
+		}
 	}
 }
@@ -0,0 +1,410 @@
+package ac.il.afeka.fsm;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A partition of a machine's alphabet into classes of symbols that no state distinguishes.
+ *
+ * <p>Two symbols are in the same class if and only if every state of the machine moves to the same
+ * states on both of them. A machine over an alphabet of hundreds of symbols often has only a handful
+ * of classes, so tables indexed by class (see <code>CompiledDFSM</code>) are much smaller than tables
+ * indexed by symbol.</p>
+ *
+ * <p>The classes are numbered 1, 2, ... in the order of their first symbol in the alphabet. Class 0
+ * holds all the characters that are not in the alphabet. The class of a character is found with a
+ * single lookup, without a range check, in a table of all 65536 characters (a byte per character when
+ * there are at most 256 classes). Classes that map the characters alike share one table, so the
+ * machines compiled from one pattern, or from similar ones, do not pay for a table each.</p>
+ *
+ * <p>The classes of a machine over character ranges (see <code>RangeNDFSM</code>) are unions of
+ * intervals of characters, or of code points. Class 0 then holds the characters that no transition
+ * reads, and the class of a code point above the 65536 characters is found by a binary search over
+ * the intervals.</p>
+ */
+public final class SymbolClasses {
+
+	private final int classCount;
+	private final char[][] members;
+
+	// the class of every character; exactly one of the tables is set
+
+	private final byte[] smallLookup;
+	private final char[] lookup;
+
+	// the most recently used tables, by the runs of characters they map (see Runs.key)
+
+	private static final int SHARED_TABLES = 32;
+	private static final Map<String, Object> sharedTables = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return size() > SHARED_TABLES;
+		}
+	};
+
+	// for classes of ranges: the first code point of every interval, and its class
+
+	private final boolean codePoints;
+	private final int[] intervalStart;
+	private final int[] intervalClass;
+
+	private SymbolClasses(Character[] symbols, int[] classOfSymbol, int classCount) {
+
+		this.classCount = classCount;
+		this.codePoints = false;
+		this.intervalStart = null;
+		this.intervalClass = null;
+
+		int[] sizes = new int[classCount];
+		for(int i = 1; i < symbols.length; i++)
+			sizes[classOfSymbol[i]]++;
+		this.members = new char[classCount][];
+		for(int c = 0; c < classCount; c++)
+			members[c] = new char[sizes[c]];
+		Arrays.fill(sizes, 0);
+		for(int i = 1; i < symbols.length; i++)
+			members[classOfSymbol[i]][sizes[classOfSymbol[i]]++] = symbols[i];
+
+		// the alphabet in character order, with class 0 in the gaps between its symbols
+
+		Integer[] order = new Integer[symbols.length - 1];
+		for(int i = 0; i < order.length; i++)
+			order[i] = i + 1;
+		Arrays.sort(order, (a, b) -> symbols[a] - symbols[b]);
+
+		Runs runs = new Runs(2 * symbols.length + 1);
+		for(int i : order) {
+			runs.add(symbols[i], classOfSymbol[i]);
+			runs.add(symbols[i] + 1, 0);
+		}
+
+		Object table = runs.table(classCount <= 256);
+		this.smallLookup = table instanceof byte[] ? (byte[])table : null;
+		this.lookup = table instanceof char[] ? (char[])table : null;
+	}
+
+	private SymbolClasses(int[] intervalStart, int[] intervalClass, int classCount, boolean codePoints) {
+
+		this.classCount = classCount;
+		this.members = null;
+		this.codePoints = codePoints;
+		this.intervalStart = intervalStart;
+		this.intervalClass = intervalClass;
+
+		Runs runs = new Runs(intervalStart.length + 1);
+		for(int i = 0; i < intervalStart.length; i++)
+			runs.add(intervalStart[i], intervalClass[i]);
+
+		Object table = runs.table(classCount <= 256);
+		this.smallLookup = table instanceof byte[] ? (byte[])table : null;
+		this.lookup = table instanceof char[] ? (char[])table : null;
+	}
+
+	/* The classes of the characters as runs: run i maps the characters from start[i] up to the start of
+	 * run i + 1 to class symbolClass[i]. The first run starts at character 0, and neighbouring runs have
+	 * different classes, so two tables map the characters alike if and only if their runs are equal. */
+
+	private static final class Runs {
+
+		private final int[] start;
+		private final int[] symbolClass;
+		private int n = 0;
+
+		Runs(int capacity) {
+			start = new int[capacity + 1];
+			symbolClass = new int[capacity + 1];
+			add(0, 0);
+		}
+
+		// the characters from 'from' on are in class k, until the next run; runs are added in character order
+
+		void add(int from, int k) {
+			if (from > Character.MAX_VALUE)
+				return;
+			if (n > 0 && start[n - 1] == from)
+				n--;
+			if (n > 0 && symbolClass[n - 1] == k)
+				return;
+			start[n] = from;
+			symbolClass[n++] = k;
+		}
+
+		// the runs as a string of (start, class) characters, after the kind of table
+
+		private String key(boolean small) {
+			StringBuilder key = new StringBuilder(2 * n + 1).append(small ? 'b' : 'c');
+			for(int i = 0; i < n; i++)
+				key.append((char)start[i]).append((char)symbolClass[i]);
+			return key.toString();
+		}
+
+		// the shared table of these runs, a byte[] if small and a char[] otherwise
+
+		Object table(boolean small) {
+			String key = key(small);
+			synchronized (sharedTables) {
+				Object table = sharedTables.get(key);
+				if (table != null)
+					return table;
+			}
+			Object table = small ? new byte[Character.MAX_VALUE + 1] : new char[Character.MAX_VALUE + 1];
+			for(int i = 0; i < n; i++) {
+				int end = i + 1 < n ? start[i + 1] : Character.MAX_VALUE + 1;
+				if (small)
+					Arrays.fill((byte[])table, start[i], end, (byte)symbolClass[i]);
+				else
+					Arrays.fill((char[])table, start[i], end, (char)symbolClass[i]);
+			}
+			synchronized (sharedTables) {
+				Object shared = sharedTables.get(key);
+				if (shared != null)
+					return shared;
+				sharedTables.put(key, table);
+				return table;
+			}
+		}
+	}
+
+	/** Computes the symbol classes of machine.
+	 *
+	 * @param machine a state machine
+	 * @return the coarsest partition of machine's alphabet into symbols that no state of machine distinguishes
+	 */
+	public static SymbolClasses of(NDFSM machine) {
+		return of(new IndexedMachine(machine));
+	}
+
+	/* Refines the partition one state at a time: the symbols that have transitions from the state are
+	 * split by (current class, targets), and the symbols without transitions keep their class. Sets of
+	 * several targets are numbered after the states, so a single number stands for any target set. */
+
+	static SymbolClasses of(IndexedMachine m) {
+
+		int[] classOfSymbol = refine(m);
+
+		// renumber the classes 1, 2, ... in alphabet order
+
+		Map<Integer, Integer> dense = new HashMap<Integer, Integer>();
+		for(int i = 1; i < classOfSymbol.length; i++) {
+			Integer c = dense.get(classOfSymbol[i]);
+			if (c == null) {
+				c = dense.size() + 1;
+				dense.put(classOfSymbol[i], c);
+			}
+			classOfSymbol[i] = c;
+		}
+
+		return new SymbolClasses(m.symbols, classOfSymbol, dense.size() + 1);
+	}
+
+	/* Computes the classes of a machine whose symbols are the consecutive intervals that start at
+	 * intervalStart[0], intervalStart[1], ... (symbol i + 1 is interval i). The intervals that no
+	 * transition reads go to class 0, and the others are numbered 1, 2, ... in the order of their
+	 * first interval. */
+
+	static SymbolClasses ofIntervals(IndexedMachine m, int[] intervalStart, boolean codePoints) {
+
+		int[] classOfSymbol = refine(m);
+
+		Map<Integer, Integer> dense = new HashMap<Integer, Integer>();
+		dense.put(1, 0);
+		int[] intervalClass = new int[intervalStart.length];
+		for(int i = 0; i < intervalStart.length; i++) {
+			Integer c = dense.get(classOfSymbol[i + 1]);
+			if (c == null) {
+				c = dense.size();
+				dense.put(classOfSymbol[i + 1], c);
+			}
+			intervalClass[i] = c;
+		}
+
+		// merge neighbouring intervals of the same class
+
+		int n = 0;
+		for(int i = 0; i < intervalStart.length; i++) {
+			if (n > 0 && intervalClass[n - 1] == intervalClass[i])
+				continue;
+			intervalStart[n] = intervalStart[i];
+			intervalClass[n] = intervalClass[i];
+			n++;
+		}
+
+		return new SymbolClasses(Arrays.copyOf(intervalStart, n), Arrays.copyOf(intervalClass, n), dense.size(), codePoints);
+	}
+
+	// restores classes from the intervals that intervals() returned, for example classes read from a file
+
+	static SymbolClasses fromIntervals(int[] intervalStart, int[] intervalClass, int classCount, boolean codePoints) {
+		return new SymbolClasses(intervalStart.clone(), intervalClass.clone(), classCount, codePoints);
+	}
+
+	// the class of every symbol, numbered sparsely; class 1 is the class of the symbols that no transition reads
+
+	private static int[] refine(IndexedMachine m) {
+
+		int symbolCount = m.symbolCount();
+		int[] classOfSymbol = new int[symbolCount];
+		Arrays.fill(classOfSymbol, 1, symbolCount, 1);
+		int nextClass = 2;
+
+		Map<Long, Integer> split = new HashMap<Long, Integer>();
+		Map<List<Integer>, Integer> targetSets = new HashMap<List<Integer>, Integer>();
+
+		for(int s = 0; s < m.stateCount(); s++) {
+			split.clear();
+			int end = m.edgeStart[s + 1];
+			int e = m.firstEdge(s, 1);
+			while (e < end) {
+				int symbol = m.edgeSymbol[e];
+				int first = e;
+				while (e < end && m.edgeSymbol[e] == symbol)
+					e++;
+
+				int targets;
+				if (e - first == 1) {
+					targets = m.edgeTarget[first];
+				} else {
+					List<Integer> set = new ArrayList<Integer>(e - first);
+					for(int i = first; i < e; i++)
+						set.add(m.edgeTarget[i]);
+					Integer id = targetSets.get(set);
+					if (id == null) {
+						id = m.stateCount() + targetSets.size();
+						targetSets.put(set, id);
+					}
+					targets = id;
+				}
+
+				long key = ((long)classOfSymbol[symbol] << 32) | targets;
+				Integer refined = split.get(key);
+				if (refined == null) {
+					refined = nextClass++;
+					split.put(key, refined);
+				}
+				classOfSymbol[symbol] = refined;
+			}
+		}
+
+		return classOfSymbol;
+	}
+
+	/** Returns the number of classes, including class 0 of the characters outside the alphabet.
+	 *
+	 * @return the number of classes
+	 */
+	public int classCount() {
+		return classCount;
+	}
+
+	/** Returns the class of a character.
+	 *
+	 * @param c a character
+	 * @return the class of c, or 0 if c is not in the alphabet
+	 */
+	public int classOf(char c) {
+		return smallLookup != null ? smallLookup[c] & 0xFF : lookup[c];
+	}
+
+	/** Returns the class of a code point.
+	 *
+	 * @param codePoint a Unicode code point
+	 * @return the class of codePoint, or 0 if no transition reads it
+	 */
+	public int classOfCodePoint(int codePoint) {
+		if (codePoint <= Character.MAX_VALUE)
+			return classOf((char)codePoint);
+		if (intervalStart == null)
+			return 0;
+		int lo = 0, hi = intervalStart.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (intervalStart[mid] <= codePoint)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return intervalClass[lo];
+	}
+
+	/** @return true if and only if the input of the machine is read as code points rather than as characters */
+	public boolean codePoints() {
+		return codePoints;
+	}
+
+	/** Returns the characters (or code points) of a class as sorted, disjoint ranges.
+	 *
+	 * @param symbolClass a class number between 0 and <code>classCount() - 1</code>
+	 * @return the ranges of the class
+	 */
+	public List<CharRange> ranges(int symbolClass) {
+		List<CharRange> ranges = new ArrayList<CharRange>();
+		if (intervalStart != null) {
+			int max = codePoints ? Character.MAX_CODE_POINT : Character.MAX_VALUE;
+			for(int i = 0; i < intervalStart.length; i++) {
+				if (intervalClass[i] == symbolClass)
+					ranges.add(new CharRange(intervalStart[i], i + 1 < intervalStart.length ? intervalStart[i + 1] - 1 : max));
+			}
+			return ranges;
+		}
+		int first = -1, last = -1;
+		for(int c = 0; c <= Character.MAX_VALUE; c++) {
+			if (classOf((char)c) == symbolClass) {
+				if (c != last + 1 || first < 0) {
+					if (first >= 0)
+						ranges.add(new CharRange(first, last));
+					first = c;
+				}
+				last = c;
+			}
+		}
+		if (first >= 0)
+			ranges.add(new CharRange(first, last));
+		return ranges;
+	}
+
+	/** Returns the symbols of a class, in alphabet order. The classes of a machine over character ranges
+	 * have no symbols; use <code>ranges</code> instead.
+	 *
+	 * @param symbolClass a class number between 1 and <code>classCount() - 1</code>
+	 * @return the symbols of the class
+	 */
+	public List<Character> symbols(int symbolClass) {
+		List<Character> symbols = new ArrayList<Character>();
+		if (members == null)
+			return symbols;
+		for(char c : members[symbolClass])
+			symbols.add(c);
+		return symbols;
+	}
+
+	// the whole domain as consecutive intervals: {first code point of every interval, class of every interval}
+
+	int[][] intervals() {
+		if (intervalStart != null)
+			return new int[][] { intervalStart.clone(), intervalClass.clone() };
+		int[] start = new int[16], symbolClass = new int[16];
+		int n = 0;
+		for(int c = 0; c <= Character.MAX_VALUE; c++) {
+			int k = classOf((char)c);
+			if (n > 0 && symbolClass[n - 1] == k)
+				continue;
+			if (n == start.length) {
+				start = Arrays.copyOf(start, n * 2);
+				symbolClass = Arrays.copyOf(symbolClass, n * 2);
+			}
+			start[n] = c;
+			symbolClass[n++] = k;
+		}
+		return new int[][] { Arrays.copyOf(start, n), Arrays.copyOf(symbolClass, n) };
+	}
+
+	// the first symbol of a class in alphabet order
+
+	char representative(int symbolClass) {
+		return members[symbolClass][0];
+	}
+}
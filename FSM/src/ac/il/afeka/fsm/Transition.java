@@ -15,9 +15,9 @@ public class Transition implements Comparable<Transition> {
 	
 	public State toState() { return toState; }
 	
-	private State fromState;
-	private Character symbol;
-	private State toState;
+	private final State fromState;
+	private final Character symbol;
+	private final State toState;
 	
 	public void prettyPrint(PrintStream out) {
 		out.print("(");
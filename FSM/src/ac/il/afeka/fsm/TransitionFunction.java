@@ -1,4 +1,5 @@
 package ac.il.afeka.fsm;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -6,38 +7,64 @@ import java.util.Set;
 
 public class TransitionFunction extends TransitionMapping {
 
-	private Map<State, Map<Character, State> > delta;
+	/* The transitions of a state are kept in a row. A row of up to SPARSE_ROW symbols is two short arrays,
+	 * the symbols sorted and the targets in the same order, which are scanned; a longer row is a map. Most
+	 * states of a partial machine (see DFSM) have only a few transitions, and two arrays take a fraction of
+	 * the memory of a hash map with its entries and boxed keys. */
+
+	private static final int SPARSE_ROW = 8;
+
+	private final Map<State, Row> delta;
 	
 	public TransitionFunction(Set<Transition> transitions) {
 		
-		Map<State, Map<Character, State> > delta = new HashMap<State, Map<Character, State> >();
+		Map<State, Map<Character, State> > rows = new HashMap<State, Map<Character, State> >();
 		
 		for(Transition t : transitions) {
-			if (!delta.containsKey(t.fromState()))
-					delta.put(t.fromState(), new HashMap<Character, State>());
-			delta.get(t.fromState()).put(t.symbol(), t.toState());
+			if (!rows.containsKey(t.fromState()))
+					rows.put(t.fromState(), new HashMap<Character, State>());
+			rows.get(t.fromState()).put(t.symbol(), t.toState());
 		}
 		
+		Map<State, Row> delta = new HashMap<State, Row>();
+		
+		for(Map.Entry<State, Map<Character, State> > p : rows.entrySet())
+			delta.put(p.getKey(), new Row(p.getValue()));
+		
 		this.delta = delta;
 	}
 	
+	/** Returns the state reached from fromState on symbol.
+	 * 
+	 * @param fromState	a state of the machine
+	 * @param symbol	a symbol of the machine's alphabet
+	 * @return the state reached, or null if there is no transition from fromState on symbol
+	 */
 	public State applyTo(State fromState, Character symbol) {
-		return delta.get(fromState).get(symbol);
+		Row row = delta.get(fromState);
+		return row == null ? null : row.get(symbol);
 	}
 	
 	public boolean maps(State fromState, Character symbol) {
-		return delta.containsKey(fromState) && delta.get(fromState).containsKey(symbol);
+		return applyTo(fromState, symbol) != null;
+	}
+
+	/** Returns the number of transitions from state.
+	 * 
+	 * @param state a state of the machine
+	 * @return the number of symbols on which state has a transition
+	 */
+	public int transitionCount(State state) {
+		Row row = delta.get(state);
+		return row == null ? 0 : row.size();
 	}
 
 	public Set<Transition> transitions() {
 		
 		Set<Transition> transitions = new HashSet<Transition>();
 		
-		for(Map.Entry<State, Map<Character, State> > p : delta.entrySet()) {
-			for(Map.Entry<Character, State> q : p.getValue().entrySet()) {
-				transitions.add(new Transition(p.getKey(), q.getKey(), q.getValue()));
-			}
-		}
+		for(Map.Entry<State, Row> p : delta.entrySet())
+			p.getValue().addTo(p.getKey(), transitions);
 		
 		return transitions;
 	}
@@ -50,7 +77,7 @@ public class TransitionFunction extends TransitionMapping {
 	@Override
 	public Set<State> at(State state, Character symbol) {
 		Set<State> result = new HashSet<State>();
-		if (symbol == Alphabet.EPSILON)
+		if (symbol == Alphabet.EPSILON || !maps(state, symbol))
 			return result;
 		result.add(applyTo(state, symbol));
 		return result;
@@ -79,11 +106,60 @@ public class TransitionFunction extends TransitionMapping {
 	 */
 	public void verifyNoEpsilonTransitions() throws Exception {
 		
-		for(Map<Character, State> m : delta.values()) {
-			if (m.keySet().contains(Alphabet.EPSILON))
+		for(Row row : delta.values()) {
+			if (row.get(Alphabet.EPSILON) != null)
 				throw new Exception("The transition function has an epsilon transition");
 		}
 	}
 
-	 
+	// the transitions of one state: sorted arrays of symbols and targets when there are few, or a map
+
+	private static final class Row {
+
+		private final char[] symbols;
+		private final State[] targets;
+		private final Map<Character, State> map;
+
+		Row(Map<Character, State> transitions) {
+			if (transitions.size() > SPARSE_ROW) {
+				this.symbols = null;
+				this.targets = null;
+				this.map = transitions;
+				return;
+			}
+			this.symbols = new char[transitions.size()];
+			int i = 0;
+			for(Character symbol : transitions.keySet())
+				symbols[i++] = symbol;
+			Arrays.sort(symbols);
+			this.targets = new State[symbols.length];
+			for(i = 0; i < symbols.length; i++)
+				targets[i] = transitions.get(symbols[i]);
+			this.map = null;
+		}
+
+		State get(Character symbol) {
+			if (map != null)
+				return map.get(symbol);
+			char c = symbol;
+			for(int i = 0; i < symbols.length && symbols[i] <= c; i++)
+				if (symbols[i] == c)
+					return targets[i];
+			return null;
+		}
+
+		int size() {
+			return map != null ? map.size() : symbols.length;
+		}
+
+		void addTo(State from, Set<Transition> transitions) {
+			if (map != null) {
+				for(Map.Entry<Character, State> q : map.entrySet())
+					transitions.add(new Transition(from, q.getKey(), q.getValue()));
+				return;
+			}
+			for(int i = 0; i < symbols.length; i++)
+				transitions.add(new Transition(from, symbols[i], targets[i]));
+		}
+	}
 }
@@ -33,7 +33,7 @@ public abstract class TransitionMapping {
 
 	public String encode() {
 		
-		String encoding = "";
+		StringBuilder encoding = new StringBuilder();
 		
 		List<Transition> transitionsList = new ArrayList<Transition>(transitions());
 		Collections.sort(transitionsList);
@@ -41,14 +41,14 @@ public abstract class TransitionMapping {
 		Iterator<Transition> p = transitionsList.iterator();
 		
 		if (p.hasNext()) {
-			encoding = encoding + p.next().encode();
+			encoding.append(p.next().encode());
 		}
 		
 		while(p.hasNext()) {
-			encoding = encoding + ";" + p.next().encode();
+			encoding.append(";").append(p.next().encode());
 		}
  		
-		return encoding;
+		return encoding.toString();
 	}
 
 	abstract public Set<State> at(State state, Character symbol);
@@ -6,7 +6,7 @@ import java.util.Set;
 
 public class TransitionRelation extends TransitionMapping {
 
-	private Map<State, Set<Transition> > transitions;
+	private final Map<State, Set<Transition> > transitions;
 
 	public TransitionRelation(Set<Transition> transitions) {
 		
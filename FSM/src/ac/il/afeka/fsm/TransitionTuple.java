@@ -1,6 +1,5 @@
 package ac.il.afeka.fsm;
 import java.util.HashSet;
-import java.util.Scanner;
 import java.util.Set;
 
 public class TransitionTuple {
@@ -15,34 +14,41 @@ public class TransitionTuple {
 		this.toStateId = toStateId;
 	}
 
+	/* The tuples are split by hand rather than with a Scanner: a Scanner compiles its delimiter and
+	 * allocates a buffer, which made parsing the dominant cost of converting small machines. */
+
 	public static TransitionTuple parseTuple(String encoding) {
 		
-		Scanner scanner = new Scanner(encoding);
-		scanner.useDelimiter("\\s*,\\s*");
+		int first = encoding.indexOf(',');
+		int second = first < 0 ? -1 : encoding.indexOf(',', first + 1);
+		if (second < 0)
+			throw new IllegalArgumentException("Invalid transition \"" + encoding + "\"");
 		
-		Integer fromStateId = scanner.nextInt();
+		Integer fromStateId = Integer.parseInt(encoding.substring(0, first).trim());
 		Character symbol;
-		String symbolOrNothing = scanner.next();
+		String symbolOrNothing = encoding.substring(first + 1, second).trim();
 		if (symbolOrNothing.length() == 0)
 			symbol = Alphabet.EPSILON;
 		else
 			symbol = symbolOrNothing.charAt(0);
-		Integer toStateId = scanner.nextInt();
-		scanner.close();
+		Integer toStateId = Integer.parseInt(encoding.substring(second + 1).trim());
 		return new TransitionTuple(fromStateId, symbol, toStateId);
 	}
 
 	public static Set<TransitionTuple> parseTupleList(String encoding) {
 		
-		Scanner scanner = new Scanner(encoding);
-		scanner.useDelimiter("\\s*;\\s*");
-		
 		Set<TransitionTuple> tuples = new HashSet<TransitionTuple>();
 		
-		while(scanner.hasNext()) {
-			tuples.add(parseTuple(scanner.next()));
+		int start = 0;
+		while(start <= encoding.length()) {
+			int end = encoding.indexOf(';', start);
+			if (end < 0)
+				end = encoding.length();
+			String tuple = encoding.substring(start, end);
+			if (!tuple.trim().isEmpty())
+				tuples.add(parseTuple(tuple));
+			start = end + 1;
 		}
-		scanner.close();
 		return tuples;
 	}
 
@@ -0,0 +1,138 @@
+import java.util.Random;
+
+/** Seeded, parameterized generators of machine encodings for tests.
+ *
+ * <p>Every generator returns the encoding of a machine (see <code>NDFSM.parse</code>), and the same
+ * parameters always give the same encoding, so a failing test can be reproduced from its seed.
+ * The symbols are the lowercase letters, followed by the letters from U+0100 on for alphabets of more
+ * than 26 symbols, so they never clash with the separators of the encoding.</p>
+ */
+public final class MachineGenerators {
+
+	private MachineGenerators() { }
+
+	/** The minimal DFSM over {a, b} that accepts the strings that end with b. */
+	public static final String ENDS_WITH_B = "0 1/a b/0,a,0;0,b,1;1,a,0;1,b,1/0/1";
+
+	/** @param i a symbol number from 0
+	 *  @return the i-th symbol of the generated alphabets */
+	public static char symbol(int i) {
+		return i < 26 ? (char)('a' + i) : (char)(0x100 + i - 26);
+	}
+
+	/** @param size the number of symbols
+	 *  @return the encoding of an alphabet of size symbols */
+	public static String alphabet(int size) {
+		StringBuilder alphabet = new StringBuilder();
+		for(int i = 0; i < size; i++)
+			alphabet.append(i > 0 ? " " : "").append(symbol(i));
+		return alphabet.toString();
+	}
+
+	private static String states(int n) {
+		StringBuilder states = new StringBuilder();
+		for(int i = 0; i < n; i++)
+			states.append(i > 0 ? " " : "").append(i);
+		return states.toString();
+	}
+
+	/** A random NDFSM.
+	 *
+	 * @param seed			the seed of the generator
+	 * @param states		the number of states
+	 * @param symbols		the size of the alphabet
+	 * @param density		the expected number of transitions from every state on every symbol
+	 * @param epsilonRatio	the expected number of epsilon transitions from every state
+	 * @param acceptingRatio the probability that a state is accepting
+	 * @return the encoding of the machine
+	 */
+	public static String randomNDFSM(long seed, int states, int symbols, double density, double epsilonRatio, double acceptingRatio) {
+
+		Random random = new Random(seed);
+		StringBuilder transitions = new StringBuilder();
+		StringBuilder accepting = new StringBuilder();
+
+		for(int s = 0; s < states; s++) {
+			for(int c = 0; c < symbols; c++)
+				for(int k = count(random, density); k > 0; k--)
+					transitions.append(s).append(',').append(symbol(c)).append(',').append(random.nextInt(states)).append(';');
+			for(int k = count(random, epsilonRatio); k > 0; k--)
+				transitions.append(s).append(",,").append(random.nextInt(states)).append(';');
+			if (random.nextDouble() < acceptingRatio)
+				accepting.append(s).append(' ');
+		}
+		return states(states) + "/" + alphabet(symbols) + "/" + transitions + "/0/" + accepting;
+	}
+
+	// a random count with the given mean: its whole part, plus one with the probability of its fraction
+
+	private static int count(Random random, double mean) {
+		int whole = (int)mean;
+		return whole + (random.nextDouble() < mean - whole ? 1 : 0);
+	}
+
+	/** A random total DFSM.
+	 *
+	 * @param seed			the seed of the generator
+	 * @param states		the number of states
+	 * @param symbols		the size of the alphabet
+	 * @param acceptingRatio the probability that a state is accepting
+	 * @return the encoding of the machine
+	 */
+	public static String randomDFSM(long seed, int states, int symbols, double acceptingRatio) {
+
+		Random random = new Random(seed);
+		StringBuilder transitions = new StringBuilder();
+		StringBuilder accepting = new StringBuilder();
+
+		for(int s = 0; s < states; s++) {
+			for(int c = 0; c < symbols; c++)
+				transitions.append(s).append(',').append(symbol(c)).append(',').append(random.nextInt(states)).append(';');
+			if (random.nextDouble() < acceptingRatio)
+				accepting.append(s).append(' ');
+		}
+		return states(states) + "/" + alphabet(symbols) + "/" + transitions + "/0/" + accepting;
+	}
+
+	/** The NDFSM of n + 1 states over {a, b} that accepts the strings whose n-th symbol from the end is a.
+	 * Its minimal DFSM has 2^n states, so it is the worst case of the subset construction.
+	 *
+	 * @param n the position from the end, from 1
+	 * @return the encoding of the machine
+	 */
+	public static String nthSymbolFromEnd(int n) {
+		StringBuilder transitions = new StringBuilder("0,a,0;0,b,0;0,a,1;");
+		for(int s = 1; s < n; s++)
+			transitions.append(s).append(",a,").append(s + 1).append(';').append(s).append(",b,").append(s + 1).append(';');
+		return states(n + 1) + "/a b/" + transitions + "/0/" + n;
+	}
+
+	/** The DFSM over {a} that accepts only the string of <code>length</code> a's: a chain of states, and a
+	 * trap state at its end.
+	 *
+	 * @param length the length of the chain
+	 * @return the encoding of the machine
+	 */
+	public static String chain(int length) {
+		StringBuilder transitions = new StringBuilder();
+		for(int s = 0; s <= length; s++)
+			transitions.append(s).append(",a,").append(s + 1).append(';');
+		transitions.append(length + 1).append(",a,").append(length + 1);
+		return states(length + 2) + "/a/" + transitions + "/0/" + length;
+	}
+
+	/** A DFSM over a wide alphabet, where every symbol moves to a state that depends on the symbol, so the
+	 * symbols fall into few symbol classes only when the number of states is small.
+	 *
+	 * @param states	the number of states
+	 * @param symbols	the size of the alphabet
+	 * @return the encoding of the machine
+	 */
+	public static String wideAlphabet(int states, int symbols) {
+		StringBuilder transitions = new StringBuilder();
+		for(int s = 0; s < states; s++)
+			for(int c = 0; c < symbols; c++)
+				transitions.append(s).append(',').append(symbol(c)).append(',').append((s + c) % states).append(';');
+		return states(states) + "/" + alphabet(symbols) + "/" + transitions + "/0/" + (states - 1);
+	}
+}
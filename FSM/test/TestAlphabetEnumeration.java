@@ -99,4 +99,13 @@ public class TestAlphabetEnumeration {
 		assertEquals("baabab",next);
 	}
 
+	@Test
+	public void testNextThreeSymbols() {
+
+		Alphabet alphabet = new Alphabet(new ArrayList<Character>(Arrays.asList('a','b','c')));
+
+		assertEquals("c", alphabet.next("b"));
+		assertEquals("aa", alphabet.next("c"));
+		assertEquals("aca", alphabet.next("abc"));
+	}
 }
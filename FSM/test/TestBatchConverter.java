@@ -0,0 +1,105 @@
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.BatchConverter;
+import ac.il.afeka.fsm.DeterminizationLimits;
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestBatchConverter {
+
+	// a machine over {a, b} that accepts the strings whose n-th symbol from the end is a; its DFSM has 2^n states
+
+	private static String nthFromEnd(int n) {
+		StringBuilder states = new StringBuilder(), transitions = new StringBuilder("0,a,0;0,b,0;0,a,1;");
+		for(int i = 0; i <= n; i++) {
+			states.append(i).append(' ');
+			if (i > 0 && i < n)
+				transitions.append(i + ",a," + (i + 1) + ";" + i + ",b," + (i + 1) + ";");
+		}
+		return states + "/a b/" + transitions + "/0/" + n;
+	}
+
+	private static String lines(List<String> lines) {
+		StringBuilder text = new StringBuilder();
+		for(String line : lines)
+			text.append(line).append('\n');
+		return text.toString();
+	}
+
+	@Test
+	public void testOrderedOutput() throws Exception {
+
+		StringBuilder input = new StringBuilder(), expected = new StringBuilder();
+		for(int i = 0; i < 300; i++) {
+			String machine = nthFromEnd(1 + i % 6);
+			input.append(machine).append('\n');
+			expected.append(new NDFSM(machine).toDFSM().encode()).append('\n');
+		}
+
+		StringWriter output = new StringWriter();
+		BatchConverter.Summary summary = new BatchConverter().threads(4).window(8).run(new StringReader(input.toString()), output);
+
+		assertEquals(expected.toString(), output.toString());
+		assertEquals(300, summary.lines());
+		assertEquals(300, summary.converted());
+		assertEquals(0, summary.failed());
+	}
+
+	@Test
+	public void testFailuresDoNotStopTheBatch() throws Exception {
+
+		String input = lines(Arrays.asList(nthFromEnd(2), "0 1/a/0,c,1/0/1", "", "not a machine", nthFromEnd(3)));
+
+		StringWriter output = new StringWriter();
+		BatchConverter.Summary summary = new BatchConverter().threads(2).minimize(true).canonicalize(true).run(new StringReader(input), output);
+
+		String[] results = output.toString().split("\n", -1);
+		assertEquals(6, results.length);
+		assertEquals(new NDFSM(nthFromEnd(2)).toDFSM().minimize().toCanonicForm().encode(), results[0]);
+		assertTrue(results[1].startsWith("ERROR: "));
+		assertEquals("", results[2]);
+		assertTrue(results[3].startsWith("ERROR: "));
+		assertEquals(new NDFSM(nthFromEnd(3)).toDFSM().minimize().toCanonicForm().encode(), results[4]);
+		assertEquals(2, summary.failed());
+		assertEquals(2, summary.converted());
+	}
+
+	@Test
+	public void testLimitsAndTimeouts() throws Exception {
+
+		String input = lines(Arrays.asList(nthFromEnd(2), nthFromEnd(12)));
+
+		StringWriter output = new StringWriter();
+		BatchConverter.Summary summary = new BatchConverter().limits(DeterminizationLimits.NONE.withMaxStates(100)).run(new StringReader(input), output);
+		assertTrue(output.toString().split("\n")[1].startsWith("ERROR: "));
+		assertEquals(1, summary.failed());
+
+		output = new StringWriter();
+		summary = new BatchConverter().timeout(1, TimeUnit.NANOSECONDS).run(new StringReader(input), output);
+		assertEquals("TIMEOUT\nTIMEOUT\n", output.toString());
+		assertEquals(2, summary.timedOut());
+	}
+
+	@Test
+	public void testUnorderedOutputIsTagged() throws Exception {
+
+		String input = lines(Arrays.asList(nthFromEnd(1), nthFromEnd(2), nthFromEnd(3)));
+
+		StringWriter output = new StringWriter();
+		new BatchConverter().threads(3).ordered(false).run(new StringReader(input), output);
+
+		Set<String> expected = new HashSet<String>();
+		for(int n = 1; n <= 3; n++)
+			expected.add(n + "\t" + new NDFSM(nthFromEnd(n)).toDFSM().encode());
+		assertEquals(expected, new HashSet<String>(Arrays.asList(output.toString().split("\n"))));
+	}
+}
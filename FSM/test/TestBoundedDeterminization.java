@@ -0,0 +1,159 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.Determinization;
+import ac.il.afeka.fsm.DeterminizationException;
+import ac.il.afeka.fsm.DeterminizationLimits;
+import ac.il.afeka.fsm.DeterminizationProgress;
+import ac.il.afeka.fsm.Matcher;
+import ac.il.afeka.fsm.NDFSM;
+import ac.il.afeka.fsm.NDFSMMatcher;
+
+public class TestBoundedDeterminization {
+
+	// accepts the strings whose n-th symbol from the end is 'a'; its DFSM has 2^n states
+
+	private NDFSM nthFromEnd(int n) throws Exception {
+		StringBuilder states = new StringBuilder();
+		StringBuilder transitions = new StringBuilder("0,a,0;0,b,0;0,a,1");
+		for(int i = 0; i <= n; i++)
+			states.append(i).append(' ');
+		for(int i = 1; i < n; i++)
+			transitions.append(";" + i + ",a," + (i + 1) + ";" + i + ",b," + (i + 1));
+		return new NDFSM(states + "/a b/" + transitions + "/0/" + n);
+	}
+
+	@Test
+	public void testWithinLimits() throws Exception {
+
+		DFSM aDFSM = nthFromEnd(4).toDFSM(DeterminizationLimits.NONE.withMaxStates(16));
+
+		assertTrue(aDFSM.compute("abbb"));
+		assertFalse(aDFSM.compute("abbbb"));
+	}
+
+	@Test
+	public void testStateLimit() throws Exception {
+		try {
+			nthFromEnd(12).toDFSM(DeterminizationLimits.NONE.withMaxStates(100));
+			fail("the state limit was not enforced");
+		} catch (DeterminizationException e) {
+			assertEquals(DeterminizationException.Reason.STATE_LIMIT, e.reason());
+			assertEquals(101, e.progress().statesCreated());
+		}
+	}
+
+	@Test
+	public void testMemoryLimit() throws Exception {
+		try {
+			nthFromEnd(12).toDFSM(DeterminizationLimits.NONE.withMaxMemory(10000));
+			fail("the memory limit was not enforced");
+		} catch (DeterminizationException e) {
+			assertEquals(DeterminizationException.Reason.MEMORY_LIMIT, e.reason());
+			assertTrue(e.progress().estimatedBytes() > 10000);
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		try {
+			nthFromEnd(12).toDFSM(DeterminizationLimits.NONE.withTimeout(0, TimeUnit.NANOSECONDS));
+			fail("the time limit was not enforced");
+		} catch (DeterminizationException e) {
+			assertEquals(DeterminizationException.Reason.TIMEOUT, e.reason());
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+
+		Determinization conversion = new Determinization(nthFromEnd(4), DeterminizationLimits.NONE);
+		conversion.cancel();
+
+		try {
+			conversion.run();
+			fail("the cancelled conversion ran");
+		} catch (DeterminizationException e) {
+			assertEquals(DeterminizationException.Reason.CANCELLED, e.reason());
+		}
+	}
+
+	@Test
+	public void testCancelAfterTheLastState() throws Exception {
+
+		// the conversion is cancelled when it creates its last state, while groups are still to be explored
+		final Determinization conversion = new Determinization(nthFromEnd(4), DeterminizationLimits.NONE);
+		conversion.onProgress(new Consumer<DeterminizationProgress>() {
+			public void accept(DeterminizationProgress progress) {
+				conversion.cancel();
+			}
+		}, 16);
+
+		try {
+			conversion.run();
+			fail("the cancelled conversion ran");
+		} catch (DeterminizationException e) {
+			assertEquals(DeterminizationException.Reason.CANCELLED, e.reason());
+			assertEquals(16, e.progress().statesCreated());
+			assertTrue(e.progress().statesExplored() < 16);
+		}
+	}
+
+	@Test
+	public void testProgress() throws Exception {
+
+		final List<DeterminizationProgress> reports = new ArrayList<DeterminizationProgress>();
+
+		new Determinization(nthFromEnd(6), DeterminizationLimits.NONE).onProgress(new Consumer<DeterminizationProgress>() {
+			public void accept(DeterminizationProgress progress) {
+				reports.add(progress);
+			}
+		}, 16).run();
+
+		assertEquals(5, reports.size());
+		assertEquals(64, reports.get(reports.size() - 1).statesCreated());
+		assertEquals(128, reports.get(reports.size() - 1).transitionsCreated());
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<DFSM> future = new Determinization(nthFromEnd(3), DeterminizationLimits.NONE).runAsync(executor);
+			assertTrue(future.get().compute("abb"));
+
+			CompletableFuture<DFSM> limited = new Determinization(nthFromEnd(12), DeterminizationLimits.NONE.withMaxStates(10)).runAsync(executor);
+			try {
+				limited.get();
+				fail("the state limit was not enforced");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof DeterminizationException);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFallBack() throws Exception {
+
+		Matcher matcher = new Determinization(nthFromEnd(12), DeterminizationLimits.NONE.withMaxStates(100)).runOrFallBack();
+
+		assertTrue(matcher instanceof NDFSMMatcher);
+		assertTrue(matcher.matches("abbbbbbbbbbb"));
+		assertFalse(matcher.matches("abbbbbbbbbbbb"));
+		assertFalse(matcher.matches("abc"));
+	}
+}
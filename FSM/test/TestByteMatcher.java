@@ -0,0 +1,112 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.ByteMatcher;
+import ac.il.afeka.fsm.CompiledDFSM;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.NDFSM;
+import ac.il.afeka.fsm.RangeNDFSM;
+
+public class TestByteMatcher {
+
+	private static ByteBuffer bytes(String input) {
+		return ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testBytes() throws Exception {
+
+		CompiledDFSM compiled = new DFSM(MachineGenerators.randomDFSM(45, 40, 4, 0.4)).compile();
+		ByteMatcher matcher = new ByteMatcher(compiled, ByteMatcher.Encoding.BYTES);
+
+		Random random = new Random(45);
+		for(int i = 0; i < 2000; i++) {
+			StringBuilder input = new StringBuilder();
+			for(int j = random.nextInt(12); j > 0; j--)
+				input.append(MachineGenerators.symbol(random.nextInt(5)));
+			assertEquals(input.toString(), compiled.matches(input), matcher.matches(ByteBuffer.wrap(input.toString().getBytes(StandardCharsets.ISO_8859_1))));
+		}
+	}
+
+	@Test
+	public void testUTF8SplitBetweenBuffers() throws Exception {
+
+		// U+00E9 is two bytes, U+05D0 three and U+1F600 four (two chars)
+		String word = "\u00E9\u05D0\uD83D\uDE00";
+		CompiledDFSM compiled = new NDFSM("0 1 2 3 4 5/\u00E9 \u05D0 \uD83D \uDE00/0,\u00E9,1;1,\u05D0,2;2,\uD83D,3;3,\uDE00,4/0/4").toDFSM().compile();
+		ByteMatcher matcher = new ByteMatcher(compiled, ByteMatcher.Encoding.UTF_8);
+
+		assertTrue(matcher.matches(bytes(word)));
+		assertFalse(matcher.matches(bytes(word + "\u00E9")));
+
+		byte[] input = word.getBytes(StandardCharsets.UTF_8);
+		for(int split = 0; split <= input.length; split++) {
+			ByteMatcher.Scan scan = matcher.start();
+			scan.feed(ByteBuffer.wrap(input, 0, split)).feed(ByteBuffer.wrap(input, split, input.length - split));
+			assertTrue("split at " + split, scan.finish().accepts());
+			assertEquals(input.length, scan.offset());
+		}
+	}
+
+	@Test
+	public void testCodePointsAndMalformedInput() throws Exception {
+
+		CompiledDFSM emoji = new RangeNDFSM("0 1/codepoints/0,U+1F600-U+1F64F,1;1,a,1/0/1").toDFSM();
+		ByteMatcher matcher = new ByteMatcher(emoji, ByteMatcher.Encoding.UTF_8);
+		assertTrue(matcher.matches(bytes("\uD83D\uDE00aa")));
+		assertFalse(matcher.matches(bytes("a\uD83D\uDE00")));
+
+		// every malformed sequence reads as one U+FFFD
+		CompiledDFSM replacement = new RangeNDFSM("0 1/codepoints/0,U+FFFD,1;1,a,1/0/1").toDFSM();
+		matcher = new ByteMatcher(replacement, ByteMatcher.Encoding.UTF_8);
+		assertTrue(matcher.matches(ByteBuffer.wrap(new byte[] { (byte)0xFF })));
+		assertTrue(matcher.matches(ByteBuffer.wrap(new byte[] { (byte)0xE0, (byte)0x80, (byte)0x80 })));
+		assertTrue(matcher.matches(ByteBuffer.wrap(new byte[] { (byte)0xED, (byte)0xA0, (byte)0x80, 'a' })));
+		assertTrue(matcher.matches(ByteBuffer.wrap(new byte[] { (byte)0xE2, (byte)0x82, 'a' })));
+		assertTrue(matcher.matches(ByteBuffer.wrap(new byte[] { (byte)0xF0, (byte)0x9F })));
+		assertFalse(matcher.matches(ByteBuffer.wrap(new byte[] { (byte)0xF0, (byte)0x9F, (byte)0xFF })));
+	}
+
+	@Test
+	public void testScanFile() throws Exception {
+
+		// the strings that contain "ab"
+		CompiledDFSM contains = new DFSM("0 1 2/a b/0,a,1;0,b,0;1,a,1;1,b,2;2,a,2;2,b,2/0/2").compile();
+		// the strings that start with "ab"
+		CompiledDFSM startsWith = new DFSM("0 1 2 3/a b/0,a,1;0,b,3;1,a,3;1,b,2;2,a,2;2,b,2;3,a,3;3,b,3/0/2").compile();
+
+		File file = File.createTempFile("bytes", ".txt");
+		try {
+			StringBuilder text = new StringBuilder();
+			for(int i = 0; i < 100000; i++)
+				text.append(i == 70000 ? "ab" : "ba");
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+			}
+
+			ByteMatcher.Scan scan = new ByteMatcher(contains, ByteMatcher.Encoding.BYTES).scan(file);
+			assertTrue(scan.accepts());
+			assertEquals(3, scan.shortestAccepted());
+			assertEquals(200000, scan.longestAccepted());
+			assertEquals(200000, scan.offset());
+
+			// the scan stops within the first block, as soon as the machine cannot accept any more
+			for(ByteMatcher.Encoding encoding : ByteMatcher.Encoding.values()) {
+				scan = new ByteMatcher(startsWith, encoding).scan(file);
+				assertFalse(scan.accepts());
+				assertTrue(scan.isDead());
+				assertEquals(-1, scan.shortestAccepted());
+				assertTrue(scan.offset() <= 4096);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -3,6 +3,7 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.Fingerprint;
 import ac.il.afeka.fsm.NDFSM;
 
 public class TestCanonicForm {
@@ -25,5 +26,40 @@ public class TestCanonicForm {
 		assertEquals(canonic, new NDFSM(original).toCanonicForm().encode());
 
 	}
-	
+
+	@Test
+	public void testCanonicFormFollowsAlphabetOrder() throws Exception {
+
+		// the same machine with its alphabet declared in two orders
+		String ab = "7 3 9/a b/7,a,3;7,b,9;3,a,3;3,b,3;9,a,9;9,b,9/7/3";
+		String ba = "7 3 9/b a/7,a,3;7,b,9;3,a,3;3,b,3;9,a,9;9,b,9/7/3";
+
+		assertEquals("0 1 2/a b/0,a,1;0,b,2;1,a,1;1,b,1;2,a,2;2,b,2/0/1", new DFSM(ab).toCanonicForm().encode());
+		assertEquals("0 1 2/b a/0,a,2;0,b,1;1,a,1;1,b,1;2,a,2;2,b,2/0/2", new DFSM(ba).toCanonicForm().encode());
+	}
+
+	@Test
+	public void testFingerprint() throws Exception {
+
+		Fingerprint f = new DFSM("5/a b/5,b,5;5,a,5/5/").fingerprint();
+
+		assertEquals(f, new DFSM("0/a b/0,a,0;0,b,0/0/").fingerprint());
+		assertEquals(f, new DFSM("5 6/a b/5,b,5;5,a,5;6,a,5;6,b,6/5/6").fingerprint());
+		assertNotEquals(f, new DFSM("0/a b/0,a,0;0,b,0/0/0").fingerprint());
+		assertNotEquals(f, new DFSM("0/b a/0,a,0;0,b,0/0/").fingerprint());
+		assertEquals(f, Fingerprint.parse(f.toString()));
+		assertEquals(32, f.toString().length());
+	}
+
+	@Test
+	public void testFingerprintOfRenamedMachines() throws Exception {
+
+		String original = "1 2 3 4 5 6/a b/1,a,2;1,b,4;2,a,3;2,b,6;3,a,2;3,b,4;4,a,6;4,b,5;5,a,2;5,b,4;6,a,6;6,b,6/1/2 4";
+		String renamed  = "10 20 30 40 50 60/a b/10,a,20;10,b,40;20,a,30;20,b,60;30,a,20;30,b,40;40,a,60;40,b,50;50,a,20;50,b,40;60,a,60;60,b,60/10/20 40";
+
+		assertEquals(new DFSM(original).fingerprint(), new DFSM(renamed).fingerprint());
+		assertEquals(new DFSM(original).toCanonicForm().encode(), new DFSM(renamed).toCanonicForm().encode());
+		assertEquals(new DFSM(original).minimize().fingerprint(), new DFSM(renamed).minimize().fingerprint());
+		assertNotEquals(new DFSM(original).fingerprint(), new DFSM(original).minimize().fingerprint());
+	}
 }
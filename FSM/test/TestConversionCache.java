@@ -0,0 +1,127 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.ConversionCache;
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestConversionCache {
+
+	private static final String MACHINE = "0 1 2/a b/0,a,0;0,b,0;0,a,1;1,b,2/0/2";
+	private static final String RENAMED = "7 4 9/a b/7,a,7;7,b,7;7,a,4;4,b,9/7/9";
+
+	@Test
+	public void testConversionIsCached() throws Exception {
+
+		ConversionCache cache = new ConversionCache(100, 100000);
+		String expected = new NDFSM(MACHINE).toDFSM().encode();
+
+		assertEquals(expected, cache.convert(MACHINE));
+		assertEquals(expected, cache.convert(MACHINE));
+		assertEquals(new NDFSM(RENAMED).toDFSM().encode(), cache.convert(RENAMED));
+
+		ConversionCache.Statistics statistics = cache.statistics();
+		assertEquals(1, statistics.misses());
+		assertEquals(2, statistics.hits());
+		assertEquals(1, statistics.size());
+		assertEquals(expected.length(), statistics.weight());
+	}
+
+	// a machine over {a, b} that accepts exactly the string of n a's
+
+	private static String exactly(int n) {
+		StringBuilder states = new StringBuilder(), transitions = new StringBuilder();
+		for(int i = 0; i <= n; i++) {
+			states.append(i).append(' ');
+			if (i < n)
+				transitions.append(i + ",a," + (i + 1) + ";");
+		}
+		return states + "/a b/" + transitions + "/0/" + n;
+	}
+
+	@Test
+	public void testEvictionKeepsFrequentEntries() throws Exception {
+
+		// one entry per stripe
+		ConversionCache cache = new ConversionCache(16, 1000000);
+
+		for(int round = 0; round < 5; round++)
+			for(int n = 0; n < 16; n++)
+				cache.convert(exactly(n));
+
+		for(int n = 16; n < 100; n++)
+			cache.convert(exactly(n));
+
+		ConversionCache.Statistics statistics = cache.statistics();
+		assertTrue(statistics.size() <= 16);
+		assertTrue(statistics.rejections() > 0);
+
+		long hits = statistics.hits();
+		for(int n = 0; n < 16; n++)
+			cache.convert(exactly(n));
+		assertTrue(cache.statistics().hits() - hits >= 8);
+	}
+
+	@Test
+	public void testWeightLimit() throws Exception {
+
+		ConversionCache cache = new ConversionCache(1000, 16 * 200);
+
+		for(int n = 0; n < 100; n++)
+			cache.convert(exactly(n));
+
+		assertTrue(cache.statistics().weight() <= 16 * 200);
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+
+		File directory = Files.createTempDirectory("conversions").toFile();
+		try {
+			String expected = new ConversionCache(10, 10000, directory).convert(MACHINE);
+
+			ConversionCache restarted = new ConversionCache(10, 10000, directory);
+			assertEquals(expected, restarted.convert(RENAMED));
+			assertEquals(1, restarted.statistics().diskHits());
+		} finally {
+			for(File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testConcurrentConversions() throws Exception {
+
+		final ConversionCache cache = new ConversionCache(100, 1000000);
+		final String machine = exactly(50);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for(int i = 0; i < 64; i++)
+				results.add(pool.submit(() -> cache.convert(machine)));
+			String expected = new NDFSM(machine).toDFSM().encode();
+			for(Future<String> result : results)
+				assertEquals(expected, result.get());
+		} finally {
+			pool.shutdown();
+		}
+
+		ConversionCache.Statistics statistics = cache.statistics();
+		assertEquals(1, statistics.misses());
+		assertEquals(64, statistics.hits() + statistics.misses() + statistics.sharedConversions());
+	}
+
+	@Test(expected = Exception.class)
+	public void testInvalidMachine() throws Exception {
+		new ConversionCache(10, 1000).convert("0/a/0,b,0/0/");
+	}
+}
@@ -0,0 +1,60 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.IdentifiedState;
+import ac.il.afeka.fsm.NDFSM;
+import ac.il.afeka.fsm.State;
+import ac.il.afeka.fsm.StatesInGroups;
+
+public class TestDeterminization {
+
+	@Test
+	public void testSubsetConstruction() throws Exception {
+
+		String original = "0 1 2/a b/0,,1;0,a,2;2,b,2/0/2";
+		String deterministic = "0 1 2/a b/0,a,1;0,b,2;1,a,2;1,b,1;2,a,2;2,b,2/0/1";
+
+		assertEquals(deterministic, new NDFSM(original).toDFSM().encode());
+	}
+
+	@Test
+	public void testEpsilonCycle() throws Exception {
+
+		String original = "0 1 2/a b/0,,1;1,,0;0,a,2;2,b,2/0/2";
+		String deterministic = "0 1 2/a b/0,a,1;0,b,2;1,a,2;1,b,1;2,a,2;2,b,2/0/1";
+
+		assertEquals(deterministic, new NDFSM(original).toDFSM().encode());
+	}
+
+	@Test
+	public void testClosureOfAcceptingState() throws Exception {
+
+		NDFSM anNDFSM = new NDFSM("0 1 2/a b/0,,1;0,a,0;1,b,2;2,,0/0/2");
+
+		assertFalse(anNDFSM.compute(""));
+		assertTrue(anNDFSM.compute("b"));
+		assertTrue(anNDFSM.compute("abab"));
+		assertFalse(anNDFSM.compute("ba"));
+	}
+
+	@Test
+	public void testGroupEquality() {
+
+		State s1 = new IdentifiedState(1), s2 = new IdentifiedState(2), s3 = new IdentifiedState(3);
+
+		StatesInGroups g1 = new StatesInGroups(new HashSet<State>(Arrays.asList(s1, s2)));
+		StatesInGroups g2 = new StatesInGroups(new HashSet<State>(Arrays.asList(s2, s1)));
+		StatesInGroups g3 = new StatesInGroups(new HashSet<State>(Arrays.asList(s1, s3)));
+
+		assertEquals(g1, g2);
+		assertEquals(g1.hashCode(), g2.hashCode());
+		assertNotEquals(g1, g3);
+
+		g3.addNewStates(g1);
+		assertEquals(new HashSet<State>(Arrays.asList(s1, s2, s3)), g3.getStatesGroup());
+	}
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestEpsilonRemoval {
+
+	private void assertSameLanguage(NDFSM expected, NDFSM actual, int maxLength) throws Exception {
+
+		String input = "";
+
+		while (input.length() <= maxLength) {
+			assertEquals("on input \"" + input + "\"", expected.compute(input), actual.compute(input));
+			input = nextAB(input);
+		}
+	}
+
+	// enumerates {a,b}* in length-lexicographic order
+	private String nextAB(String s) {
+		char[] chars = s.toCharArray();
+		int i = chars.length - 1;
+		while (i >= 0 && chars[i] == 'b') {
+			chars[i] = 'a';
+			i--;
+		}
+		if (i < 0)
+			return "a" + new String(chars);
+		chars[i] = 'b';
+		return new String(chars);
+	}
+
+	@Test
+	public void testEpsilonCycleIsMerged() throws Exception {
+
+		String original = "0 1 2 3/a b/0,,1;1,,2;2,,0;2,a,3;3,b,3/0/3";
+		String epsilonFree = "0 3/a b/0,a,3;3,b,3/0/3";
+
+		assertEquals(epsilonFree, new NDFSM(original).removeEpsilons().encode());
+	}
+
+	@Test
+	public void testClosureAcceptance() throws Exception {
+
+		String original = "0 1 2/a b/0,a,1;1,,2;2,b,0/0/2";
+		String epsilonFree = "0 1/a b/0,a,1;1,b,0/0/1";
+
+		assertEquals(epsilonFree, new NDFSM(original).removeEpsilons().encode());
+	}
+
+	@Test
+	public void testDeadAndUnreachableStatesAreRemoved() throws Exception {
+
+		String original = "0 1 2 3/a b/0,a,1;0,b,2;1,a,1;2,a,2;3,a,1/0/1";
+		String trimmed = "0 1/a b/0,a,1;1,a,1/0/1";
+
+		assertEquals(trimmed, new NDFSM(original).removeEpsilons().encode());
+	}
+
+	@Test
+	public void testEmptyLanguage() throws Exception {
+
+		String original = "0 1/a b/0,,1;1,a,0/0/";
+
+		assertEquals("0/a b//0/", new NDFSM(original).removeEpsilons().encode());
+	}
+
+	@Test
+	public void testNoEpsilonTransitionsRemain() throws Exception {
+
+		String original = "0 1 2 3 4/a b/0,,1;0,,3;1,a,2;2,,1;2,,4;3,b,4;4,,0;4,a,4/0/4";
+
+		NDFSM epsilonFree = new NDFSM(original).removeEpsilons();
+
+		assertFalse(epsilonFree.encode().contains(",,"));
+		assertSameLanguage(new NDFSM(original), epsilonFree, 8);
+	}
+
+	@Test
+	public void testLongEpsilonChain() throws Exception {
+
+		int n = 5000;
+		StringBuilder states = new StringBuilder();
+		StringBuilder transitions = new StringBuilder();
+		for(int i = 0; i < n; i++) {
+			states.append(i).append(' ');
+			transitions.append(i).append(",,").append(i + 1).append(';');
+		}
+		states.append(n);
+		transitions.append(n).append(",a,").append(n);
+
+		NDFSM chain = new NDFSM(states + "/a b/" + transitions + "/0/" + n);
+		NDFSM epsilonFree = chain.removeEpsilons();
+
+		assertEquals("0 " + n + "/a b/0,a," + n + ";" + n + ",a," + n + "/0/0 " + n, epsilonFree.encode());
+		assertTrue(epsilonFree.compute("aaa"));
+		assertFalse(epsilonFree.compute("ab"));
+	}
+}
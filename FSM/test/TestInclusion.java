@@ -0,0 +1,91 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestInclusion {
+
+	private static final String CONTAINS_B = "0 1/a b/0,a,0;0,b,0;0,b,1;1,a,1;1,b,1/0/1";
+
+	@Test
+	public void testSubset() throws Exception {
+
+		NDFSM endsWithB = new DFSM(MachineGenerators.ENDS_WITH_B);
+		NDFSM containsB = new NDFSM(CONTAINS_B);
+
+		assertTrue(endsWithB.isSubsetOf(containsB));
+		assertFalse(containsB.isSubsetOf(endsWithB));
+		assertTrue(endsWithB.isSubsetOf(endsWithB));
+
+		for(boolean simulation : new boolean[] { false, true }) {
+			String counterexample = containsB.inclusionCounterexample(endsWithB, simulation);
+			assertTrue(containsB.compute(counterexample));
+			assertFalse(endsWithB.compute(counterexample));
+			assertNull(endsWithB.inclusionCounterexample(containsB, simulation));
+		}
+
+		// a symbol that the other machine does not have
+		assertEquals("c", new NDFSM("0 1/a c/0,c,1/0/1").inclusionCounterexample(new NDFSM(CONTAINS_B), false));
+		// epsilon transitions on both sides
+		assertTrue(new NDFSM("0 1 2/a b/0,,1;1,b,2;2,,0/0/2").isSubsetOf(new NDFSM("0 1 2/a b/0,a,0;0,,1;1,b,2;2,,1/0/2")));
+	}
+
+	@Test
+	public void testUniversal() throws Exception {
+
+		assertTrue(new NDFSM("0 1/a b/0,a,0;0,b,0;0,,1/0/1").isUniversal());
+		assertFalse(new NDFSM(CONTAINS_B).isUniversal());
+		assertTrue(new NDFSM("0/a//0/0").isSubsetOf(new NDFSM("0 1/a b/0,a,1;1,a,0/0/0")));
+
+		// the strings of length below n, or whose n-th symbol from the end is a or b: universal, but its
+		// DFSM has 2^n states
+		int n = 14;
+		StringBuilder states = new StringBuilder("0"), transitions = new StringBuilder("0,a,0;0,b,0;0,a,1;0,b,1;");
+		StringBuilder accepting = new StringBuilder(n + " ");
+		for(int s = 1; s <= n; s++)
+			states.append(' ').append(s);
+		for(int s = 1; s < n; s++)
+			transitions.append(s).append(",a,").append(s + 1).append(';').append(s).append(",b,").append(s + 1).append(';');
+		for(int s = 0; s < n; s++) {
+			states.append(' ').append(n + 1 + s);
+			transitions.append(s == 0 ? "0" : "" + (n + s)).append(",,").append(n + 1 + s).append(';');
+			if (s > 0)
+				transitions.append(n + s).append(",a,").append(n + 1 + s).append(';').append(n + s).append(",b,").append(n + 1 + s).append(';');
+			accepting.append(n + 1 + s).append(' ');
+		}
+		NDFSM wide = new NDFSM(states + "/a b/" + transitions + "/0/" + accepting);
+		assertTrue(wide.isUniversal());
+	}
+
+	// the results agree with determinizing and complementing
+
+	@Test
+	public void testAgreesWithEnumeration() throws Exception {
+
+		Random random = new Random(47);
+		for(int round = 0; round < 200; round++) {
+			NDFSM a = new NDFSM(MachineGenerators.randomNDFSM(random.nextLong(), 1 + random.nextInt(5), 2, 0.7, 0.3, 0.5));
+			NDFSM b = new NDFSM(MachineGenerators.randomNDFSM(random.nextLong(), 1 + random.nextInt(5), 2, 1.0, 0.3, 0.5));
+
+			// the strings of a that b rejects, through the complement of the DFSM of b
+			boolean subset = NDFSM.intersectionIsEmpty(Arrays.asList(a, b.toDFSM().complement()));
+
+			for(boolean simulation : new boolean[] { false, true }) {
+				String counterexample = a.inclusionCounterexample(b, simulation);
+				String message = "round " + round + " " + a.encode() + " " + b.encode();
+				if (subset) {
+					assertNull(message, counterexample);
+				} else {
+					assertNotNull(message, counterexample);
+					assertTrue(message, a.compute(counterexample) && !b.compute(counterexample));
+				}
+			}
+			assertEquals(b.shortestRejected() == null, b.isUniversal());
+		}
+	}
+}
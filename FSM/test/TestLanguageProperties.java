@@ -0,0 +1,68 @@
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestLanguageProperties {
+
+	@Test
+	public void testEmptiness() throws Exception {
+
+		// 2 is accepting but unreachable
+		assertTrue(new NDFSM("0 1 2/a b/0,a,1;1,b,0;2,a,2/0/2").isEmpty());
+		assertTrue(new NDFSM("0/a//0/").isEmpty());
+		assertFalse(new NDFSM("0 1 2/a b/0,a,1;1,,2/0/2").isEmpty());
+		assertFalse(new DFSM(MachineGenerators.ENDS_WITH_B).isEmpty());
+	}
+
+	@Test
+	public void testFiniteness() throws Exception {
+
+		assertFalse(new DFSM(MachineGenerators.ENDS_WITH_B).isFinite());
+
+		// the cycle through 2 cannot lead to an accepting state, and the cycle on 0 1 only reads epsilon
+		assertTrue(new NDFSM("0 1 2 3/a b/0,,1;1,,0;1,a,3;0,b,2;2,a,2/0/3").isFinite());
+		assertFalse(new NDFSM("0 1 2/a b/0,a,1;1,,0;1,b,2/0/2").isFinite());
+		assertTrue(new NDFSM("0/a//0/").isFinite());
+	}
+
+	@Test
+	public void testUniversality() throws Exception {
+
+		assertTrue(new DFSM("0/a b/0,a,0;0,b,0/0/0").isUniversal());
+		assertFalse(new DFSM(MachineGenerators.ENDS_WITH_B).isUniversal());
+
+		// accepts every string, but no single state accepts them all
+		assertTrue(new NDFSM("0 1 2/a b/0,,1;0,,2;1,a,1;1,b,2;2,b,2;2,a,1/0/1 2").isUniversal());
+		assertTrue(new NDFSM("0 1/a b/0,a,0;0,b,0;0,a,1/0/0 1").isUniversal());
+		assertFalse(new NDFSM("0 1/a b/0,a,1;1,a,1;1,b,1/0/0 1").isUniversal());
+	}
+
+	@Test
+	public void testLanguageSize() throws Exception {
+
+		assertEquals(BigInteger.valueOf(4), new NDFSM("0 1 2/a b/0,a,1;0,b,1;1,a,2;1,,2/0/1 2").languageSize());
+		assertEquals(BigInteger.ZERO, new NDFSM("0 1/a//0/1").languageSize());
+		assertNull(new DFSM(MachineGenerators.ENDS_WITH_B).languageSize());
+
+		// all the strings of up to 100 symbols over {a, b}: 2^101 - 1 of them
+		StringBuilder states = new StringBuilder();
+		StringBuilder transitions = new StringBuilder();
+		for(int i = 0; i <= 101; i++) {
+			states.append(i).append(' ');
+			int next = Math.min(i + 1, 101);
+			transitions.append(i).append(",a,").append(next).append(';').append(i).append(",b,").append(next).append(';');
+		}
+		StringBuilder accepting = new StringBuilder();
+		for(int i = 0; i <= 100; i++)
+			accepting.append(i).append(' ');
+		DFSM upTo100 = new DFSM(states + "/a b/" + transitions + "/0/" + accepting);
+
+		assertTrue(upTo100.isFinite());
+		assertEquals(BigInteger.ONE.shiftLeft(101).subtract(BigInteger.ONE), upTo100.languageSize());
+	}
+}
@@ -0,0 +1,112 @@
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.MachineSet;
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestMachineSet {
+
+	private static BitSet expected(List<DFSM> machines, BitSet ids, String input) {
+		BitSet result = new BitSet();
+		for(int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+			if (machines.get(id).compute(input))
+				result.set(id);
+		return result;
+	}
+
+	@Test
+	public void testAccepting() throws Exception {
+
+		MachineSet set = new MachineSet();
+		// ends with b; even number of a's; contains c (partial, over a different alphabet)
+		int endsWithB = set.add(new DFSM("0 1/a b/0,a,0;0,b,1;1,a,0;1,b,1/0/1"));
+		int evenA = set.add(new DFSM("0 1/a b/0,a,1;0,b,0;1,a,0;1,b,1/0/0"));
+		int hasC = set.add(new DFSM("0 1/a b c/0,a,0;0,b,0;0,c,1;1,a,1;1,b,1;1,c,1/0/1"));
+
+		assertEquals(3, set.size());
+		assertEquals(bits(evenA), set.accepting(""));
+		assertEquals(bits(endsWithB, evenA), set.accepting("aab"));
+		// c is not in the alphabet of the first two machines
+		assertEquals(bits(hasC), set.accepting("acb"));
+		assertEquals(bits(hasC), set.accepting("cbaa"));
+		assertEquals(bits(endsWithB, evenA), set.accepting(new StringReader("abab")));
+
+		assertTrue(set.remove(evenA));
+		assertFalse(set.remove(evenA));
+		assertEquals(2, set.size());
+		assertEquals(bits(endsWithB), set.accepting("aab"));
+
+		int again = set.add(new DFSM("0 1/a b/0,a,1;0,b,0;1,a,0;1,b,1/0/0"));
+		assertEquals(3, again);
+		assertEquals(bits(endsWithB, again), set.accepting("aab"));
+
+		assertEquals(new BitSet(), new MachineSet().accepting("abc"));
+	}
+
+	private static BitSet bits(int... ids) {
+		BitSet result = new BitSet();
+		for(int id : ids)
+			result.set(id);
+		return result;
+	}
+
+	@Test
+	public void testAgreesWithEachMachine() throws Exception {
+
+		Random random = new Random(3);
+		List<DFSM> machines = new ArrayList<DFSM>();
+		MachineSet set = new MachineSet();
+		BitSet ids = new BitSet();
+		for(int seed = 0; seed < 60; seed++) {
+			DFSM machine = new NDFSM(MachineGenerators.randomNDFSM(seed, 3 + seed % 6, 2 + seed % 3, 1.5, 0.1, 0.3)).toDFSM();
+			machines.add(machine);
+			ids.set(set.add(machine));
+		}
+
+		for(int round = 0; round < 3; round++) {
+			for(int i = 0; i < 300; i++) {
+				StringBuilder input = new StringBuilder();
+				for(int j = random.nextInt(40); j > 0; j--)
+					input.append(MachineGenerators.symbol(random.nextInt(5)));
+				assertEquals(input.toString(), expected(machines, ids, input.toString()), set.accepting(input));
+			}
+			// drop a few machines, and the cache with them
+			for(int k = 0; k < 10; k++) {
+				int id = random.nextInt(machines.size());
+				assertEquals(ids.get(id), set.remove(id));
+				ids.clear(id);
+			}
+		}
+	}
+
+	@Test
+	public void testSmallCache() throws Exception {
+
+		// the product of these machines has far more states than the cache holds
+		List<DFSM> machines = new ArrayList<DFSM>();
+		MachineSet set = new MachineSet().cacheLimit(8);
+		BitSet ids = new BitSet();
+		for(int n = 2; n < 12; n++) {
+			DFSM machine = new NDFSM(MachineGenerators.nthSymbolFromEnd(n)).toDFSM();
+			machines.add(machine);
+			ids.set(set.add(machine));
+		}
+
+		Random random = new Random(5);
+		for(int i = 0; i < 50; i++) {
+			StringBuilder input = new StringBuilder();
+			for(int j = random.nextInt(200); j > 0; j--)
+				input.append(random.nextBoolean() ? 'a' : 'b');
+			assertEquals(expected(machines, ids, input.toString()), set.accepting(input));
+			assertTrue(set.cachedStates() <= 8);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.CompiledDFSM;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.Matcher;
+import ac.il.afeka.fsm.MatcherGenerator;
+import ac.il.afeka.fsm.RangeNDFSM;
+
+public class TestMatcherGenerator {
+
+	@Test
+	public void testGeneratedMatcher() throws Exception {
+
+		DFSM aDFSM = new DFSM(MachineGenerators.ENDS_WITH_B);
+		Matcher matcher = new MatcherGenerator().generate(aDFSM);
+
+		assertTrue(MatcherGenerator.isGenerated(matcher));
+		for(String input : Arrays.asList("", "a", "b", "ab", "ba", "aab", "abba", "abc", "c")) {
+			assertEquals(input, aDFSM.matches(input), matcher.matches(input));
+		}
+	}
+
+	@Test
+	public void testTrapStatesStopReading() throws Exception {
+
+		// the strings that start with "a", as a total DFSM that is not minimized: state 2 is its trap state
+		DFSM startsWithA = new DFSM("0 1 2/a b/0,a,1;0,b,2;1,a,1;1,b,1;2,a,2;2,b,2/0/1");
+		Matcher matcher = new MatcherGenerator().generate(startsWithA);
+
+		// an input that counts the characters read from it
+		int[] read = new int[1];
+		CharSequence input = new CharSequence() {
+			public int length() { return 1000; }
+			public char charAt(int index) { read[0]++; return index == 0 ? 'b' : 'a'; }
+			public CharSequence subSequence(int start, int end) { throw new UnsupportedOperationException(); }
+		};
+
+		assertTrue(MatcherGenerator.isGenerated(matcher));
+		assertFalse(matcher.matches(input));
+		assertEquals(1, read[0]);
+		assertTrue(matcher.matches("abab"));
+	}
+
+	@Test
+	public void testAgreesWithTableOnRandomInput() throws Exception {
+
+		// identifiers, with a dead state and a state that accepts everything after "//"
+		RangeNDFSM machine = new RangeNDFSM("0 1 2 3/chars/0,a-z,1;0,_,1;1,a-z,1;1,0-9,1;1,_,1;0,U+2F,2;2,U+2F,3;3,U+0-U+FFFF,3/0/1 3");
+		CompiledDFSM compiled = machine.minimize();
+		Matcher generated = new MatcherGenerator().generate(compiled);
+
+		assertTrue(MatcherGenerator.isGenerated(generated));
+
+		Random random = new Random(32);
+		String symbols = "az_09/ Z\u00E9";
+		for(int i = 0; i < 2000; i++) {
+			StringBuilder input = new StringBuilder();
+			int length = random.nextInt(8);
+			for(int j = 0; j < length; j++)
+				input.append(symbols.charAt(random.nextInt(symbols.length())));
+			assertEquals(input.toString(), compiled.matches(input), generated.matches(input));
+		}
+		assertTrue(generated.matches("//\uFFFF"));
+	}
+
+	@Test
+	public void testCodePoints() throws Exception {
+
+		RangeNDFSM machine = new RangeNDFSM("0 1/codepoints/0,U+1F600-U+1F64F,1;1,0-9,1/0/1");
+		Matcher generated = new MatcherGenerator().generate(machine.toDFSM());
+		String smile = new String(Character.toChars(0x1F600));
+
+		assertTrue(MatcherGenerator.isGenerated(generated));
+		assertTrue(generated.matches(smile + "12"));
+		assertFalse(generated.matches(smile + smile));
+		assertFalse(generated.matches("\uD83D"));
+	}
+
+	@Test
+	public void testLargeMachineFallsBackToTable() throws Exception {
+
+		CompiledDFSM compiled = new DFSM(MachineGenerators.ENDS_WITH_B).compile();
+
+		assertSame(compiled, new MatcherGenerator(2, 10).generate(compiled));
+	}
+
+	@Test
+	public void testLiveClassesAreBounded() throws Exception {
+
+		MatcherGenerator generator = new MatcherGenerator(100, MatcherGenerator.liveClasses() + 2);
+		CompiledDFSM compiled = new DFSM(MachineGenerators.ENDS_WITH_B).compile();
+
+		List<Matcher> matchers = new ArrayList<Matcher>();
+		for(int i = 0; i < 3; i++)
+			matchers.add(generator.generate(compiled));
+
+		assertTrue(MatcherGenerator.isGenerated(matchers.get(0)));
+		assertTrue(MatcherGenerator.isGenerated(matchers.get(1)));
+		assertSame(compiled, matchers.get(2));
+		assertTrue(matchers.get(2).matches("ab"));
+	}
+}
@@ -0,0 +1,107 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.FlightRecorderListener;
+import ac.il.afeka.fsm.Metrics;
+import ac.il.afeka.fsm.MetricsListener;
+import ac.il.afeka.fsm.NDFSM;
+import ac.il.afeka.fsm.OperationStats;
+
+public class TestMetrics {
+
+	private List<OperationStats> record(String encoding) throws Exception {
+
+		final List<OperationStats> recorded = new ArrayList<OperationStats>();
+
+		Metrics.setListener(new MetricsListener() {
+			public void operationCompleted(OperationStats stats) {
+				recorded.add(stats);
+			}
+		});
+		try {
+			DFSM aDFSM = new NDFSM(encoding).toDFSM();
+			aDFSM.minimize().toCanonicForm();
+			aDFSM.compute("abba");
+		} finally {
+			Metrics.setListener(null);
+		}
+		return recorded;
+	}
+
+	@Test
+	public void testOperationsAreReported() throws Exception {
+
+		List<OperationStats> recorded = record("0 1 2/a b/0,,1;0,a,0;1,b,2;2,,0/0/2");
+
+		assertEquals(OperationStats.Operation.TO_DFSM, recorded.get(0).operation());
+		assertEquals(OperationStats.Operation.MINIMIZE, recorded.get(1).operation());
+		assertEquals(OperationStats.Operation.TO_CANONIC_FORM, recorded.get(2).operation());
+		assertEquals(OperationStats.Operation.COMPUTE, recorded.get(3).operation());
+	}
+
+	@Test
+	public void testCounters() throws Exception {
+
+		List<OperationStats> recorded = record("0 1 2/a b/0,,1;0,a,0;1,b,2;2,,0/0/2");
+
+		OperationStats toDFSM = recorded.get(0);
+		assertEquals(toDFSM.statesProduced(), toDFSM.subsetsExplored());
+		assertEquals(2 * toDFSM.statesProduced(), toDFSM.transitionsProduced());
+		assertTrue(toDFSM.closureComputations() > 0);
+		assertTrue(toDFSM.closureCacheHits() > 0);
+		assertTrue(toDFSM.wallTimeNanos() > 0);
+
+		assertTrue(recorded.get(1).refinementRounds() > 0);
+
+		assertEquals(4, recorded.get(3).charactersRead());
+	}
+
+	@Test
+	public void testNothingIsReportedWithoutListener() throws Exception {
+
+		final List<OperationStats> recorded = new ArrayList<OperationStats>();
+
+		Metrics.setListener(new MetricsListener() {
+			public void operationCompleted(OperationStats stats) {
+				recorded.add(stats);
+			}
+		});
+		Metrics.setListener(null);
+
+		new NDFSM("0 1/a b/0,a,1;0,b,0;1,a,1;1,b,0/0/1").toDFSM().minimize();
+
+		assertTrue(recorded.isEmpty());
+	}
+
+	@Test
+	public void testFlightRecorderListenerPassesOperationsOn() throws Exception {
+
+		final List<OperationStats> started = new ArrayList<OperationStats>();
+		final List<OperationStats> recorded = new ArrayList<OperationStats>();
+
+		Metrics.setListener(new FlightRecorderListener(0, new MetricsListener() {
+			public void operationStarted(OperationStats stats) {
+				assertEquals(0, stats.charactersRead());
+				started.add(stats);
+			}
+
+			public void operationCompleted(OperationStats stats) {
+				recorded.add(stats);
+			}
+		}));
+		try {
+			new DFSM("0 1/a b/0,a,1;0,b,0;1,a,1;1,b,0/0/1").compute("ab");
+		} finally {
+			Metrics.setListener(null);
+		}
+
+		assertEquals(1, recorded.size());
+		assertEquals(recorded, started);
+		assertEquals(2, recorded.get(0).charactersRead());
+	}
+}
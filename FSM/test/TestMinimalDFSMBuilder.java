@@ -0,0 +1,99 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.Alphabet;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.MinimalDFSMBuilder;
+
+public class TestMinimalDFSMBuilder {
+
+	@Test
+	public void testSmallDictionary() throws Exception {
+
+		DFSM aDFSM = MinimalDFSMBuilder.fromSortedWords(Alphabet.parse("a b"), Arrays.asList("ab", "abb", "b", "bb"));
+
+		assertTrue(aDFSM.compute("ab"));
+		assertTrue(aDFSM.compute("abb"));
+		assertTrue(aDFSM.compute("b"));
+		assertTrue(aDFSM.compute("bb"));
+		assertFalse(aDFSM.compute(""));
+		assertFalse(aDFSM.compute("a"));
+		assertFalse(aDFSM.compute("ba"));
+		assertFalse(aDFSM.compute("abbb"));
+	}
+
+	@Test
+	public void testResultIsMinimal() throws Exception {
+
+		DFSM aDFSM = MinimalDFSMBuilder.fromSortedWords(Alphabet.parse("a b"), Arrays.asList("ab", "abb", "b", "bb"));
+
+		assertTrue(aDFSM.encode().startsWith("0 1 2 3 4/"));
+		assertEquals(aDFSM.minimize().toCanonicForm().encode(), aDFSM.toCanonicForm().encode());
+	}
+
+	@Test
+	public void testEmptyDictionary() throws Exception {
+
+		DFSM aDFSM = new MinimalDFSMBuilder(Alphabet.parse("a b")).build();
+
+		assertEquals("0/a b/0,a,0;0,b,0/0/", aDFSM.encode());
+	}
+
+	@Test
+	public void testEmptyWord() throws Exception {
+
+		DFSM aDFSM = MinimalDFSMBuilder.fromSortedWords(Alphabet.parse("a b"), Arrays.asList("", "a"));
+
+		assertTrue(aDFSM.compute(""));
+		assertTrue(aDFSM.compute("a"));
+		assertFalse(aDFSM.compute("b"));
+	}
+
+	@Test(expected = Exception.class)
+	public void testUnsortedInputIsRejected() throws Exception {
+		MinimalDFSMBuilder.fromSortedWords(Alphabet.parse("a b"), Arrays.asList("b", "a"));
+	}
+
+	@Test(expected = Exception.class)
+	public void testSymbolNotInAlphabet() throws Exception {
+		MinimalDFSMBuilder.fromSortedWords(Alphabet.parse("a b"), Arrays.asList("abc"));
+	}
+
+	@Test
+	public void testSortedAndUnsortedAgree() throws Exception {
+
+		Alphabet alphabet = Alphabet.parse("a b c");
+		Random random = new Random(42);
+
+		TreeSet<String> words = new TreeSet<String>();
+		while (words.size() < 300) {
+			StringBuilder word = new StringBuilder();
+			int length = random.nextInt(8);
+			for(int i = 0; i < length; i++)
+				word.append("abc".charAt(random.nextInt(3)));
+			words.add(word.toString());
+		}
+
+		List<String> shuffled = new ArrayList<String>(words);
+		Collections.shuffle(shuffled, random);
+		shuffled.addAll(shuffled.subList(0, 20));
+
+		DFSM sorted = MinimalDFSMBuilder.fromSortedWords(alphabet, words);
+		DFSM unsorted = MinimalDFSMBuilder.fromWords(alphabet, shuffled);
+
+		assertEquals(sorted.minimize().toCanonicForm().encode(), sorted.toCanonicForm().encode());
+		assertEquals(sorted.toCanonicForm().encode(), unsorted.toCanonicForm().encode());
+
+		for(String word : words)
+			assertTrue(unsorted.compute(word));
+		assertFalse(unsorted.compute("aaaaaaaaa"));
+	}
+}
@@ -0,0 +1,136 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.CompiledDFSM;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.OffHeapDFSM;
+import ac.il.afeka.fsm.RangeNDFSM;
+
+public class TestOffHeapDFSM {
+
+	private static void assertSameMatches(CompiledDFSM compiled, OffHeapDFSM offHeap, int symbols) {
+		Random random = new Random(43);
+		for(int i = 0; i < 2000; i++) {
+			StringBuilder input = new StringBuilder();
+			for(int j = random.nextInt(12); j > 0; j--)
+				input.append(MachineGenerators.symbol(random.nextInt(symbols + 1)));
+			assertEquals(input.toString(), compiled.matches(input), offHeap.matches(input));
+		}
+	}
+
+	@Test
+	public void testDirect() throws Exception {
+
+		CompiledDFSM compiled = new DFSM(MachineGenerators.randomDFSM(43, 50, 4, 0.4)).compile();
+
+		try (OffHeapDFSM offHeap = OffHeapDFSM.of(compiled)) {
+			assertEquals(compiled.stateCount(), offHeap.stateCount());
+			assertSameMatches(compiled, offHeap, 4);
+		}
+	}
+
+	@Test
+	public void testSaveAndMap() throws Exception {
+
+		CompiledDFSM compiled = new DFSM(MachineGenerators.randomDFSM(44, 300, 30, 0.4)).compile().minimize();
+		File file = File.createTempFile("offheap", ".dfsm");
+		try {
+			OffHeapDFSM.of(compiled).save(file);
+
+			try (OffHeapDFSM mapped = OffHeapDFSM.map(file)) {
+				assertEquals(compiled.stateCount(), mapped.stateCount());
+				assertEquals(compiled.symbolClasses().classCount(), mapped.symbolClasses().classCount());
+				assertSameMatches(compiled, mapped, 30);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCodePoints() throws Exception {
+
+		CompiledDFSM compiled = new RangeNDFSM("0 1/codepoints/0,U+1F600-U+1F64F,1;1,0-9,1/0/1").toDFSM();
+		File file = File.createTempFile("offheap", ".dfsm");
+		try {
+			OffHeapDFSM.of(compiled).save(file);
+			try (OffHeapDFSM mapped = OffHeapDFSM.map(file)) {
+				String smile = new String(Character.toChars(0x1F600));
+				assertTrue(mapped.matches(smile + "42"));
+				assertFalse(mapped.matches(smile + smile));
+				assertFalse(mapped.matches("4"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosed() throws Exception {
+
+		OffHeapDFSM offHeap = OffHeapDFSM.of(new DFSM("0 1/a b/0,a,0;0,b,1;1,a,0;1,b,1/0/1").compile());
+		assertTrue(offHeap.matches("ab"));
+		offHeap.close();
+		offHeap.matches("ab");
+	}
+
+	// overwrites the int at index of the file, which is little endian as save writes it
+
+	private static void overwrite(File file, int index, int value) throws IOException {
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			out.getChannel().write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value), index * 4L);
+		}
+	}
+
+	@Test
+	public void testDamagedMachine() throws Exception {
+
+		// 3 states (with the dead state), 3 classes and 4 intervals: the table starts at int 7 + 8 + 1
+		CompiledDFSM compiled = new DFSM("0 1/a b/0,a,0;0,b,1;1,a,0;1,b,1/0/1").compile();
+		int[][] damages = {
+			{ 3, 1 << 30 }, { 4, 1 << 30 },		// width * states does not fit in an int
+			{ 5, 3 }, { 5, -1 },				// the initial state
+			{ 7, 1 }, { 8, 0 },					// interval starts
+			{ 11, 3 },							// an interval class
+			{ 20, 4 }, { 20, 9 }, { 20, -3 }	// table entries
+		};
+		File file = File.createTempFile("offheap", ".dfsm");
+		try {
+			for(int[] damage : damages) {
+				OffHeapDFSM.of(compiled).save(file);
+				OffHeapDFSM.map(file).close();
+				overwrite(file, damage[0], damage[1]);
+				try {
+					OffHeapDFSM.map(file);
+					fail("int " + damage[0] + " set to " + damage[1] + " was not detected");
+				} catch (IOException e) {
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAMachine() throws Exception {
+
+		File file = File.createTempFile("offheap", ".dfsm");
+		try {
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				out.write(new byte[64]);
+			}
+			OffHeapDFSM.map(file);
+		} finally {
+			file.delete();
+		}
+	}
+}
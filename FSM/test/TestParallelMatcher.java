@@ -0,0 +1,113 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.CompiledDFSM;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.ParallelMatcher;
+
+public class TestParallelMatcher {
+
+	private static String randomInput(long seed, int length, int symbols) {
+		Random random = new Random(seed);
+		StringBuilder input = new StringBuilder(length);
+		for(int i = 0; i < length; i++)
+			input.append(MachineGenerators.symbol(random.nextInt(symbols)));
+		return input.toString();
+	}
+
+	// the number of prefixes of input that compiled accepts, one prefix at a time
+
+	private static long countPrefixes(CompiledDFSM compiled, String input) {
+		long count = 0;
+		for(int i = 0; i <= input.length(); i++)
+			if (compiled.matches(input.substring(0, i)))
+				count++;
+		return count;
+	}
+
+	@Test
+	public void testRandomMachines() throws Exception {
+
+		for(int seed = 0; seed < 5; seed++) {
+			CompiledDFSM compiled = new DFSM(MachineGenerators.randomDFSM(seed, 20 + 40 * seed, 3, 0.5)).compile();
+			String input = randomInput(seed, 300000 + seed, 4);
+			ParallelMatcher matcher = new ParallelMatcher(compiled).threads(4);
+
+			assertEquals(compiled.matches(input), matcher.matches(input));
+			assertEquals(compiled.matches(input), matcher.matches(ByteBuffer.wrap(input.getBytes(StandardCharsets.ISO_8859_1))));
+			assertEquals(compiled.matches(input + "a"), matcher.matches(input + "a"));
+		}
+	}
+
+	@Test
+	public void testCountOccurrences() throws Exception {
+
+		// the strings that end with "aba"
+		CompiledDFSM endsWithABA = new DFSM("0 1 2 3/a b/0,a,1;0,b,0;1,a,1;1,b,2;2,a,3;2,b,0;3,a,1;3,b,2/0/3").compile();
+		String input = randomInput(46, 400000, 2);
+
+		int occurrences = 0;
+		for(int i = input.indexOf("aba"); i >= 0; i = input.indexOf("aba", i + 1))
+			occurrences++;
+
+		assertEquals(occurrences, new ParallelMatcher(endsWithABA).threads(4).countAccepted(input));
+		assertEquals(occurrences, new ParallelMatcher(endsWithABA).threads(1).countAccepted(input));
+		assertEquals(occurrences, new ParallelMatcher(endsWithABA).threads(3).countAccepted(ByteBuffer.wrap(input.getBytes(StandardCharsets.US_ASCII))));
+
+		String prefix = input.substring(0, 2000);
+		assertEquals(countPrefixes(endsWithABA, prefix), new ParallelMatcher(endsWithABA).countAccepted(prefix));
+	}
+
+	@Test
+	public void testFiles() throws Exception {
+
+		// the strings that end with "aba"
+		CompiledDFSM endsWithABA = new DFSM("0 1 2 3/a b/0,a,1;0,b,0;1,a,1;1,b,2;2,a,3;2,b,0;3,a,1;3,b,2/0/3").compile();
+		String input = randomInput(48, 400000, 2);
+		ParallelMatcher matcher = new ParallelMatcher(endsWithABA).threads(4);
+
+		File file = File.createTempFile("parallel", ".txt");
+		try {
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				out.write(input.getBytes(StandardCharsets.US_ASCII));
+			}
+			assertEquals(matcher.countAccepted(input), matcher.countAccepted(file));
+			assertEquals(endsWithABA.matches(input), matcher.matches(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testMachinesThatDoNotConverge() throws Exception {
+
+		// a counter modulo 100: every symbol permutes the states, so runs from different states never meet
+		StringBuilder transitions = new StringBuilder();
+		StringBuilder states = new StringBuilder();
+		for(int s = 0; s < 100; s++) {
+			states.append(s).append(' ');
+			transitions.append(s).append(",a,").append((s + 1) % 100).append(';').append(s).append(",b,").append((s + 99) % 100).append(';');
+		}
+		CompiledDFSM counter = new DFSM(states + "/a b/" + transitions + "/0/0 50").compile();
+		String input = randomInput(47, 300007, 2);
+		ParallelMatcher matcher = new ParallelMatcher(counter).threads(4);
+
+		assertEquals(counter.matches(input), matcher.matches(input));
+		assertEquals(counter.matches(input + "a"), matcher.matches(input + "a"));
+
+		long count = 1;
+		for(int i = 0, s = 0; i < input.length(); i++) {
+			s = (s + (input.charAt(i) == 'a' ? 1 : 99)) % 100;
+			if (s == 0 || s == 50)
+				count++;
+		}
+		assertEquals(count, matcher.countAccepted(input));
+	}
+}
@@ -0,0 +1,186 @@
+import static org.junit.Assert.*;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.Alphabet;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.MinimalDFSMBuilder;
+import ac.il.afeka.fsm.State;
+import ac.il.afeka.fsm.Transition;
+
+public class TestPartialDFSM {
+
+	private static int transitions(DFSM machine) {
+		String part = machine.encode().split("/", -1)[2];
+		return part.isEmpty() ? 0 : part.split(";").length;
+	}
+
+	private static int states(DFSM machine) {
+		return machine.encode().split("/", -1)[0].split(" ").length;
+	}
+
+	@Test
+	public void testMissingTransitionsReject() throws Exception {
+
+		DFSM aDFSM = new DFSM("0 1 2/a b c/0,a,1;1,b,2/0/2", true);
+
+		assertTrue(aDFSM.isPartial());
+		assertTrue(aDFSM.compute("ab"));
+		assertTrue(aDFSM.matches("ab"));
+		assertFalse(aDFSM.compute("abc"));
+		assertFalse(aDFSM.compute("c"));
+		assertFalse(aDFSM.matches("ba"));
+		assertFalse(aDFSM.compute(""));
+		assertTrue(aDFSM.compile().matches("ab"));
+		assertFalse(aDFSM.compile().matches("abb"));
+
+		// the sink is never encoded, and the encoding parses back
+		assertEquals("0 1 2/a b c/0,a,1;1,b,2/0/2", aDFSM.encode());
+		assertEquals(aDFSM.encode(), new DFSM(aDFSM.encode(), true).encode());
+
+		try {
+			new DFSM("0 1 2/a b c/0,a,1;1,b,2/0/2");
+			fail("a total DFSM needs every transition");
+		} catch (Exception e) {
+			assertTrue(e.getMessage().contains("missing a transition"));
+		}
+	}
+
+	@Test
+	public void testTotalAndPartial() throws Exception {
+
+		DFSM partial = new DFSM("0 1 2/a b c/0,a,1;1,b,2/0/2", true);
+		DFSM total = partial.toTotal();
+
+		assertFalse(total.isPartial());
+		assertEquals(4, states(total));
+		assertEquals(12, transitions(total));
+		assertNull(partial.shortestDistinguishingString(total));
+		assertNotNull(new DFSM(total.encode()));
+
+		DFSM back = total.toPartial();
+		assertTrue(back.isPartial());
+		assertEquals(partial.encode(), back.encode());
+
+		// a total machine has nothing to add
+		assertEquals(total.encode(), total.toTotal().encode());
+	}
+
+	// a state of a class of its own, named by a string
+
+	private static final class NamedState extends State {
+
+		private final String name;
+
+		NamedState(String name) {
+			this.name = name;
+		}
+
+		public void prettyPrint(PrintStream out) { out.print(name); }
+
+		public String toString() { return name; }
+
+		public String encode() { return name; }
+
+		public int compareTo(State other) { return name.compareTo(other.toString()); }
+	}
+
+	@Test
+	public void testTotalWithOtherStates() throws Exception {
+
+		State start = new NamedState("start"), end = new NamedState("end");
+		Set<Transition> transitions = new HashSet<Transition>();
+		transitions.add(new Transition(start, 'a', end));
+		DFSM partial = new DFSM(new HashSet<State>(Arrays.asList(start, end)), Alphabet.parse("a b"), transitions,
+				start, Collections.singleton(end), true);
+
+		DFSM total = partial.toTotal();
+		assertFalse(total.isPartial());
+		assertTrue(total.compute("a"));
+		assertFalse(total.compute("ab"));
+		assertFalse(total.compute("b"));
+	}
+
+	@Test
+	public void testMinimize() throws Exception {
+
+		// 1 and 3 are equivalent, and 4 can never accept
+		DFSM aDFSM = new DFSM("0 1 2 3 4/a b/0,a,1;0,b,3;1,b,2;3,b,2;1,a,4;4,a,4/0/2", true);
+		DFSM minimal = aDFSM.minimize();
+
+		assertTrue(minimal.isPartial());
+		assertEquals("0 1 2/a b/0,a,1;0,b,1;1,b,2/0/2", minimal.encode());
+		assertNull(aDFSM.shortestDistinguishingString(minimal));
+
+		// the minimal partial machine is the minimal total machine without its trap state
+		assertEquals(states(minimal) + 1, states(aDFSM.toTotal().minimize()));
+		assertEquals(minimal.toCanonicForm().encode(), aDFSM.toTotal().minimize().toPartial().toCanonicForm().encode());
+
+		// a machine that accepts nothing keeps just its initial state
+		assertEquals("0/a b//0/", new DFSM("0 1/a b/0,a,1;1,b,0/0/", true).minimize().encode());
+	}
+
+	@Test
+	public void testComplement() throws Exception {
+
+		DFSM aDFSM = new DFSM("0 1 2/a b c/0,a,1;1,b,2/0/2", true);
+		DFSM complement = aDFSM.complement();
+
+		assertFalse(complement.isPartial());
+		assertFalse(complement.compute("ab"));
+		assertTrue(complement.compute(""));
+		assertTrue(complement.compute("abc"));
+		assertTrue(complement.compute("c"));
+		assertEquals(null, aDFSM.shortestDistinguishingString(complement.complement()));
+	}
+
+	@Test
+	public void testRandomMachines() throws Exception {
+
+		for(int seed = 0; seed < 50; seed++) {
+			DFSM total = new DFSM(MachineGenerators.randomDFSM(seed, 2 + seed % 20, 3, 0.2));
+			DFSM partial = total.toPartial();
+			String message = "seed " + seed + ": " + total.encode();
+
+			assertNull(message, total.shortestDistinguishingString(partial));
+			assertNull(message, total.shortestDistinguishingString(partial.toTotal()));
+			assertNull(message, total.shortestDistinguishingString(partial.minimize()));
+			assertNull(message, total.complement().shortestDistinguishingString(partial.complement()));
+			assertTrue(message, transitions(partial) <= transitions(total));
+			assertTrue(message, states(partial.minimize()) <= states(total.minimize()));
+		}
+	}
+
+	@Test
+	public void testKeywords() throws Exception {
+
+		Alphabet letters = Alphabet.parse("a b c d e f g h i j k l m n o p q r s t u v w x y z");
+		Random random = new Random(7);
+		List<String> keywords = new ArrayList<String>();
+		for(int i = 0; i < 200; i++) {
+			StringBuilder keyword = new StringBuilder();
+			for(int j = 0; j < 4 + random.nextInt(8); j++)
+				keyword.append((char)('a' + random.nextInt(26)));
+			keywords.add(keyword.toString());
+		}
+
+		DFSM total = MinimalDFSMBuilder.fromWords(letters, keywords);
+		DFSM partial = total.toPartial();
+
+		// one transition per edge of the keyword tree, instead of 26 per state
+		assertTrue(transitions(partial) * 10 < transitions(total));
+		for(String keyword : keywords)
+			assertTrue(partial.compute(keyword));
+		assertFalse(partial.compute("abc"));
+		assertEquals(partial.encode(), partial.minimize().encode());
+	}
+}
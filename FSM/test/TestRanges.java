@@ -0,0 +1,119 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.CharRange;
+import ac.il.afeka.fsm.CompiledDFSM;
+import ac.il.afeka.fsm.NDFSM;
+import ac.il.afeka.fsm.RangeNDFSM;
+import ac.il.afeka.fsm.SymbolClasses;
+
+public class TestRanges {
+
+	// identifiers: a letter or '_', followed by letters, digits and '_'
+
+	private static final String IDENTIFIERS = "0 1/chars/0,a-z,1;0,A-Z,1;0,_,1;1,a-z,1;1,A-Z,1;1,0-9,1;1,_,1/0/1";
+
+	@Test
+	public void testParseRange() throws Exception {
+
+		assertEquals(new CharRange('a', 'z'), CharRange.parse("a-z"));
+		assertEquals(CharRange.single('-'), CharRange.parse("U+2D"));
+		assertEquals(CharRange.ANY_CHAR, CharRange.parse("U+0-U+FFFF"));
+		assertEquals(CharRange.single('U'), CharRange.parse("U"));
+		assertEquals("U+2C-U+2F", new CharRange(',', '/').encode());
+	}
+
+	@Test(expected = Exception.class)
+	public void testInvalidRange() throws Exception {
+		CharRange.parse("z-a");
+	}
+
+	@Test
+	public void testIdentifiers() throws Exception {
+
+		RangeNDFSM identifiers = new RangeNDFSM(IDENTIFIERS);
+		CompiledDFSM dfsm = identifiers.toDFSM();
+		CompiledDFSM minimal = identifiers.minimize();
+
+		for(String input : Arrays.asList("x", "_1", "Abc_9", "", "9a", "a-b", "a b", "\u00E9")) {
+			boolean expected = input.matches("[a-zA-Z_][a-zA-Z0-9_]*");
+			assertEquals(input, expected, identifiers.compute(input));
+			assertEquals(input, expected, dfsm.matches(input));
+			assertEquals(input, expected, minimal.matches(input));
+		}
+
+		// start, identifier, dead
+		assertEquals(3, minimal.stateCount());
+	}
+
+	@Test
+	public void testClassesMergeIntervals() throws Exception {
+
+		SymbolClasses classes = new RangeNDFSM(IDENTIFIERS).symbolClasses();
+
+		// letters and '_', digits, and the characters that no transition reads
+		assertEquals(3, classes.classCount());
+		assertEquals(classes.classOf('a'), classes.classOf('Z'));
+		assertEquals(classes.classOf('a'), classes.classOf('_'));
+		assertNotEquals(classes.classOf('a'), classes.classOf('5'));
+		assertEquals(0, classes.classOf('-'));
+		assertEquals(Arrays.asList(new CharRange('0', '9')), classes.ranges(classes.classOf('0')));
+	}
+
+	@Test
+	public void testAnyCharacterButNewline() throws Exception {
+
+		// lines: any characters but '\n', then '\n'
+		RangeNDFSM lines = new RangeNDFSM("0 1/chars/0,U+0-U+9,0;0,U+B-U+FFFF,0;0,U+A,1/0/1");
+
+		assertTrue(lines.compute("abc\n"));
+		assertTrue(lines.compute("\uFFFF\u0000\n"));
+		assertFalse(lines.compute("a\nb\n"));
+		assertEquals(3, lines.minimize().stateCount());
+	}
+
+	@Test
+	public void testCodePoints() throws Exception {
+
+		// one emoji (outside the 65536 characters), then digits
+		RangeNDFSM machine = new RangeNDFSM("0 1 2/codepoints/0,U+1F600-U+1F64F,1;1,0-9,2;2,0-9,2;1,,2/0/2");
+		String smile = new String(Character.toChars(0x1F600));
+
+		assertTrue(machine.compute(smile));
+		assertTrue(machine.compute(smile + "42"));
+		assertFalse(machine.compute(smile + smile));
+		assertFalse(machine.compute("\uD83D"));
+		assertTrue(machine.toDFSM().matches(smile + "7"));
+		assertFalse(machine.minimize().matches(smile.substring(0, 1) + "7"));
+	}
+
+	@Test(expected = Exception.class)
+	public void testCodePointInCharMachine() throws Exception {
+		new RangeNDFSM("0 1/chars/0,U+10000,1/0/1");
+	}
+
+	@Test
+	public void testFromNDFSM() throws Exception {
+
+		NDFSM ndfsm = new NDFSM("0 1 2/a b c d/0,a,0;0,b,0;0,c,0;0,d,1;0,a,1;1,,2;2,b,2/0/2");
+		RangeNDFSM ranges = RangeNDFSM.of(ndfsm);
+
+		assertEquals(5, ranges.transitions().size());
+		for(String input : Arrays.asList("", "a", "d", "ab", "cdbb", "dd", "abce", "bbb")) {
+			assertEquals(input, ndfsm.compute(input), ranges.compute(input));
+			assertEquals(input, ndfsm.compute(input), ranges.toDFSM().matches(input));
+		}
+	}
+
+	@Test
+	public void testEncoding() throws Exception {
+
+		RangeNDFSM machine = new RangeNDFSM("0 1/chars/0,U+A,1;0,a-z,0;1,,0/0/1");
+
+		assertEquals("0 1/chars/0,U+A,1;0,a-z,0;1,,0/0/1", machine.encode());
+		assertEquals(machine.encode(), new RangeNDFSM(machine.encode()).encode());
+	}
+}
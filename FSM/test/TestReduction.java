@@ -0,0 +1,104 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.Metrics;
+import ac.il.afeka.fsm.NDFSM;
+import ac.il.afeka.fsm.OperationStats;
+
+public class TestReduction {
+
+	private static int states(NDFSM machine) {
+		return machine.encode().split("/", -1)[0].split(" ").length;
+	}
+
+	@Test
+	public void testForwardBisimulation() throws Exception {
+
+		// 1 and 2 both read b into the accepting state
+		NDFSM aNDFSM = new NDFSM("0 1 2 3/a b/0,a,1;0,a,2;1,b,3;2,b,3/0/3");
+		NDFSM reduced = aNDFSM.reduceByBisimulation();
+
+		assertEquals(3, states(reduced));
+		assertNull(aNDFSM.shortestDistinguishingString(reduced));
+		// and both are reached on a from the initial state only
+		assertEquals(3, states(aNDFSM.reduceByBackwardBisimulation()));
+	}
+
+	@Test
+	public void testBackwardBisimulation() throws Exception {
+
+		// 1 and 2 are both reached on a from the initial state, but go on with different symbols
+		NDFSM aNDFSM = new NDFSM("0 1 2 3/a b/0,a,1;0,a,2;1,a,3;2,b,3/0/3");
+		NDFSM reduced = aNDFSM.reduceByBackwardBisimulation();
+
+		assertEquals(3, states(reduced));
+		assertNull(aNDFSM.shortestDistinguishingString(reduced));
+		assertEquals(4, states(aNDFSM.reduceByBisimulation()));
+		assertEquals(3, states(aNDFSM.reduce()));
+	}
+
+	@Test
+	public void testSimulation() throws Exception {
+
+		// 2 simulates 1, so the transition to 1 adds nothing
+		NDFSM aNDFSM = new NDFSM("0 1 2 3/a b/0,a,1;0,a,2;1,b,3;2,b,3;2,a,3/0/3");
+		NDFSM reduced = aNDFSM.reduceBySimulation();
+
+		assertNull(aNDFSM.shortestDistinguishingString(reduced));
+		assertFalse(reduced.encode().contains("0,a,1"));
+		assertEquals(4, states(aNDFSM.reduceByBisimulation()));
+		assertEquals(3, states(aNDFSM.reduce()));
+	}
+
+	@Test
+	public void testReductionsKeepTheLanguage() throws Exception {
+
+		for(int seed = 0; seed < 150; seed++) {
+			NDFSM aNDFSM = new NDFSM(MachineGenerators.randomNDFSM(seed, 2 + seed % 12, 2, 1.0, 0.3, 0.3));
+			String message = "seed " + seed + ": " + aNDFSM.encode();
+
+			NDFSM forward = aNDFSM.reduceByBisimulation();
+			NDFSM backward = aNDFSM.reduceByBackwardBisimulation();
+			NDFSM simulation = aNDFSM.reduceBySimulation();
+			NDFSM reduced = aNDFSM.reduce();
+
+			for(NDFSM machine : new NDFSM[] { forward, backward, simulation, reduced })
+				assertNull(message, aNDFSM.shortestDistinguishingString(machine));
+
+			// simulation equivalence is coarser than bisimulation
+			assertTrue(message, states(simulation) <= states(forward));
+			assertTrue(message, states(reduced) <= states(aNDFSM));
+		}
+
+		// on a DFSM with all its states reachable, forward bisimulation is minimization
+		for(int seed = 0; seed < 20; seed++) {
+			DFSM aDFSM = new DFSM(MachineGenerators.randomDFSM(seed, 30, 3, 0.3)).minimize();
+			DFSM extended = new DFSM(aDFSM.toDFSM().encode());
+			assertEquals(states(aDFSM), states(extended.reduceByBisimulation()));
+		}
+	}
+
+	@Test
+	public void testReductionIsReported() throws Exception {
+
+		final List<OperationStats> recorded = new ArrayList<OperationStats>();
+		Metrics.setListener(stats -> recorded.add(stats));
+		try {
+			new NDFSM("0 1 2 3/a b/0,a,1;0,a,2;1,b,3;2,b,3/0/3").reduce();
+		} finally {
+			Metrics.setListener(null);
+		}
+
+		OperationStats stats = recorded.get(recorded.size() - 1);
+		assertEquals(OperationStats.Operation.REDUCE, stats.operation());
+		assertEquals(4, stats.statesRead());
+		assertEquals(4, stats.transitionsRead());
+		assertEquals(3, stats.statesProduced());
+		assertEquals(0.75, stats.stateRatio(), 1e-9);
+	}
+}
@@ -0,0 +1,171 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.CompiledDFSM;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.NDFSM;
+
+/* Runs every operation on generated machines of two sizes and fails if its time grows faster than its
+ * expected complexity: if the time grows by more than (large / small)^(exponent + SLACK). The slack absorbs
+ * timing noise and logarithmic factors, but not an accidental extra factor of n, which at a size ratio of
+ * 4 multiplies the time by 4 more. Each time is the best of a few samples, after a warm-up at the large size,
+ * so the test measures steady state code and runs offline in a few seconds, and a growth that is too fast
+ * is measured again before the test fails. */
+
+public class TestScaling {
+
+	private static final double SLACK = 0.6;
+
+	private interface Operation {
+		void run() throws Exception;
+	}
+
+	private interface Setup {
+		Operation prepare(int size) throws Exception;
+	}
+
+	// the time of one run of operation, in nanoseconds: the best of three samples of at least 20ms each
+
+	private static double time(Operation operation) throws Exception {
+		double best = Double.MAX_VALUE;
+		for(int sample = 0; sample < 3; sample++) {
+			int runs = 0;
+			long start = System.nanoTime(), elapsed;
+			do {
+				operation.run();
+				runs++;
+			} while ((elapsed = System.nanoTime() - start) < 20000000L);
+			best = Math.min(best, (double)elapsed / runs);
+		}
+		return best;
+	}
+
+	// returns the empirical exponent of the growth of the time of the operation from size small to size large
+
+	static double growth(int small, int large, Setup setup) throws Exception {
+		Operation smallOperation = setup.prepare(small);
+		Operation largeOperation = setup.prepare(large);
+		time(largeOperation);
+		double smallTime = time(smallOperation);
+		double largeTime = time(largeOperation);
+		return Math.log(largeTime / smallTime) / Math.log((double)large / small);
+	}
+
+	private static void assertGrowth(String operation, double exponent, int small, int large, Setup setup) throws Exception {
+		// a real regression fails every attempt; a pause of the machine rarely hits three attempts in a row
+		double measured = growth(small, large, setup);
+		for(int attempt = 1; attempt < 3 && measured > exponent + SLACK; attempt++)
+			measured = Math.min(measured, growth(small, large, setup));
+		assertTrue(operation + " grows as size^" + String.format("%.2f", measured) + ", expected at most size^" + exponent,
+				measured <= exponent + SLACK);
+	}
+
+	@Test
+	public void testParseAndEncodeAreLinear() throws Exception {
+
+		assertGrowth("parse", 1, 2000, 8000, size -> {
+			String encoding = MachineGenerators.chain(size);
+			return () -> new DFSM(encoding);
+		});
+		assertGrowth("encode", 1, 2000, 8000, size -> {
+			DFSM chain = new DFSM(MachineGenerators.chain(size));
+			return () -> chain.encode();
+		});
+	}
+
+	@Test
+	public void testReachabilityIsLinear() throws Exception {
+
+		assertGrowth("removeUnreachableStates", 1, 2000, 8000, size -> {
+			DFSM chain = new DFSM(MachineGenerators.chain(size));
+			return () -> chain.removeUnreachableStates();
+		});
+		assertGrowth("trim", 1, 2000, 8000, size -> {
+			DFSM chain = new DFSM(MachineGenerators.chain(size));
+			return () -> chain.trim();
+		});
+		assertGrowth("isFinite", 1, 2000, 8000, size -> {
+			DFSM chain = new DFSM(MachineGenerators.chain(size));
+			return () -> chain.isFinite();
+		});
+		assertGrowth("shortestAccepted", 1, 2000, 8000, size -> {
+			DFSM chain = new DFSM(MachineGenerators.chain(size));
+			return () -> chain.shortestAccepted();
+		});
+	}
+
+	@Test
+	public void testEpsilonRemovalIsLinear() throws Exception {
+
+		assertGrowth("removeEpsilons", 1, 500, 2000, size -> {
+			NDFSM aNDFSM = new NDFSM(MachineGenerators.randomNDFSM(size, size, 3, 0.7, 0.5, 0.2));
+			return () -> aNDFSM.removeEpsilons();
+		});
+	}
+
+	@Test
+	public void testDeterminizationIsLinearInItsOutput() throws Exception {
+
+		// the size is the number of states of the DFSM, 2^n
+		assertGrowth("toDFSM", 1, 256, 1024, size -> {
+			NDFSM aNDFSM = new NDFSM(MachineGenerators.nthSymbolFromEnd(Integer.numberOfTrailingZeros(size)));
+			return () -> aNDFSM.toDFSM();
+		});
+	}
+
+	@Test
+	public void testMinimizationOfRandomMachines() throws Exception {
+
+		assertGrowth("minimize", 1, 250, 1000, size -> {
+			DFSM aDFSM = new DFSM(MachineGenerators.randomDFSM(size, size, 2, 0.5));
+			return () -> aDFSM.minimize();
+		});
+	}
+
+	@Test
+	public void testMinimizationOfChains() throws Exception {
+
+		// a chain is split off one state at a time, which made a round-based refinement quadratic
+		assertGrowth("minimize", 1, 2000, 8000, size -> {
+			DFSM chain = new DFSM(MachineGenerators.chain(size));
+			return () -> chain.minimize();
+		});
+	}
+
+	@Test
+	public void testCompiledMatchingIsLinear() throws Exception {
+
+		CompiledDFSM compiled = new DFSM(MachineGenerators.randomDFSM(41, 100, 30, 0.5)).compile();
+		assertGrowth("matches", 1, 10000, 40000, size -> {
+			StringBuilder input = new StringBuilder();
+			for(int i = 0; i < size; i++)
+				input.append(MachineGenerators.symbol(i % 30));
+			return () -> compiled.matches(input);
+		});
+	}
+
+	@Test
+	public void testWideAlphabetsAreLinear() throws Exception {
+
+		assertGrowth("compile", 1, 100, 400, size -> {
+			DFSM wide = new DFSM(MachineGenerators.wideAlphabet(8, size));
+			return () -> wide.compile();
+		});
+	}
+
+	@Test
+	public void testGeneratorsAreReproducible() throws Exception {
+
+		assertEquals(MachineGenerators.randomNDFSM(7, 20, 4, 1.5, 0.3, 0.2), MachineGenerators.randomNDFSM(7, 20, 4, 1.5, 0.3, 0.2));
+		assertNotEquals(MachineGenerators.randomNDFSM(7, 20, 4, 1.5, 0.3, 0.2), MachineGenerators.randomNDFSM(8, 20, 4, 1.5, 0.3, 0.2));
+
+		// the n-th symbol from the end needs 2^n states in a DFSM
+		assertEquals(64, new NDFSM(MachineGenerators.nthSymbolFromEnd(6)).toDFSM().minimize().encode().split("/")[0].split(" ").length);
+
+		// a wide alphabet past the lowercase letters
+		DFSM wide = new DFSM(MachineGenerators.wideAlphabet(3, 40));
+		assertTrue(wide.compute("" + MachineGenerators.symbol(38)));
+		assertFalse(wide.compute("" + MachineGenerators.symbol(39)));
+	}
+}
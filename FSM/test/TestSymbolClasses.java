@@ -0,0 +1,169 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.CompiledDFSM;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.NDFSM;
+import ac.il.afeka.fsm.SymbolClasses;
+
+public class TestSymbolClasses {
+
+	// a machine over the lowercase letters that accepts the strings that contain "ab"
+
+	private String containsAB() {
+		StringBuilder alphabet = new StringBuilder();
+		StringBuilder transitions = new StringBuilder();
+		for(char c = 'a'; c <= 'z'; c++) {
+			alphabet.append(c).append(' ');
+			transitions.append("0," + c + "," + (c == 'a' ? 1 : 0) + ";");
+			transitions.append("1," + c + "," + (c == 'a' ? 1 : c == 'b' ? 2 : 0) + ";");
+			transitions.append("2," + c + ",2;");
+		}
+		return "0 1 2/" + alphabet + "/" + transitions + "/0/2";
+	}
+
+	@Test
+	public void testClasses() throws Exception {
+
+		SymbolClasses classes = SymbolClasses.of(new DFSM(containsAB()));
+
+		assertEquals(4, classes.classCount());
+		assertEquals(Arrays.asList('a'), classes.symbols(classes.classOf('a')));
+		assertEquals(Arrays.asList('b'), classes.symbols(classes.classOf('b')));
+		assertEquals(24, classes.symbols(classes.classOf('z')).size());
+		assertEquals(classes.classOf('c'), classes.classOf('z'));
+		assertEquals(0, classes.classOf('A'));
+	}
+
+	@Test
+	public void testClassesOfEveryCharacter() throws Exception {
+
+		// the tables span all the characters, and machines that map them differently do not share one
+		SymbolClasses letters = SymbolClasses.of(new DFSM(containsAB()));
+		SymbolClasses gaps = SymbolClasses.of(new DFSM("0 1/a c/0,a,1;0,c,1;1,a,1;1,c,1/0/1"));
+
+		for(char c : new char[] { '\0', '`', '{', '\uffff' }) {
+			assertEquals(0, letters.classOf(c));
+			assertEquals(0, gaps.classOf(c));
+		}
+		assertNotEquals(0, letters.classOf('b'));
+		assertEquals(0, gaps.classOf('b'));
+		assertEquals(gaps.classOf('a'), gaps.classOf('c'));
+		assertEquals(letters.classOf('z'), SymbolClasses.of(new DFSM(containsAB())).classOf('z'));
+	}
+
+	@Test
+	public void testNondeterministicClasses() throws Exception {
+
+		SymbolClasses classes = SymbolClasses.of(new NDFSM("0 1/a b c/0,a,0;0,a,1;0,b,0;0,b,1;0,c,0/0/1"));
+
+		assertEquals(classes.classOf('a'), classes.classOf('b'));
+		assertNotEquals(classes.classOf('a'), classes.classOf('c'));
+	}
+
+	@Test
+	public void testCompiledMatching() throws Exception {
+
+		DFSM aDFSM = new DFSM(containsAB());
+		CompiledDFSM compiled = aDFSM.compile();
+
+		for(String input : Arrays.asList("", "a", "ab", "xxab", "abzz", "ba", "aazb", "zzzz")) {
+			assertEquals(input, aDFSM.compute(input), compiled.matches(input));
+			assertEquals(input, aDFSM.matches(input), compiled.matches(input));
+		}
+		assertFalse(compiled.matches("abA"));
+		assertFalse(aDFSM.matches("abA"));
+	}
+
+	@Test
+	public void testCompiledMinimization() throws Exception {
+
+		String original = "1 2 3 4 5 6/a b/1,a,2;1,b,4;2,a,3;2,b,6;3,a,2;3,b,4;4,a,6;4,b,5;5,a,2;5,b,4;6,a,6;6,b,6/1/2 4";
+
+		CompiledDFSM minimal = new DFSM(original).minimize().compile().minimize();
+
+		// the dead state for characters outside the alphabet is merged with the machine's trap state
+		assertEquals(4, minimal.stateCount());
+		assertTrue(minimal.matches("a"));
+		assertTrue(minimal.matches("aab"));
+		assertFalse(minimal.matches("ab"));
+	}
+
+	@Test
+	public void testMinimizationOverClasses() throws Exception {
+
+		String minimal = new DFSM(containsAB()).minimize().encode();
+
+		assertTrue(minimal.startsWith("0 1 2/"));
+	}
+
+	@Test
+	public void testSharedAcrossThreads() throws Exception {
+
+		CompiledDFSM compiled = new DFSM(containsAB()).compile();
+
+		String[] inputs = new String[1000];
+		boolean[] expected = new boolean[inputs.length];
+		Random random = new Random(37);
+		for(int i = 0; i < inputs.length; i++) {
+			StringBuilder input = new StringBuilder();
+			for(int j = random.nextInt(20); j > 0; j--)
+				input.append((char)('a' + random.nextInt(4)));
+			inputs[i] = input.toString();
+			expected[i] = compiled.matches(inputs[i]);
+		}
+
+		// the threads share the compiled machine with no locking and must all see the same results
+
+		AtomicInteger mismatches = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for(int round = 0; round < 20; round++)
+					for(int i = 0; i < inputs.length; i++)
+						if (compiled.matches(inputs[i]) != expected[i])
+							mismatches.incrementAndGet();
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+
+		assertEquals(0, mismatches.get());
+	}
+
+	@Test
+	public void testMatchAll() throws Exception {
+
+		// a table large enough to be walked in lockstep, and a small one that is matched one input at a time
+		for(CompiledDFSM compiled : Arrays.asList(new DFSM(MachineGenerators.randomDFSM(42, 2000, 20, 0.3)).compile(), new DFSM(containsAB()).compile())) {
+
+			Random random = new Random(42);
+			List<String> inputs = new ArrayList<String>();
+			for(int i = 0; i < 1003; i++) {
+				StringBuilder input = new StringBuilder();
+				for(int j = random.nextInt(i % 3 == 0 ? 4 : 40); j > 0; j--)
+					input.append(MachineGenerators.symbol(random.nextInt(26)));
+				inputs.add(input.toString());
+			}
+
+			boolean[] results = compiled.matchAll(inputs);
+
+			assertEquals(inputs.size(), results.length);
+			for(int i = 0; i < inputs.size(); i++)
+				assertEquals(inputs.get(i), compiled.matches(inputs.get(i)), results[i]);
+		}
+
+		// a small table over chars reads a surrogate pair as two symbols
+		CompiledDFSM pair = new NDFSM("0 1 2/\uD83D \uDE00/0,\uD83D,1;1,\uDE00,2/0/2").toDFSM().compile();
+		assertTrue(pair.matches("\uD83D\uDE00"));
+		assertTrue(pair.matchAll(Arrays.asList("\uD83D\uDE00"))[0]);
+	}
+}
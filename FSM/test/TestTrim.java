@@ -0,0 +1,57 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestTrim {
+
+	@Test
+	public void testRemoveUnreachableStates() throws Exception {
+
+		NDFSM aNDFSM = new NDFSM("0 1 2 3/a b/0,a,1;1,,0;2,a,3;3,b,2/0/1 3");
+
+		assertEquals("0 1/a b/0,a,1;1,,0/0/1", aNDFSM.removeUnreachableStates().encode());
+	}
+
+	@Test
+	public void testTrim() throws Exception {
+
+		// 2 is a trap state and 4 is unreachable
+		NDFSM aNDFSM = new NDFSM("0 1 2 3 4/a b/0,a,1;0,b,2;1,b,3;2,a,2;2,b,2;4,a,3/0/3");
+
+		NDFSM trimmed = aNDFSM.trim();
+
+		assertEquals("0 1 3/a b/0,a,1;1,b,3/0/3", trimmed.encode());
+		assertTrue(trimmed.compute("ab"));
+		assertFalse(trimmed.compute("b"));
+	}
+
+	@Test
+	public void testTrimKeepsInitialState() throws Exception {
+
+		NDFSM aNDFSM = new NDFSM("0 1/a/0,a,1;1,a,1/0/");
+
+		assertEquals("0/a//0/", aNDFSM.trim().encode());
+	}
+
+	@Test
+	public void testLongChain() throws Exception {
+
+		// a chain of states with a self loop at the end; the reachable states used to be found in
+		// time quadratic in the length of the chain
+
+		int length = 20000;
+		StringBuilder states = new StringBuilder();
+		StringBuilder transitions = new StringBuilder();
+		for(int i = 0; i < length; i++) {
+			states.append(i).append(' ');
+			transitions.append(i).append(",a,").append(Math.min(i + 1, length - 1)).append(';');
+		}
+		DFSM chain = new DFSM(states + "/a/" + transitions + "/0/" + (length - 1));
+
+		assertEquals(length, chain.removeUnreachableStates().encode().split("/")[0].split(" ").length);
+		assertEquals(length, chain.trim().encode().split("/")[0].split(" ").length);
+	}
+}
@@ -0,0 +1,151 @@
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ac.il.afeka.fsm.Alphabet;
+import ac.il.afeka.fsm.DFSM;
+import ac.il.afeka.fsm.NDFSM;
+
+public class TestWitnesses {
+
+	@Test
+	public void testShortestAccepted() throws Exception {
+
+		assertEquals("b", new DFSM(MachineGenerators.ENDS_WITH_B).shortestAccepted());
+		assertEquals("", new NDFSM("0 1/a b/0,,1/0/1").shortestAccepted());
+		assertEquals("ba", new NDFSM("0 1 2 3/b a/0,a,1;1,a,1;1,b,3;0,b,2;2,a,3/0/3").shortestAccepted());
+		assertNull(new NDFSM("0 1/a b/0,a,0/0/1").shortestAccepted());
+	}
+
+	@Test
+	public void testShortestRejected() throws Exception {
+
+		assertEquals("", new DFSM(MachineGenerators.ENDS_WITH_B).shortestRejected());
+		assertEquals("b", new NDFSM("0 1/b a/0,a,0;0,b,1/0/0").shortestRejected());
+		assertNull(new DFSM("0/a b/0,a,0;0,b,0/0/0").shortestRejected());
+	}
+
+	@Test
+	public void testShortestDistinguishingString() throws Exception {
+
+		NDFSM endsWithB = new DFSM(MachineGenerators.ENDS_WITH_B);
+		NDFSM containsB = new NDFSM("0 1/a b/0,a,0;0,b,0;0,b,1;1,a,1;1,b,1/0/1");
+
+		assertEquals("ba", endsWithB.shortestDistinguishingString(containsB));
+		assertNull(endsWithB.shortestDistinguishingString(endsWithB.toDFSM().minimize()));
+
+		// a symbol outside one of the alphabets distinguishes the machines if the other one accepts it
+		assertEquals("c", new NDFSM("0/a//0/0").shortestDistinguishingString(new NDFSM("0 1/a c/0,c,1/0/0 1")));
+	}
+
+	@Test
+	public void testIntersection() throws Exception {
+
+		NDFSM endsWithB = new DFSM(MachineGenerators.ENDS_WITH_B);
+		NDFSM startsWithA = new NDFSM("0 1/a b/0,a,1;1,a,1;1,b,1/0/1");
+		NDFSM evenLength = new DFSM("0 1/a b/0,a,1;0,b,1;1,a,0;1,b,0/0/0");
+
+		assertEquals("ab", NDFSM.shortestInIntersection(Arrays.asList(endsWithB, startsWithA, evenLength)));
+		assertFalse(NDFSM.intersectionIsEmpty(Arrays.asList(endsWithB, startsWithA)));
+
+		// a string cannot end with b and with a
+		NDFSM endsWithA = new NDFSM("0 1/a b/0,a,0;0,b,0;0,a,1/0/1");
+		assertTrue(NDFSM.intersectionIsEmpty(Arrays.asList(startsWithA, endsWithA, endsWithB)));
+
+		// the strings of the intersection only have the symbols that all the alphabets have
+		assertEquals("cc", NDFSM.shortestInIntersection(Arrays.asList(new NDFSM("0 1/a c/0,a,0;0,c,1;1,c,1/0/1"), new NDFSM("0 1 2/c d/0,c,1;1,c,2;0,d,2/0/2"))));
+
+		// a machine that accepts nothing, even with states that go nowhere
+		assertTrue(NDFSM.intersectionIsEmpty(Arrays.asList(endsWithB, new NDFSM("0 1/a b/0,a,1;1,b,1/0/"))));
+		assertEquals("", NDFSM.shortestInIntersection(Collections.<NDFSM>emptyList()));
+	}
+
+	@Test
+	public void testIntersectionAgreesWithEnumeration() throws Exception {
+
+		Alphabet alphabet = Alphabet.parse("a b");
+		for(int round = 0; round < 100; round++) {
+			List<NDFSM> machines = Arrays.asList(
+					new NDFSM(MachineGenerators.randomNDFSM(3 * round, 5, 2, 0.8, 0.2, 0.4)),
+					new NDFSM(MachineGenerators.randomNDFSM(3 * round + 1, 5, 2, 0.8, 0.2, 0.4)),
+					new NDFSM(MachineGenerators.randomNDFSM(3 * round + 2, 5, 2, 0.8, 0.2, 0.4)));
+
+			String expected = null;
+			String string = alphabet.first();
+			for(int i = 0; i < 2000 && expected == null; i++, string = alphabet.next(string)) {
+				boolean all = true;
+				for(NDFSM machine : machines)
+					all = all && machine.compute(string);
+				if (all)
+					expected = string;
+			}
+
+			String witness = NDFSM.shortestInIntersection(machines);
+			if (expected != null)
+				assertEquals("round " + round, expected, witness);
+			else if (witness != null)
+				assertTrue("round " + round, witness.length() > 9);
+		}
+	}
+
+	// the shortest accepted and rejected strings are the first ones that the brute force enumeration finds
+
+	@Test
+	public void testAgreesWithEnumeration() throws Exception {
+
+		Random random = new Random(40);
+		Alphabet alphabet = Alphabet.parse("b a c");
+
+		for(int round = 0; round < 200; round++) {
+			int n = 1 + random.nextInt(5);
+			StringBuilder states = new StringBuilder(), transitions = new StringBuilder(), accepting = new StringBuilder();
+			for(int s = 0; s < n; s++) {
+				states.append(s).append(' ');
+				if (random.nextInt(3) == 0)
+					accepting.append(s).append(' ');
+				for(int t = random.nextInt(4); t > 0; t--)
+					transitions.append(s).append(',').append(random.nextInt(5) == 0 ? "" : "" + "bac".charAt(random.nextInt(3))).append(',').append(random.nextInt(n)).append(';');
+			}
+			NDFSM aNDFSM = new NDFSM(states + "/b a c/" + transitions + "/0/" + accepting);
+
+			String accepted = null, rejected = null;
+			String string = alphabet.first();
+			for(int i = 0; i < 400 && (accepted == null || rejected == null); i++, string = alphabet.next(string)) {
+				boolean accepts = aNDFSM.compute(string);
+				if (accepts && accepted == null)
+					accepted = string;
+				if (!accepts && rejected == null)
+					rejected = string;
+			}
+
+			String encoding = aNDFSM.encode();
+			if (accepted != null)
+				assertEquals(encoding, accepted, aNDFSM.shortestAccepted());
+			if (rejected != null)
+				assertEquals(encoding, rejected, aNDFSM.shortestRejected());
+		}
+	}
+
+	@Test
+	public void testLongChain() throws Exception {
+
+		// a chain that accepts only the string of length symbols; the search is linear in its states
+		int length = 20000;
+		StringBuilder states = new StringBuilder();
+		StringBuilder transitions = new StringBuilder();
+		for(int i = 0; i <= length; i++) {
+			states.append(i).append(' ');
+			transitions.append(i).append(",a,").append(Math.min(i + 1, length + 1)).append(';');
+		}
+		states.append(length + 1);
+		transitions.append(length + 1).append(",a,").append(length + 1);
+		DFSM chain = new DFSM(states + "/a/" + transitions + "/0/" + length);
+
+		assertEquals(length, chain.shortestAccepted().length());
+	}
+}